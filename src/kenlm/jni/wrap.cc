@@ -235,6 +235,37 @@ JNIEXPORT jfloat JNICALL Java_opennlp_ccg_ngrams_kenlm_jni_KenLM_prob(
 			values + length);
 }
 
+// Scores a batch of n-grams, given by their start and length within the word
+// ids at the start of the buffer, writing their log probs to the results.
+JNIEXPORT void JNICALL Java_opennlp_ccg_ngrams_kenlm_jni_KenLM_probBatch(
+		JNIEnv *env, jclass, jlong pointer, jobject buffer, jint numWords,
+		jint numQueries, jobject results) {
+	const jint *words = static_cast<const jint*>(env->GetDirectBufferAddress(
+			buffer));
+	jfloat *out = static_cast<jfloat*>(env->GetDirectBufferAddress(results));
+	if (!words || !out)
+		return;
+	const jint *queries = words + numWords;
+	const VirtualBase *model = reinterpret_cast<const VirtualBase*>(pointer);
+	// Prob maps and reverses the ids in place, so each n-gram is copied.
+	jint values[KENLM_MAX_ORDER];
+	for (jint q = 0; q < numQueries; ++q) {
+		jint start = queries[2 * q];
+		jint length = queries[2 * q + 1];
+		if (length <= 0 || start < 0 || start + length > numWords) {
+			out[q] = 0.0;
+			continue;
+		}
+		// words beyond the maximum order are not part of the context
+		if (length > KENLM_MAX_ORDER) {
+			start += length - KENLM_MAX_ORDER;
+			length = KENLM_MAX_ORDER;
+		}
+		memcpy(values, words + start, length * sizeof(jint));
+		out[q] = model->Prob(values, values + length);
+	}
+}
+
 JNIEXPORT jfloat JNICALL Java_opennlp_ccg_ngrams_kenlm_jni_KenLM_probString(
 		JNIEnv *env, jclass, jlong pointer, jintArray arr, jint start) {
 	jint length = env->GetArrayLength(arr);
@@ -300,6 +300,10 @@ public class Realize {
 			out.flush();
 		}
 
+		// release n-gram model
+		if (ngramScorer instanceof NgramScorer)
+			((NgramScorer) ngramScorer).release();
+
 		// reset prefs
 		prefs.putBoolean(Edge.SHOW_COMPLETENESS, oldShowCompleteness);
 		prefs.putBoolean(Edge.SHOW_BITSET, oldShowBitset);
@@ -38,6 +38,28 @@ public abstract class AbstractApplicationRule extends AbstractRule {
 
 	protected Slash _functorSlash;
 
+	/** Reusable trail substitution for each thread, created on demand. */
+	private static final ThreadLocal<TrailSubstitution> reusableSub = new ThreadLocal<TrailSubstitution>() {
+		protected TrailSubstitution initialValue() {
+			return new TrailSubstitution();
+		}
+	};
+
+	/**
+	 * Returns an empty substitution for an attempted rule application: the
+	 * current thread's reset trail substitution, if the rule group reuses
+	 * substitutions, otherwise a new one. A reused substitution is only
+	 * valid until the next call on the same thread, so the results must be
+	 * filled in from it before then.
+	 */
+	protected GSubstitution newSubstitution() {
+		if (_ruleGroup == null || !_ruleGroup.getReuseSubstitutions())
+			return new GSubstitution();
+		TrailSubstitution retval = reusableSub.get();
+		retval.reset();
+		return retval;
+	}
+
 	/** Returns an XML element representing the rule. */
 	public Element toXml(String dir) {
 		Element retval = new Element("application");
@@ -62,7 +84,7 @@ public abstract class AbstractApplicationRule extends AbstractRule {
 			if (xyOuter instanceof BasicArg) {
 				xyOuter.unifySlash(_functorSlash);
 				Category xyOuterCat = ((BasicArg) xyOuter).getCat();
-				Substitution sub = new GSubstitution();
+				Substitution sub = newSubstitution();
 				GUnifier.unify(xyOuterCat, yCat, sub);
 				results = new ArrayList<Category>(1);
 				((GSubstitution) sub).condense();
@@ -78,9 +100,9 @@ public abstract class AbstractApplicationRule extends AbstractRule {
 					BasicArg argi = xyOuterSet.get(i);
 					try {
 						argi.unifySlash(_functorSlash);
-						Substitution sub = new GSubstitution();
+						Substitution sub = newSubstitution();
 						GUnifier.unify(argi.getCat(), yCat, sub);
-						ComplexCat result = (ComplexCat) xyCurCat.copy();
+						ComplexCat result = (ComplexCat) xyCurCat.shallowCopy();
 						result.setOuterArgument(xyOuterSet.copyWithout(i));
 						((GSubstitution) sub).condense();
 						result = (ComplexCat) result.fill(sub);
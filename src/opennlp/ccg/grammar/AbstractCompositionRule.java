@@ -89,7 +89,7 @@ public abstract class AbstractCompositionRule extends AbstractApplicationRule {
 					// e.g. s/s Y/Z
 					ArgStack zStack = yzCC.getArgStack();
 					zStack.slashesUnify(_argSlash);
-					Substitution sub = new GSubstitution();
+					Substitution sub = newSubstitution();
 					GUnifier.unify(xyOuterCat, yzCC.getTarget(), sub);
 					xySlash = (Slash) xySlash.fill(sub);
 					xySlash.unifyCheck(_functorSlash);
@@ -99,7 +99,7 @@ public abstract class AbstractCompositionRule extends AbstractApplicationRule {
 					_headCats.add(xySlash.isModifier() ? yzCat : xyCat);
 				} else if (xyOuterCat instanceof ComplexCat) {
 					// e.g. s/(s/n) Y/Z
-					Substitution sub = new GSubstitution();
+					Substitution sub = newSubstitution();
 					ArgStack zStack = composeComplexY((ComplexCat) xyOuterCat, xySlash, yzCC, sub);
 					xySlash = (Slash) xySlash.fill(sub);
 					xySlash.unifyCheck(_functorSlash);
@@ -118,9 +118,9 @@ public abstract class AbstractCompositionRule extends AbstractApplicationRule {
 					xySlash.unifyCheck(_functorSlash);
 					if (eisner() && xySlash.isHarmonicCompositionResult())
 						throw new UnifyFailure();
-					Substitution sub = new GSubstitution();
+					Substitution sub = newSubstitution();
 					GUnifier.unify(xyOuterSet.getCat(targetIndex), yzTarget, sub);
-					Category result = xyCC.copy();
+					Category result = xyCC.shallowCopy();
 					((ComplexCat) result).setOuterArgument(xyOuterSet.copyWithout(targetIndex));
 					ArgStack zStack = yzCC.getArgStack();
 					zStack.slashesUnify(_argSlash);
@@ -138,11 +138,11 @@ public abstract class AbstractCompositionRule extends AbstractApplicationRule {
 							if (eisner() && xySlash.isHarmonicCompositionResult())
 								throw new UnifyFailure();
 							ComplexCat yCat = (ComplexCat) yInSet.getCat();
-							Substitution sub = new GSubstitution();
+							Substitution sub = newSubstitution();
 							ArgStack zStack = composeComplexY((ComplexCat) yCat, xySlash, yzCC, sub);
 							xySlash = (Slash) xySlash.fill(sub);
 							xySlash.unifyCheck(_functorSlash);
-							Category result = xyCC.copy();
+							Category result = xyCC.shallowCopy();
 							((ComplexCat) result).setOuterArgument(xyOuterSet.copyWithout(i));
 							Category outcome = createResult(result, zStack, xySlash, sub);
 							appendLFs(xyCat, yzCat, outcome, sub);
@@ -224,7 +224,7 @@ public abstract class AbstractCompositionRule extends AbstractApplicationRule {
 				xyOuterOuter.unify(yzSetArg.get(iaIndex), sub);
 				xySlash = (Slash) xySlash.fill(sub);
 				xySlash.unifyCheck(_functorSlash);
-				zStack = yzStack.copy();
+				zStack = yzStack.shallowCopy();
 				zStack.set(0, yzSetArg.copyWithout(iaIndex));
 				zStack.slashesUnify(_argSlash);
 				return zStack;
@@ -234,7 +234,7 @@ public abstract class AbstractCompositionRule extends AbstractApplicationRule {
 					throw new UnifyFailure();
 				}
 				xyOuterOuter.unify(yzStackInner, sub);
-				zStack = yzStack.subList(1).copy();
+				zStack = yzStack.subList(1);
 				zStack.slashesUnify(_argSlash);
 				xySlash = (Slash) xySlash.fill(sub);
 				xySlash.unifyCheck(_functorSlash);
@@ -254,7 +254,7 @@ public abstract class AbstractCompositionRule extends AbstractApplicationRule {
 			Arg yzStackInner2 = yzStack.get(1);
 			xyOuterOuter1.unify(yzStackInner1, sub);
 			xyOuterOuter2.unify(yzStackInner2, sub);
-			zStack = yzStack.subList(2).copy();
+			zStack = yzStack.subList(2);
 			zStack.slashesUnify(_argSlash);
 			xySlash = (Slash) xySlash.fill(sub);
 			xySlash.unifyCheck(_functorSlash);
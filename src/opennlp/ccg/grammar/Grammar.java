@@ -226,6 +226,10 @@ public class Grammar {
 		lexicon.openlex = openlex;
 		lexicon.init(lexiconUrl, morphUrl);
 		rules = new RuleGroup(rulesUrl, this);
+		// set whether to reuse substitutions (defaults to false)
+		String reuseSubstitutions = rulesElt.getAttributeValue("reuse-substitutions");
+		if (reuseSubstitutions != null)
+			rules.setReuseSubstitutions(Boolean.parseBoolean(reuseSubstitutions));
 
 		// add observed supertag-rule combos for filtering, if any, unless
 		// ignoring combos
@@ -27,15 +27,14 @@ import opennlp.ccg.util.*;
 import org.jdom.*;
 import org.jdom.output.*;
 
-import gnu.trove.*;
-
 import java.io.*;
 import java.net.*;
 import java.util.*;
 
 /**
  * A set of rules for combining categories. Observed rule combos can be cached,
- * either statically or dynamically.
+ * either statically or dynamically, in a compiled supercat-rule table, which
+ * may be shared by rule groups in different threads.
  *
  * During deserialization, the grammar is set to the current grammar, and
  * supercat rule combos are borrowed from the current grammar's rule group.
@@ -66,116 +65,19 @@ public class RuleGroup implements Serializable {
 	// glue rule
 	private GlueRule glueRule = new GlueRule();
 
-	// supercat-rule combos, to support filtering on observed ones
-	private class SupercatRuleCombo {
-		// NB: strings must be interned
-		private String supercat;
-		private String supercat2;
-		private String rule;
-
-		// unary rule constructor
-		public SupercatRuleCombo(String supercat, String rule) {
-			setCombo(supercat.intern(), (rule != null) ? rule.intern() : null);
-		}
-
-		// binary rule constructor
-		public SupercatRuleCombo(String supercat, String supercat2, String rule) {
-			setCombo(supercat.intern(), supercat2.intern(), (rule != null) ? rule.intern() : null);
-		}
-
-		// setters
-		// NB: assume interned strings!
-		public void setCombo(String supercat, String rule) {
-			this.supercat = supercat;
-			this.supercat2 = null;
-			this.rule = rule;
-		}
-
-		public void setCombo(String supercat, String supercat2, String rule) {
-			this.supercat = supercat;
-			this.supercat2 = supercat2;
-			this.rule = rule;
-		}
-
-		// hashcode
-		public int hashCode() {
-			return 31 * System.identityHashCode(supercat) + 17 * System.identityHashCode(rule)
-					+ System.identityHashCode(supercat2);
-		}
-
-		// equals
-		public boolean equals(Object obj) {
-			if (!(obj instanceof SupercatRuleCombo))
-				return false;
-			SupercatRuleCombo combo = (SupercatRuleCombo) obj;
-			return supercat == combo.supercat && supercat2 == combo.supercat2 && rule == combo.rule;
-		}
-
-		// supercat hashcode, excluding rule
-		public int supercatHashCode() {
-			return 31 * System.identityHashCode(supercat) + System.identityHashCode(supercat2);
-		}
-
-		// supercat equals
-		public boolean supercatEquals(Object obj) {
-			if (!(obj instanceof SupercatRuleCombo))
-				return false;
-			SupercatRuleCombo combo = (SupercatRuleCombo) obj;
-			return supercat == combo.supercat && supercat2 == combo.supercat2;
-		}
-
-		// toString
-		public String toString() {
-			StringBuffer sb = new StringBuffer(supercat);
-			if (supercat2 != null)
-				sb.append(' ').append(supercat2);
-			sb.append(' ').append(rule);
-			return sb.toString();
-		}
-	}
-
-	// class for seen combos when determined dynamically
-	// nb: for space efficiency, allows representative to be retrieved from set
-	private static class SupercatComboSet extends THashSet {
-		private static final long serialVersionUID = 1L;
+	// observed supercat-rule combos, compiled for filtering
+	private transient SupercatRuleTable supercatRuleTable = null;
 
-		SupercatComboSet() {
-			super(new TObjectHashingStrategy() {
-				private static final long serialVersionUID = 1L;
-
-				public int computeHashCode(Object o) {
-					return (o instanceof SupercatRuleCombo) ? ((SupercatRuleCombo) o)
-							.supercatHashCode() : 0;
-				}
-
-				public boolean equals(Object o1, Object o2) {
-					return (o1 instanceof SupercatRuleCombo) ? ((SupercatRuleCombo) o1)
-							.supercatEquals(o2) : false;
-				}
-			});
-		}
-
-		// return the seen combo, or null if none
-		SupercatRuleCombo get(SupercatRuleCombo combo) {
-			int index = index(combo);
-			if (index < 0)
-				return null;
-			return (SupercatRuleCombo) this._set[index];
-		}
-	}
-
-	// observed supercat-rule combos
-	private transient Set<SupercatRuleCombo> supercatRuleCombos = null;
-
-	// observed supercat combos (for which complete rule combos are known)
-	private transient SupercatComboSet supercatCombosSeen = null;
-
-	// reusable combo for checking presence
-	private transient SupercatRuleCombo combo = new SupercatRuleCombo("dummy", "dummy");
+	// ids of the unary and binary rules in the supercat-rule table
+	private transient volatile int[] unaryRuleIds = null;
+	private transient volatile int[] binaryRuleIds = null;
 
 	// flag for whether observed supercat combos is determined dynamically
 	private boolean dynamicCombos = false;
 
+	// flag for whether rules reuse a trail substitution per thread
+	private boolean reuseSubstitutions = false;
+
 	/**
 	 * Constructs an empty rule group for the given grammar.
 	 */
@@ -322,15 +224,14 @@ public class RuleGroup implements Serializable {
 	 * observed supercat combos is determined dynamically.
 	 */
 	public void setDynamicCombos(boolean dynamic) {
-		this.dynamicCombos = dynamic;
-		if (!dynamicCombos)
-			supercatCombosSeen = null;
-		else if (dynamicCombos) {
-			if (supercatCombosSeen == null)
-				supercatCombosSeen = new SupercatComboSet();
-			if (supercatRuleCombos == null)
-				supercatRuleCombos = new HashSet<SupercatRuleCombo>();
+		if (dynamic) {
+			if (supercatRuleTable == null) {
+				supercatRuleTable = new SupercatRuleTable();
+				clearRuleIds();
+			} else if (!dynamicCombos)
+				supercatRuleTable.clearSeen();
 		}
+		this.dynamicCombos = dynamic;
 	}
 
 	/**
@@ -340,12 +241,32 @@ public class RuleGroup implements Serializable {
 		return dynamicCombos;
 	}
 
+	/**
+	 * Sets the flag for whether the application and composition rules reuse
+	 * one trail substitution per thread across attempted rule applications,
+	 * rather than allocating a new substitution for each one. Since most
+	 * attempts fail, this avoids most of the allocation done during
+	 * unification.
+	 */
+	public void setReuseSubstitutions(boolean reuse) {
+		reuseSubstitutions = reuse;
+	}
+
+	/**
+	 * Returns the reuse substitutions flag.
+	 */
+	public boolean getReuseSubstitutions() {
+		return reuseSubstitutions;
+	}
+
 	/**
 	 * Loads the observed supercat-rule combos, for filtering. Only file URLs
 	 * are supported at present. Missing files are ignored.
 	 **/
 	public void loadSupercatRuleCombos(URL url) throws IOException {
-		supercatRuleCombos = new HashSet<SupercatRuleCombo>();
+		SupercatRuleTable table = new SupercatRuleTable();
+		supercatRuleTable = table;
+		clearRuleIds();
 		File combosFile = new File(url.getFile());
 		if (!combosFile.exists())
 			return;
@@ -361,14 +282,14 @@ public class RuleGroup implements Serializable {
 				continue;
 			}
 			if (tokens.length == 2) {
-				supercatRuleCombos.add(new SupercatRuleCombo(tokens[0], tokens[1]));
+				table.addLoaded(tokens[0], tokens[1]);
 			} else {
 				if (tokens.length > 3) {
 					System.err
 							.println("Warning: ignoring extra tokens (beyond 3rd) in supercat-rule combo: "
 									+ line);
 				}
-				supercatRuleCombos.add(new SupercatRuleCombo(tokens[0], tokens[1], tokens[2]));
+				table.addLoaded(tokens[0], tokens[1], tokens[2]);
 			}
 		}
 		in.close();
@@ -376,13 +297,14 @@ public class RuleGroup implements Serializable {
 
 	/** Borrows the observed supercat-rule combos from the given rule group. */
 	public void borrowSupercatRuleCombos(RuleGroup ruleGroup) {
-		supercatRuleCombos = ruleGroup.supercatRuleCombos;
-		supercatCombosSeen = ruleGroup.supercatCombosSeen;
+		supercatRuleTable = ruleGroup.supercatRuleTable;
+		clearRuleIds();
 	}
 
 	/** Adds the given rule. */
 	public void addRule(Rule r) {
 		r.setRuleGroup(this);
+		clearRuleIds();
 		if (r instanceof TypeChangingRule) {
 			unaryRules.add(r);
 			index((TypeChangingRule) r);
@@ -453,6 +375,20 @@ public class RuleGroup implements Serializable {
 		return relsToRules.get(rel);
 	}
 
+	// clears the ids of the rules in the supercat-rule table
+	private void clearRuleIds() {
+		unaryRuleIds = null;
+		binaryRuleIds = null;
+	}
+
+	// returns the ids of the given rules in the given supercat-rule table
+	private static int[] ruleIds(SupercatRuleTable table, List<Rule> rules) {
+		int[] retval = new int[rules.size()];
+		for (int i = 0; i < retval.length; i++)
+			retval[i] = table.internRule(rules.get(i).name());
+		return retval;
+	}
+
 	/**
 	 * Applies the unary rules to the given input sign, returning the list of
 	 * results.
@@ -460,63 +396,22 @@ public class RuleGroup implements Serializable {
 	public List<Symbol> applyUnaryRules(Symbol input) {
 		Symbol[] inputs = { input };
 		List<Symbol> results = new ArrayList<Symbol>(2);
-		String supertag = input.getCategory().getSupertag();
-		// check whether dynamic combos update required, or whether rules can be
-		// skipped
-		boolean dynamicCombosUpdate = false;
-		boolean skip = false;
-		if (dynamicCombos) {
-			combo.setCombo(supertag, null);
-			SupercatRuleCombo rep = supercatCombosSeen.get(combo);
-			if (rep == null)
-				dynamicCombosUpdate = true;
-			else if (rep.rule == null)
-				skip = true;
-		}
-		// skip if possible
-		if (skip)
-			return results;
-		// try each rule
-		for (Rule r : unaryRules) {
-			// filter on observed supercat-rule combos, if any, if not updating
-			if (!dynamicCombosUpdate && supercatRuleCombos != null) {
-				combo.setCombo(supertag, r.name());
-				if (!supercatRuleCombos.contains(combo)) {
-					continue;
-				}
-			}
-			// if updating combos, apply rule and record results
-			if (dynamicCombosUpdate) {
-				int prevsize = results.size();
-				((AbstractRule) r).applyRule(inputs, results);
-				// update upon success
-				if (results.size() > prevsize) {
-					SupercatRuleCombo newCombo = null;
-					combo.setCombo(supertag, r.name());
-					if (!supercatRuleCombos.contains(combo)) {
-						newCombo = new SupercatRuleCombo(supertag, r.name());
-						supercatRuleCombos.add(newCombo);
-					}
-					if (!supercatCombosSeen.contains(combo)) {
-						if (newCombo == null)
-							newCombo = new SupercatRuleCombo(supertag, r.name());
-						supercatCombosSeen.add(newCombo);
-					}
-				}
-			}
-			// otherwise just apply rule
-			else
+		SupercatRuleTable table = supercatRuleTable;
+		// just try each rule if there are no observed combos
+		if (table == null) {
+			for (Rule r : unaryRules)
 				((AbstractRule) r).applyRule(inputs, results);
+			return results;
 		}
-		// if updating combos and none succeeded, add one with null rule
-		if (dynamicCombosUpdate) {
-			combo.setCombo(supertag, null);
-			if (!supercatCombosSeen.contains(combo)) {
-				SupercatRuleCombo newCombo = new SupercatRuleCombo(supertag, null);
-				supercatCombosSeen.add(newCombo);
-			}
+		// otherwise filter the rules on the observed combos
+		int[] ruleIds = unaryRuleIds;
+		if (ruleIds == null) {
+			ruleIds = ruleIds(table, unaryRules);
+			unaryRuleIds = ruleIds;
 		}
-		// done
+		String supertag = input.getCategory().getSupertag();
+		long key = SupercatRuleTable.key(supertagId(table, supertag));
+		applyRules(table, key, unaryRules, ruleIds, inputs, results);
 		return results;
 	}
 
@@ -527,65 +422,55 @@ public class RuleGroup implements Serializable {
 	public List<Symbol> applyBinaryRules(Symbol input1, Symbol input2) {
 		Symbol[] inputs = { input1, input2 };
 		List<Symbol> results = new ArrayList<Symbol>(2);
+		SupercatRuleTable table = supercatRuleTable;
+		// just try each rule if there are no observed combos
+		if (table == null) {
+			for (Rule r : binaryRules)
+				((AbstractRule) r).applyRule(inputs, results);
+			return results;
+		}
+		// otherwise filter the rules on the observed combos
+		int[] ruleIds = binaryRuleIds;
+		if (ruleIds == null) {
+			ruleIds = ruleIds(table, binaryRules);
+			binaryRuleIds = ruleIds;
+		}
 		String supertag1 = input1.getCategory().getSupertag();
 		String supertag2 = input2.getCategory().getSupertag();
-		// check whether dynamic combos update required, or whether rules can be
-		// skipped
-		boolean dynamicCombosUpdate = false;
-		boolean skip = false;
-		if (dynamicCombos) {
-			combo.setCombo(supertag1, supertag2, null);
-			SupercatRuleCombo rep = supercatCombosSeen.get(combo);
-			if (rep == null)
-				dynamicCombosUpdate = true;
-			else if (rep.rule == null)
-				skip = true;
-		}
-		// skip if possible
-		if (skip)
-			return results;
-		// try each rule
-		for (Rule r : binaryRules) {
-			// filter on observed supercat-rule combos, if any, if not updating
-			if (!dynamicCombosUpdate && supercatRuleCombos != null) {
-				combo.setCombo(supertag1, supertag2, r.name());
-				if (!supercatRuleCombos.contains(combo)) {
-					continue;
-				}
-			}
-			// if updating combos, apply rule and record results
-			if (dynamicCombosUpdate) {
-				int prevsize = results.size();
-				((AbstractRule) r).applyRule(inputs, results);
-				// update upon success
-				if (results.size() > prevsize) {
-					SupercatRuleCombo newCombo = null;
-					combo.setCombo(supertag1, supertag2, r.name());
-					if (!supercatRuleCombos.contains(combo)) {
-						newCombo = new SupercatRuleCombo(supertag1, supertag2, r.name());
-						supercatRuleCombos.add(newCombo);
-					}
-					if (!supercatCombosSeen.contains(combo)) {
-						if (newCombo == null)
-							newCombo = new SupercatRuleCombo(supertag1, supertag2, r.name());
-						supercatCombosSeen.add(newCombo);
-					}
-				}
+		long key = SupercatRuleTable.key(supertagId(table, supertag1), supertagId(table, supertag2));
+		applyRules(table, key, binaryRules, ruleIds, inputs, results);
+		return results;
+	}
+
+	// returns the id of the given supertag, interning it only if the observed
+	// combos may be updated
+	private int supertagId(SupercatRuleTable table, String supertag) {
+		return dynamicCombos ? table.internSupertag(supertag) : table.getSupertagId(supertag);
+	}
+
+	// applies the rules observed for the given key, or else applies all rules
+	// and records the successful ones, if the combos are determined dynamically
+	// and the supertags have not been seen yet
+	private void applyRules(SupercatRuleTable table, long key, List<Rule> rules, int[] ruleIds,
+			Symbol[] inputs, List<Symbol> results) {
+		long[] mask = dynamicCombos ? table.getSeenRules(key) : table.getRules(key);
+		if (mask != null) {
+			if (mask.length == 0)
+				return;
+			for (int i = 0; i < ruleIds.length; i++) {
+				if (SupercatRuleTable.contains(mask, ruleIds[i]))
+					((AbstractRule) rules.get(i)).applyRule(inputs, results);
 			}
-			// otherwise just apply rule
-			else
-				((AbstractRule) r).applyRule(inputs, results);
+			return;
 		}
-		// if updating combos and none succeeded, add one with null rule
-		if (dynamicCombosUpdate) {
-			combo.setCombo(supertag1, supertag2, null);
-			if (!supercatCombosSeen.contains(combo)) {
-				SupercatRuleCombo newCombo = new SupercatRuleCombo(supertag1, supertag2, null);
-				supercatCombosSeen.add(newCombo);
-			}
+		long[] successes = SupercatRuleTable.NO_RULES;
+		for (int i = 0; i < ruleIds.length; i++) {
+			int prevsize = results.size();
+			((AbstractRule) rules.get(i)).applyRule(inputs, results);
+			if (results.size() > prevsize)
+				successes = SupercatRuleTable.with(successes, ruleIds[i]);
 		}
-		// done
-		return results;
+		table.recordSeen(key, successes);
 	}
 
 	/**
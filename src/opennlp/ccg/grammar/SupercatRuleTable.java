@@ -0,0 +1,244 @@
+///////////////////////////////////////////////////////////////////////////////
+// Copyright (C) 2015 Daniel Couto-Vale (RWTH Aachen)
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+//////////////////////////////////////////////////////////////////////////////
+
+package opennlp.ccg.grammar;
+
+import gnu.trove.*;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * A compiled table of observed supercat-rule combos, which maps a supertag
+ * (for unary rules) or a pair of supertags (for binary rules) to a bitmask of
+ * the rules observed to apply to them. Supertags and rule names are interned
+ * to ints, so that a single lookup yields the rules to try.
+ * <p>
+ * Combos loaded from a file are compiled into a hash map which is not changed
+ * afterwards. Combos determined dynamically go into a concurrent map whose
+ * entries are immutable and replaced as a whole, so that the table may be
+ * shared by rule groups used in different threads.
+ *
+ * @author Daniel Couto-Vale
+ * @version
+ */
+public class SupercatRuleTable {
+
+	/** The empty rule mask. */
+	public static final long[] NO_RULES = new long[0];
+
+	// entry for dynamically determined combos
+	private static class Entry {
+		// the rules observed so far, including the loaded ones
+		final long[] rules;
+		// the rules to try once all rules have been tried on the supertags,
+		// or null if not seen yet
+		final long[] seenRules;
+
+		Entry(long[] rules, long[] seenRules) {
+			this.rules = rules;
+			this.seenRules = seenRules;
+		}
+	}
+
+	// interned supertags and rule names, with ids starting at 1
+	private final ConcurrentMap<String, Integer> supertagIds = new ConcurrentHashMap<String, Integer>();
+	private final AtomicInteger numSupertags = new AtomicInteger();
+	private final ConcurrentMap<String, Integer> ruleIds = new ConcurrentHashMap<String, Integer>();
+	private final AtomicInteger numRules = new AtomicInteger();
+
+	// loaded combos, not changed once loading is done
+	private final TLongObjectHashMap loaded = new TLongObjectHashMap();
+
+	// dynamically determined combos
+	private final ConcurrentMap<Long, Entry> dynamic = new ConcurrentHashMap<Long, Entry>();
+
+	/**
+	 * Adds a loaded combo for the given supertag and rule name. Not
+	 * thread-safe; intended for use only while loading.
+	 */
+	public void addLoaded(String supertag, String rule) {
+		addLoaded(key(internSupertag(supertag)), rule);
+	}
+
+	/**
+	 * Adds a loaded combo for the given supertags and rule name. Not
+	 * thread-safe; intended for use only while loading.
+	 */
+	public void addLoaded(String supertag1, String supertag2, String rule) {
+		addLoaded(key(internSupertag(supertag1), internSupertag(supertag2)), rule);
+	}
+
+	// adds a loaded combo for the given key
+	private void addLoaded(long key, String rule) {
+		long[] rules = (long[]) loaded.get(key);
+		if (rules == null)
+			rules = NO_RULES;
+		loaded.put(key, with(rules, internRule(rule)));
+	}
+
+	/**
+	 * Returns the id of the given rule name, interning it if necessary.
+	 */
+	public int internRule(String rule) {
+		return intern(ruleIds, numRules, rule);
+	}
+
+	/**
+	 * Returns the id of the given supertag, interning it if necessary.
+	 */
+	public int internSupertag(String supertag) {
+		return intern(supertagIds, numSupertags, supertag);
+	}
+
+	/**
+	 * Returns the id of the given supertag, or zero if it has not been
+	 * interned.
+	 */
+	public int getSupertagId(String supertag) {
+		Integer id = supertagIds.get(supertag);
+		return (id != null) ? id : 0;
+	}
+
+	// interns the given string in the given map
+	private static int intern(ConcurrentMap<String, Integer> ids, AtomicInteger count, String s) {
+		Integer id = ids.get(s);
+		if (id != null)
+			return id;
+		synchronized (ids) {
+			id = ids.get(s);
+			if (id == null) {
+				id = count.incrementAndGet();
+				ids.put(s, id);
+			}
+		}
+		return id;
+	}
+
+	// low word of unary keys, which no supertag id has, so that unary keys
+	// cannot clash with binary ones, even for the unseen id zero
+	private static final long UNARY = 0xffffffffL;
+
+	/** Returns the key for the given supertag id. */
+	public static long key(int supertagId) {
+		return (((long) supertagId) << 32) | UNARY;
+	}
+
+	/** Returns the key for the given pair of supertag ids. */
+	public static long key(int supertagId1, int supertagId2) {
+		return (((long) supertagId1) << 32) | (supertagId2 & 0xffffffffL);
+	}
+
+	/**
+	 * Returns the mask of rules to try for the given key when combos are not
+	 * determined dynamically, ie the observed ones, if any.
+	 */
+	public long[] getRules(long key) {
+		Entry entry = dynamic.isEmpty() ? null : dynamic.get(key);
+		if (entry != null)
+			return entry.rules;
+		long[] rules = (long[]) loaded.get(key);
+		return (rules != null) ? rules : NO_RULES;
+	}
+
+	/**
+	 * Returns the mask of rules to try for the given key when combos are
+	 * determined dynamically, or null if the supertags have not been seen
+	 * yet, in which case all rules should be tried and the successful ones
+	 * recorded. If no rule succeeded when the supertags were first seen, the
+	 * returned mask is empty.
+	 */
+	public long[] getSeenRules(long key) {
+		Entry entry = dynamic.get(key);
+		return (entry != null) ? entry.seenRules : null;
+	}
+
+	/**
+	 * Records the given successful rules for the given key, marking the
+	 * supertags as seen.
+	 */
+	public void recordSeen(long key, long[] successes) {
+		Long k = key;
+		while (true) {
+			Entry entry = dynamic.get(k);
+			if (entry == null) {
+				long[] loadedRules = (long[]) loaded.get(key);
+				long[] rules = (loadedRules != null) ? or(loadedRules, successes) : successes;
+				long[] seenRules = (successes.length == 0) ? NO_RULES : rules;
+				if (dynamic.putIfAbsent(k, new Entry(rules, seenRules)) == null)
+					return;
+			} else {
+				long[] rules = or(entry.rules, successes);
+				long[] seenRules = entry.seenRules;
+				if (seenRules == null)
+					seenRules = (successes.length == 0) ? NO_RULES : rules;
+				else if (seenRules.length > 0)
+					seenRules = rules;
+				if (dynamic.replace(k, entry, new Entry(rules, seenRules)))
+					return;
+			}
+		}
+	}
+
+	/**
+	 * Forgets which supertags have been seen, keeping the rules observed so
+	 * far.
+	 */
+	public void clearSeen() {
+		for (Long k : dynamic.keySet()) {
+			Entry entry = dynamic.get(k);
+			if (entry != null && entry.seenRules != null)
+				dynamic.replace(k, entry, new Entry(entry.rules, null));
+		}
+	}
+
+	/** Returns whether the given rule id is in the given mask. */
+	public static boolean contains(long[] rules, int ruleId) {
+		int word = ruleId >>> 6;
+		return word < rules.length && (rules[word] & (1L << ruleId)) != 0;
+	}
+
+	/** Returns a copy of the given mask with the given rule id added. */
+	public static long[] with(long[] rules, int ruleId) {
+		if (contains(rules, ruleId))
+			return rules;
+		int word = ruleId >>> 6;
+		long[] retval = new long[Math.max(rules.length, word + 1)];
+		System.arraycopy(rules, 0, retval, 0, rules.length);
+		retval[word] |= 1L << ruleId;
+		return retval;
+	}
+
+	/** Returns the union of the given masks. */
+	public static long[] or(long[] rules1, long[] rules2) {
+		if (rules2.length > rules1.length) {
+			long[] tmp = rules1;
+			rules1 = rules2;
+			rules2 = tmp;
+		}
+		long[] retval = null;
+		for (int i = 0; i < rules2.length; i++) {
+			if ((rules1[i] | rules2[i]) != rules1[i]) {
+				if (retval == null)
+					retval = rules1.clone();
+				retval[i] |= rules2[i];
+			}
+		}
+		return (retval != null) ? retval : rules1;
+	}
+}
@@ -23,6 +23,7 @@ import opennlp.ccg.perceptron.Alphabet;
 import opennlp.ccg.perceptron.FeatureExtractor;
 import opennlp.ccg.perceptron.FeatureMap;
 import opennlp.ccg.perceptron.FeatureVector;
+import opennlp.ccg.perceptron.SignFeatures;
 import opennlp.ccg.synsem.AtomCat;
 import opennlp.ccg.synsem.Category;
 import opennlp.ccg.synsem.ComplexCat;
@@ -60,14 +61,29 @@ import java.util.*;
 public class EnglishAgreementExtractor implements FeatureExtractor {
 
 	/** Feature map wrapper, for unique retrieval from a sign's data objects. */
-	public static class FeatureMapWrapper {
-		public FeatureMap featureMap;
+	public static class FeatureMapWrapper extends SignFeatures {
+		public FeatureMapWrapper() {
+		}
 
 		public FeatureMapWrapper(FeatureMap featureMap) {
-			this.featureMap = featureMap;
+			super(featureMap);
 		}
 	}
 
+	/**
+	 * Flag for whether to store the features of signs as packed vectors
+	 * rather than feature maps (defaults to false); see SignFeatures.
+	 */
+	public boolean packFeatures = false;
+
+	/**
+	 * Flag for whether to emit delta feature vectors (defaults to false). When
+	 * set, the features of each sign are stored as a delta vector, with just
+	 * its own features, packed if apropos, and the delta vectors of its
+	 * inputs, so that their cached scores can be reused.
+	 */
+	public boolean deltaFeatures = false;
+
 	/**
 	 * Inner class to store specific properties of signs (right now for
 	 * unbalanced punctuation status).
@@ -177,7 +193,8 @@ public class EnglishAgreementExtractor implements FeatureExtractor {
 	/** Returns the features for the given sign and completeness flag. */
 	public FeatureVector extractFeatures(Symbol sign, boolean complete) {
 		addFeatures(sign, complete);
-		return getFeatureMap(sign);
+		return SignFeatures.get(sign, FeatureMapWrapper.class, alphabet, packFeatures,
+				deltaFeatures).getFeatures();
 	}
 
 	/**
@@ -187,7 +204,8 @@ public class EnglishAgreementExtractor implements FeatureExtractor {
 	// TODO: Lazier feature extraction involving conditional feature extractors
 	protected void addFeatures(Symbol sign, boolean complete) {
 		// check for existing map, otherwise make one
-		if (getFeatureMap(sign) != null)
+		if (SignFeatures.get(sign, FeatureMapWrapper.class, alphabet, packFeatures,
+				deltaFeatures) != null)
 			return;
 		// lex case
 		if (sign.isIndexed()) {
@@ -201,9 +219,11 @@ public class EnglishAgreementExtractor implements FeatureExtractor {
 				addFeatures(child, false);
 			// use input maps in making current map
 			if (inputs.length == 1) {
-				currentMap = new FeatureMap(getFeatureMap(inputs[0]));
+				currentMap = SignFeatures.newFeatureMap(inputs, FeatureMapWrapper.class, alphabet,
+						packFeatures || deltaFeatures);
 			} else if (inputs.length == 2) {
-				currentMap = new FeatureMap(getFeatureMap(inputs[0]), getFeatureMap(inputs[1]));
+				currentMap = SignFeatures.newFeatureMap(inputs, FeatureMapWrapper.class, alphabet,
+						packFeatures || deltaFeatures);
 			}
 
 			String subjArg = null;
@@ -386,9 +406,13 @@ public class EnglishAgreementExtractor implements FeatureExtractor {
 		return retval;
 	}
 
-	/** Stores the current feature map as a data object in the given sign. */
+	/**
+	 * Stores the current feature map as a data object in the given sign,
+	 * packed if apropos, or when using delta features, a delta vector with the
+	 * current feature map and the delta vectors of its inputs.
+	 */
 	protected void storeFeatureMap(Symbol sign) {
-		sign.addData(new FeatureMapWrapper(currentMap));
+		new FeatureMapWrapper().store(sign, currentMap, alphabet, packFeatures, deltaFeatures);
 	}
 
 	/**
@@ -396,7 +420,8 @@ public class EnglishAgreementExtractor implements FeatureExtractor {
 	 * none).
 	 */
 	public FeatureMap getFeatureMap(Symbol sign) {
-		FeatureMapWrapper fmw = (FeatureMapWrapper) sign.getData(FeatureMapWrapper.class);
+		FeatureMapWrapper fmw = SignFeatures.get(sign, FeatureMapWrapper.class, alphabet, false,
+				false);
 		return (fmw != null) ? fmw.featureMap : null;
 	}
 
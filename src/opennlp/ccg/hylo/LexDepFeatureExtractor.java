@@ -151,14 +151,29 @@ public class LexDepFeatureExtractor implements FeatureExtractor {
 	}
 
 	/** Feature map wrapper, for unique retrieval from a sign's data objects. */
-	public static class FeatureMapWrapper {
-		public FeatureMap featureMap;
+	public static class FeatureMapWrapper extends SignFeatures {
+		public FeatureMapWrapper() {
+		}
 
 		public FeatureMapWrapper(FeatureMap featureMap) {
-			this.featureMap = featureMap;
+			super(featureMap);
 		}
 	}
 
+	/**
+	 * Flag for whether to store the features of signs as packed vectors
+	 * rather than feature maps (defaults to false); see SignFeatures.
+	 */
+	public boolean packFeatures = false;
+
+	/**
+	 * Flag for whether to emit delta feature vectors (defaults to false). When
+	 * set, the features of each sign are stored as a delta vector, with just
+	 * its own features, packed if apropos, and the delta vectors of its
+	 * inputs, so that their cached scores can be reused.
+	 */
+	public boolean deltaFeatures = false;
+
 	/** The alphabet. */
 	protected Alphabet alphabet = null;
 
@@ -274,7 +289,8 @@ public class LexDepFeatureExtractor implements FeatureExtractor {
 	/** Returns the features for the given sign and completeness flag. */
 	public FeatureVector extractFeatures(Symbol sign, boolean complete) {
 		addFeatures(sign, complete);
-		return getFeatureMap(sign);
+		return SignFeatures.get(sign, FeatureMapWrapper.class, alphabet, packFeatures,
+				deltaFeatures).getFeatures();
 	}
 
 	/**
@@ -283,7 +299,8 @@ public class LexDepFeatureExtractor implements FeatureExtractor {
 	 */
 	protected void addFeatures(Symbol sign, boolean complete) {
 		// check for existing map, otherwise make one
-		if (getFeatureMap(sign) != null)
+		if (SignFeatures.get(sign, FeatureMapWrapper.class, alphabet, packFeatures,
+				deltaFeatures) != null)
 			return;
 		// lex case
 		if (sign.isIndexed()) {
@@ -301,9 +318,11 @@ public class LexDepFeatureExtractor implements FeatureExtractor {
 			currentSign = sign;
 			currentInputs = inputs;
 			if (inputs.length == 1) {
-				currentMap = new FeatureMap(getFeatureMap(inputs[0]));
+				currentMap = SignFeatures.newFeatureMap(inputs, FeatureMapWrapper.class, alphabet,
+						packFeatures || deltaFeatures);
 			} else if (inputs.length == 2) {
-				currentMap = new FeatureMap(getFeatureMap(inputs[0]), getFeatureMap(inputs[1]));
+				currentMap = SignFeatures.newFeatureMap(inputs, FeatureMapWrapper.class, alphabet,
+						packFeatures || deltaFeatures);
 			}
 			// do each newly filled dep
 			for (LexDependency dep : sign.getFilledDeps()) {
@@ -347,9 +366,13 @@ public class LexDepFeatureExtractor implements FeatureExtractor {
 		storeFeatureMap(sign);
 	}
 
-	/** Stores the current feature map as a data object in the given sign. */
+	/**
+	 * Stores the current feature map as a data object in the given sign,
+	 * packed if apropos, or when using delta features, a delta vector with the
+	 * current feature map and the delta vectors of its inputs.
+	 */
 	protected void storeFeatureMap(Symbol sign) {
-		sign.addData(new FeatureMapWrapper(currentMap));
+		new FeatureMapWrapper().store(sign, currentMap, alphabet, packFeatures, deltaFeatures);
 	}
 
 	/**
@@ -357,7 +380,8 @@ public class LexDepFeatureExtractor implements FeatureExtractor {
 	 * none).
 	 */
 	protected FeatureMap getFeatureMap(Symbol sign) {
-		FeatureMapWrapper fmw = (FeatureMapWrapper) sign.getData(FeatureMapWrapper.class);
+		FeatureMapWrapper fmw = SignFeatures.get(sign, FeatureMapWrapper.class, alphabet, false,
+				false);
 		return (fmw != null) ? fmw.featureMap : null;
 	}
 
@@ -13,12 +13,15 @@ import opennlp.ccg.util.Pair;
  */
 public class AssociateCanonFactory implements AssociationFactory {
 
-	// reusable word, for looking up already interned ones
-	private final AssociateCanon association = new AssociateCanon(null, null, null, null, null,
-			null, null);
+	// reusable word per thread, for looking up already interned ones
+	private final ThreadLocal<AssociateCanon> probe = new ThreadLocal<AssociateCanon>() {
+		protected AssociateCanon initialValue() {
+			return new AssociateCanon(null, null, null, null, null, null, null);
+		}
+	};
 
 	/**
-	 * Sets the associates of the reusable association.
+	 * Sets the associates of the reusable association of the current thread.
 	 * 
 	 * @param form the form
 	 * @param tone the tone
@@ -28,8 +31,10 @@ public class AssociateCanonFactory implements AssociationFactory {
 	 * @param entityClass the entity classes
 	 * @param associates the associates
 	 */
-	private final void updateAssociates(String form, String tone, String term, String functions,
-			String supertag, String entityClass, List<Pair<String, String>> associates) {
+	private final AssociateCanon updateAssociates(String form, String tone, String term,
+			String functions, String supertag, String entityClass,
+			List<Pair<String, String>> associates) {
+		AssociateCanon association = probe.get();
 		association.form = form;
 		association.tone = tone;
 		association.term = term;
@@ -37,6 +42,7 @@ public class AssociateCanonFactory implements AssociationFactory {
 		association.supertag = supertag;
 		association.entityClass = entityClass;
 		association.associates = associates;
+		return association;
 	}
 
 	// looks up the word equivalent to w, or if none, returns a new one
@@ -46,9 +52,10 @@ public class AssociateCanonFactory implements AssociationFactory {
 	 * it if there is one. Otherwise, interns the association and returns the
 	 * interned.
 	 * 
+	 * @param association the reusable association
 	 * @return the interned association
 	 */
-	private Association internAssociation() {
+	private Association internAssociation(AssociateCanon association) {
 		Association intern = (Association) Interner.getGlobalInterned(association);
 		if (intern != null) {
 			return intern;
@@ -68,12 +75,12 @@ public class AssociateCanonFactory implements AssociationFactory {
 	}
 
 	@Override
-	public final synchronized Association create(String form) {
+	public final Association create(String form) {
 		return create(form, null, null, null, null, null, null);
 	}
 
 	@Override
-	public final synchronized Association create(String attributeName, String attributeValue) {
+	public final Association create(String attributeName, String attributeValue) {
 		String form = null;
 		String tone = null;
 		String term = null;
@@ -101,10 +108,10 @@ public class AssociateCanonFactory implements AssociationFactory {
 	}
 
 	@Override
-	public final synchronized Association create(String form, String tone, String term,
+	public final Association create(String form, String tone, String term,
 			String functions, String supertag, String entityClass,
 			List<Pair<String, String>> associates) {
-		updateAssociates(form, tone, term, functions, supertag, entityClass, associates);
-		return internAssociation();
+		return internAssociation(updateAssociates(form, tone, term, functions, supertag,
+				entityClass, associates));
 	}
 }
@@ -9,6 +9,8 @@ import opennlp.ccg.util.Pair;
 
 /**
  * A pool of associations that interns the associations for efficiency reasons.
+ * The factory methods are thread-safe without locking the pool as a whole,
+ * since the associations are interned in the global ConcurrentInterner.
  * 
  * @author Daniel Couto-Vale
  */
@@ -32,7 +34,7 @@ public class AssociationPool {
 	 * @param entityClass the entity class
 	 * @return the content-containing association
 	 */
-	public static synchronized Association createContainer(Association muster, String term,
+	public static Association createContainer(Association muster, String term,
 			String functions, String supertag, String entityClass) {
 		term = (term != null) ? term.intern() : null;
 		functions = (functions != null) ? functions.intern() : null;
@@ -51,7 +53,7 @@ public class AssociationPool {
 	 * @param supertag the supertag
 	 * @return the content-containing association
 	 */
-	public static synchronized Association createContainer(Association muster,
+	public static Association createContainer(Association muster,
 			Association container, String supertag) {
 		boolean mixedAssociates = false;
 		List<Pair<String, String>> musterAssociates = muster.getAssociates();
@@ -91,7 +93,7 @@ public class AssociationPool {
 	 * @param association the base association
 	 * @return the muster
 	 */
-	public static synchronized Association createMuster(Association association) {
+	public static Association createMuster(Association association) {
 		return factory.create(association.getForm(), association.getTone(), null, null, null, null,
 				association.getAssociates());
 	}
@@ -105,7 +107,7 @@ public class AssociationPool {
 	 * @param substituteForm the substitute form
 	 * @return the muster
 	 */
-	public static synchronized Association createMuster(Association association,
+	public static Association createMuster(Association association,
 			String substituteForm) {
 		substituteForm = (substituteForm != null) ? substituteForm.intern() : null;
 		return factory.create(substituteForm, association.getTone(), null, null, null, null,
@@ -118,7 +120,7 @@ public class AssociationPool {
 	 * @param form the form
 	 * @return the muster
 	 */
-	public static synchronized Association createMuster(String form) {
+	public static Association createMuster(String form) {
 		form = (form != null) ? form.intern() : null;
 		return factory.create(form);
 	}
@@ -132,7 +134,7 @@ public class AssociationPool {
 	 * @param associateValue the associate value
 	 * @return the association
 	 */
-	public static synchronized Association createAssociation(String associatekey, String associateValue) {
+	public static Association createAssociation(String associatekey, String associateValue) {
 		associatekey = associatekey.intern();
 		associateValue = (associateValue != null) ? associateValue.intern() : null;
 		return factory.create(associatekey, associateValue);
@@ -146,7 +148,7 @@ public class AssociationPool {
 	 * @param nonassociateKeys the nonassociates to remove
 	 * @return the reduced association
 	 */
-	public static synchronized Association reduceMuster(Association muster,
+	public static Association reduceMuster(Association muster,
 			Set<String> nonassociateKeys) {
 		String form = muster.getForm();
 		String tone = muster.getTone();
@@ -181,7 +183,7 @@ public class AssociationPool {
 	 * @param associates other associates
 	 * @return the association
 	 */
-	public static synchronized Association createAssociation(String form, String tone, String term,
+	public static Association createAssociation(String form, String tone, String term,
 			String functions, String supertag, String entityClass,
 			List<Pair<String, String>> associates) {
 		// normalize factors
@@ -215,7 +217,7 @@ public class AssociationPool {
 	 * @param substituteForm the substitute form
 	 * @return the association
 	 */
-	public static synchronized Association createAssociation(Association baseAssociation,
+	public static Association createAssociation(Association baseAssociation,
 			String substituteForm) {
 		if (substituteForm != null) {
 			substituteForm = substituteForm.intern();
@@ -233,7 +235,7 @@ public class AssociationPool {
 	 * @param substituteMuster the substitute muster
 	 * @return the association
 	 */
-	public static synchronized Association createAssociation(Association baseAssociation,
+	public static Association createAssociation(Association baseAssociation,
 			Association substituteMuster) {
 		String tone = baseAssociation.getTone();
 		if (tone == null) {
@@ -114,14 +114,13 @@ public class AAnFilter implements NgramFilter, Reversible {
 	private static final Association A_WORD = AssociationPool.createMuster("a");
 	private static final Association AN_WORD = AssociationPool.createMuster("an");
 
-	// reusable list for lookup
-	private List<Association> keyList = new ArrayListWithIdentityEquals<Association>(2);
-
 	// looks up whether the bigram is an exception
 	private boolean isException(String w1, String w2) {
 		if (exceptions == null)
 			return false;
-		keyList.clear();
+		// NB: a new key list is made for each lookup, so that the filter may be
+		// used by scorers in different threads
+		List<Association> keyList = new ArrayListWithIdentityEquals<Association>(2);
 		keyList.add((w1 == "a") ? A_WORD : AN_WORD);
 		keyList.add(AssociationPool.createMuster(w2));
 		return exceptions.contains(keyList);
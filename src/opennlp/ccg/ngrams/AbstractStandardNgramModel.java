@@ -3,6 +3,10 @@
  */
 package opennlp.ccg.ngrams;
 
+import gnu.trove.THashMap;
+import gnu.trove.TObjectIdentityHashingStrategy;
+import gnu.trove.TObjectIntHashMap;
+
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
@@ -44,70 +48,209 @@ abstract class AbstractStandardNgramModel extends NgramScorer {
 		this(order, false);
 	}
 
+	/**
+	 * Reusable array of the ids of the words to score, when the model is
+	 * stored in an n-gram trie.
+	 */
+	protected int[] idsToScore = new int[32];
+
+	/**
+	 * The default number of words whose keys and ids are cached in each
+	 * generation of the caches.
+	 */
+	public static final int MAX_CACHED_WORDS = 100000;
+
+	/**
+	 * The number of words whose keys and ids are cached in each generation of
+	 * the caches. Since the caches hold on to the words, a full generation is
+	 * retired and a new one started; words found in the retired generation
+	 * are moved to the new one, so that only the words not used during a
+	 * whole generation are dropped.
+	 */
+	protected int maxCachedWords = MAX_CACHED_WORDS;
+
+	// caches of the keys of words, by identity, as words are interned, in the
+	// current and retired generations
+	private THashMap wordKeys = newWordKeys();
+	private THashMap oldWordKeys = newWordKeys();
+
+	// caches of the ids of words in the n-gram trie, by identity, offset by
+	// two, as trove maps return zero if absent, and unknown words are cached
+	// as one, in the current and retired generations
+	private TObjectIntHashMap wordIds = newWordIds();
+	private TObjectIntHashMap oldWordIds = newWordIds();
+
+	private static THashMap newWordKeys() {
+		return new THashMap(new TObjectIdentityHashingStrategy());
+	}
+
+	private static TObjectIntHashMap newWordIds() {
+		return new TObjectIntHashMap(new TObjectIdentityHashingStrategy());
+	}
+
 	/**
 	 * Converts the words in wordsToScore to strings in stringsToScore, before
-	 * scoring.
+	 * scoring. When the model is stored in an n-gram trie, the words are
+	 * instead converted to their ids in idsToScore, and stringsToScore is left
+	 * empty. Both conversions are cached per word.
 	 */
 	@Override
 	protected void prepareToScoreWords() {
 		stringsToScore.clear();
-		for (int i = 0; i < wordsToScore.size(); i++) {
-			Association w = wordsToScore.get(i);
-			String s = w.getForm();
-			// check for sem class replacement
-			String scr = semClassReplacement(w);
-			if (scr != null)
-				s = scr;
-			// add pitch accent and attrs, if any
-			String pitchAccent = w.getTone();
-			Iterator<Pair<String, String>> pairs = w.getNonCanonicalAssociates().iterator();
-			if (pitchAccent != null || pairs.hasNext()) {
-				StringBuffer sb = new StringBuffer();
-				sb.append(s);
-				if (pitchAccent != null)
-					sb.append('_').append(pitchAccent);
-				for (; pairs.hasNext();) {
-					Pair<String, String> p = pairs.next();
-					sb.append('_').append(p.b);
-				}
-				s = sb.toString().intern();
+		int size = wordsToScore.size();
+		if (ngramTrie != null) {
+			if (idsToScore.length < size)
+				idsToScore = new int[Math.max(size, idsToScore.length * 2)];
+			for (int i = 0; i < size; i++)
+				idsToScore[i] = wordId(wordsToScore.get(i));
+		} else {
+			for (int i = 0; i < size; i++)
+				stringsToScore.add(wordKey(wordsToScore.get(i)));
+		}
+	}
+
+	/**
+	 * Returns a copy of this scorer for use by the current thread, with its
+	 * own strings, ids and word caches.
+	 */
+	@Override
+	protected NgramScorer copyForThread() {
+		AbstractStandardNgramModel retval = (AbstractStandardNgramModel) super.copyForThread();
+		retval.stringsToScore = new ArrayList<String>();
+		retval.idsToScore = new int[32];
+		retval.wordKeys = newWordKeys();
+		retval.oldWordKeys = newWordKeys();
+		retval.wordIds = newWordIds();
+		retval.oldWordIds = newWordIds();
+		return retval;
+	}
+
+	/**
+	 * Returns the key for the given word, ie its form or sem class, with any
+	 * pitch accent and attrs, or &lt;unk&gt; if unknown.
+	 */
+	protected String wordKey(Association w) {
+		String retval = (String) wordKeys.get(w);
+		if (retval == null) {
+			retval = (String) oldWordKeys.remove(w);
+			if (retval == null)
+				retval = makeWordKey(w);
+			if (wordKeys.size() >= maxCachedWords) {
+				oldWordKeys = wordKeys;
+				wordKeys = newWordKeys();
+			}
+			wordKeys.put(w, retval);
+		}
+		return retval;
+	}
+
+	/**
+	 * Returns the id of the given word in the n-gram trie, or -1 if none.
+	 */
+	protected int wordId(Association w) {
+		int id = wordIds.get(w);
+		if (id == 0) {
+			id = oldWordIds.remove(w);
+			if (id == 0)
+				id = ngramTrie.getWordId(wordKey(w)) + 2;
+			if (wordIds.size() >= maxCachedWords) {
+				oldWordIds = wordIds;
+				wordIds = newWordIds();
+			}
+			wordIds.put(w, id);
+		}
+		return id - 2;
+	}
+
+	/** Returns whether the key of the given word is cached. */
+	boolean isWordKeyCached(Association w) {
+		return wordKeys.containsKey(w) || oldWordKeys.containsKey(w);
+	}
+
+	// makes the key for the given word
+	private String makeWordKey(Association w) {
+		String s = w.getForm();
+		// check for sem class replacement
+		String scr = semClassReplacement(w);
+		if (scr != null)
+			s = scr;
+		// add pitch accent and attrs, if any
+		String pitchAccent = w.getTone();
+		Iterator<Pair<String, String>> pairs = w.getNonCanonicalAssociates().iterator();
+		if (pitchAccent != null || pairs.hasNext()) {
+			StringBuffer sb = new StringBuffer();
+			sb.append(s);
+			if (pitchAccent != null)
+				sb.append('_').append(pitchAccent);
+			for (; pairs.hasNext();) {
+				Pair<String, String> p = pairs.next();
+				sb.append('_').append(p.b);
 			}
-			// check for unknown word
-			if (openVocab && trieMapRoot.getChild(s) == null)
-				s = "<unk>";
-			// add key
-			stringsToScore.add(s);
+			s = sb.toString().intern();
 		}
+		// check for unknown word
+		if (openVocab && !isKnownWord(s))
+			s = "<unk>";
+		return s;
+	}
+
+	/**
+	 * Returns whether the given word is in the model, checking the n-gram
+	 * trie if present, otherwise the children of the root of the trie map.
+	 */
+	protected boolean isKnownWord(String word) {
+		if (ngramTrie != null)
+			return ngramTrie.getWordId(word) >= 0;
+		return trieMapRoot.getChild(word) != null;
 	}
 
 	/**
 	 * Returns the log prob of the ngram starting at the given index in
 	 * wordsToScore and with the given order, with backoff. (Assumes words in
 	 * wordsToScore have already been converted to strings in stringsToScore,
-	 * via call to prepareToScoreWords.)
+	 * or to ids in idsToScore, via call to prepareToScoreWords.)
 	 */
 	@Override
 	protected float logProbFromNgram(int i, int order) {
 		// skip initial start tag
-		if (i == 0 && order == 1 && stringsToScore.get(0) == "<s>")
+		if (i == 0 && order == 1 && wordsToScore.get(0).getForm() == "<s>")
 			return 0;
-		// set keys list
-		keysList.clear();
-		for (int j = i; j < i + order; j++) {
-			keysList.add(stringsToScore.get(j));
+		if (ngramTrie == null) {
+			// set keys list
+			keysList.clear();
+			for (int j = i; j < i + order; j++) {
+				keysList.add(stringsToScore.get(j));
+			}
 		}
 		if (debugScore) {
-			System.out.print("logp( " + keysList.get(order - 1) + " | ");
+			System.out.print("logp( " + wordKey(wordsToScore.get(i + order - 1)) + " | ");
 			if (order > 1) {
-				System.out.print(keysList.get(order - 2) + " ... ");
+				System.out.print(wordKey(wordsToScore.get(i + order - 2)) + " ... ");
 			}
 			System.out.print(") = ");
 		}
 		// calc log prob
-		float retval = logProb(0, order);
+		float retval = (ngramTrie != null) ? logProb(idsToScore, i, order) : logProb(0, order);
 		if (debugScore)
 			System.out.println("" + retval);
 		return retval;
 	}
 
+	/**
+	 * Sets the keys in keysList to hold the ngram starting at the given index
+	 * in wordsToScore and with the given order, as with the default
+	 * implementation, also setting the keys when the ids of the words have
+	 * been scored instead.
+	 */
+	@Override
+	protected boolean setKeysToNgram(int i, int order) {
+		boolean retval = super.setKeysToNgram(i, order);
+		if (ngramTrie != null) {
+			keysList.clear();
+			for (int j = i; j < i + order; j++) {
+				keysList.add(wordKey(wordsToScore.get(j)));
+			}
+		}
+		return retval;
+	}
 }
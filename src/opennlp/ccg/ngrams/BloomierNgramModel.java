@@ -0,0 +1,817 @@
+///////////////////////////////////////////////////////////////////////////////
+// Copyright (C) 2015 Daniel Couto-Vale (RWTH Aachen)
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+//////////////////////////////////////////////////////////////////////////////
+
+package opennlp.ccg.ngrams;
+
+import gnu.trove.*;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StreamTokenizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import opennlp.ccg.lexicon.Association;
+import opennlp.ccg.lexicon.DefaultTokenizer;
+import opennlp.ccg.lexicon.Tokenizer;
+
+/**
+ * A lossy, compressed scorer for a standard n-gram backoff model, in the
+ * manner of Bloomier filters and randomized language models. No vocab and no
+ * n-grams are stored as such; instead, each n-gram is hashed to a 64-bit
+ * fingerprint, and a table of about 1.23 cells per n-gram is built by
+ * peeling a random 3-hypergraph, so that the XOR of the three cells an n-gram
+ * hashes to yields its value. The value packs a few check bits of the
+ * fingerprint together with the log prob and back-off weight, each quantized
+ * to a code into a per-order codebook, and the cells are packed into an array
+ * of longs with just as many bits as the values need.
+ * <p>
+ * The n-grams in the model are thus always found, with quantization error in
+ * their scores, while an n-gram that is not in the model is mistaken for one
+ * with a probability of 2^-fpBits, in which case an arbitrary score is
+ * returned for it. The number of check bits thus trades memory for the rate
+ * of false positives. A log prob of -99 and a back-off weight of zero are
+ * given codes of their own, and are therefore exact.
+ * <p>
+ * Models are built from ARPA files and saved in a binary format by the main
+ * method, which also reports the accuracy of a model against the exact one on
+ * held-out text, such as the text written by Regression with the -text
+ * option. Regression loads models in this format via the -lm option, like
+ * any other standard n-gram model.
+ *
+ * @author Daniel Couto-Vale
+ * @version
+ */
+public class BloomierNgramModel extends AbstractStandardNgramModel {
+
+	/** The magic number at the start of a model file. */
+	public static final String MAGIC = "OCCGBLMR";
+
+	/** The version of the file format. */
+	public static final int VERSION = 1;
+
+	/** The default number of check bits. */
+	public static final int DEFAULT_FP_BITS = 12;
+
+	/** The default number of bits per quantized value. */
+	public static final int DEFAULT_QUANT_BITS = 8;
+
+	// the ratio of table cells to n-grams
+	private static final double CELLS_PER_KEY = 1.23;
+
+	// the maximum number of attempts at peeling the hypergraph
+	private static final int MAX_ATTEMPTS = 64;
+
+	// the number of check bits
+	private int fpBits;
+
+	// the number of bits per quantized value
+	private int quantBits;
+
+	// the filter for the n-grams of each order
+	private Filter[] filters;
+
+	/**
+	 * Loads a compressed model of the given order from the given file, with
+	 * the given flag controlling whether words are replaced by their semantic
+	 * classes. If the model has a lower order, its order is used instead.
+	 */
+	public BloomierNgramModel(int order, String filename, boolean useSemClasses) throws IOException {
+		super(order, useSemClasses);
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(
+				filename)));
+		try {
+			readModel(in);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Loads a compressed model of the given order from the given file. Words
+	 * are not replaced by their semantic classes.
+	 */
+	public BloomierNgramModel(int order, String filename) throws IOException {
+		this(order, filename, false);
+	}
+
+	/**
+	 * Builds a compressed model of the given order from the given reader, in
+	 * ARPA (Doug Paul) format, with the given number of check bits and bits
+	 * per quantized value.
+	 */
+	public BloomierNgramModel(int order, Reader in, int fpBits, int quantBits) throws IOException {
+		super(order, false);
+		checkBits(fpBits, quantBits);
+		this.fpBits = fpBits;
+		this.quantBits = quantBits;
+		this.numNgrams = new int[order];
+		buildModel(in);
+	}
+
+	// checks the number of bits
+	private static void checkBits(int fpBits, int quantBits) {
+		if (fpBits < 0 || quantBits < 1 || quantBits > 16 || fpBits + 2 * quantBits > 32)
+			throw new IllegalArgumentException("Bad number of bits: fpBits = " + fpBits
+					+ ", quantBits = " + quantBits);
+	}
+
+	/**
+	 * Returns whether the given file is a compressed model, ie whether it
+	 * starts with the magic number.
+	 */
+	public static boolean isModel(String filename) throws IOException {
+		DataInputStream in = new DataInputStream(new FileInputStream(filename));
+		try {
+			byte[] magic = new byte[MAGIC.length()];
+			in.readFully(magic);
+			return new String(magic, "US-ASCII").equals(MAGIC);
+		} catch (java.io.EOFException exc) {
+			return false;
+		} finally {
+			in.close();
+		}
+	}
+
+	/** Returns the number of check bits. */
+	public int getFpBits() {
+		return fpBits;
+	}
+
+	/** Returns the number of bits per quantized value. */
+	public int getQuantBits() {
+		return quantBits;
+	}
+
+	/** Returns the number of bytes taken up by the tables and codebooks. */
+	public long sizeInBytes() {
+		long retval = 0;
+		for (Filter filter : filters)
+			retval += filter.sizeInBytes();
+		return retval;
+	}
+
+	/** Returns the number of bytes taken up by the tables and codebooks. */
+	@Override
+	public long heapBytes() {
+		return sizeInBytes();
+	}
+
+	//-----------------------------------------------------------------
+	// hashing
+
+	// hashes the given word, using 64-bit FNV-1a over its chars
+	static long wordHash(String word) {
+		long h = 0xcbf29ce484222325L;
+		for (int i = 0; i < word.length(); i++) {
+			h ^= word.charAt(i);
+			h *= 0x100000001b3L;
+		}
+		return mix(h);
+	}
+
+	// the finalizer of MurmurHash3
+	static long mix(long h) {
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	// adds the given word hash to the given n-gram fingerprint
+	private static long extend(long key, long wordHash) {
+		return mix(key * 0x9e3779b97f4a7c15L + wordHash);
+	}
+
+	// returns the fingerprint of the given sublist of keysList
+	private long fingerprint(int pos, int len) {
+		long key = len;
+		for (int i = pos; i < pos + len; i++)
+			key = extend(key, wordHash((String) keysList.get(i)));
+		return key;
+	}
+
+	// returns the fingerprint of the given words
+	private static long fingerprint(String[] words, int pos, int len) {
+		long key = len;
+		for (int i = pos; i < pos + len; i++)
+			key = extend(key, wordHash(words[i]));
+		return key;
+	}
+
+	//-----------------------------------------------------------------
+	// filters
+
+	/**
+	 * A table holding the values of a set of n-grams, along with the codebooks
+	 * for their log probs and back-off weights.
+	 */
+	private static class Filter {
+
+		// the seed for hashing fingerprints to cells
+		final long seed;
+
+		// the number of cells in each of the three segments of the table
+		final int segment;
+
+		// the table of cells, packed into longs
+		final long[] table;
+
+		// the number of bits per cell, and the mask for them
+		final int width;
+		final long widthMask;
+
+		// the number of check bits and their mask, and the number of bits and
+		// mask for quantized values
+		final int fpBits;
+		final int fpMask;
+		final int quantMask;
+		final int quantBits;
+
+		// the codebook for log probs, whose first code is -99
+		final float[] logprobCodes;
+
+		// the codebook for back-off weights, whose first code is zero (null for
+		// the top order)
+		final float[] bowCodes;
+
+		Filter(long seed, int segment, int fpBits, int quantBits, float[] logprobCodes,
+				float[] bowCodes) {
+			this.seed = seed;
+			this.segment = segment;
+			this.width = fpBits + quantBits * (bowCodes != null ? 2 : 1);
+			this.widthMask = (1L << width) - 1;
+			this.table = new long[(int) ((3L * segment * width + 63) >>> 6)];
+			this.fpBits = fpBits;
+			this.fpMask = (int) ((1L << fpBits) - 1);
+			this.quantBits = quantBits;
+			this.quantMask = (1 << quantBits) - 1;
+			this.logprobCodes = logprobCodes;
+			this.bowCodes = bowCodes;
+		}
+
+		// returns the value for the given fingerprint, or -1 if it is known
+		// not to be present
+		long lookup(long key) {
+			if (segment == 0)
+				return -1;
+			long h = mix(key + seed);
+			long h2 = mix(h);
+			long value = get(cell(h, 0)) ^ get(cell(h >>> 32, 1)) ^ get(cell(h2, 2));
+			if (((int) value & fpMask) != ((int) (h2 >>> 32) & fpMask))
+				return -1;
+			return value >>> fpBits;
+		}
+
+		// returns the given cell
+		long get(int c) {
+			long offset = (long) c * width;
+			int index = (int) (offset >>> 6);
+			int shift = (int) offset & 63;
+			long retval = table[index] >>> shift;
+			if (shift + width > 64)
+				retval |= table[index + 1] << (64 - shift);
+			return retval & widthMask;
+		}
+
+		// sets the given cell to the given value
+		void set(int c, long value) {
+			long offset = (long) c * width;
+			int index = (int) (offset >>> 6);
+			int shift = (int) offset & 63;
+			table[index] = (table[index] & ~(widthMask << shift)) | (value << shift);
+			if (shift + width > 64) {
+				int rest = 64 - shift;
+				table[index + 1] = (table[index + 1] & ~(widthMask >>> rest)) | (value >>> rest);
+			}
+		}
+
+		// returns the cell in the given segment for the given hash bits
+		int cell(long hash, int i) {
+			return i * segment + (int) (((hash & 0xffffffffL) * segment) >>> 32);
+		}
+
+		// returns the log prob for the given value
+		float logprob(long value) {
+			return logprobCodes[(int) value & quantMask];
+		}
+
+		// returns the back-off weight for the given value
+		float bow(long value) {
+			return (bowCodes != null) ? bowCodes[(int) (value >>> quantBits) & quantMask] : 0;
+		}
+
+		long sizeInBytes() {
+			return 8L * table.length + 4L * logprobCodes.length
+					+ (bowCodes != null ? 4L * bowCodes.length : 0);
+		}
+	}
+
+	// returns the value of the n-gram of the given order with the given
+	// fingerprint, or -1 if it is known not to be present
+	private long lookup(int n, long key) {
+		return (n <= filters.length) ? filters[n - 1].lookup(key) : -1;
+	}
+
+	/**
+	 * Returns whether the given word is in the model, ie whether it is found
+	 * as a unigram, which may be a false positive.
+	 */
+	@Override
+	protected boolean isKnownWord(String word) {
+		return lookup(1, extend(1, wordHash(word))) >= 0;
+	}
+
+	/**
+	 * Returns the log prob (base 10) of the given sublist of keysList, with
+	 * backoff, or -99 if not found.
+	 */
+	@Override
+	protected float logProb(int pos, int len) {
+		long value = lookup(len, fingerprint(pos, len));
+		if (value >= 0)
+			return filters[len - 1].logprob(value);
+		if (len == 1)
+			return -99;
+		float retval = logProb(pos + 1, len - 1);
+		if (debugScore)
+			System.out.print("(" + (len - 1) + "-gram: " + retval + ") ");
+		if (retval > -99)
+			retval += backoffWeight(pos, len - 1);
+		return retval;
+	}
+
+	/**
+	 * Returns the back-off weight (log base 10) of the given sublist of
+	 * keysList, or 0 if not found.
+	 */
+	@Override
+	protected float backoffWeight(int pos, int len) {
+		long value = lookup(len, fingerprint(pos, len));
+		return (value >= 0) ? filters[len - 1].bow(value) : 0;
+	}
+
+	//-----------------------------------------------------------------
+	// building
+
+	// the n-grams of one order, as collected from the model file
+	private static class Ngrams {
+		final TLongIntHashMap indices = new TLongIntHashMap();
+		long[] keys = new long[1024];
+		float[] logprobs = new float[1024];
+		float[] bows = new float[1024];
+		int size = 0;
+
+		// adds the given n-gram, replacing an earlier one with the same key
+		void add(long key, float logprob, float bow) {
+			int index;
+			if (indices.containsKey(key))
+				index = indices.get(key);
+			else {
+				index = size++;
+				indices.put(key, index);
+				if (size > keys.length) {
+					keys = Arrays.copyOf(keys, 2 * size);
+					logprobs = Arrays.copyOf(logprobs, 2 * size);
+					bows = Arrays.copyOf(bows, 2 * size);
+				}
+				keys[index] = key;
+			}
+			logprobs[index] = logprob;
+			bows[index] = bow;
+		}
+	}
+
+	// reads in the ARPA model and builds the filters
+	private void buildModel(Reader in) throws IOException {
+		StreamTokenizer tokenizer = NgramScorer.initTokenizer(in);
+		String[] tokens = new String[order + 2];
+		Ngrams[] ngrams = new Ngrams[order];
+		for (int i = 0; i < order; i++)
+			ngrams[i] = new Ngrams();
+		TLongHashSet blanks = new TLongHashSet();
+		boolean foundData = false;
+		int currentOrder = 0;
+		// loop through lines
+		while (tokenizer.ttype != StreamTokenizer.TT_EOF) {
+			// read line into tokens
+			NgramScorer.readLine(tokenizer, tokens);
+			// check for blank line
+			if (tokens[0] == null)
+				continue;
+			// check for initial delimiter
+			if (tokens[0].equals("\\data\\")) {
+				foundData = true;
+				continue;
+			}
+			if (!foundData)
+				continue;
+			// read header line
+			if (tokens[0].equals("ngram")) {
+				int n = Integer.parseInt(tokens[1].substring(0, 1));
+				int total = Integer.parseInt(tokens[1].substring(2));
+				if (n <= order)
+					numNgrams[n - 1] = total;
+				continue;
+			}
+			// check for final delimiter
+			if (tokens[0].equals("\\end\\"))
+				break;
+			// read line starting new order
+			if (tokens[0].equals("\\" + (currentOrder + 1) + "-grams:")) {
+				currentOrder++;
+				continue;
+			}
+			if (currentOrder == 0)
+				continue;
+			if (currentOrder > order)
+				break;
+			// read logprob and back-off weight (except with last order)
+			float logprob = Float.parseFloat(tokens[0]);
+			float bow = 0;
+			if (currentOrder < order && tokens[currentOrder + 1] != null)
+				bow = Float.parseFloat(tokens[currentOrder + 1]);
+			ngrams[currentOrder - 1].add(fingerprint(tokens, 1, currentOrder), logprob, bow);
+			// add blank unigrams for words only found in higher orders, so
+			// that they remain known words
+			for (int i = 2; currentOrder > 1 && i <= currentOrder; i++) {
+				long key = fingerprint(tokens, i, 1);
+				if (!ngrams[0].indices.containsKey(key))
+					blanks.add(key);
+			}
+		}
+		for (TLongIterator it = blanks.iterator(); it.hasNext();) {
+			long key = it.next();
+			if (!ngrams[0].indices.containsKey(key))
+				ngrams[0].add(key, -99, 0);
+		}
+		// build filters
+		filters = new Filter[order];
+		for (int i = 0; i < order; i++)
+			filters[i] = buildFilter(ngrams[i], i == order - 1);
+		// set openVocab according to presence of <unk>
+		openVocab = isKnownWord("<unk>");
+	}
+
+	// builds a filter for the given n-grams
+	private Filter buildFilter(Ngrams ngrams, boolean topOrder) {
+		int n = ngrams.size;
+		float[] logprobCodes = codebook(ngrams.logprobs, n, -99);
+		float[] bowCodes = topOrder ? null : codebook(ngrams.bows, n, 0);
+		if (n == 0)
+			return new Filter(0, 0, fpBits, quantBits, logprobCodes, bowCodes);
+		// compute values
+		int[] values = new int[n];
+		for (int i = 0; i < n; i++) {
+			int value = encode(logprobCodes, ngrams.logprobs[i]);
+			if (bowCodes != null)
+				value |= encode(bowCodes, ngrams.bows[i]) << quantBits;
+			values[i] = value;
+		}
+		// peel hypergraph, retrying with new seeds
+		int segment = (int) Math.ceil(CELLS_PER_KEY * n / 3) + 8;
+		for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+			long seed = mix(0x5eedL + attempt);
+			Filter filter = new Filter(seed, segment, fpBits, quantBits, logprobCodes, bowCodes);
+			if (assign(filter, ngrams.keys, values, n))
+				return filter;
+		}
+		throw new RuntimeException("Unable to build filter for " + n + " n-grams");
+	}
+
+	// assigns the cells of the table of the given filter so that the given
+	// keys yield the given values along with their check bits, returning
+	// false if the hypergraph cannot be peeled
+	private boolean assign(Filter filter, long[] keys, int[] values, int n) {
+		int m = 3 * filter.segment;
+		int[][] cells = new int[n][3];
+		int[] checks = new int[n];
+		int[] counts = new int[m];
+		int[] xorKeys = new int[m];
+		for (int k = 0; k < n; k++) {
+			long h = mix(keys[k] + filter.seed);
+			long h2 = mix(h);
+			cells[k][0] = filter.cell(h, 0);
+			cells[k][1] = filter.cell(h >>> 32, 1);
+			cells[k][2] = filter.cell(h2, 2);
+			checks[k] = (int) (h2 >>> 32) & filter.fpMask;
+			for (int c : cells[k]) {
+				counts[c]++;
+				xorKeys[c] ^= k;
+			}
+		}
+		// peel cells with a single key, recording the keys and their cells
+		int[] queue = new int[m];
+		int queueSize = 0;
+		for (int c = 0; c < m; c++) {
+			if (counts[c] == 1)
+				queue[queueSize++] = c;
+		}
+		int[] peeledKeys = new int[n];
+		int[] peeledCells = new int[n];
+		int numPeeled = 0;
+		while (queueSize > 0) {
+			int c = queue[--queueSize];
+			if (counts[c] != 1)
+				continue;
+			int k = xorKeys[c];
+			peeledKeys[numPeeled] = k;
+			peeledCells[numPeeled++] = c;
+			for (int c2 : cells[k]) {
+				counts[c2]--;
+				xorKeys[c2] ^= k;
+				if (counts[c2] == 1)
+					queue[queueSize++] = c2;
+			}
+		}
+		if (numPeeled < n)
+			return false;
+		// assign cells in reverse order of peeling
+		for (int i = n - 1; i >= 0; i--) {
+			int k = peeledKeys[i];
+			int c = peeledCells[i];
+			long value = ((long) values[k] << filter.fpBits) | checks[k];
+			filter.set(c, 0);
+			filter.set(c, value ^ filter.get(cells[k][0]) ^ filter.get(cells[k][1])
+					^ filter.get(cells[k][2]));
+		}
+		return true;
+	}
+
+	// makes a codebook for the given values, with the given special value as
+	// its first code, and the means of equally sized bins of the sorted
+	// remaining values as its other codes
+	private float[] codebook(float[] values, int n, float special) {
+		float[] sorted = new float[n];
+		int size = 0;
+		for (int i = 0; i < n; i++) {
+			if (!isSpecial(values[i], special))
+				sorted[size++] = values[i];
+		}
+		Arrays.sort(sorted, 0, size);
+		int numBins = Math.min((1 << quantBits) - 1, size);
+		float[] retval = new float[numBins + 1];
+		retval[0] = special;
+		for (int b = 0; b < numBins; b++) {
+			int from = (int) ((long) size * b / numBins);
+			int to = (int) ((long) size * (b + 1) / numBins);
+			double sum = 0;
+			for (int i = from; i < to; i++)
+				sum += sorted[i];
+			retval[b + 1] = (float) (sum / (to - from));
+		}
+		return retval;
+	}
+
+	// returns whether the given value is to be given the special code
+	private static boolean isSpecial(float value, float special) {
+		return (special == 0) ? value == 0 : value <= special;
+	}
+
+	// returns the code of the nearest entry in the given codebook
+	private static int encode(float[] codes, float value) {
+		if (isSpecial(value, codes[0]) || codes.length == 1)
+			return 0;
+		int lo = 1;
+		int hi = codes.length - 1;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (codes[mid] < value)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		if (lo > 1 && value - codes[lo - 1] < codes[lo] - value)
+			return lo - 1;
+		return lo;
+	}
+
+	//-----------------------------------------------------------------
+	// saving and loading
+
+	/** Saves the model to the given file. */
+	public void save(String filename) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(
+				filename)));
+		try {
+			out.writeBytes(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(filters.length);
+			out.writeInt(fpBits);
+			out.writeInt(quantBits);
+			for (int i = 0; i < filters.length; i++)
+				out.writeInt(numNgrams[i]);
+			for (Filter filter : filters) {
+				out.writeLong(filter.seed);
+				out.writeInt(filter.segment);
+				writeFloats(out, filter.logprobCodes);
+				writeFloats(out, (filter.bowCodes != null) ? filter.bowCodes : new float[0]);
+				for (long bits : filter.table)
+					out.writeLong(bits);
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	// writes the given floats, preceded by their number
+	private static void writeFloats(DataOutputStream out, float[] floats) throws IOException {
+		out.writeInt(floats.length);
+		for (float f : floats)
+			out.writeFloat(f);
+	}
+
+	// reads floats, preceded by their number
+	private static float[] readFloats(DataInputStream in) throws IOException {
+		float[] retval = new float[in.readInt()];
+		for (int i = 0; i < retval.length; i++)
+			retval[i] = in.readFloat();
+		return retval;
+	}
+
+	// reads in the model
+	private void readModel(DataInputStream in) throws IOException {
+		byte[] magic = new byte[MAGIC.length()];
+		in.readFully(magic);
+		if (!new String(magic, "US-ASCII").equals(MAGIC))
+			throw new IOException("Not a compressed n-gram model");
+		int version = in.readInt();
+		if (version != VERSION)
+			throw new IOException("Unsupported compressed n-gram model version: " + version);
+		int modelOrder = in.readInt();
+		fpBits = in.readInt();
+		quantBits = in.readInt();
+		checkBits(fpBits, quantBits);
+		if (modelOrder < order)
+			order = modelOrder;
+		numNgrams = new int[order];
+		int[] totals = new int[modelOrder];
+		for (int i = 0; i < modelOrder; i++)
+			totals[i] = in.readInt();
+		System.arraycopy(totals, 0, numNgrams, 0, order);
+		filters = new Filter[order];
+		for (int i = 0; i < order; i++) {
+			long seed = in.readLong();
+			int segment = in.readInt();
+			float[] logprobCodes = readFloats(in);
+			float[] bowCodes = readFloats(in);
+			// the top order has no back-off weights
+			if (bowCodes.length == 0)
+				bowCodes = null;
+			Filter filter = new Filter(seed, segment, fpBits, quantBits, logprobCodes, bowCodes);
+			for (int j = 0; j < filter.table.length; j++)
+				filter.table[j] = in.readLong();
+			filters[i] = filter;
+		}
+		// set openVocab according to presence of <unk>
+		openVocab = isKnownWord("<unk>");
+	}
+
+	//-----------------------------------------------------------------
+	// command line
+
+	/**
+	 * Builds a compressed model from an ARPA file, or reports the accuracy of
+	 * a compressed model against the exact model on held-out text, with one
+	 * sentence per line.
+	 */
+	public static void main(String[] args) throws IOException {
+
+		String usage = "Usage: java opennlp.ccg.ngrams.BloomierNgramModel (-fpbits <bits>) (-quantbits <bits>) <order> <lmfile> <modelfile>\n"
+				+ "   or: java opennlp.ccg.ngrams.BloomierNgramModel -report <order> <lmfile> <modelfile> <textfile>";
+
+		if (args.length == 0 || args[0].equals("-h")) {
+			System.out.println(usage);
+			System.exit(0);
+		}
+
+		if (args[0].equals("-report")) {
+			if (args.length != 5) {
+				System.out.println(usage);
+				System.exit(1);
+			}
+			report(Integer.parseInt(args[1]), args[2], args[3], args[4]);
+			return;
+		}
+
+		int fpBits = DEFAULT_FP_BITS;
+		int quantBits = DEFAULT_QUANT_BITS;
+		int i = 0;
+		for (; i < args.length - 3; i++) {
+			if (args[i].equals("-fpbits"))
+				fpBits = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-quantbits"))
+				quantBits = Integer.parseInt(args[++i]);
+			else {
+				System.out.println("Unrecognized option: " + args[i]);
+				System.out.println(usage);
+				System.exit(1);
+			}
+		}
+		if (args.length - i != 3) {
+			System.out.println(usage);
+			System.exit(1);
+		}
+		int order = Integer.parseInt(args[i]);
+		String lmfile = args[i + 1];
+		String modelfile = args[i + 2];
+		long start = System.currentTimeMillis();
+		System.out.println("Building compressed n-gram model with order " + order + ", " + fpBits
+				+ " check bits and " + quantBits + " bits per value from: " + lmfile);
+		BloomierNgramModel lm = new BloomierNgramModel(order, new BufferedReader(new FileReader(
+				lmfile)), fpBits, quantBits);
+		System.out.println("Writing model to: " + modelfile);
+		lm.save(modelfile);
+		System.out.println("bytes: " + lm.sizeInBytes());
+		int secs = (int) (System.currentTimeMillis() - start) / 1000;
+		System.out.println("secs: " + secs);
+	}
+
+	// reports the accuracy of the compressed model against the exact one
+	private static void report(int order, String lmfile, String modelfile, String textfile)
+			throws IOException {
+		System.out.println("Loading n-gram model with order " + order + " from: " + lmfile);
+		StandardNgramModel exact = new StandardNgramModel(order, lmfile);
+		System.out.println("Loading compressed n-gram model from: " + modelfile);
+		BloomierNgramModel lossy = new BloomierNgramModel(order, modelfile);
+		System.out.println("Scoring held-out text from: " + textfile);
+		Tokenizer tokenizer = new DefaultTokenizer();
+		BufferedReader in = new BufferedReader(new FileReader(textfile));
+		int numSents = 0;
+		int numWords = 0;
+		int numDiffering = 0;
+		double exactTotal = 0;
+		double lossyTotal = 0;
+		double sumAbsError = 0;
+		double maxAbsError = 0;
+		String line;
+		while ((line = in.readLine()) != null) {
+			line = line.trim();
+			if (line.length() == 0)
+				continue;
+			if (!line.startsWith("<s>"))
+				line = "<s> " + line;
+			if (!line.endsWith("</s>"))
+				line = line + " </s>";
+			List<Association> words = new ArrayList<Association>(tokenizer.tokenize(line));
+			double exactLogprob = exact.logprob(words);
+			double lossyLogprob = lossy.logprob(words);
+			double error = Math.abs(exactLogprob - lossyLogprob);
+			numSents++;
+			numWords += words.size() - 1;
+			exactTotal += exactLogprob;
+			lossyTotal += lossyLogprob;
+			sumAbsError += error;
+			maxAbsError = Math.max(maxAbsError, error);
+			if (error > 1e-4)
+				numDiffering++;
+		}
+		in.close();
+		long exactBytes = 0;
+		NgramTrie trie = exact.ngramTrie;
+		for (int n = 1; n <= trie.order; n++) {
+			// word ids, log probs, back-off weights and child indices
+			int fields = (n > 1 ? 1 : 0) + 1 + (n < trie.order ? 2 : 0);
+			exactBytes += 4L * fields * trie.size(n);
+		}
+		long lossyBytes = lossy.sizeInBytes();
+		System.out.println();
+		System.out.println("sentences: " + numSents + ", words: " + numWords);
+		System.out.println("exact ppl: " + convertToPPL(exactTotal / numWords));
+		System.out.println("lossy ppl: " + convertToPPL(lossyTotal / numWords));
+		System.out.println("mean abs logprob error per sentence: "
+				+ (numSents > 0 ? sumAbsError / numSents : 0));
+		System.out.println("max abs logprob error per sentence: " + maxAbsError);
+		System.out.println("sentences differing: " + numDiffering);
+		System.out.println("exact trie bytes (excluding vocab): " + exactBytes);
+		System.out.println("lossy bytes (" + lossy.fpBits + " check bits, " + lossy.quantBits
+				+ " bits per value): " + lossyBytes);
+		System.out.println("ratio: " + ((double) lossyBytes / exactBytes));
+	}
+}
@@ -21,6 +21,8 @@ package opennlp.ccg.ngrams;
 import opennlp.ccg.lexicon.*;
 import opennlp.ccg.util.*;
 
+import gnu.trove.*;
+
 import java.util.*;
 import java.io.*;
 
@@ -29,14 +31,40 @@ import java.io.*;
  * generated by the SRILM version 1.4.1 fngram-count tool. Only static backoff
  * orders are supported at present, with the most distant parent variable
  * dropped at each backoff point. Unknown words/factors are mapped to
- * &lt;unk&gt; if the latter is present in the model.
+ * &lt;unk&gt; if the latter is present in the model. A model may also be
+ * loaded from a binary image made with MappedNgramTrie, in which case the
+ * factor keys are looked up in the mapped trie by their "attr-val" strings.
  *
  * @author Michael White
  * @version $Revision: 1.22 $, $Date: 2011/10/11 03:29:42 $
  */
 public class FactoredNgramModel extends NgramScorer {
-	/** Map for caching and reusing individual models by filename. */
-	public static Map<String, FactoredNgramModel> modelCache = new HashMap<String, FactoredNgramModel>();
+	/**
+	 * The registry for sharing the trie etc of individual models by file. Only
+	 * the tables read from the file are registered, not the scorers using them.
+	 */
+	static final ModelRegistry<ModelTables> registry = new ModelRegistry<ModelTables>();
+
+	// the registry key of the shared tables
+	private String registryKey = null;
+
+	// the shared tables, which keep them registered while this model is in use
+	private ModelTables modelTables = null;
+
+	/** The tables read from a model file, which are not changed after loading. */
+	static class ModelTables {
+		final int[] numNgrams;
+		final boolean openVocab;
+		final TrieMap<Object, NgramFloats> trieMapRoot;
+		final NgramTrie ngramTrie;
+
+		ModelTables(FactoredNgramModel model) {
+			numNgrams = model.numNgrams;
+			openVocab = model.openVocab;
+			trieMapRoot = model.trieMapRoot;
+			ngramTrie = model.ngramTrie;
+		}
+	}
 
 	/** The variable to predict. */
 	public final ModelVariable child;
@@ -79,8 +107,8 @@ public class FactoredNgramModel extends NgramScorer {
 	 * given parent variables, from the file with the given name, in the SRILM
 	 * format, and with the given flag for using sem classes.
 	 */
-	public FactoredNgramModel(String child, String parents[], String filename, boolean useSemClasses)
-			throws IOException {
+	public FactoredNgramModel(String child, String parents[], final String filename,
+			boolean useSemClasses) throws IOException {
 		this.useEntityClasses = useSemClasses;
 		this.child = new ModelVariable(child);
 		this.parents = new ModelVariable[parents.length];
@@ -90,20 +118,55 @@ public class FactoredNgramModel extends NgramScorer {
 			order = Math.max(order, this.parents[i].position + 1);
 		}
 		this.numNgrams = new int[(int) Math.pow(2, parents.length)];
-		// check cache
-		FactoredNgramModel cachedModel = modelCache.get(filename);
-		if (cachedModel != null) {
-			// share trie etc.
-			numNgrams = cachedModel.numNgrams;
-			openVocab = cachedModel.openVocab;
-			trieMapRoot = cachedModel.trieMapRoot;
-			cachedLogProbs = cachedModel.cachedLogProbs;
+		// load tables, or share the ones already loaded from the same file
+		final FactoredNgramModel self = this;
+		String key = ModelRegistry.fileKey(filename, null);
+		modelTables = registry.acquire(key, new ModelRegistry.Loader<ModelTables>() {
+			public ModelTables load() throws IOException {
+				self.loadModel(filename);
+				return new ModelTables(self);
+			}
+
+			public long heapBytes(ModelTables tables) {
+				return self.heapBytes();
+			}
+		});
+		registryKey = key;
+		// share trie etc.
+		numNgrams = modelTables.numNgrams;
+		openVocab = modelTables.openVocab;
+		trieMapRoot = modelTables.trieMapRoot;
+		ngramTrie = modelTables.ngramTrie;
+	}
+
+	// loads the model from the given file
+	private void loadModel(String filename) throws IOException {
+		// map model image
+		if (MappedNgramTrie.isImage(filename)) {
+			ngramTrie = MappedNgramTrie.open(filename);
+			int[] totals = ngramTrie.getTotals();
+			System.arraycopy(totals, 0, numNgrams, 0, Math.min(numNgrams.length, totals.length));
+			// set openVocab according to presence of child <unk>
+			Object unkKey = FactorKey.getKey(this.child.name, "<unk>");
+			openVocab = (keyId(unkKey) >= 0);
 		}
 		// otherwise load model
 		else {
 			Reader in = new BufferedReader(new FileReader(filename));
-			readModel(in);
-			modelCache.put(filename, this);
+			try {
+				readModel(in);
+			} finally {
+				in.close();
+			}
+		}
+	}
+
+	/** Releases the shared tables. */
+	@Override
+	public synchronized void release() {
+		if (registryKey != null) {
+			registry.release(registryKey);
+			registryKey = null;
 		}
 	}
 
@@ -215,7 +278,7 @@ public class FactoredNgramModel extends NgramScorer {
 		// make factor key
 		Object retval = FactorKey.getKey(attr, val);
 		// check for unknown val
-		if (openVocab && trieMapRoot.getChild(retval) == null) {
+		if (openVocab && !isKnownKey(retval)) {
 			val = "<unk>";
 			retval = FactorKey.getKey(attr, val);
 		}
@@ -223,6 +286,80 @@ public class FactoredNgramModel extends NgramScorer {
 		return retval;
 	}
 
+	// returns whether the given factor key is in the model
+	private boolean isKnownKey(Object key) {
+		if (ngramTrie != null)
+			return keyId(key) >= 0;
+		return trieMapRoot.getChild(key) != null;
+	}
+
+	// cache of key ids, by identity, offset by two, as trove maps return zero
+	// if absent, and unknown keys are cached as one
+	private TObjectIntHashMap keyIdCache = new TObjectIntHashMap(new TObjectIdentityHashingStrategy());
+
+	/**
+	 * Returns a copy of this scorer for use by the current thread, with its
+	 * own cache of key ids.
+	 */
+	@Override
+	protected NgramScorer copyForThread() {
+		FactoredNgramModel retval = (FactoredNgramModel) super.copyForThread();
+		retval.keyIdCache = new TObjectIntHashMap(new TObjectIdentityHashingStrategy());
+		return retval;
+	}
+
+	/**
+	 * Returns the id of the given factor key in the n-gram trie, or -1 if
+	 * none. The ids are cached by key identity, as factor keys are interned.
+	 */
+	@Override
+	protected int keyId(Object key) {
+		int id = keyIdCache.get(key);
+		if (id == 0) {
+			id = ngramTrie.getWordId(keyString(key)) + 2;
+			keyIdCache.put(key, id);
+		}
+		return id - 2;
+	}
+
+	/**
+	 * Returns the string for the given factor key used in the n-gram trie,
+	 * namely "attr-val", where word forms are represented as strings by
+	 * FactorKey.
+	 */
+	public static String keyString(Object key) {
+		if (key instanceof String)
+			return Tokenizer.FORM_ASSOCIATE + "-" + key;
+		return key.toString();
+	}
+
+	/**
+	 * Returns the model as an n-gram trie, whose order is the number of
+	 * parents plus one, and whose words are the strings for the factor keys.
+	 */
+	public NgramTrie toNgramTrie() {
+		if (ngramTrie != null)
+			return ngramTrie;
+		NgramTrie.Builder builder = new NgramTrie.Builder(parents.length + 1);
+		for (int i = 0; i < numNgrams.length; i++)
+			builder.setTotal(i, numNgrams[i]);
+		addNgrams(builder, trieMapRoot, new int[parents.length + 1], 0);
+		return builder.build();
+	}
+
+	// adds the n-grams under the given node, whose path has the given length,
+	// to the builder; nodes without data are left to be added as blank
+	// contexts by the builder, as needed
+	private void addNgrams(NgramTrie.Builder builder, TrieMap<Object, NgramFloats> node, int[] ids,
+			int len) {
+		if (len > 0 && node.data != null)
+			builder.add(len, ids, node.data.logprob, node.data.bow);
+		for (Object key : node.getChildKeys()) {
+			ids[len] = builder.wordId(keyString(key));
+			addNgrams(builder, node.getChild(key), ids, len + 1);
+		}
+	}
+
 	// reads in model
 	private void readModel(Reader in) throws IOException {
 		// setup
@@ -418,5 +555,6 @@ public class FactoredNgramModel extends NgramScorer {
 		System.out.println("score: " + score);
 		System.out.println("logprob: " + logprob);
 		System.out.println("ppl: " + NgramScorer.convertToPPL(logprob / (words.size() - 1)));
+		lm.release();
 	}
 }
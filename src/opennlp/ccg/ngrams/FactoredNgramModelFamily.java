@@ -46,7 +46,8 @@ import java.io.*;
  * of the word form (though potentially looking at some of the same history).
  * With each individual model, the parents are assumed to be listed in backoff
  * order. Unknown words are mapped to &lt;unk&gt; if the latter is present in
- * the first model.
+ * the first model. The individual models share their tries through the
+ * FactoredNgramModel registry, and may be released with the family.
  *
  * @author Michael White
  * @version $Revision: 1.15 $, $Date: 2010/02/25 22:26:11 $
@@ -118,6 +119,16 @@ public class FactoredNgramModelFamily extends NgramScorer {
 			}
 		}
 
+		/** Adds the models to the given list. */
+		protected void addModels(List<FactoredNgramModel> models) {
+			models.add(primaryModel);
+			if (secondaryModels == null)
+				return;
+			for (int i = 0; i < secondaryModels.length; i++) {
+				models.add(secondaryModels[i]);
+			}
+		}
+
 		/** Sets the alphabet. */
 		public void setAlphabet(Alphabet alphabet) {
 			primaryModel.setAlphabet(alphabet);
@@ -144,7 +155,17 @@ public class FactoredNgramModelFamily extends NgramScorer {
 	 */
 	public FactoredNgramModelFamily(String filename, boolean useSemClasses) throws IOException {
 		this.useEntityClasses = useSemClasses;
-		List<ModelGroup> modelGroups = readModel(filename);
+		List<FactoredNgramModel> models = new ArrayList<FactoredNgramModel>();
+		List<ModelGroup> modelGroups;
+		try {
+			modelGroups = readModel(filename, models);
+		} catch (IOException exc) {
+			release(models);
+			throw exc;
+		} catch (RuntimeException exc) {
+			release(models);
+			throw exc;
+		}
 		this.primaryGroup = modelGroups.get(0);
 		if (modelGroups.size() == 1)
 			this.furtherGroups = null;
@@ -158,6 +179,57 @@ public class FactoredNgramModelFamily extends NgramScorer {
 		openVocab = primaryGroup.primaryModel.openVocab;
 	}
 
+	/** Returns the individual models. */
+	public List<FactoredNgramModel> getModels() {
+		List<FactoredNgramModel> retval = new ArrayList<FactoredNgramModel>();
+		primaryGroup.addModels(retval);
+		if (furtherGroups != null) {
+			for (int i = 0; i < furtherGroups.length; i++) {
+				furtherGroups[i].addModels(retval);
+			}
+		}
+		return retval;
+	}
+
+	/**
+	 * Releases the individual models, whose tries etc are shared through the
+	 * FactoredNgramModel registry.
+	 */
+	@Override
+	public void release() {
+		release(getModels());
+	}
+
+	// releases the given models
+	private static void release(List<FactoredNgramModel> models) {
+		for (FactoredNgramModel model : models)
+			model.release();
+	}
+
+	/**
+	 * Returns a rough estimate of the heap bytes taken up by the individual
+	 * models, counting models sharing the same trie only once.
+	 */
+	@Override
+	public long heapBytes() {
+		long retval = 0;
+		Set<Object> counted = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+		for (FactoredNgramModel model : getModels()) {
+			Object data = (model.ngramTrie != null) ? model.ngramTrie : model.trieMapRoot;
+			if (counted.add(data))
+				retval += model.heapBytes();
+		}
+		return retval;
+	}
+
+	/**
+	 * Returns null, as the model groups share wordsToScore with this scorer
+	 * and cannot be copied, so that scoring is synchronized instead.
+	 */
+	protected NgramScorer copyForThread() {
+		return null;
+	}
+
 	/** Sets reverse flag, and propagates to component models. */
 	public void setReverse(boolean reverse) {
 		super.setReverse(reverse);
@@ -270,8 +342,10 @@ public class FactoredNgramModelFamily extends NgramScorer {
 	/** The max number of tokens to allow per line in the spec file. */
 	public static int MAX_TOKENS_PER_LINE = 64;
 
-	// reads in model, returning model groups
-	private List<ModelGroup> readModel(String filename) throws IOException {
+	// reads in model, returning model groups, and adding the individual
+	// models to the given list as they are loaded
+	private List<ModelGroup> readModel(String filename, List<FactoredNgramModel> loadedModels)
+			throws IOException {
 		// setup
 		File infile = new File(filename);
 		Reader in = new BufferedReader(new FileReader(infile));
@@ -318,6 +392,7 @@ public class FactoredNgramModelFamily extends NgramScorer {
 				lmfn = lmfile.getPath();
 				// load current model
 				models[currentModel] = new FactoredNgramModel(child, parents, lmfn, useEntityClasses);
+				loadedModels.add(models[currentModel]);
 				// share wordsToScore
 				models[currentModel].shareWordsToScore(wordsToScore);
 				// inc current model
@@ -403,5 +478,6 @@ public class FactoredNgramModelFamily extends NgramScorer {
 		System.out.println("score: " + score);
 		System.out.println("logprob: " + logprob);
 		System.out.println("ppl: " + NgramScorer.convertToPPL(logprob / (words.size() - 1)));
+		lmFamily.release();
 	}
 }
@@ -3,11 +3,17 @@ package opennlp.ccg.ngrams;
 import opennlp.ccg.ngrams.kenlm.jni.KenLM;
 import opennlp.ccg.ngrams.kenlm.MurmurHash;
 
+import gnu.trove.TLongIntHashMap;
+
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
 import java.util.List;
 import java.util.ArrayList;
-import java.util.Map;
-import java.util.HashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import opennlp.ccg.lexicon.DefaultTokenizer;
 import opennlp.ccg.lexicon.Tokenizer;
@@ -20,16 +26,14 @@ public class KenNgramModel extends AbstractStandardNgramModel {
 	private KenLM kenlm = null;
 
 	// Map of hash of word to integer representation (integerized word used by
-	// KenLM).
-	private Map<Long, Integer> hash2ID = new HashMap<Long, Integer>();
-	// Map of String (word to score) to hash of word.
-	// private Map<String,Integer> word2Hash = new HashMap<String,Integer>();
-	// Map from hashes to tokens (to see whether we have encountered a new
-	// token).
-	private Map<Long, String> hash2String = new HashMap<Long, String>();
-	// List of vocabulary tokens. New items are added and assigned their index
-	// as a representation.
-	private List<String> vocabList = new ArrayList<String>();
+	// KenLM), offset by one, as trove maps return zero if absent. New words
+	// are assigned the next id.
+	private TLongIntHashMap hash2ID = new TLongIntHashMap();
+	// Lock shared by the per-thread copies of this scorer, guarding the vocab
+	// and the calls into KenLM: registering a word may reallocate KenLM's
+	// word map, which is read when scoring, so it takes the write lock, while
+	// scoring takes the read lock.
+	private ReadWriteLock kenlmLock = new ReentrantReadWriteLock();
 	// Whether to lowercase text before querying to the language model (e.g.,
 	// "Pierre Vinken" => "pierre vinken").
 	private boolean lowercaseText = false;
@@ -42,6 +46,13 @@ public class KenNgramModel extends AbstractStandardNgramModel {
 	// A reusable container for scoring strings.
 	// private List<String> someStringsToScore = null;
 
+	// Reusable direct buffers for batch scoring, with the word ids of the
+	// sentence followed by the start and length of each n-gram, and the
+	// resulting log probs.
+	private IntBuffer batchBuffer = null;
+	private FloatBuffer batchResults = null;
+	private int[] batchPositions = new int[32];
+
 	// Whether to print out messages that trace the scoring process.
 	public boolean debugScore = false;
 
@@ -56,6 +67,15 @@ public class KenNgramModel extends AbstractStandardNgramModel {
 		this.useNgramFeatures = useNgramFeatures;
 	}
 
+	/**
+	 * Construct with order and the given KenLM model, which may stand in for a
+	 * native one.
+	 */
+	KenNgramModel(int order, KenLM kenlm) {
+		super(order, false);
+		this.kenlm = kenlm;
+	}
+
 	/**
 	 * Construct with order and filename. (Delegates to superclass for these
 	 * flags).
@@ -76,28 +96,45 @@ public class KenNgramModel extends AbstractStandardNgramModel {
 	 * Integerize a word and register it with the LM, if needed.
 	 */
 	public int id(String token) {
-		synchronized (this) {
-			long hash = 0;
-			try {
-				hash = MurmurHash.hash64(token);
-			} catch (UnsupportedEncodingException e) {
-				e.printStackTrace();
-			}
-			String hash_word = hash2String.get(hash);
-			if (hash_word != null) {
-				return hash2ID.get(hash);
-			} else {
-				int id = vocabList.size();
+		long hash = 0;
+		try {
+			hash = MurmurHash.hash64(token);
+		} catch (UnsupportedEncodingException e) {
+			e.printStackTrace();
+		}
+		kenlmLock.readLock().lock();
+		try {
+			int id = hash2ID.get(hash) - 1;
+			if (id >= 0)
+				return id;
+		} finally {
+			kenlmLock.readLock().unlock();
+		}
+		kenlmLock.writeLock().lock();
+		try {
+			int id = hash2ID.get(hash) - 1;
+			if (id < 0) {
+				id = hash2ID.size();
 				// let kenlm know about this word's ID.
 				kenlm.registerWord(token, id);
-				vocabList.add(token);
-				hash2String.put(hash, token);
-				hash2ID.put(hash, id);
-				return id;
+				hash2ID.put(hash, id + 1);
 			}
+			return id;
+		} finally {
+			kenlmLock.writeLock().unlock();
 		}
 	}
 
+	/** Returns a copy with its own batch buffers. */
+	@Override
+	protected NgramScorer copyForThread() {
+		KenNgramModel retval = (KenNgramModel) super.copyForThread();
+		retval.batchBuffer = null;
+		retval.batchResults = null;
+		retval.batchPositions = new int[32];
+		return retval;
+	}
+
 	/**
 	 * Lowercase each token, if desired, and split each token into a list of
 	 * tokens (splitting on NE delim token), if desired.
@@ -137,6 +174,77 @@ public class KenNgramModel extends AbstractStandardNgramModel {
 		super.setWordsToScore(words, complete);
 	}
 
+	/**
+	 * Scores the n-grams whose log probs are not yet known in a single call to
+	 * KenLM, by packing the word ids of the sentence and the start and length
+	 * of each n-gram into a direct buffer, so that the cost of crossing into
+	 * native code is paid once per sentence rather than once per n-gram.
+	 * When tracing the scoring process, the n-grams are scored one by one.
+	 */
+	@Override
+	protected void logProbsFromNgrams(float[] logprobs, int from, int maxOrder) {
+		if (debugScore || super.debugScore) {
+			super.logProbsFromNgrams(logprobs, from, maxOrder);
+			return;
+		}
+		int size = logprobs.length;
+		// collect positions to score, skipping an initial start tag
+		int numQueries = 0;
+		int firstWord = size;
+		for (int i = from; i < size; i++) {
+			if (!Float.isNaN(logprobs[i]))
+				continue;
+			if (i == 0 && wordsToScore.get(0).getForm() == "<s>") {
+				logprobs[i] = 0;
+				continue;
+			}
+			if (numQueries == batchPositions.length) {
+				int[] positions = new int[2 * numQueries];
+				System.arraycopy(batchPositions, 0, positions, 0, numQueries);
+				batchPositions = positions;
+			}
+			batchPositions[numQueries++] = i;
+			firstWord = Math.min(firstWord, Math.max(0, i - (maxOrder - 1)));
+		}
+		if (numQueries == 0)
+			return;
+		// pack word ids and queries
+		int numWords = size - firstWord;
+		ensureBatchCapacity(numWords + 2 * numQueries, numQueries);
+		batchBuffer.clear();
+		for (int j = firstWord; j < size; j++)
+			batchBuffer.put(id(stringsToScore.get(j)));
+		for (int q = 0; q < numQueries; q++) {
+			int i = batchPositions[q];
+			int orderToUse = Math.min(maxOrder, i + 1);
+			batchBuffer.put(i - (orderToUse - 1) - firstWord);
+			batchBuffer.put(orderToUse);
+		}
+		// call KenLM
+		kenlmLock.readLock().lock();
+		try {
+			kenlm.prob(batchBuffer, numWords, numQueries, batchResults);
+		} finally {
+			kenlmLock.readLock().unlock();
+		}
+		for (int q = 0; q < numQueries; q++)
+			logprobs[batchPositions[q]] = batchResults.get(q);
+	}
+
+	// ensures the batch buffers hold the given number of ints and floats
+	private void ensureBatchCapacity(int numInts, int numFloats) {
+		if (batchBuffer == null || batchBuffer.capacity() < numInts) {
+			int capacity = Math.max(numInts, 256);
+			batchBuffer = ByteBuffer.allocateDirect(4 * capacity).order(ByteOrder.nativeOrder())
+					.asIntBuffer();
+		}
+		if (batchResults == null || batchResults.capacity() < numFloats) {
+			int capacity = Math.max(numFloats, 64);
+			batchResults = ByteBuffer.allocateDirect(4 * capacity).order(ByteOrder.nativeOrder())
+					.asFloatBuffer();
+		}
+	}
+
 	/**
 	 * Calculates a log probability of a delineated substring of the strings to
 	 * score using KenLM.
@@ -148,27 +256,28 @@ public class KenNgramModel extends AbstractStandardNgramModel {
 	@Override
 	public float logProb(int pos, int len) {
 		try {
-			List<String> range = new ArrayList<String>(keysList.size());
-			for (Object wts : keysList.subList(pos, pos + len))
-				range.add((String) wts);
-
-			int rangeSize = range.size();
-			if (rangeSize == 0) {
+			List<Object> range = keysList.subList(pos, pos + len);
+			if (range.isEmpty()) {
 				throw new IllegalArgumentException("empty range specified for log prob");
 			}
 
-			// Get hashes of words.
+			// Get ids of words.
 			int[] wds = new int[range.size()];
-			int cursor = 0;
-			for (String s : range)
-				wds[cursor++] = id(s);
+			for (int i = 0; i < wds.length; i++)
+				wds[i] = id((String) range.get(i));
 
 			// call KenLM
-			float result = kenlm.prob(wds);
+			float result;
+			kenlmLock.readLock().lock();
+			try {
+				result = kenlm.prob(wds);
+			} finally {
+				kenlmLock.readLock().unlock();
+			}
 			if (debugScore) {
-				String wd = range.get(range.size() - 1);
+				Object wd = range.get(range.size() - 1);
 				String context = "";
-				for (String contextWord : range.subList(0, range.size() - 1))
+				for (Object contextWord : range.subList(0, range.size() - 1))
 					context += " " + contextWord;
 				context = context.trim();
 				System.out.println("logp(" + wd + " | " + context + ") = " + result);
@@ -71,6 +71,24 @@ public class LinearNgramScorerCombo extends NgramScorer implements FeatureExtrac
 		}
 	}
 
+	/**
+	 * Returns a copy of this scorer for use by the current thread, with copies
+	 * of the component models sharing its wordsToScore, or null if any
+	 * component model cannot be copied.
+	 */
+	protected NgramScorer copyForThread() {
+		LinearNgramScorerCombo retval = (LinearNgramScorerCombo) super.copyForThread();
+		retval.models = new NgramScorer[models.length];
+		for (int i = 0; i < models.length; i++) {
+			NgramScorer model = models[i].forThread();
+			if (model == null)
+				return null;
+			retval.models[i] = model.copyForThread();
+			retval.models[i].shareWordsToScore(retval.wordsToScore);
+		}
+		return retval;
+	}
+
 	/** Sets wordsToScore to the given list, for sharing purposes. */
 	protected void shareWordsToScore(List<Association> wordsToScore) {
 		this.wordsToScore = wordsToScore;
@@ -86,6 +104,40 @@ public class LinearNgramScorerCombo extends NgramScorer implements FeatureExtrac
 		}
 	}
 
+	/**
+	 * Sets the log probs of the words in wordsToScore that are not yet known
+	 * to the linear combination of the probabilities given by the component
+	 * models, as with logProbFromNgram. The component models first fill in the
+	 * log probs of all the missing words, so that each may score them in a
+	 * batch, and the weighted sums are then accumulated in one pass. When
+	 * tracing the scoring process, the words are scored one by one.
+	 */
+	protected void logProbsFromNgrams(float[] logprobs, int from, int maxOrder) {
+		if (debugScore) {
+			super.logProbsFromNgrams(logprobs, from, maxOrder);
+			return;
+		}
+		int size = logprobs.length;
+		float[][] componentLogProbs = new float[models.length][size];
+		for (int j = 0; j < models.length; j++) {
+			float[] componentLogProbsJ = componentLogProbs[j];
+			for (int i = from; i < size; i++) {
+				if (Float.isNaN(logprobs[i]))
+					componentLogProbsJ[i] = Float.NaN;
+			}
+			models[j].logProbsFromNgrams(componentLogProbsJ, from, maxOrder);
+		}
+		for (int i = from; i < size; i++) {
+			if (!Float.isNaN(logprobs[i]))
+				continue;
+			double prob = 0;
+			for (int j = 0; j < models.length; j++) {
+				prob += convertToProb(componentLogProbs[j][i]) * weights[j];
+			}
+			logprobs[i] = (float) convertToLogProb(prob);
+		}
+	}
+
 	/**
 	 * Returns the log prob of the ngram starting at the given index in
 	 * wordsToScore and with the given order, with backoff. In particular,
@@ -119,6 +171,7 @@ public class LinearNgramScorerCombo extends NgramScorer implements FeatureExtrac
 	/** Sets the flag for including interpolated log prob as a feature. */
 	public void setInterpLogProb(boolean useInterpLogProb) {
 		this.useInterpLogProb = useInterpLogProb;
+		resetThreadCopies();
 	}
 
 	/**
@@ -0,0 +1,433 @@
+///////////////////////////////////////////////////////////////////////////////
+// Copyright (C) 2015 Daniel Couto-Vale (RWTH Aachen)
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+//////////////////////////////////////////////////////////////////////////////
+
+package opennlp.ccg.ngrams;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * An n-gram trie which is mapped read-only into memory from a binary image,
+ * so that loading a model costs a few system calls rather than parsing and
+ * sorting the model file, and so that processes using the same model share
+ * its pages through the operating system's page cache. The vocab is stored
+ * in the image as an open-addressing hash table over the UTF-8 bytes of the
+ * words, and is looked up in place as well.
+ * <p>
+ * Images are made with the write method, or from the command line by the main
+ * method, which converts models in ARPA format or factored language models.
+ * The image is written in the native byte order, which is checked when it is
+ * mapped; images are thus not portable between machines of different
+ * endianness, and need to be regenerated in that case.
+ * <p>
+ * The image consists of a header, with the magic number, version, order,
+ * number of words, vocab table size, n-gram totals, number of n-grams of
+ * each order and number of vocab bytes, followed by the vocab offsets, vocab
+ * table and vocab bytes (padded to a multiple of four), and then, for each
+ * order, the log probs, the back-off weights and child indices (except for
+ * the top order) and the last word ids (except for unigrams).
+ *
+ * @author Daniel Couto-Vale
+ * @version
+ */
+public class MappedNgramTrie extends NgramTrie {
+
+	/** The magic number at the start of an image. */
+	public static final String MAGIC = "OCCGTRIE";
+
+	/** The version of the image format. */
+	public static final int VERSION = 1;
+
+	// the offsets of the words in the vocab bytes, plus an end offset
+	private final IntBuffer vocabOffsets;
+
+	// the vocab hash table, with ids offset by one, and zero for empty slots
+	private final IntBuffer vocabTable;
+
+	// the mask for the vocab hash table
+	private final int mask;
+
+	// the UTF-8 bytes of the words
+	private final ByteBuffer vocabBytes;
+
+	// constructor
+	private MappedNgramTrie(int numWords, int[] totals, IntBuffer vocabOffsets,
+			IntBuffer vocabTable, ByteBuffer vocabBytes, IntBuffer[] words,
+			FloatBuffer[] logprobs, FloatBuffer[] bows, IntBuffer[] next) {
+		super(numWords, null, totals, words, logprobs, bows, next);
+		this.vocabOffsets = vocabOffsets;
+		this.vocabTable = vocabTable;
+		this.mask = vocabTable.limit() - 1;
+		this.vocabBytes = vocabBytes;
+	}
+
+	/** Returns the word with the given id. */
+	@Override
+	public String getWord(int id) {
+		int start = vocabOffsets.get(id);
+		byte[] bytes = new byte[vocabOffsets.get(id + 1) - start];
+		for (int i = 0; i < bytes.length; i++)
+			bytes[i] = vocabBytes.get(start + i);
+		return decode(bytes);
+	}
+
+	/** Returns the id of the given word, or -1 if it is not in the vocab. */
+	@Override
+	public int getWordId(String word) {
+		int slot = hash(word) & mask;
+		while (true) {
+			int id = vocabTable.get(slot) - 1;
+			if (id < 0)
+				return -1;
+			if (matches(word, id))
+				return id;
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	// returns whether the given word is the one with the given id, comparing
+	// ascii chars directly against the bytes
+	private boolean matches(String word, int id) {
+		int start = vocabOffsets.get(id);
+		int len = vocabOffsets.get(id + 1) - start;
+		int numChars = word.length();
+		// a word has at least as many UTF-8 bytes as chars
+		if (len < numChars)
+			return false;
+		for (int i = 0; i < numChars; i++) {
+			char c = word.charAt(i);
+			if (c >= 0x80)
+				return getWord(id).equals(word);
+			if (vocabBytes.get(start + i) != c)
+				return false;
+		}
+		return len == numChars;
+	}
+
+	// hashes the given word
+	private static int hash(String word) {
+		int h = word.hashCode();
+		return h ^ (h >>> 16);
+	}
+
+	// decodes the given UTF-8 bytes
+	private static String decode(byte[] bytes) {
+		try {
+			return new String(bytes, "UTF-8");
+		} catch (IOException exc) {
+			throw (RuntimeException) new RuntimeException().initCause(exc);
+		}
+	}
+
+	// encodes the given word as UTF-8 bytes
+	private static byte[] encode(String word) {
+		try {
+			return word.getBytes("UTF-8");
+		} catch (IOException exc) {
+			throw (RuntimeException) new RuntimeException().initCause(exc);
+		}
+	}
+
+	/** Returns whether the given file is an n-gram trie image. */
+	public static boolean isImage(String filename) throws IOException {
+		File file = new File(filename);
+		if (!file.isFile() || file.length() < MAGIC.length())
+			return false;
+		byte[] magic = new byte[MAGIC.length()];
+		FileInputStream in = new FileInputStream(file);
+		try {
+			int len = 0;
+			while (len < magic.length) {
+				int read = in.read(magic, len, magic.length - len);
+				if (read < 0)
+					return false;
+				len += read;
+			}
+		} finally {
+			in.close();
+		}
+		return MAGIC.equals(new String(magic, "US-ASCII"));
+	}
+
+	/**
+	 * Maps the n-gram trie image in the given file into memory.
+	 */
+	public static MappedNgramTrie open(String filename) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(filename, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			// read header
+			ByteBuffer header = readFully(channel, 0, MAGIC.length() + 24);
+			byte[] magic = new byte[MAGIC.length()];
+			header.get(magic);
+			if (!MAGIC.equals(new String(magic, "US-ASCII")))
+				throw new IOException("Not an n-gram trie image: " + filename);
+			int version = header.getInt();
+			if (version != VERSION) {
+				if (Integer.reverseBytes(version) == VERSION)
+					throw new IOException("N-gram trie image was made on a machine with the other "
+							+ "byte order, and needs to be regenerated: " + filename);
+				throw new IOException("Unsupported n-gram trie image version " + version + ": "
+						+ filename);
+			}
+			int order = header.getInt();
+			int numWords = header.getInt();
+			int tableSize = header.getInt();
+			int numTotals = header.getInt();
+			int numVocabBytes = header.getInt();
+			long offset = header.limit();
+			ByteBuffer counts = readFully(channel, offset, 4 * (numTotals + order));
+			offset += counts.limit();
+			int[] totals = new int[numTotals];
+			for (int i = 0; i < numTotals; i++)
+				totals[i] = counts.getInt();
+			int[] sizes = new int[order];
+			for (int i = 0; i < order; i++)
+				sizes[i] = counts.getInt();
+			// map sections
+			IntBuffer vocabOffsets = map(channel, offset, 4L * (numWords + 1)).asIntBuffer();
+			offset += 4L * (numWords + 1);
+			IntBuffer vocabTable = map(channel, offset, 4L * tableSize).asIntBuffer();
+			offset += 4L * tableSize;
+			ByteBuffer vocabBytes = map(channel, offset, numVocabBytes);
+			offset += pad(numVocabBytes);
+			IntBuffer[] words = new IntBuffer[order];
+			FloatBuffer[] logprobs = new FloatBuffer[order];
+			FloatBuffer[] bows = new FloatBuffer[order - 1];
+			IntBuffer[] next = new IntBuffer[order - 1];
+			for (int n = 1; n <= order; n++) {
+				int size = sizes[n - 1];
+				logprobs[n - 1] = map(channel, offset, 4L * size).asFloatBuffer();
+				offset += 4L * size;
+				if (n < order) {
+					bows[n - 1] = map(channel, offset, 4L * size).asFloatBuffer();
+					offset += 4L * size;
+					next[n - 1] = map(channel, offset, 4L * (size + 1)).asIntBuffer();
+					offset += 4L * (size + 1);
+				}
+				if (n > 1) {
+					words[n - 1] = map(channel, offset, 4L * size).asIntBuffer();
+					offset += 4L * size;
+				}
+			}
+			if (offset != channel.size())
+				throw new IOException("Truncated or corrupt n-gram trie image: " + filename);
+			return new MappedNgramTrie(numWords, totals, vocabOffsets, vocabTable, vocabBytes,
+					words, logprobs, bows, next);
+		} finally {
+			// mappings remain valid once the file is closed
+			file.close();
+		}
+	}
+
+	// reads the given number of bytes at the given offset
+	private static ByteBuffer readFully(FileChannel channel, long offset, int size)
+			throws IOException {
+		ByteBuffer retval = ByteBuffer.allocate(size).order(ByteOrder.nativeOrder());
+		while (retval.hasRemaining()) {
+			if (channel.read(retval, offset + retval.position()) < 0)
+				throw new IOException("Truncated n-gram trie image");
+		}
+		retval.flip();
+		return retval;
+	}
+
+	// maps the given section read-only
+	private static ByteBuffer map(FileChannel channel, long offset, long size) throws IOException {
+		if (size > Integer.MAX_VALUE)
+			throw new IOException("N-gram trie image section too large to map: " + size + " bytes");
+		if (offset + size > channel.size())
+			throw new IOException("Truncated n-gram trie image");
+		MappedByteBuffer retval = channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+		retval.order(ByteOrder.nativeOrder());
+		return retval;
+	}
+
+	// returns the given number of bytes padded to a multiple of four
+	private static int pad(int numBytes) {
+		return (numBytes + 3) & ~3;
+	}
+
+	/**
+	 * Writes the given trie to the given file as a binary image, in the
+	 * native byte order.
+	 */
+	public static void write(NgramTrie trie, String filename) throws IOException {
+		int order = trie.order;
+		int numWords = trie.numWords();
+		int[] totals = trie.getTotals();
+		// encode vocab
+		byte[][] wordBytes = new byte[numWords][];
+		int[] vocabOffsets = new int[numWords + 1];
+		for (int id = 0; id < numWords; id++) {
+			wordBytes[id] = encode(trie.getWord(id));
+			vocabOffsets[id + 1] = vocabOffsets[id] + wordBytes[id].length;
+		}
+		int numVocabBytes = vocabOffsets[numWords];
+		// make vocab table, at most half full
+		int tableSize = 2;
+		while (tableSize < 2 * numWords)
+			tableSize <<= 1;
+		int[] vocabTable = new int[tableSize];
+		for (int id = 0; id < numWords; id++) {
+			int slot = hash(trie.getWord(id)) & (tableSize - 1);
+			while (vocabTable[slot] != 0)
+				slot = (slot + 1) & (tableSize - 1);
+			vocabTable[slot] = id + 1;
+		}
+		// write image
+		FileOutputStream out = new FileOutputStream(filename);
+		try {
+			ImageWriter writer = new ImageWriter(out.getChannel());
+			writer.putBytes(MAGIC.getBytes("US-ASCII"));
+			writer.putInt(VERSION);
+			writer.putInt(order);
+			writer.putInt(numWords);
+			writer.putInt(tableSize);
+			writer.putInt(totals.length);
+			writer.putInt(numVocabBytes);
+			for (int total : totals)
+				writer.putInt(total);
+			for (int n = 1; n <= order; n++)
+				writer.putInt(trie.size(n));
+			for (int vocabOffset : vocabOffsets)
+				writer.putInt(vocabOffset);
+			for (int slot : vocabTable)
+				writer.putInt(slot);
+			for (byte[] bytes : wordBytes)
+				writer.putBytes(bytes);
+			writer.putBytes(new byte[pad(numVocabBytes) - numVocabBytes]);
+			for (int n = 1; n <= order; n++) {
+				int size = trie.size(n);
+				for (int k = 0; k < size; k++)
+					writer.putFloat(trie.getLogProb(n, k));
+				if (n < order) {
+					for (int k = 0; k < size; k++)
+						writer.putFloat(trie.getBackoffWeight(n, k));
+					for (int k = 0; k <= size; k++)
+						writer.putInt(trie.getChildIndex(n, k));
+				}
+				if (n > 1) {
+					for (int k = 0; k < size; k++)
+						writer.putInt(trie.getLastWordId(n, k));
+				}
+			}
+			writer.flush();
+		} finally {
+			out.close();
+		}
+	}
+
+	// buffered writer of values in the native byte order
+	private static class ImageWriter {
+		private final FileChannel channel;
+		private final ByteBuffer buf = ByteBuffer.allocate(1 << 16).order(ByteOrder.nativeOrder());
+
+		ImageWriter(FileChannel channel) {
+			this.channel = channel;
+		}
+
+		void putInt(int value) throws IOException {
+			if (buf.remaining() < 4)
+				flush();
+			buf.putInt(value);
+		}
+
+		void putFloat(float value) throws IOException {
+			if (buf.remaining() < 4)
+				flush();
+			buf.putFloat(value);
+		}
+
+		void putBytes(byte[] bytes) throws IOException {
+			int pos = 0;
+			while (pos < bytes.length) {
+				if (!buf.hasRemaining())
+					flush();
+				int len = Math.min(buf.remaining(), bytes.length - pos);
+				buf.put(bytes, pos, len);
+				pos += len;
+			}
+		}
+
+		void flush() throws IOException {
+			buf.flip();
+			while (buf.hasRemaining())
+				channel.write(buf);
+			buf.clear();
+		}
+	}
+
+	/** Converts a model to a binary image. */
+	public static void main(String[] args) throws IOException {
+
+		String usage = "Usage: java opennlp.ccg.ngrams.MappedNgramTrie <order> <lmfile> <imagefile>\n"
+				+ "   or: java opennlp.ccg.ngrams.MappedNgramTrie -flm <child> \"<parents>\" <flmfile> <imagefile>";
+
+		if (args.length == 0 || args[0].equals("-h")) {
+			System.out.println(usage);
+			System.exit(0);
+		}
+
+		long start = System.currentTimeMillis();
+		NgramTrie trie;
+		String imagefile;
+		if (args[0].equals("-flm")) {
+			if (args.length != 5) {
+				System.out.println(usage);
+				System.exit(1);
+			}
+			String child = args[1];
+			String[] parents = args[2].trim().split("\\s+");
+			String flmfile = args[3];
+			imagefile = args[4];
+			System.out.println("Loading factored n-gram model for " + child + " given "
+					+ Arrays.asList(parents) + " from: " + flmfile);
+			trie = new FactoredNgramModel(child, parents, flmfile).toNgramTrie();
+		} else {
+			if (args.length != 3) {
+				System.out.println(usage);
+				System.exit(1);
+			}
+			int order = Integer.parseInt(args[0]);
+			String lmfile = args[1];
+			imagefile = args[2];
+			System.out.println("Loading n-gram model with order " + order + " from: " + lmfile);
+			trie = NgramTrie.readArpa(order, new BufferedReader(new FileReader(lmfile)), new int[order]);
+		}
+		System.out.println("Writing image to: " + imagefile);
+		write(trie, imagefile);
+		int secs = (int) (System.currentTimeMillis() - start) / 1000;
+		System.out.println("secs: " + secs);
+		start = System.currentTimeMillis();
+		open(imagefile);
+		System.out.println("ms to map image: " + (System.currentTimeMillis() - start));
+	}
+}
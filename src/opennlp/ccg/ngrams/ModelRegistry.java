@@ -0,0 +1,266 @@
+///////////////////////////////////////////////////////////////////////////////
+// Copyright (C) 2015 Daniel Couto-Vale (RWTH Aachen)
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+//////////////////////////////////////////////////////////////////////////////
+
+package opennlp.ccg.ngrams;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A thread-safe registry of shared models, such as n-gram tries, by key.
+ * Models are acquired with a loader, which is only invoked by the first of
+ * any threads acquiring the same key at the same time, while the others wait
+ * for it to finish loading and then share the loaded model. Acquired models
+ * are reference counted, and are dropped from the registry once they have
+ * been released as often as they have been acquired. The registry only holds
+ * its models weakly, so that models whose owners never release them are still
+ * dropped once no longer in use, and a long-running process can swap models
+ * without keeping the old ones in memory. If loading
+ * fails, the failure is reported to all threads waiting for the model, and
+ * the key is dropped, so that loading may be retried.
+ * <p>
+ * The loader also estimates the heap bytes taken up by each model, which the
+ * registry reports along with the reference counts.
+ *
+ * @author Daniel Couto-Vale
+ * @version
+ */
+public class ModelRegistry<T> {
+
+	/** A loader for models, which also estimates their heap usage. */
+	public interface Loader<T> {
+		/** Loads the model. */
+		public T load() throws IOException;
+
+		/** Returns a rough estimate of the heap bytes taken up by the given model. */
+		public long heapBytes(T model);
+	}
+
+	// a registered model, which is loaded by the first thread acquiring it
+	private static class Entry<T> {
+		// the model, once loaded, which is held weakly
+		private WeakReference<T> ref;
+		// the failure, if loading failed
+		private Throwable failure;
+		// whether loading is done
+		private boolean done;
+		// the estimated heap bytes
+		private long heapBytes;
+		// the reference count (guarded by the registry)
+		private int refCount;
+
+		// records the result of loading, and wakes up any waiting threads
+		synchronized void finish(T model, long heapBytes, Throwable failure) {
+			if (model != null)
+				ref = new WeakReference<T>(model);
+			this.heapBytes = heapBytes;
+			this.failure = failure;
+			done = true;
+			notifyAll();
+		}
+
+		// waits for loading to finish, and returns the model, or null if it
+		// has since been collected
+		synchronized T await(String key) throws IOException {
+			boolean interrupted = false;
+			while (!done) {
+				try {
+					wait();
+				} catch (InterruptedException exc) {
+					interrupted = true;
+				}
+			}
+			if (interrupted)
+				Thread.currentThread().interrupt();
+			if (failure != null)
+				throw new IOException("Unable to load model: " + key, failure);
+			return (ref != null) ? ref.get() : null;
+		}
+
+		synchronized boolean isDone() {
+			return done;
+		}
+
+		// whether the model has been loaded and since been collected
+		synchronized boolean isCollected() {
+			return ref != null && ref.get() == null;
+		}
+
+		synchronized long getHeapBytes() {
+			return heapBytes;
+		}
+	}
+
+	// the entries by key, in order of registration
+	private final Map<String, Entry<T>> entries = new LinkedHashMap<String, Entry<T>>();
+
+	/**
+	 * Returns the key for the given file, ie its canonical path, last
+	 * modification time and length, followed by the given qualifier, if any.
+	 * A file which is replaced thus gets a new key, and is loaded afresh.
+	 */
+	public static String fileKey(String filename, String qualifier) throws IOException {
+		File file = new File(filename);
+		String retval = file.getCanonicalPath() + " [" + file.lastModified() + ", "
+				+ file.length() + "]";
+		return (qualifier != null) ? retval + " (" + qualifier + ")" : retval;
+	}
+
+	/**
+	 * Returns the model with the given key, loading it with the given loader
+	 * if it is not yet registered (or has since been collected), and
+	 * increments its reference count. Each call should be matched by a call
+	 * to release once the model is no longer needed. The model must not be
+	 * null.
+	 */
+	public T acquire(String key, Loader<T> loader) throws IOException {
+		while (true) {
+			Entry<T> entry;
+			boolean load = false;
+			synchronized (this) {
+				purge();
+				entry = entries.get(key);
+				if (entry == null) {
+					entry = new Entry<T>();
+					entries.put(key, entry);
+					load = true;
+				}
+				entry.refCount++;
+			}
+			if (load) {
+				try {
+					T model = loader.load();
+					entry.finish(model, loader.heapBytes(model), null);
+					return model;
+				} catch (IOException exc) {
+					fail(key, entry, exc);
+					throw exc;
+				} catch (RuntimeException exc) {
+					fail(key, entry, exc);
+					throw exc;
+				} catch (Error err) {
+					fail(key, entry, err);
+					throw err;
+				}
+			}
+			// retry if collected after loading, before this thread woke up
+			T model = entry.await(key);
+			if (model != null)
+				return model;
+		}
+	}
+
+	// drops the entries whose models have been collected
+	private synchronized void purge() {
+		for (Iterator<Entry<T>> it = entries.values().iterator(); it.hasNext();) {
+			if (it.next().isCollected())
+				it.remove();
+		}
+	}
+
+	// drops the given entry after a failure, and records the failure
+	private void fail(String key, Entry<T> entry, Throwable failure) {
+		synchronized (this) {
+			if (entries.get(key) == entry)
+				entries.remove(key);
+		}
+		entry.finish(null, 0, failure);
+	}
+
+	/**
+	 * Decrements the reference count of the model with the given key, and
+	 * drops it from the registry if the count reaches zero, in which case
+	 * true is returned.
+	 */
+	public synchronized boolean release(String key) {
+		purge();
+		Entry<T> entry = entries.get(key);
+		if (entry == null)
+			return false;
+		if (--entry.refCount > 0)
+			return false;
+		entries.remove(key);
+		return true;
+	}
+
+	/** Returns whether a model is registered with the given key. */
+	public synchronized boolean contains(String key) {
+		purge();
+		return entries.containsKey(key);
+	}
+
+	/** Returns the keys of the registered models. */
+	public synchronized List<String> getKeys() {
+		purge();
+		return new ArrayList<String>(entries.keySet());
+	}
+
+	/**
+	 * Returns the reference count of the model with the given key, or zero if
+	 * none.
+	 */
+	public synchronized int getRefCount(String key) {
+		purge();
+		Entry<T> entry = entries.get(key);
+		return (entry != null) ? entry.refCount : 0;
+	}
+
+	/**
+	 * Returns the estimated heap bytes of the model with the given key, or
+	 * zero if none or if it is still loading.
+	 */
+	public synchronized long getHeapBytes(String key) {
+		purge();
+		Entry<T> entry = entries.get(key);
+		return (entry != null) ? entry.getHeapBytes() : 0;
+	}
+
+	/** Returns the estimated heap bytes of all the registered models. */
+	public synchronized long getTotalHeapBytes() {
+		purge();
+		long retval = 0;
+		for (Entry<T> entry : entries.values())
+			retval += entry.getHeapBytes();
+		return retval;
+	}
+
+	/**
+	 * Returns a report with a line for each registered model, giving its key,
+	 * reference count and estimated heap bytes.
+	 */
+	public synchronized String toString() {
+		purge();
+		StringBuffer sb = new StringBuffer();
+		for (Map.Entry<String, Entry<T>> e : entries.entrySet()) {
+			Entry<T> entry = e.getValue();
+			sb.append(e.getKey()).append(": refs ").append(entry.refCount);
+			if (entry.isDone())
+				sb.append(", heap bytes ").append(entry.getHeapBytes());
+			else
+				sb.append(", loading");
+			sb.append('\n');
+		}
+		return sb.toString();
+	}
+}
@@ -33,14 +33,23 @@ import java.util.*;
  * semantic classes. Words in the target strings are assumed to contain any
  * desired delimiters. With the exact matches flag set, only exact matches
  * count.
+ * <p>
+ * The target n-grams are stored in an index, which maps each n-gram to an id
+ * given the id of its prefix and its last word, so that the longest target
+ * n-gram starting at each word is found by extending the match word by word.
+ * Since the sub-n-grams of target n-grams are target n-grams too, these match
+ * lengths determine the matches of every order. When scoring a sign, the
+ * match lengths are stored with it, and those of its input signs are reused
+ * where the matches cannot extend across the boundaries between them, so that
+ * only the words near the boundaries are looked up again.
  *
  * @author Michael White
  * @version $Revision: 1.18 $, $Date: 2011/05/15 20:35:06 $
  */
 public class NgramPrecisionModel extends NgramScorer implements SelfParaphraseBiaser {
-	// n-grams in the target phrases
-	@SuppressWarnings("unchecked")
-	private Set<List<Association>> targetNgrams = new THashSet();
+	// the index of the n-grams in the target phrases, which is replaced
+	// rather than changed when the targets are set
+	private volatile NgramIndex targetIndex = new NgramIndex();
 
 	// weights
 	private double[] weights = null;
@@ -51,8 +60,82 @@ public class NgramPrecisionModel extends NgramScorer implements SelfParaphraseBi
 	/** Reusable list of reduced words. */
 	protected List<Association> reducedWords = new ArrayList<Association>();
 
-	/** Reusable word list, with identity equals. */
-	protected List<Association> wordList = new ArrayListWithIdentityEquals<Association>();
+	/**
+	 * An index of n-grams of reduced words, which are compared by identity.
+	 * Each word and each n-gram is given an id, and n-grams are looked up by
+	 * the id of their prefix and the id of their last word. Once built, an
+	 * index is not changed, and may thus be shared by threads.
+	 */
+	private static class NgramIndex {
+		// the word ids, offset by one, as trove maps return zero if absent
+		private final TObjectIntHashMap wordIds = new TObjectIntHashMap(
+				new TObjectIdentityHashingStrategy());
+		// the n-gram ids by prefix and last word id, where unigrams have the
+		// empty prefix, with id zero
+		private final TLongIntHashMap ngramIds = new TLongIntHashMap();
+
+		// returns the key for the given prefix and word ids
+		private static long key(int prefixId, int wordId) {
+			return ((long) prefixId << 32) | (wordId & 0xffffffffL);
+		}
+
+		// adds the n-grams starting at the given position, up to the given
+		// length
+		void add(List<Association> words, int pos, int len) {
+			int prefixId = 0;
+			for (int i = pos; i < pos + len; i++) {
+				Association w = words.get(i);
+				int wordId = wordIds.get(w);
+				if (wordId == 0) {
+					wordId = wordIds.size() + 1;
+					wordIds.put(w, wordId);
+				}
+				long key = key(prefixId, wordId);
+				int ngramId = ngramIds.get(key);
+				if (ngramId == 0) {
+					ngramId = ngramIds.size() + 1;
+					ngramIds.put(key, ngramId);
+				}
+				prefixId = ngramId;
+			}
+		}
+
+		// returns the length of the longest n-gram in the index starting at
+		// the given position, up to the given length
+		int matchLength(List<Association> words, int pos, int len) {
+			int prefixId = 0;
+			for (int i = 0; i < len; i++) {
+				int wordId = wordIds.get(words.get(pos + i));
+				if (wordId == 0)
+					return i;
+				prefixId = ngramIds.get(key(prefixId, wordId));
+				if (prefixId == 0)
+					return i;
+			}
+			return len;
+		}
+	}
+
+	/**
+	 * The match lengths of the reduced words of a sign, for a given index and
+	 * direction.
+	 */
+	private static class MatchLengths {
+		// the index
+		private final NgramIndex index;
+		// the reverse flag
+		private final boolean reverse;
+		// the match lengths of the words, in the order scored
+		private final byte[] lengths;
+		// the next match lengths, for another index or direction
+		private volatile MatchLengths next;
+
+		MatchLengths(NgramIndex index, boolean reverse, byte[] lengths) {
+			this.index = index;
+			this.reverse = reverse;
+			this.lengths = lengths;
+		}
+	}
 
 	/**
 	 * Creates a new 4-gram precision model with no initial target strings and
@@ -122,6 +205,7 @@ public class NgramPrecisionModel extends NgramScorer implements SelfParaphraseBi
 	/** Sets the exact matches flag. */
 	public void setExactMatches(boolean exactMatches) {
 		this.exactMatches = exactMatches;
+		resetThreadCopies();
 	}
 
 	/** Returns the exact matches flag. */
@@ -129,6 +213,16 @@ public class NgramPrecisionModel extends NgramScorer implements SelfParaphraseBi
 		return exactMatches;
 	}
 
+	/**
+	 * Returns a copy of this scorer for use by the current thread, with its
+	 * own reduced words.
+	 */
+	protected NgramScorer copyForThread() {
+		NgramPrecisionModel retval = (NgramPrecisionModel) super.copyForThread();
+		retval.reducedWords = new ArrayList<Association>();
+		return retval;
+	}
+
 	/** Reduces the words in wordsToScore to reducedWords, before scoring. */
 	protected void prepareToScoreWords() {
 		reducedWords.clear();
@@ -163,9 +257,22 @@ public class NgramPrecisionModel extends NgramScorer implements SelfParaphraseBi
 	 * in the target strings divided by the number of n-grams in the word
 	 * sequence. With the exact matches flag set, only exact matches count. With
 	 * short sequences (less than the order), the score is adjusted
-	 * proportionally to the max score.
+	 * proportionally to the max score. The scorer may be called by multiple
+	 * threads.
 	 */
-	public synchronized double score(Symbol sign, boolean complete) {
+	public double score(Symbol sign, boolean complete) {
+		NgramPrecisionModel scorer = (NgramPrecisionModel) forThread();
+		if (scorer == null) {
+			synchronized (this) {
+				return scoreInThread(sign, complete);
+			}
+		}
+		return scorer.scoreInThread(sign, complete);
+	}
+
+	// returns the score for the given sign, using the scratch state of this
+	// scorer
+	private double scoreInThread(Symbol sign, boolean complete) {
 		// setup
 		List<Association> words = sign.getAssociations();
 		if (words == null)
@@ -180,10 +287,20 @@ public class NgramPrecisionModel extends NgramScorer implements SelfParaphraseBi
 			}
 		}
 		prepareToScoreWords();
+		// count matches of each order
+		NgramIndex index = targetIndex;
+		byte[] lengths = matchLengths(index);
+		int[] matches = new int[order + 1];
+		for (int i = 0; i < lengths.length; i++) {
+			for (int k = 1; k <= lengths[i]; k++)
+				matches[k]++;
+		}
+		if (!tagsAdded)
+			putMatchLengths(sign, new MatchLengths(index, reverse, lengths));
 		// calc weighted precision score
 		double retval = 0;
 		for (int i = 0; i < order; i++) {
-			retval += weights[i] * ngramPrecision(i + 1);
+			retval += weights[i] * ngramPrecision(i + 1, matches[i + 1]);
 		}
 		signToScore = null;
 		// adjust score for short sequences
@@ -212,35 +329,79 @@ public class NgramPrecisionModel extends NgramScorer implements SelfParaphraseBi
 		throw new UnsupportedOperationException();
 	}
 
-	// returns the n-gram precision of the given order, or zero if too few words
-	private double ngramPrecision(int order) {
+	// returns the match lengths of the reduced words for the given index,
+	// reusing those of the input signs of signToScore where possible
+	private byte[] matchLengths(NgramIndex index) {
+		int size = reducedWords.size();
+		byte[] retval = new byte[size];
+		Arrays.fill(retval, (byte) -1);
+		if (signToScore != null) {
+			Symbol[] inputs = signToScore.getDerivationHistory().getInputs();
+			if (inputs != null) {
+				int offset = (startTagAdded) ? 1 : 0;
+				for (int k = 0; k < inputs.length; k++) {
+					Symbol input = (!reverse) ? inputs[k] : inputs[inputs.length - 1 - k];
+					MatchLengths inputLengths = getMatchLengths(input, index);
+					if (inputLengths == null)
+						break;
+					byte[] lengths = inputLengths.lengths;
+					int len = lengths.length;
+					if (offset + len > size) {
+						// should not happen: give up on the input lengths
+						Arrays.fill(retval, (byte) -1);
+						break;
+					}
+					// reuse lengths of matches which cannot extend further
+					for (int i = 0; i < len; i++) {
+						if (lengths[i] < len - i || lengths[i] == order)
+							retval[offset + i] = lengths[i];
+					}
+					offset += len;
+				}
+			}
+		}
+		for (int i = 0; i < size; i++) {
+			if (retval[i] < 0)
+				retval[i] = (byte) index.matchLength(reducedWords, i, Math.min(order, size - i));
+		}
+		return retval;
+	}
+
+	// returns the match lengths of the given sign for the given index and
+	// the reverse flag, or null if none
+	private MatchLengths getMatchLengths(Symbol sign, NgramIndex index) {
+		MatchLengths lengths = (MatchLengths) sign.getData(MatchLengths.class);
+		for (; lengths != null; lengths = lengths.next) {
+			if (lengths.index == index && lengths.reverse == reverse)
+				return lengths;
+		}
+		return null;
+	}
+
+	// stores the given match lengths with the given sign
+	private void putMatchLengths(Symbol sign, MatchLengths lengths) {
+		MatchLengths first = (MatchLengths) sign.getData(MatchLengths.class);
+		if (first == null)
+			sign.addData(lengths);
+		else {
+			lengths.next = first.next;
+			first.next = lengths;
+		}
+	}
+
+	// returns the n-gram precision of the given order with the given number
+	// of matches, or zero if too few words
+	private double ngramPrecision(int order, int matches) {
 		int numWords = reducedWords.size();
 		int numNgrams = numWords - (order - 1);
 		if (numNgrams <= 0)
 			return 0;
-		int matches = 0;
-		for (int i = 0; i < numNgrams; i++) {
-			setNgram(reducedWords, i, order);
-			if (targetNgrams.contains(wordList))
-				matches++;
-		}
 		if (exactMatches)
 			return (matches == numNgrams) ? 1.0 : 0.0;
 		else
 			return (matches * 1.0) / numNgrams;
 	}
 
-	/**
-	 * Sets wordList to be the n-gram of the given order using words starting at
-	 * pos i.
-	 */
-	protected synchronized void setNgram(List<Association> words, int i, int order) {
-		wordList.clear();
-		for (int j = 0; j < order; j++) {
-			wordList.add(words.get(i + j));
-		}
-	}
-
 	/**
 	 * Sets the keys in keysList to hold the ngram starting at the given index
 	 * in wordsToScore and with the given order; returns true if the operation
@@ -254,32 +415,9 @@ public class NgramPrecisionModel extends NgramScorer implements SelfParaphraseBi
 		return true;
 	}
 
-	/**
-	 * Makes a canonical n-gram of the given order using words starting at pos
-	 * i. Sublists are shared, a la a trie data structure.
-	 */
-	@SuppressWarnings("unchecked")
-	protected List<Association> makeNgram(List<Association> words, int i, int order) {
-		// check for one already interned
-		setNgram(words, i, order);
-		List<Association> alreadyInterned = (List<Association>) Interner
-				.getGlobalInterned(wordList);
-		if (alreadyInterned != null)
-			return alreadyInterned;
-		// if order is 1, intern new singleton list
-		if (order == 1) {
-			return (List<Association>) Interner.globalIntern(new SingletonList<Association>(words
-					.get(i)));
-		}
-		// otherwise, extend list for the first word with suffix list
-		List<Association> firstOneList = makeNgram(words, i, 1);
-		List<Association> suffixList = makeNgram(words, i + 1, order - 1);
-		return (List<Association>) Interner.globalIntern(new StructureSharingList<Association>(
-				firstOneList, suffixList));
-	}
-
-	// initializes the n-grams from the target phrases
+	// initializes the index of the n-grams from the target phrases
 	private void initTargetNgrams(String[] targets) {
+		NgramIndex index = new NgramIndex();
 		for (int j = 0; j < targets.length; j++) {
 			if (targets[j].length() == 0)
 				continue;
@@ -298,19 +436,17 @@ public class NgramPrecisionModel extends NgramScorer implements SelfParaphraseBi
 				Association w = wordsToScore.get(i);
 				wordsToScore.set(i, reduceToMuster(w));
 			}
-			// make and store target n-grams
-			for (int k = 0; k < order; k++) {
-				for (int i = 0; i < numWords - k; i++) {
-					targetNgrams.add(makeNgram(wordsToScore, i, k + 1));
-				}
+			// index target n-grams
+			for (int i = 0; i < numWords; i++) {
+				index.add(wordsToScore, i, Math.min(order, numWords - i));
 			}
 		}
+		targetIndex = index;
 	}
 
 	/** Sets the target strings for implementing the self-paraphrase bias. */
-	@SuppressWarnings("unchecked")
 	public void setTargets(String[] targets) {
-		targetNgrams = new THashSet();
 		initTargetNgrams(targets);
+		resetThreadCopies();
 	}
 }
@@ -30,11 +30,23 @@ import java.io.*;
 
 /**
  * Super class for n-gram scoring models.
+ * <p>
+ * Scorers may be shared by threads. The public scoring methods are carried
+ * out by a per-thread copy of the scorer, made with copyForThread, which
+ * shares the model with the scorer but has its own scratch state, such as
+ * wordsToScore and keysList. Scorers which cannot be copied instead carry out
+ * these methods while synchronized on the scorer. The copies are remade when
+ * the scorer's settings change.
+ * <p>
+ * When scoring signs, the log probs of the words of each sign are stored with
+ * the sign in an NgramState, so that a sign made by combining others only
+ * needs to have the words at the boundaries of its inputs scored.
  *
  * @author Michael White
  * @version $Revision: 1.37 $, $Date: 2010/02/25 22:26:11 $
  */
-public abstract class NgramScorer implements SymbolScorer, Reversible, FeatureExtractor {
+public abstract class NgramScorer implements SymbolScorer, Reversible, FeatureExtractor,
+		Cloneable {
 	protected NgramScorer() {
 	}
 
@@ -73,11 +85,52 @@ public abstract class NgramScorer implements SymbolScorer, Reversible, FeatureEx
 					((Reversible) filter).setReverse(reverse);
 			}
 		}
+		resetThreadCopies();
 	}
 
 	/** Root of the n-gram trie. Nodes store NgramFloats instances. */
 	protected TrieMap<Object, NgramFloats> trieMapRoot = new TrieMap<Object, NgramFloats>(null);
 
+	/**
+	 * The compact n-gram trie, which is used in place of the trie map when
+	 * present.
+	 */
+	protected NgramTrie ngramTrie = null;
+
+	// the rough number of heap bytes per trie map node, including its data
+	// and its slot in the parent's child map
+	private static final int TRIE_MAP_NODE_BYTES = 80;
+
+	/**
+	 * Returns a rough estimate of the heap bytes taken up by the n-gram trie
+	 * or trie map of this scorer, not counting the keys, which are interned.
+	 */
+	public long heapBytes() {
+		if (ngramTrie != null)
+			return ngramTrie.heapBytes();
+		if (trieMapRoot == null)
+			return 0;
+		long numNodes = 0;
+		List<TrieMap<Object, NgramFloats>> nodes = new ArrayList<TrieMap<Object, NgramFloats>>();
+		nodes.add(trieMapRoot);
+		while (!nodes.isEmpty()) {
+			TrieMap<Object, NgramFloats> node = nodes.remove(nodes.size() - 1);
+			numNodes++;
+			for (Object key : node.getChildKeys())
+				nodes.add(node.getChild(key));
+		}
+		return numNodes * TRIE_MAP_NODE_BYTES;
+	}
+
+	/**
+	 * Releases any shared model data acquired from a registry when loading
+	 * this scorer, so that it may be dropped once no other scorers use it.
+	 * The scorer should not be used afterwards. The default implementation
+	 * does nothing.
+	 */
+	public void release() {
+	}
+
 	/** An ngram data object, for holding the log prob and backoff weight. */
 	public static class NgramFloats {
 		/** The log prob. */
@@ -112,6 +165,7 @@ public abstract class NgramScorer implements SymbolScorer, Reversible, FeatureEx
 	/** Sets the debug score flag. */
 	public void setDebug(boolean debugScore) {
 		this.debugScore = debugScore;
+		resetThreadCopies();
 	}
 
 	/** List of n-gram filters, for identifying unhappy sequences. */
@@ -123,6 +177,7 @@ public abstract class NgramScorer implements SymbolScorer, Reversible, FeatureEx
 			ngramFilters = new ArrayList<NgramFilter>();
 		}
 		ngramFilters.add(filter);
+		resetThreadCopies();
 	}
 
 	/**
@@ -136,10 +191,70 @@ public abstract class NgramScorer implements SymbolScorer, Reversible, FeatureEx
 	 */
 	public void setAlphabet(Alphabet alphabet) {
 		this.alphabet = alphabet;
+		resetThreadCopies();
+	}
+
+	/**
+	 * Cache of log probs, keyed from a sign's words by identity, and shared by
+	 * the per-thread copies of the scorer.
+	 */
+	protected IdentityFloatCache cachedLogProbs = new IdentityFloatCache();
+
+	// the per-thread copies of this scorer (null in the copies themselves)
+	private volatile ThreadLocal<NgramScorer> threadCopies = newThreadCopies();
+
+	// makes a new thread local for per-thread copies
+	private ThreadLocal<NgramScorer> newThreadCopies() {
+		return new ThreadLocal<NgramScorer>() {
+			protected NgramScorer initialValue() {
+				return copyForThread();
+			}
+		};
 	}
 
-	/** Weak hash map for cached log probs, keyed from a sign's words. */
-	protected Map<List<Association>, Float> cachedLogProbs = null;
+	/**
+	 * Returns the copy of this scorer for the current thread, which is this
+	 * scorer itself if it is a copy, or null if the scorer cannot be copied.
+	 */
+	protected NgramScorer forThread() {
+		ThreadLocal<NgramScorer> copies = threadCopies;
+		return (copies != null) ? copies.get() : this;
+	}
+
+	/**
+	 * Discards the per-thread copies of this scorer, so that they are remade
+	 * with the current settings. Subclasses should invoke this method when
+	 * changing settings.
+	 */
+	protected void resetThreadCopies() {
+		if (threadCopies != null)
+			threadCopies = newThreadCopies();
+	}
+
+	/**
+	 * Returns a copy of this scorer for use by the current thread, which
+	 * shares the model but has its own scratch state, or null if the scorer
+	 * cannot be copied. The default implementation makes a shallow copy with
+	 * new scratch state for the fields of this class. Subclasses with further
+	 * scratch state should override this method to renew it.
+	 */
+	protected NgramScorer copyForThread() {
+		NgramScorer retval;
+		try {
+			retval = (NgramScorer) clone();
+		} catch (CloneNotSupportedException exc) {
+			throw (RuntimeException) new RuntimeException().initCause(exc);
+		}
+		retval.threadCopies = null;
+		retval.signToScore = null;
+		retval.wordsToScore = new ArrayList<Association>();
+		retval.tagsAdded = false;
+		retval.startTagAdded = false;
+		retval.keysList = new ArrayList<Object>();
+		retval.featureKeysList = new ArrayList<String>();
+		retval.keyIds = new int[8];
+		return retval;
+	}
 
 	/** Reference to current sign to score. */
 	protected Symbol signToScore = null;
@@ -150,23 +265,24 @@ public abstract class NgramScorer implements SymbolScorer, Reversible, FeatureEx
 	/** Flag for whether start/end tags were added with the current words. */
 	protected boolean tagsAdded = false;
 
+	/** Flag for whether a start tag was added before the current words. */
+	protected boolean startTagAdded = false;
+
 	/** Reusable list of keys for n-gram lookups. */
 	protected List<Object> keysList = new ArrayList<Object>();
 
 	/** Reusable list of keys for n-gram feature lookups. */
 	protected List<String> featureKeysList = new ArrayList<String>();
 
-	/** Gets a cached log prob for the given list of words (or null if none). */
-	protected Float getCachedLogProb(List<Association> words) {
-		if (cachedLogProbs == null)
-			return null;
+	/**
+	 * Gets a cached log prob for the given list of words (or NaN if none).
+	 */
+	protected float getCachedLogProb(List<Association> words) {
 		return cachedLogProbs.get(words);
 	}
 
 	/** Caches a log prob for the given list of words. */
-	protected void putCachedLogProb(List<Association> words, Float logprob) {
-		if (cachedLogProbs == null)
-			cachedLogProbs = new WeakHashMap<List<Association>, Float>();
+	protected void putCachedLogProb(List<Association> words, float logprob) {
 		cachedLogProbs.put(words, logprob);
 	}
 
@@ -180,7 +296,7 @@ public abstract class NgramScorer implements SymbolScorer, Reversible, FeatureEx
 	 * then returns the result of <code>logprob()</code> converted to a
 	 * probability.
 	 */
-	public synchronized double score(Symbol sign, boolean complete) {
+	public double score(Symbol sign, boolean complete) {
 		return convertToProb(logprob(sign, complete));
 	}
 
@@ -193,13 +309,25 @@ public abstract class NgramScorer implements SymbolScorer, Reversible, FeatureEx
 	 * <code>signToScore</code>, calls <code>prepareToScoreWords</code>, and
 	 * then returns the result of <code>logProb()</code>.
 	 */
-	public synchronized double logprob(Symbol sign, boolean complete) {
+	public double logprob(Symbol sign, boolean complete) {
+		NgramScorer scorer = forThread();
+		if (scorer == null) {
+			synchronized (this) {
+				return logprobInThread(sign, complete);
+			}
+		}
+		return scorer.logprobInThread(sign, complete);
+	}
+
+	// returns the log prob for the given sign, using the scratch state of
+	// this scorer
+	private double logprobInThread(Symbol sign, boolean complete) {
 		List<Association> words = sign.getAssociations();
 		if (words == null)
 			return 0;
 		if (!complete) { // check cache
-			Float logprob = getCachedLogProb(words);
-			if (logprob != null)
+			float logprob = getCachedLogProb(words);
+			if (!Float.isNaN(logprob))
 				return logprob;
 		}
 		signToScore = sign;
@@ -221,7 +349,7 @@ public abstract class NgramScorer implements SymbolScorer, Reversible, FeatureEx
 	 * Returns an n-gram probability from the given list of words, by converting
 	 * the result of the <code>logprob</code> method.
 	 */
-	public synchronized double score(List<Association> words) {
+	public double score(List<Association> words) {
 		return convertToProb(logprob(words));
 	}
 
@@ -230,7 +358,19 @@ public abstract class NgramScorer implements SymbolScorer, Reversible, FeatureEx
 	 * simplified version of scoring a sign's words that does not cache results,
 	 * filter n-grams or ever add sentence delimiters.
 	 */
-	public synchronized double logprob(List<Association> words) {
+	public double logprob(List<Association> words) {
+		NgramScorer scorer = forThread();
+		if (scorer == null) {
+			synchronized (this) {
+				return logprobInThread(words);
+			}
+		}
+		return scorer.logprobInThread(words);
+	}
+
+	// returns the log prob for the given words, using the scratch state of
+	// this scorer
+	private double logprobInThread(List<Association> words) {
 		setWordsToScore(words, false);
 		prepareToScoreWords();
 		return logprob();
@@ -249,9 +389,11 @@ public abstract class NgramScorer implements SymbolScorer, Reversible, FeatureEx
 	protected void setWordsToScore(List<Association> words, boolean complete) {
 		wordsToScore.clear();
 		tagsAdded = false;
+		startTagAdded = false;
 		if (complete && (reverse || words.get(0).getForm() != "<s>")) {
 			wordsToScore.add(AssociationPool.createMuster("<s>"));
 			tagsAdded = true;
+			startTagAdded = true;
 		}
 		if (reverse) {
 			for (int j = words.size() - 1; j >= 0; j--) {
@@ -277,6 +419,18 @@ public abstract class NgramScorer implements SymbolScorer, Reversible, FeatureEx
 	 * completness flag.
 	 */
 	public FeatureMap extractFeatureMap(Symbol sign, boolean complete) {
+		NgramScorer scorer = forThread();
+		if (scorer == null) {
+			synchronized (this) {
+				return extractFeatureMapInThread(sign, complete);
+			}
+		}
+		return scorer.extractFeatureMapInThread(sign, complete);
+	}
+
+	// returns the feature map for the given sign, using the scratch state of
+	// this scorer
+	private FeatureMap extractFeatureMapInThread(Symbol sign, boolean complete) {
 		FeatureMap featmap = new FeatureMap();
 		// do setup as with scoring
 		List<Association> words = sign.getAssociations();
@@ -362,43 +516,163 @@ public abstract class NgramScorer implements SymbolScorer, Reversible, FeatureEx
 		return featureKeysList;
 	}
 
+	/**
+	 * The n-gram state of a sign for a scorer, stored with the sign's data
+	 * objects. The state holds the log probs of the sign's words, as scored
+	 * by logProbFromNgram when the sign was scored without sentence
+	 * delimiters being added, together with their total. When signs are
+	 * combined, the log prob of each word at least n-1 words into an input
+	 * sign is unchanged, as its n-gram lies within the input sign, so only
+	 * the words at the left boundary of each input sign (and any added
+	 * delimiters) need to be scored again. The states of different scorers
+	 * for the same sign are chained together.
+	 */
+	public static class NgramState {
+		// the scorer's state key
+		private final Object key;
+		// the scorer's reverse flag
+		private final boolean reverse;
+		/**
+		 * The log probs of the words, in the order scored, or NaN for initial
+		 * words whose total was taken from the cache.
+		 */
+		public final float[] logprobs;
+		/** The total log prob. */
+		public final float total;
+		// the next state, for another scorer
+		private volatile NgramState next;
+
+		/** Constructor. */
+		private NgramState(Object key, boolean reverse, float[] logprobs, float total) {
+			this.key = key;
+			this.reverse = reverse;
+			this.logprobs = logprobs;
+			this.total = total;
+		}
+	}
+
+	// the key for the n-gram states of this scorer, shared by its per-thread
+	// copies
+	private final Object stateKey = new Object();
+
+	/** Returns the n-gram state of the given sign for this scorer, or null if none. */
+	protected NgramState getState(Symbol sign) {
+		NgramState state = (NgramState) sign.getData(NgramState.class);
+		for (; state != null; state = state.next) {
+			if (state.key == stateKey && state.reverse == reverse)
+				return state;
+		}
+		return null;
+	}
+
+	// stores the given n-gram state with the given sign
+	private void putState(Symbol sign, NgramState state) {
+		NgramState first = (NgramState) sign.getData(NgramState.class);
+		if (first == null)
+			sign.addData(state);
+		else {
+			state.next = first.next;
+			first.next = state;
+		}
+	}
+
 	/**
 	 * Returns a log prob for the words in wordsToScore. The default method
 	 * returns the log prob of the word sequence as determined by this language
 	 * model's <code>logProbFromNgram</code> method. The probabilities for the
-	 * first n-1 words are backed off to the lower order probabilities. If the
-	 * tagsAdded flag is false, the cache is checked to see whether the log prob
-	 * of the words of signToScore's initial sign has already been calculated,
-	 * and at the end the log prob of signToScore's words is stored in the
-	 * cache.
+	 * first n-1 words are backed off to the lower order probabilities. When
+	 * scoring signToScore, the log probs of the words of its input signs are
+	 * taken from their n-gram states where possible, so that only the words
+	 * at the boundaries need to be scored, and the words are summed in the
+	 * same order as when scoring them all. Failing a state for the initial
+	 * sign, its cached log prob is used, if its words begin wordsToScore. If
+	 * the tagsAdded flag is false, the n-gram state of signToScore is stored
+	 * at the end, and its log prob is stored in the cache.
 	 */
 	protected double logprob() {
+		int size = wordsToScore.size();
+		float[] logprobs = new float[size];
+		Arrays.fill(logprobs, Float.NaN);
 		float logProbTotal = 0;
 		int numCached = 0;
-		if (!tagsAdded && signToScore != null) { // check cache for initial
-													// words
+		if (signToScore != null) {
 			Symbol[] inputs = signToScore.getDerivationHistory().getInputs();
 			if (inputs != null) {
-				Symbol initialSign = (!reverse) ? inputs[0] : inputs[inputs.length - 1];
-				List<Association> initialWords = initialSign.getAssociations();
-				Float logprob = getCachedLogProb(initialWords);
-				if (logprob != null) {
-					logProbTotal = logprob.floatValue();
-					numCached = initialWords.size();
+				int offset = (startTagAdded) ? 1 : 0;
+				for (int k = 0; k < inputs.length; k++) {
+					Symbol input = (!reverse) ? inputs[k] : inputs[inputs.length - 1 - k];
+					NgramState state = getState(input);
+					if (state == null) {
+						// use cached log prob of initial words, if any
+						if (offset == 0 && isPrefix(input.getAssociations())) {
+							float logprob = getCachedLogProb(input.getAssociations());
+							if (!Float.isNaN(logprob)) {
+								logProbTotal = logprob;
+								numCached = offset = input.getAssociations().size();
+								continue;
+							}
+						}
+						break;
+					}
+					int len = state.logprobs.length;
+					if (offset + len > size) {
+						// should not happen: give up on the input states
+						Arrays.fill(logprobs, Float.NaN);
+						logProbTotal = 0;
+						numCached = 0;
+						break;
+					}
+					if (offset == 0) {
+						System.arraycopy(state.logprobs, 0, logprobs, 0, len);
+						logProbTotal = state.total;
+						numCached = len;
+					} else if (len >= order) {
+						System.arraycopy(state.logprobs, order - 1, logprobs, offset + order - 1, len
+								- (order - 1));
+					}
+					offset += len;
 				}
 			}
 		}
-		for (int i = numCached; i < wordsToScore.size(); i++) {
-			int orderToUse = Math.min(order, i + 1);
-			int startPos = i - (orderToUse - 1);
-			logProbTotal += logProbFromNgram(startPos, orderToUse);
-		}
-		if (!tagsAdded && signToScore != null) { // add log prob to cache
-			putCachedLogProb(signToScore.getAssociations(), new Float(logProbTotal));
+		logProbsFromNgrams(logprobs, numCached, order);
+		for (int i = numCached; i < size; i++)
+			logProbTotal += logprobs[i];
+		if (!tagsAdded && signToScore != null) { // add state and log prob to cache
+			// NB: the log probs of words whose total was cached are left as NaN
+			putState(signToScore, new NgramState(stateKey, reverse, logprobs, logProbTotal));
+			putCachedLogProb(signToScore.getAssociations(), logProbTotal);
 		}
 		return logProbTotal;
 	}
 
+	// returns whether the given words are a prefix of wordsToScore
+	private boolean isPrefix(List<Association> words) {
+		if (words.size() > wordsToScore.size())
+			return false;
+		for (int i = 0; i < words.size(); i++) {
+			if (words.get(i) != wordsToScore.get(i))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Sets the log probs of the words in wordsToScore from the given index on
+	 * that are not yet known, ie that are NaN in the given array, to the log
+	 * prob of each word given its preceding words, up to the given order. The
+	 * default implementation invokes logProbFromNgram for each one;
+	 * subclasses may score them in a batch instead.
+	 */
+	protected void logProbsFromNgrams(float[] logprobs, int from, int maxOrder) {
+		for (int i = from; i < logprobs.length; i++) {
+			if (Float.isNaN(logprobs[i])) {
+				int orderToUse = Math.min(maxOrder, i + 1);
+				int startPos = i - (orderToUse - 1);
+				logprobs[i] = logProbFromNgram(startPos, orderToUse);
+			}
+		}
+	}
+
 	/**
 	 * Returns the log prob of the ngram starting at the given index in
 	 * wordsToScore and with the given order, with backoff.
@@ -422,6 +696,7 @@ public abstract class NgramScorer implements SymbolScorer, Reversible, FeatureEx
 	/** Sets the the flag for using ngrams as features. */
 	public void setNgramFeatures(boolean useNgramFeatures) {
 		this.useNgramFeatures = useNgramFeatures;
+		resetThreadCopies();
 	}
 
 	/**
@@ -495,6 +770,8 @@ public abstract class NgramScorer implements SymbolScorer, Reversible, FeatureEx
 	 * backoff, or -99 if not found.
 	 */
 	protected float logProb(int pos, int len) {
+		if (ngramTrie != null)
+			return logProb(keyIds(pos, len), 0, len);
 		TrieMap<Object, NgramFloats> node = getNode(pos, len);
 		if (node != null && node.data != null)
 			return node.data.logprob;
@@ -513,6 +790,8 @@ public abstract class NgramScorer implements SymbolScorer, Reversible, FeatureEx
 	 * keysList, or 0 if not found.
 	 */
 	protected float backoffWeight(int pos, int len) {
+		if (ngramTrie != null)
+			return backoffWeight(keyIds(pos, len), 0, len);
 		TrieMap<Object, NgramFloats> node = getNode(pos, len);
 		if (node != null && node.data != null) {
 			float retval = node.data.bow;
@@ -523,6 +802,58 @@ public abstract class NgramScorer implements SymbolScorer, Reversible, FeatureEx
 		return 0;
 	}
 
+	/**
+	 * Returns the log prob (base 10) of the n-gram given by the ids in the
+	 * given range of the given array, with backoff, using the n-gram trie, or
+	 * -99 if not found.
+	 */
+	protected float logProb(int[] ids, int pos, int len) {
+		int index = ngramTrie.find(ids, pos, len);
+		if (index >= 0) {
+			float logprob = ngramTrie.getLogProb(len, index);
+			if (!Float.isNaN(logprob))
+				return logprob;
+		}
+		if (len == 1)
+			return -99;
+		float retval = logProb(ids, pos + 1, len - 1);
+		if (debugScore)
+			System.out.print("(" + (len - 1) + "-gram: " + retval + ") ");
+		if (retval > -99)
+			retval += backoffWeight(ids, pos, len - 1);
+		return retval;
+	}
+
+	/**
+	 * Returns the back-off weight (log base 10) of the n-gram given by the ids
+	 * in the given range of the given array, using the n-gram trie, or 0 if
+	 * not found.
+	 */
+	protected float backoffWeight(int[] ids, int pos, int len) {
+		int index = ngramTrie.find(ids, pos, len);
+		return (index >= 0) ? ngramTrie.getBackoffWeight(len, index) : 0;
+	}
+
+	/**
+	 * Returns the id of the given key in the n-gram trie, or -1 if none. The
+	 * default implementation looks up string keys as words.
+	 */
+	protected int keyId(Object key) {
+		return (key instanceof String) ? ngramTrie.getWordId((String) key) : -1;
+	}
+
+	// reusable array of key ids
+	private int[] keyIds = new int[8];
+
+	// returns the ids of the given sublist of keysList
+	private int[] keyIds(int pos, int len) {
+		if (keyIds.length < len)
+			keyIds = new int[len];
+		for (int j = 0; j < len; j++)
+			keyIds[j] = keyId(keysList.get(pos + j));
+		return keyIds;
+	}
+
 	/**
 	 * Returns the rank order centroid weights for a ranked list of the given
 	 * length. The weights go from highest to lowest, and sum to 1.
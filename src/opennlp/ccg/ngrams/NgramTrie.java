@@ -0,0 +1,569 @@
+///////////////////////////////////////////////////////////////////////////////
+// Copyright (C) 2015 Daniel Couto-Vale (RWTH Aachen)
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+//////////////////////////////////////////////////////////////////////////////
+
+package opennlp.ccg.ngrams;
+
+import gnu.trove.*;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StreamTokenizer;
+import java.nio.Buffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * A compact n-gram trie, in the manner of KenLM's trie data structure. Words
+ * are mapped to integer ids, and the n-grams of each order are stored in
+ * parallel arrays sorted by their context, so that the children of an
+ * (n-1)-gram form a contiguous range of the n-gram arrays, in which the last
+ * word is found by binary search. Unigrams are indexed directly by word id.
+ * Each n-gram thus costs a word id, a log prob, a back-off weight and a child
+ * pointer, rather than a map node per n-gram.
+ * <p>
+ * N-grams whose context is missing from the model are given blank entries
+ * for the context, whose log prob is NaN and whose back-off weight is zero,
+ * as with the intermediate nodes of a TrieMap. Once built, a trie is not
+ * changed, and may thus be shared by threads.
+ * <p>
+ * The arrays are accessed through int and float buffers, so that a
+ * MappedNgramTrie can answer the same queries directly against a binary image
+ * mapped into memory.
+ *
+ * @author Daniel Couto-Vale
+ * @version
+ */
+public class NgramTrie {
+
+	/** The order of the trie. */
+	public final int order;
+
+	// the number of words in the vocab
+	private final int numWords;
+
+	// the vocab, with ids offset by one, as trove maps return zero if absent
+	// (null if the vocab is provided by a subclass)
+	private final TObjectIntHashMap vocabIds;
+
+	// the words, by id
+	private final String[] vocab;
+
+	// the n-gram totals, as given in the header of the model file
+	private final int[] totals;
+
+	// the last word ids of the n-grams of each order (null for unigrams)
+	private final IntBuffer[] words;
+
+	// the log probs of the n-grams of each order
+	private final FloatBuffer[] logprobs;
+
+	// the back-off weights of the n-grams of each order (null for the top order)
+	private final FloatBuffer[] bows;
+
+	// the index of the first child of each n-gram, plus an end index (null
+	// for the top order)
+	private final IntBuffer[] next;
+
+	/**
+	 * Constructor from arrays.
+	 */
+	protected NgramTrie(String[] vocab, int[] totals, int[][] words, float[][] logprobs,
+			float[][] bows, int[][] next) {
+		this(vocab.length, vocab, totals, wrap(words), wrap(logprobs), wrap(bows), wrap(next));
+	}
+
+	/**
+	 * Constructor from buffers. If the vocab is null, the vocab methods must
+	 * be overridden.
+	 */
+	protected NgramTrie(int numWords, String[] vocab, int[] totals, IntBuffer[] words,
+			FloatBuffer[] logprobs, FloatBuffer[] bows, IntBuffer[] next) {
+		this.order = logprobs.length;
+		this.numWords = numWords;
+		this.vocab = vocab;
+		this.totals = totals;
+		this.words = words;
+		this.logprobs = logprobs;
+		this.bows = bows;
+		this.next = next;
+		if (vocab != null) {
+			vocabIds = new TObjectIntHashMap(vocab.length);
+			for (int i = 0; i < vocab.length; i++)
+				vocabIds.put(vocab[i], i + 1);
+		} else
+			vocabIds = null;
+	}
+
+	// wraps the given int arrays
+	private static IntBuffer[] wrap(int[][] arrays) {
+		IntBuffer[] retval = new IntBuffer[arrays.length];
+		for (int i = 0; i < arrays.length; i++)
+			retval[i] = (arrays[i] != null) ? IntBuffer.wrap(arrays[i]) : null;
+		return retval;
+	}
+
+	// wraps the given float arrays
+	private static FloatBuffer[] wrap(float[][] arrays) {
+		FloatBuffer[] retval = new FloatBuffer[arrays.length];
+		for (int i = 0; i < arrays.length; i++)
+			retval[i] = (arrays[i] != null) ? FloatBuffer.wrap(arrays[i]) : null;
+		return retval;
+	}
+
+	/** Returns the number of words in the vocab. */
+	public int numWords() {
+		return numWords;
+	}
+
+	/** Returns the word with the given id. */
+	public String getWord(int id) {
+		return vocab[id];
+	}
+
+	/** Returns the id of the given word, or -1 if it is not in the vocab. */
+	public int getWordId(String word) {
+		return vocabIds.get(word) - 1;
+	}
+
+	/** Returns a copy of the n-gram totals given in the header of the model file. */
+	public int[] getTotals() {
+		return totals.clone();
+	}
+
+	/** Returns the number of n-grams of the given order, including blank ones. */
+	public int size(int n) {
+		return logprobs[n - 1].limit();
+	}
+
+	/**
+	 * Returns a rough estimate of the heap bytes taken up by the trie, not
+	 * counting buffers outside the heap, such as mapped ones.
+	 */
+	public long heapBytes() {
+		long retval = heapBytes(words) + heapBytes(logprobs) + heapBytes(bows) + heapBytes(next);
+		if (vocab != null) {
+			// strings and their entries in the vocab map
+			for (String word : vocab)
+				retval += 64 + 2L * word.length();
+		}
+		return retval;
+	}
+
+	// returns the heap bytes of the given buffers
+	private static long heapBytes(Buffer[] buffers) {
+		long retval = 0;
+		for (Buffer buffer : buffers) {
+			if (buffer != null && !buffer.isDirect())
+				retval += 4L * buffer.capacity();
+		}
+		return retval;
+	}
+
+	/**
+	 * Returns the index of the n-gram given by the word ids in the given range
+	 * of the given array, or -1 if it is not in the trie.
+	 */
+	public int find(int[] ids, int pos, int len) {
+		if (len > order)
+			return -1;
+		int index = ids[pos];
+		if (index < 0 || index >= numWords)
+			return -1;
+		for (int n = 1; n < len; n++) {
+			IntBuffer nextN = next[n - 1];
+			index = search(words[n], nextN.get(index), nextN.get(index + 1), ids[pos + n]);
+			if (index < 0)
+				return -1;
+		}
+		return index;
+	}
+
+	// binary search for the given word id in the given range
+	private static int search(IntBuffer wordIds, int from, int to, int wordId) {
+		int lo = from;
+		int hi = to - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			int midId = wordIds.get(mid);
+			if (midId < wordId)
+				lo = mid + 1;
+			else if (midId > wordId)
+				hi = mid - 1;
+			else
+				return mid;
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the log prob of the n-gram of the given order with the given
+	 * index, which is NaN for blank entries.
+	 */
+	public float getLogProb(int n, int index) {
+		return logprobs[n - 1].get(index);
+	}
+
+	/**
+	 * Returns the back-off weight of the n-gram of the given order with the
+	 * given index, which is zero for the top order.
+	 */
+	public float getBackoffWeight(int n, int index) {
+		return (n < order) ? bows[n - 1].get(index) : 0;
+	}
+
+	/**
+	 * Returns the index of the first child of the n-gram of the given order
+	 * with the given index, or the end index of the children of the preceding
+	 * n-gram, given the index one past the last one.
+	 */
+	public int getChildIndex(int n, int index) {
+		return next[n - 1].get(index);
+	}
+
+	/**
+	 * Returns the last word id of the n-gram of the given order with the
+	 * given index.
+	 */
+	public int getLastWordId(int n, int index) {
+		return (n > 1) ? words[n - 1].get(index) : index;
+	}
+
+	/**
+	 * Reads a trie of the given order from the given reader, in ARPA (Doug
+	 * Paul) format, storing the n-gram totals given in the header in the
+	 * given array. Higher order n-grams are skipped.
+	 */
+	public static NgramTrie readArpa(int order, Reader in, int[] numNgrams) throws IOException {
+		StreamTokenizer tokenizer = NgramScorer.initTokenizer(in);
+		String[] tokens = new String[order + 2];
+		Builder builder = new Builder(order);
+		boolean foundData = false;
+		int currentOrder = 0;
+		int[] ids = new int[order];
+		// loop through lines
+		while (tokenizer.ttype != StreamTokenizer.TT_EOF) {
+			// read line into tokens
+			NgramScorer.readLine(tokenizer, tokens);
+			// check for blank line
+			if (tokens[0] == null)
+				continue;
+			// check for initial delimiter
+			if (tokens[0].equals("\\data\\")) {
+				foundData = true;
+				continue;
+			}
+			if (!foundData)
+				continue;
+			// read header line
+			if (tokens[0].equals("ngram")) {
+				int n = Integer.parseInt(tokens[1].substring(0, 1));
+				int total = Integer.parseInt(tokens[1].substring(2));
+				if (n > order)
+					continue;
+				numNgrams[n - 1] = total;
+				builder.ensureCapacity(n, total);
+				builder.setTotal(n - 1, total);
+				continue;
+			}
+			// check for final delimiter
+			if (tokens[0].equals("\\end\\"))
+				break;
+			// read line starting new order
+			if (tokens[0].equals("\\" + (currentOrder + 1) + "-grams:")) {
+				currentOrder++;
+				continue;
+			}
+			if (currentOrder == 0)
+				continue;
+			if (currentOrder > order)
+				break;
+			// read logprob
+			float logprob = Float.parseFloat(tokens[0]);
+			// read back-off weight (except with last order)
+			float bow = 0;
+			if (currentOrder < order && tokens[currentOrder + 1] != null) {
+				bow = Float.parseFloat(tokens[currentOrder + 1]);
+			}
+			// add n-gram
+			for (int i = 0; i < currentOrder; i++)
+				ids[i] = builder.wordId(tokens[i + 1]);
+			builder.add(currentOrder, ids, logprob, bow);
+		}
+		return builder.build();
+	}
+
+	/**
+	 * A builder for tries, which collects n-grams in any order, and sorts
+	 * them and adds blank contexts when building the trie.
+	 */
+	public static class Builder {
+
+		// the order
+		private final int order;
+
+		// the vocab
+		private final TObjectIntHashMap vocabIds = new TObjectIntHashMap();
+		private String[] vocab = new String[1024];
+		private int numWords = 0;
+
+		// the collected n-grams of each order, as flat arrays of ids
+		private final int[][] ids;
+		private final float[][] logprobs;
+		private final float[][] bows;
+		private final int[] counts;
+
+		// the totals given in the header of the model file
+		private int[] totals;
+
+		/** Constructor with the order. */
+		public Builder(int order) {
+			this.order = order;
+			totals = new int[order];
+			ids = new int[order][];
+			logprobs = new float[order][];
+			bows = new float[order][];
+			counts = new int[order];
+			for (int i = 0; i < order; i++) {
+				ids[i] = new int[16 * (i + 1)];
+				logprobs[i] = new float[16];
+				bows[i] = new float[16];
+			}
+		}
+
+		/** Returns the id of the given word, adding it to the vocab if needed. */
+		public int wordId(String word) {
+			int id = vocabIds.get(word);
+			if (id != 0)
+				return id - 1;
+			if (numWords == vocab.length)
+				vocab = Arrays.copyOf(vocab, numWords * 2);
+			vocab[numWords] = word;
+			vocabIds.put(word, ++numWords);
+			return numWords - 1;
+		}
+
+		/**
+		 * Sets the total with the given index, as given in the header of the
+		 * model file, extending the totals as needed.
+		 */
+		public void setTotal(int index, int total) {
+			if (index >= totals.length)
+				totals = Arrays.copyOf(totals, index + 1);
+			totals[index] = total;
+		}
+
+		/** Reserves space for the given number of n-grams of order n. */
+		public void ensureCapacity(int n, int capacity) {
+			int i = n - 1;
+			if (logprobs[i].length < capacity) {
+				ids[i] = Arrays.copyOf(ids[i], capacity * n);
+				logprobs[i] = Arrays.copyOf(logprobs[i], capacity);
+				bows[i] = Arrays.copyOf(bows[i], capacity);
+			}
+		}
+
+		/**
+		 * Adds the n-gram of order n with the given word ids (from the start
+		 * of the array), log prob and back-off weight. If the same n-gram is
+		 * added more than once, the last one wins.
+		 */
+		public void add(int n, int[] wordIds, float logprob, float bow) {
+			int i = n - 1;
+			int count = counts[i];
+			if (count == logprobs[i].length)
+				ensureCapacity(n, count * 2);
+			System.arraycopy(wordIds, 0, ids[i], count * n, n);
+			logprobs[i][count] = logprob;
+			bows[i][count] = bow;
+			counts[i] = count + 1;
+		}
+
+		/** Builds the trie. */
+		public NgramTrie build() {
+			// sort from the top order down, adding blank contexts as needed
+			for (int n = order; n > 1; n--) {
+				sort(n);
+				sort(n - 1);
+				addBlankContexts(n);
+			}
+			// index unigrams by word id
+			float[] unigramLogprobs = new float[numWords];
+			float[] unigramBows = new float[numWords];
+			Arrays.fill(unigramLogprobs, Float.NaN);
+			for (int k = 0; k < counts[0]; k++) {
+				unigramLogprobs[ids[0][k]] = logprobs[0][k];
+				unigramBows[ids[0][k]] = bows[0][k];
+			}
+			int[] unigramIds = new int[numWords];
+			for (int k = 0; k < numWords; k++)
+				unigramIds[k] = k;
+			ids[0] = unigramIds;
+			logprobs[0] = unigramLogprobs;
+			bows[0] = unigramBows;
+			counts[0] = numWords;
+			// link children to contexts
+			int[][] words = new int[order][];
+			int[][] next = new int[order - 1][];
+			for (int n = 2; n <= order; n++) {
+				int count = counts[n - 1];
+				int[] nIds = ids[n - 1];
+				int[] nWords = new int[count];
+				int[] contextNext = new int[counts[n - 2] + 1];
+				int context = 0;
+				for (int k = 0; k < count; k++) {
+					while (compareContext(n, k, context) > 0)
+						context++;
+					contextNext[context + 1]++;
+					nWords[k] = nIds[k * n + n - 1];
+				}
+				for (int c = 0; c < counts[n - 2]; c++)
+					contextNext[c + 1] += contextNext[c];
+				words[n - 1] = nWords;
+				next[n - 2] = contextNext;
+			}
+			// trim arrays
+			float[][] trieLogprobs = new float[order][];
+			float[][] trieBows = new float[order - 1][];
+			for (int n = 1; n <= order; n++) {
+				trieLogprobs[n - 1] = Arrays.copyOf(logprobs[n - 1], counts[n - 1]);
+				if (n < order)
+					trieBows[n - 1] = Arrays.copyOf(bows[n - 1], counts[n - 1]);
+			}
+			return new NgramTrie(Arrays.copyOf(vocab, numWords), totals.clone(), words,
+					trieLogprobs, trieBows, next);
+		}
+
+		// compares the context of the k-th n-gram with the given (n-1)-gram
+		private int compareContext(int n, int k, int context) {
+			int[] nIds = ids[n - 1];
+			int[] cIds = ids[n - 2];
+			for (int j = 0; j < n - 1; j++) {
+				int diff = nIds[k * n + j] - cIds[context * (n - 1) + j];
+				if (diff != 0)
+					return diff;
+			}
+			return 0;
+		}
+
+		// sorts the n-grams of order n, keeping the last of any duplicates
+		private void sort(int n) {
+			if (n == 1)
+				return;
+			final int i = n - 1;
+			int count = counts[i];
+			final int[] nIds = ids[i];
+			final int len = n;
+			// check whether already sorted without duplicates
+			boolean sorted = true;
+			for (int k = 1; sorted && k < count; k++)
+				sorted = compare(nIds, len, k - 1, k) < 0;
+			if (sorted)
+				return;
+			// sort a permutation, stably
+			int[] perm = new int[count];
+			for (int k = 0; k < count; k++)
+				perm[k] = k;
+			mergeSort(perm, new int[count], 0, count, nIds, len);
+			// copy in sorted order, keeping the last of any duplicates
+			int[] sortedIds = new int[nIds.length];
+			float[] sortedLogprobs = new float[logprobs[i].length];
+			float[] sortedBows = new float[bows[i].length];
+			int m = 0;
+			for (int k = 0; k < count; k++) {
+				int p = perm[k];
+				if (k + 1 < count && compare(nIds, len, p, perm[k + 1]) == 0)
+					continue;
+				System.arraycopy(nIds, p * len, sortedIds, m * len, len);
+				sortedLogprobs[m] = logprobs[i][p];
+				sortedBows[m] = bows[i][p];
+				m++;
+			}
+			ids[i] = sortedIds;
+			logprobs[i] = sortedLogprobs;
+			bows[i] = sortedBows;
+			counts[i] = m;
+		}
+
+		// compares the n-grams with the given indices
+		private static int compare(int[] nIds, int n, int k1, int k2) {
+			for (int j = 0; j < n; j++) {
+				int diff = nIds[k1 * n + j] - nIds[k2 * n + j];
+				if (diff != 0)
+					return diff;
+			}
+			return 0;
+		}
+
+		// stable merge sort of the given range of the permutation
+		private static void mergeSort(int[] perm, int[] tmp, int from, int to, int[] nIds, int n) {
+			if (to - from < 2)
+				return;
+			int mid = (from + to) >>> 1;
+			mergeSort(perm, tmp, from, mid, nIds, n);
+			mergeSort(perm, tmp, mid, to, nIds, n);
+			if (compare(nIds, n, perm[mid - 1], perm[mid]) <= 0)
+				return;
+			System.arraycopy(perm, from, tmp, from, to - from);
+			int a = from, b = mid;
+			for (int k = from; k < to; k++) {
+				if (b >= to || (a < mid && compare(nIds, n, tmp[a], tmp[b]) <= 0))
+					perm[k] = tmp[a++];
+				else
+					perm[k] = tmp[b++];
+			}
+		}
+
+		// adds blank entries for the missing contexts of the n-grams of
+		// order n, whose contexts are sorted
+		private void addBlankContexts(int n) {
+			if (n == 2)
+				return; // unigrams are indexed by word id
+			int count = counts[n - 1];
+			int numContexts = counts[n - 2];
+			int[] nIds = ids[n - 1];
+			int[] blank = new int[n - 1];
+			int context = 0;
+			boolean added = false;
+			for (int k = 0; k < count; k++) {
+				// skip n-grams with the same context as the last one
+				if (k > 0 && compareContexts(nIds, n, k - 1, k) == 0)
+					continue;
+				while (context < numContexts && compareContext(n, k, context) > 0)
+					context++;
+				if (context < numContexts && compareContext(n, k, context) == 0)
+					continue;
+				System.arraycopy(nIds, k * n, blank, 0, n - 1);
+				add(n - 1, blank, Float.NaN, 0);
+				added = true;
+			}
+			if (added)
+				sort(n - 1);
+		}
+
+		// compares the contexts of the n-grams with the given indices
+		private static int compareContexts(int[] nIds, int n, int k1, int k2) {
+			for (int j = 0; j < n - 1; j++) {
+				int diff = nIds[k1 * n + j] - nIds[k2 * n + j];
+				if (diff != 0)
+					return diff;
+			}
+			return 0;
+		}
+	}
+}
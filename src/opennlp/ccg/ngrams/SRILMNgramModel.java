@@ -163,6 +163,15 @@ public class SRILMNgramModel extends AbstractStandardNgramModel {
 	@Override
 	protected native void finalize() throws Throwable;
 
+	/**
+	 * Returns null, as the native model is released when this scorer is
+	 * finalized, so that scoring is synchronized instead.
+	 */
+	@Override
+	protected NgramScorer copyForThread() {
+		return null;
+	}
+
 	public static void main(String[] args) throws Exception {
 		String usage = "Usage: java opennlp.ccg.ngrams.SRILMNgramModel"
 				+ " <order> <lmfile> <lmtype> <tokens> (-reverse)";
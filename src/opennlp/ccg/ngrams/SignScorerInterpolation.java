@@ -65,11 +65,14 @@ public class SignScorerInterpolation implements SymbolScorer, FeatureExtractor {
 	 * Returns a score between 0 (worst) and 1 (best) for the given sign and
 	 * completeness flag, as the interpolation of the scores assigned by the
 	 * component models. In particular, returns the linear combination using the
-	 * established weights of the scores given by the component models.
+	 * established weights of the scores given by the component models, where
+	 * models with zero weight are not consulted.
 	 */
 	public double score(Symbol sign, boolean complete) {
 		double retval = 0;
 		for (int i = 0; i < models.length; i++) {
+			if (weights[i] == 0)
+				continue;
 			retval += models[i].score(sign, complete) * weights[i];
 		}
 		return retval;
@@ -48,11 +48,12 @@ public class SignScorerProduct implements SymbolScorer, FeatureExtractor {
 	/**
 	 * Returns a score between 0 (worst) and 1 (best) for the given sign and
 	 * completeness flag, as the product of the scores assigned by the component
-	 * models.
+	 * models. Once the product reaches zero, the remaining models are not
+	 * consulted.
 	 */
 	public double score(Symbol sign, boolean complete) {
 		double retval = 1.0;
-		for (int i = 0; i < models.length; i++) {
+		for (int i = 0; i < models.length && retval != 0; i++) {
 			retval *= models[i].score(sign, complete);
 		}
 		return retval;
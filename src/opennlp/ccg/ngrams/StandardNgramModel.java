@@ -22,23 +22,32 @@ import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
-import java.io.StreamTokenizer;
-import java.util.ArrayList;
 import java.util.List;
 
 import opennlp.ccg.lexicon.DefaultTokenizer;
 import opennlp.ccg.lexicon.Tokenizer;
 import opennlp.ccg.lexicon.Association;
-import opennlp.ccg.util.TrieMap;
 
 /**
  * A scorer for a standard n-gram backoff model. Unknown words are mapped to
- * &lt;unk&gt; if the latter is present in the model.
+ * &lt;unk&gt; if the latter is present in the model. The model is stored in a
+ * compact NgramTrie, and the words to score are mapped to their ids in the
+ * trie before scoring. Models may also be loaded from binary images made with
+ * MappedNgramTrie, which are mapped into memory rather than parsed. Tries
+ * loaded from files are shared through a registry, so that models loaded from
+ * the same file with the same order share the same trie until released or no
+ * longer in use.
  *
  * @author Michael White
  * @version $Revision: 1.19 $, $Date: 2011/10/11 03:29:42 $
  */
 public class StandardNgramModel extends AbstractStandardNgramModel {
+
+	/** The registry of tries loaded from files, by file and order. */
+	public static final ModelRegistry<NgramTrie> registry = new ModelRegistry<NgramTrie>();
+
+	// the registry key of the trie, if acquired from the registry
+	private String registryKey = null;
 	/**
 	 * Loads an n-gram model of the given order in ARPA (Doug Paul) format from
 	 * the given reader, with the given flag controlling whether words are
@@ -61,15 +70,43 @@ public class StandardNgramModel extends AbstractStandardNgramModel {
 	/**
 	 * Loads an n-gram model of the given order in ARPA (Doug Paul) format from
 	 * the given file, with the given flag controlling whether words are
-	 * replaced by their semantic classes.
+	 * replaced by their semantic classes. If the file is a binary image made
+	 * by MappedNgramTrie, it is mapped into memory instead. The trie is
+	 * acquired from the registry, and is only loaded if no other model of the
+	 * same order has been loaded from the same file and not released.
 	 */
-	public StandardNgramModel(int order, String filename, boolean useSemClasses) throws IOException {
-		this(order, new BufferedReader(new FileReader(filename)), useSemClasses);
+	public StandardNgramModel(final int order, final String filename, boolean useSemClasses)
+			throws IOException {
+		super(order, useSemClasses);
+		this.numNgrams = new int[order];
+		String key = ModelRegistry.fileKey(filename, "order " + order);
+		ngramTrie = registry.acquire(key, new ModelRegistry.Loader<NgramTrie>() {
+			public NgramTrie load() throws IOException {
+				if (MappedNgramTrie.isImage(filename))
+					return MappedNgramTrie.open(filename);
+				Reader in = new BufferedReader(new FileReader(filename));
+				try {
+					return NgramTrie.readArpa(order, in, new int[order]);
+				} finally {
+					in.close();
+				}
+			}
+
+			public long heapBytes(NgramTrie trie) {
+				return trie.heapBytes();
+			}
+		});
+		registryKey = key;
+		int[] totals = ngramTrie.getTotals();
+		System.arraycopy(totals, 0, numNgrams, 0, Math.min(order, totals.length));
+		// set openVocab according to presence of <unk>
+		openVocab = (ngramTrie.getWordId("<unk>") >= 0);
 	}
 
 	/**
-	 * Loads an n-gram model of the given order in ARPA (Doug Paul) format from
-	 * the given file. Words are not replaced by their semantic classes.
+	 * Loads an n-gram model of the given order in ARPA (Doug Paul) format (or
+	 * as a binary image) from the given file. Words are not replaced by their
+	 * semantic classes.
 	 */
 	public StandardNgramModel(int order, String filename) throws IOException {
 		this(order, filename, false);
@@ -77,102 +114,18 @@ public class StandardNgramModel extends AbstractStandardNgramModel {
 
 	// reads in model
 	private void readModel(Reader in) throws IOException {
-		// setup
-		// Tokenizer wordTokenizer = (Grammar.theGrammar != null)
-		// ? Grammar.theGrammar.lexicon.tokenizer
-		// : new DefaultTokenizer();
-		StreamTokenizer tokenizer = initTokenizer(in);
-		String[] tokens = new String[order + 2];
-		boolean foundData = false;
-		int currentOrder = 0;
-		List<Object> currentPrefix = new ArrayList<Object>();
-		List<Object> currentKeys = null;
-		List<TrieMap<Object, NgramFloats>> currentChildren = null;
-		// loop through lines
-		while (tokenizer.ttype != StreamTokenizer.TT_EOF) {
-			// read line into tokens
-			readLine(tokenizer, tokens);
-			// check for blank line
-			if (tokens[0] == null)
-				continue;
-			// check for initial delimiter
-			if (tokens[0].equals("\\data\\")) {
-				foundData = true;
-				continue;
-			}
-			if (!foundData)
-				continue;
-			// read header line
-			if (tokens[0].equals("ngram")) {
-				int n = Integer.parseInt(tokens[1].substring(0, 1));
-				int total = Integer.parseInt(tokens[1].substring(2));
-				if (n > order)
-					continue;
-				numNgrams[n - 1] = total;
-				// init children, keys lists
-				if (currentChildren == null) {
-					currentChildren = new ArrayList<TrieMap<Object, NgramFloats>>(total);
-					currentKeys = new ArrayList<Object>(total);
-				}
-				// calc totals (not actually used anymore)
-				if (n == order) {
-					@SuppressWarnings("unused")
-					int totalNgrams = 0;
-					for (int i = 0; i < order; i++) {
-						totalNgrams += numNgrams[i];
-					}
-					// System.out.println("totalNgrams: " + totalNgrams);
-				}
-				continue;
-			}
-			// check for final delimiter
-			if (tokens[0].equals("\\end\\")) {
-				// add current children
-				addTrieMapChildren(currentPrefix, currentKeys, currentChildren);
-				break;
-			}
-			// read line starting new order
-			if (tokens[0].equals("\\" + (currentOrder + 1) + "-grams:")) {
-				// add current children
-				addTrieMapChildren(currentPrefix, currentKeys, currentChildren);
-				// System.out.println(tokens[0]);
-				currentOrder++;
-				continue;
-			}
-			if (currentOrder == 0)
-				continue;
-			if (currentOrder > order)
-				break;
-			// read logprob
-			float logprob = Float.parseFloat(tokens[0]);
-			// read back-off weight (except with last order)
-			float bow = 0;
-			if (currentOrder < order && tokens[currentOrder + 1] != null) {
-				bow = Float.parseFloat(tokens[currentOrder + 1]);
-			}
-			// intern string tokens
-			for (int i = 1; i < currentOrder + 1; i++) {
-				tokens[i] = tokens[i].intern();
-			}
-			// check prefix
-			boolean samePrefix = (currentPrefix.size() == currentOrder - 1);
-			for (int i = 1; samePrefix && i < currentOrder; i++) {
-				if (tokens[i] != currentPrefix.get(i - 1))
-					samePrefix = false;
-			}
-			// if changed, add current children, reset prefix
-			if (!samePrefix) {
-				addTrieMapChildren(currentPrefix, currentKeys, currentChildren);
-				for (int i = 1; i < currentOrder; i++) {
-					currentPrefix.add(tokens[i]);
-				}
-			}
-			String key = tokens[currentOrder];
-			currentKeys.add(key);
-			currentChildren.add(new TrieMap<Object, NgramFloats>(new NgramFloats(logprob, bow)));
-		}
+		ngramTrie = NgramTrie.readArpa(order, in, numNgrams);
 		// set openVocab according to presence of <unk>
-		openVocab = (trieMapRoot.getChild("<unk>") != null);
+		openVocab = (ngramTrie.getWordId("<unk>") >= 0);
+	}
+
+	/** Releases the trie, if acquired from the registry. */
+	@Override
+	public synchronized void release() {
+		if (registryKey != null) {
+			registry.release(registryKey);
+			registryKey = null;
+		}
 	}
 
 	/** Test loading and scoring. */
@@ -218,5 +171,6 @@ public class StandardNgramModel extends AbstractStandardNgramModel {
 		System.out.println("score: " + score);
 		System.out.println("logprob: " + logprob);
 		System.out.println("ppl: " + NgramScorer.convertToPPL(logprob / (words.size() - 1)));
+		lm.release();
 	}
 }
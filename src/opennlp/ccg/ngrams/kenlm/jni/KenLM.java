@@ -1,18 +1,12 @@
 package opennlp.ccg.ngrams.kenlm.jni;
 
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
 // TODO(Joshua devs): include my state object with your LM state then
 // update this API to pass state instead of int[].
 
 public class KenLM {
-	/**
-	 * Load the binary, platform-dependent library containing the KenLM JNI
-	 * bridge code.
-	 * 
-	 * @throws UnsatisfiedLinkError If Java can't find the 'ken' library.
-	 */
-	static {
-		System.loadLibrary("ken");
-	}
 
 	private final long pointer;
 	// this is read from the config file, used to set maximum order
@@ -32,13 +26,33 @@ public class KenLM {
 
 	private final static native float probString(long ptr, int words[], int start);
 
+	private final static native void probBatch(long ptr, IntBuffer buffer, int numWords,
+			int numQueries, FloatBuffer results);
+
+	/**
+	 * Loads the model from the given file, first loading the binary,
+	 * platform-dependent library containing the KenLM JNI bridge code.
+	 * 
+	 * @throws UnsatisfiedLinkError If Java can't find the 'ken' library.
+	 */
 	public KenLM(int order, String file_name) {
+		System.loadLibrary("ken");
 		float lm_ceiling_cost = 99.0f;
 		ngramOrder = order;
 		pointer = construct(file_name, -lm_ceiling_cost);
 		N = order(pointer);
 	}
 
+	/**
+	 * Constructor for subclasses which stand in for a native model of the
+	 * given order, without loading the library.
+	 */
+	protected KenLM(int order) {
+		ngramOrder = order;
+		pointer = 0;
+		N = order;
+	}
+
 	public void destroy() {
 		destroy(pointer);
 	}
@@ -55,4 +69,20 @@ public class KenLM {
 		return prob(pointer, words);
 	}
 
+	/**
+	 * Scores a batch of n-grams in a single native call. The given direct
+	 * buffer, in native byte order, holds the given number of word ids,
+	 * followed by the start and length of each of the given number of
+	 * n-grams within these words; the log prob of each n-gram is written to
+	 * the given direct results buffer, also in native byte order. The
+	 * positions of the buffers are ignored.
+	 */
+	public void prob(IntBuffer buffer, int numWords, int numQueries, FloatBuffer results) {
+		if (!buffer.isDirect() || !results.isDirect())
+			throw new IllegalArgumentException("Batch buffers must be direct");
+		if (buffer.capacity() < numWords + 2 * numQueries || results.capacity() < numQueries)
+			throw new IndexOutOfBoundsException("Batch buffers too small");
+		probBatch(pointer, buffer, numWords, numQueries, results);
+	}
+
 }
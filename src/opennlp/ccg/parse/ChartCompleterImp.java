@@ -77,6 +77,11 @@ public class ChartCompleterImp implements ChartCompleter {
 	 */
 	private final ChartCompleterConfig config;
 
+	/**
+	 * The table of canonical ids for cats sans LFs, shared by the forms.
+	 */
+	private final CategoryTable categoryTable = new CategoryTable();
+
 	/**
 	 * Constructor
 	 * 
@@ -116,7 +121,8 @@ public class ChartCompleterImp implements ChartCompleter {
 	 */
 	protected Form makeForm(int x1, int x2) {
 		if (chart.getForm(x1, x2) == null) {
-			chart.setForm(x1, x2, new Form(config.formPruneLimit, scoredSymbolComparator));
+			chart.setForm(x1, x2, new Form(config.formPruneLimit, scoredSymbolComparator,
+					categoryTable));
 		}
 		return chart.getForm(x1, x2);
 	}
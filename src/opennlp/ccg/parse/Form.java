@@ -10,6 +10,7 @@ import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 
+import opennlp.ccg.synsem.CategoryTable;
 import opennlp.ccg.synsem.Symbol;
 import opennlp.ccg.synsem.SymbolHash;
 
@@ -37,17 +38,38 @@ public class Form implements Serializable {
 	// slow down parsing,
 	// with a significant drop in complete parses
 	@SuppressWarnings("unchecked")
-	private static Map<ScoredSymbol, ScoredSymbol> createScoredSymbolMap() {
-		return new THashMap(11, representativeEdgeStrategy);
+	private static Map<ScoredSymbol, ScoredSymbol> createScoredSymbolMap(
+			CategoryTable categoryTable) {
+		return new THashMap(11, new RepresentativeEdgeStrategy(categoryTable));
 	}
 
-	private static TObjectHashingStrategy representativeEdgeStrategy = new TObjectHashingStrategy() {
+	/**
+	 * Hashing strategy for representative edges, which compares cats by their
+	 * canonical ids, looking them up in the category table the first time a
+	 * scored symbol is hashed with this table.
+	 */
+	private static class RepresentativeEdgeStrategy implements TObjectHashingStrategy {
 		private static final long serialVersionUID = 1L;
 
+		private final CategoryTable categoryTable;
+
+		RepresentativeEdgeStrategy(CategoryTable categoryTable) {
+			this.categoryTable = categoryTable;
+		}
+
+		private int catId(ScoredSymbol scoredSymbol) {
+			if (scoredSymbol.catTable != categoryTable) {
+				scoredSymbol.catId = categoryTable.getId(scoredSymbol.symbol.getCategory());
+				scoredSymbol.catTable = categoryTable;
+			}
+			return scoredSymbol.catId;
+		}
+
 		public int computeHashCode(Object o) {
-			Symbol sign = ((ScoredSymbol) o).symbol;
+			ScoredSymbol scoredSymbol = (ScoredSymbol) o;
+			Symbol sign = scoredSymbol.symbol;
 			int x1 = ScoredSymbol.recoverScoredSymbol(sign.getLexHead()).x1;
-			return 31 * x1 + sign.getCategory().hashCodeNoLF();
+			return 31 * x1 + catId(scoredSymbol);
 			// return 31*headpos + sign.getCategory().hashCodeNoLF() +
 			// 17*sign.getUnfilledDeps().hashCode();
 		}
@@ -59,10 +81,10 @@ public class Form implements Serializable {
 			Symbol sign2 = ((ScoredSymbol) o2).symbol;
 			return ScoredSymbol.recoverScoredSymbol(sign1.getLexHead()).x1 == ScoredSymbol
 					.recoverScoredSymbol(sign2.getLexHead()).x1
-					&& sign1.getCategory().equalsNoLF(sign2.getCategory());
+					&& catId((ScoredSymbol) o1) == catId((ScoredSymbol) o2);
 			// && sign1.getUnfilledDeps().equals(sign2.getUnfilledDeps());
 		}
-	};
+	}
 
 	/**
 	 * Inserts a scored symbol in the list of scored symbols of a form. It
@@ -125,14 +147,24 @@ public class Form implements Serializable {
 	/**
 	 * Map of scored symbols
 	 */
-	final Map<ScoredSymbol, ScoredSymbol> scoredSymbolMap = createScoredSymbolMap();
+	final Map<ScoredSymbol, ScoredSymbol> scoredSymbolMap;
 
 	private final int sizeLimit;
 	private final Comparator<ScoredSymbol> scoredSymbolComparator;
 
 	public Form(int cellLimit, Comparator<ScoredSymbol> scoredSymbolComparator) {
+		this(cellLimit, scoredSymbolComparator, new CategoryTable());
+	}
+
+	/**
+	 * Constructor with a category table for looking up the canonical ids of
+	 * cats sans LFs, which may be shared across the forms of a chart.
+	 */
+	public Form(int cellLimit, Comparator<ScoredSymbol> scoredSymbolComparator,
+			CategoryTable categoryTable) {
 		this.sizeLimit = cellLimit;
 		this.scoredSymbolComparator = scoredSymbolComparator;
+		this.scoredSymbolMap = createScoredSymbolMap(categoryTable);
 	}
 
 	int size() {
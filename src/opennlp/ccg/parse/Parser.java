@@ -183,6 +183,12 @@ public class Parser {
 		this.stMostToLeastDir = bool;
 	}
 
+	// switches the symbol scorer to its staged model, if any, before an input
+	private void swapScorerModel() {
+		if (config.symbolScorer instanceof SwappableScorer)
+			((SwappableScorer) config.symbolScorer).swapModel();
+	}
+
 	/**
 	 * Parses a character sequence.
 	 *
@@ -204,6 +210,7 @@ public class Parser {
 	 * @throws ParseException
 	 */
 	public final ParseProduct parse(List<Association> musters) throws ParseException {
+		swapScorerModel();
 		ParseProduct product = null;
 		if (supertagger != null) {
 			product = parseIterativeBetaBest(musters);
@@ -217,6 +224,7 @@ public class Parser {
 	}
 
 	public final ParseProduct parse(Chart chart, int lexTime) throws ParseException {
+		swapScorerModel();
 		try {
 			ParseProduct product = new ParseProduct();
 			product.setLexTime(lexTime);
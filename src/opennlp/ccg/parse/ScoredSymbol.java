@@ -103,6 +103,15 @@ public class ScoredSymbol implements Serializable {
 	 */
 	protected int x1 = -1;
 
+	/**
+	 * The canonical id of the symbol's category sans LF in the category table
+	 * it was looked up in, or 0 if not yet looked up.
+	 */
+	protected int catId = 0;
+
+	/** The category table the category id was looked up in. */
+	protected CategoryTable catTable = null;
+
 	/** The alternative scored symbols (none initially). */
 	protected List<ScoredSymbol> alternatives = null;
 
@@ -19,6 +19,7 @@
 package opennlp.ccg.perceptron;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.io.*;
 
 import opennlp.ccg.util.*;
@@ -36,8 +37,18 @@ import opennlp.ccg.lexicon.DefaultTokenizer;
  * features, and thus can be used to filter out features not already in the
  * alphabet.
  * 
+ * An alphabet can also be hashed, in which case features are mapped to a
+ * fixed number of buckets by a 64-bit hash of their keys, without storing
+ * the features themselves. A hashed alphabet accepts any feature, regardless
+ * of whether it is closed, and features in the same bucket share an index.
+ * The features of a hashed alphabet are named by their bucket, as in #123,
+ * and such names are mapped back to their buckets. A hashed alphabet is
+ * read from an alphabet file consisting of the number of hash bits prefixed
+ * by #, as in #20.
+ * 
  * The main routine filters the input event file to an output alphabet file,
- * optionally with a table size and pruning threshold.
+ * optionally with a table size and pruning threshold, or reports the
+ * collisions of the features in the event file for a number of hash bits.
  * 
  * @author Michael White
  * @version $Revision: 1.7 $, $Date: 2009/11/02 03:44:15 $
@@ -75,6 +86,23 @@ public class Alphabet {
 		}
 	}
 
+	/** Feature for a bucket of a hashed alphabet, named by its index. */
+	public static class HashedFeature extends Feature {
+
+		/** Constructor with index. */
+		public HashedFeature(Integer index) {
+			super(index);
+		}
+
+		/** Returns the bucket name, ie the index prefixed by #. */
+		public String name() {
+			return HASH_PREFIX + data;
+		}
+	}
+
+	/** The prefix of hash bits in alphabet files and bucket names. */
+	public static final String HASH_PREFIX = "#";
+
 	// mappings
 	private Feature dict;
 	private List<Feature> dictInv;
@@ -85,11 +113,29 @@ public class Alphabet {
 	// closed flag
 	private boolean closed = false;
 
+	// the number of hash bits, or zero if not hashed
+	private int hashBits = 0;
+
+	// the bucket features of a hashed alphabet, created lazily
+	private AtomicReferenceArray<Feature> buckets = null;
+
 	/** Constructor with initial size. The alphabet is left open. */
 	public Alphabet(int size) {
 		init(size);
 	}
 
+	/**
+	 * Constructor for a hashed alphabet with the given number of hash bits,
+	 * ie with 2^hashBits buckets.
+	 */
+	public Alphabet(int hashBits, boolean hashed) {
+		if (!hashed) {
+			init(hashBits);
+			return;
+		}
+		initHashed(hashBits);
+	}
+
 	/**
 	 * Constructor to load an alphabet from a file. The alphabet is set to
 	 * closed.
@@ -98,6 +144,12 @@ public class Alphabet {
 		Reader reader = EventFile.openReader(new File(filename));
 		StreamTokenizer tokenizer = EventFile.initTokenizer(reader);
 		tokenizer.nextToken();
+		if (tokenizer.sval.startsWith(HASH_PREFIX)) {
+			reader.close();
+			initHashed(Integer.parseInt(tokenizer.sval.substring(HASH_PREFIX.length())));
+			closed = true;
+			return;
+		}
 		int size = Integer.parseInt(tokenizer.sval);
 		init(size);
 		for (int i = 0; i < size; i++) {
@@ -115,11 +167,98 @@ public class Alphabet {
 		dictInv = new ArrayList<Feature>(size);
 	}
 
-	/** Size. */
+	// initializes a hashed alphabet
+	private void initHashed(int hashBits) {
+		if (hashBits < 1 || hashBits > 30)
+			throw new IllegalArgumentException("Number of hash bits must be from 1 to 30: "
+					+ hashBits);
+		this.hashBits = hashBits;
+		size = 1 << hashBits;
+		buckets = new AtomicReferenceArray<Feature>(size);
+	}
+
+	/** Size, ie the number of buckets if hashed. */
 	public int size() {
 		return size;
 	}
 
+	/** Returns whether the alphabet is hashed. */
+	public boolean hashed() {
+		return hashBits > 0;
+	}
+
+	/** Returns the number of hash bits, or zero if not hashed. */
+	public int hashBits() {
+		return hashBits;
+	}
+
+	/** Returns the feature for the given bucket of a hashed alphabet. */
+	private Feature bucket(int index) {
+		Feature retval = buckets.get(index);
+		if (retval == null) {
+			buckets.compareAndSet(index, null, new HashedFeature(index));
+			retval = buckets.get(index);
+		}
+		return retval;
+	}
+
+	// the FNV-1a offset basis and prime
+	private static final long FNV_BASIS = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	// adds the given key to the given hash, followed by a separator
+	private static long hashKey(long h, String key) {
+		for (int i = 0; i < key.length(); i++) {
+			h ^= key.charAt(i);
+			h *= FNV_PRIME;
+		}
+		h ^= 0xffff;
+		h *= FNV_PRIME;
+		return h;
+	}
+
+	// returns the bucket for the given hash and number of hash bits
+	private static int bucketIndex(long h, int hashBits) {
+		// final mix (from MurmurHash3)
+		h ^= (h >>> 33);
+		h *= 0xff51afd7ed558ccdL;
+		h ^= (h >>> 33);
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= (h >>> 33);
+		return (int) (h >>> (64 - hashBits));
+	}
+
+	/**
+	 * Returns the bucket of the feature with the given keys for the given
+	 * number of hash bits.
+	 */
+	public static int bucketIndex(List<String> keys, int hashBits) {
+		long h = FNV_BASIS;
+		for (int i = 0; i < keys.size(); i++)
+			h = hashKey(h, keys.get(i));
+		return bucketIndex(h, hashBits);
+	}
+
+	// returns the bucket of the feature with the given keys
+	private int hashedIndex(List<String> keys) {
+		return bucketIndex(keys, hashBits);
+	}
+
+	// returns the bucket feature for the given name, if it is a bucket name,
+	// or otherwise for its keys
+	private Feature hashedIndex(String feat) {
+		if (feat.startsWith(HASH_PREFIX) && feat.length() > HASH_PREFIX.length()) {
+			try {
+				int index = Integer.parseInt(feat.substring(HASH_PREFIX.length()));
+				if (index >= 0 && index < size)
+					return bucket(index);
+			} catch (NumberFormatException exc) {
+				// not a bucket name
+			}
+		}
+		return bucket(hashedIndex(parseKeys(feat)));
+	}
+
 	/** Closed. */
 	public boolean closed() {
 		return closed;
@@ -135,12 +274,14 @@ public class Alphabet {
 	 * feature.
 	 */
 	public Feature add(String feat) {
+		if (hashBits > 0)
+			return hashedIndex(feat);
 		return add(parseKeys(feat));
 	}
 
 	/** Add equivalent feature, if not already present, returning added feature. */
 	public Feature add(Feature f) {
-		return add(f.traceKeys());
+		return index(f);
 	}
 
 	/**
@@ -148,6 +289,8 @@ public class Alphabet {
 	 * feature.
 	 */
 	public Feature add(List<String> keys) {
+		if (hashBits > 0)
+			return bucket(hashedIndex(keys));
 		if (closed)
 			throw new RuntimeException("Can't add to a closed alphabet!");
 		Feature node = (Feature) dict.findChildFromList(keys);
@@ -159,6 +302,8 @@ public class Alphabet {
 	 * feature.
 	 */
 	public Feature addLazy(List<TrieMap.KeyExtractor<String>> keyExtractors) {
+		if (hashBits > 0)
+			return indexLazy(keyExtractors);
 		if (closed)
 			throw new RuntimeException("Can't add to a closed alphabet!");
 		Feature node = (Feature) dict.findChildFromLazyList(keyExtractors);
@@ -198,16 +343,29 @@ public class Alphabet {
 
 	/** Get or add index of feature with given name (null if none when closed). */
 	public Feature index(String feat) {
+		if (hashBits > 0)
+			return hashedIndex(feat);
 		return index(parseKeys(feat));
 	}
 
-	/** Get or add index of equivalent feature (null if none when closed). */
+	/**
+	 * Get or add index of equivalent feature (null if none when closed). The
+	 * buckets of hashed alphabets are only equivalent to those of hashed
+	 * alphabets with the same number of hash bits.
+	 */
 	public Feature index(Feature f) {
+		if (f instanceof HashedFeature) {
+			if (hashBits > 0)
+				return (f.getIndex() < size) ? bucket(f.getIndex()) : null;
+			return index(f.name());
+		}
 		return index(f.traceKeys());
 	}
 
 	/** Get or add index of feature with given keys (null if none when closed). */
 	public Feature index(List<String> keys) {
+		if (hashBits > 0)
+			return bucket(hashedIndex(keys));
 		if (!closed)
 			return add(keys);
 		Feature node = (Feature) dict.getChildFromList(keys);
@@ -219,6 +377,12 @@ public class Alphabet {
 	 * closed).
 	 */
 	public Feature indexLazy(List<TrieMap.KeyExtractor<String>> keyExtractors) {
+		if (hashBits > 0) {
+			long h = FNV_BASIS;
+			for (int i = 0; i < keyExtractors.size(); i++)
+				h = hashKey(h, keyExtractors.get(i).getKey());
+			return bucket(bucketIndex(h, hashBits));
+		}
 		if (!closed)
 			return addLazy(keyExtractors);
 		Feature node = (Feature) dict.getChildFromLazyList(keyExtractors);
@@ -227,6 +391,8 @@ public class Alphabet {
 
 	/** Get indexed feature. */
 	public Feature feature(int index) {
+		if (hashBits > 0)
+			return bucket(index);
 		return dictInv.get(index);
 	}
 
@@ -326,22 +492,111 @@ public class Alphabet {
 		out.close();
 	}
 
-	/** Main routine for filtering event file to an alphabet file. */
+	/**
+	 * Reports the collisions of the distinct features in the given event file
+	 * when hashed with the given number of hash bits, listing the features in
+	 * up to the given number of the fullest buckets.
+	 */
+	public static void reportCollisions(String eventfile, int hashBits, int maxListed)
+			throws IOException {
+		// collect distinct features
+		EventFile eventFile = new EventFile(eventfile);
+		EventFile.Block block;
+		while ((block = eventFile.nextBlock()) != null) {
+			// nb: features are added to the event file's alphabet
+		}
+		eventFile.close();
+		Alphabet alphabet = eventFile.getAlphabet();
+		// hash them
+		int numFeats = alphabet.size();
+		Map<Integer, List<Feature>> buckets = new HashMap<Integer, List<Feature>>(numFeats * 2);
+		for (int i = 0; i < numFeats; i++) {
+			Feature f = alphabet.feature(i);
+			int bucket = bucketIndex(f.traceKeys(), hashBits);
+			List<Feature> feats = buckets.get(bucket);
+			if (feats == null) {
+				feats = new ArrayList<Feature>(1);
+				buckets.put(bucket, feats);
+			}
+			feats.add(f);
+		}
+		// count collisions
+		List<List<Feature>> collided = new ArrayList<List<Feature>>();
+		int numCollidedFeats = 0;
+		for (List<Feature> feats : buckets.values()) {
+			if (feats.size() > 1) {
+				collided.add(feats);
+				numCollidedFeats += feats.size();
+			}
+		}
+		double numBuckets = Math.pow(2, hashBits);
+		double expectedUsed = numBuckets * (1 - Math.pow(1 - 1 / numBuckets, numFeats));
+		System.out.println("features: " + numFeats);
+		System.out.println("buckets: " + (long) numBuckets + " used: " + buckets.size()
+				+ " (expected: " + Math.round(expectedUsed) + ")");
+		System.out.println("buckets with collisions: " + collided.size()
+				+ " features in them: " + numCollidedFeats);
+		System.out.println("features lost to collisions: " + (numFeats - buckets.size()) + " ("
+				+ (100.0 * (numFeats - buckets.size()) / numFeats) + "%)");
+		// list fullest buckets
+		Collections.sort(collided, new Comparator<List<Feature>>() {
+			public int compare(List<Feature> feats1, List<Feature> feats2) {
+				return feats2.size() - feats1.size();
+			}
+		});
+		for (int i = 0; i < Math.min(maxListed, collided.size()); i++) {
+			List<Feature> feats = collided.get(i);
+			System.out.print(HASH_PREFIX + bucketIndex(feats.get(0).traceKeys(), hashBits) + ":");
+			for (Feature f : feats)
+				System.out.print(" " + f.name());
+			System.out.println();
+		}
+	}
+
+	/**
+	 * Main routine for filtering event file to an alphabet file, writing a
+	 * hashed alphabet file or reporting the collisions of hashed features.
+	 */
 	public static void main(String[] args) throws IOException {
 		if (args.length < 2) {
 			System.out
-					.println("Usage: java perceptron.Alphabet <eventfile> <alphabetfile> (-s <tablesize>) (-p <pruningthreshold>");
+					.println("Usage: java perceptron.Alphabet <eventfile> <alphabetfile> (-s <tablesize>) (-p <pruningthreshold>) (-h <hashbits>)");
+			System.out
+					.println("   or: java perceptron.Alphabet <eventfile> -c <hashbits> (-l <maxlisted>)");
 			System.exit(0);
 		}
 		String eventfile = args[0];
+		if (args[1].equals("-c")) {
+			int hashBits = Integer.parseInt(args[2]);
+			int maxListed = 10;
+			for (int i = 3; i < args.length; i++) {
+				if (args[i].equals("-l"))
+					maxListed = Integer.parseInt(args[++i]);
+			}
+			System.out.println("Reporting collisions in event file " + eventfile + " with "
+					+ hashBits + " hash bits");
+			reportCollisions(eventfile, hashBits, maxListed);
+			return;
+		}
 		String alphabetfile = args[1];
 		int tablesize = 1000000;
 		int pruningthreshold = 0;
+		int hashBits = 0;
 		for (int i = 2; i < args.length; i++) {
 			if (args[i].equals("-s"))
 				tablesize = Integer.valueOf(args[++i]);
 			if (args[i].equals("-p"))
 				pruningthreshold = Integer.valueOf(args[++i]);
+			if (args[i].equals("-h"))
+				hashBits = Integer.valueOf(args[++i]);
+		}
+		if (hashBits > 0) {
+			System.out.println("Writing hashed alphabet with " + hashBits + " hash bits to "
+					+ alphabetfile);
+			PrintWriter out = EventFile.openWriter(new File(alphabetfile));
+			out.println(HASH_PREFIX + hashBits);
+			out.close();
+			return;
 		}
 		System.out.println("Writing alphabet to " + alphabetfile + " from event file " + eventfile);
 		if (pruningthreshold > 0)
@@ -0,0 +1,199 @@
+///////////////////////////////////////////////////////////////////////////////
+// Copyright (C) 2015 Daniel Couto-Vale (RWTH Aachen)
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+//////////////////////////////////////////////////////////////////////////////
+
+package opennlp.ccg.perceptron;
+
+import java.util.Arrays;
+
+/**
+ * A read-only vector of weights stored compactly, either as floats or as 8 or
+ * 16-bit codes into a codebook of float values. The codebook always contains
+ * zero, and otherwise the means of equally sized bins of the sorted non-zero
+ * weights, or the distinct non-zero weights themselves if there are not more
+ * of them than codes.
+ *
+ * @author Daniel Couto-Vale
+ * @version
+ */
+public class CompactWeights {
+
+	// the number of bits per weight
+	private final int bits;
+
+	// the float weights, if 32 bits
+	private final float[] floats;
+
+	// the sorted codebook, if 8 or 16 bits
+	private final float[] codebook;
+
+	// the codes, if 8 bits
+	private final byte[] byteCodes;
+
+	// the codes, if 16 bits
+	private final short[] shortCodes;
+
+	/**
+	 * Constructor with the given weights and number of bits per weight (32, 16
+	 * or 8), making a codebook if apropos.
+	 */
+	public CompactWeights(double[] weights, int bits) {
+		this(weights, bits, (bits < 32) ? makeCodebook(weights, bits) : null);
+	}
+
+	/**
+	 * Constructor with the given weights, number of bits per weight (32, 16
+	 * or 8) and sorted codebook, which is ignored with 32 bits.
+	 */
+	public CompactWeights(double[] weights, int bits, float[] codebook) {
+		if (bits != 32 && bits != 16 && bits != 8)
+			throw new IllegalArgumentException("Compact weights must have 32, 16 or 8 bits: "
+					+ bits);
+		this.bits = bits;
+		if (bits == 32) {
+			floats = new float[weights.length];
+			for (int i = 0; i < weights.length; i++)
+				floats[i] = (float) weights[i];
+			this.codebook = null;
+			byteCodes = null;
+			shortCodes = null;
+			return;
+		}
+		if (codebook.length > (1 << bits))
+			throw new IllegalArgumentException("Codebook too large for " + bits + " bits");
+		floats = null;
+		this.codebook = codebook;
+		if (bits == 16) {
+			shortCodes = new short[weights.length];
+			for (int i = 0; i < weights.length; i++)
+				shortCodes[i] = (short) encode(weights[i]);
+			byteCodes = null;
+		} else {
+			byteCodes = new byte[weights.length];
+			for (int i = 0; i < weights.length; i++)
+				byteCodes[i] = (byte) encode(weights[i]);
+			shortCodes = null;
+		}
+	}
+
+	/**
+	 * Returns a sorted codebook with the given number of bits for the given
+	 * weights.
+	 */
+	public static float[] makeCodebook(double[] weights, int bits) {
+		// sort non-zero weights
+		double[] sorted = new double[weights.length];
+		int n = 0;
+		for (double w : weights) {
+			if (w != 0)
+				sorted[n++] = w;
+		}
+		Arrays.sort(sorted, 0, n);
+		// count distinct ones
+		int numDistinct = 0;
+		for (int i = 0; i < n; i++) {
+			if (i == 0 || sorted[i] != sorted[i - 1])
+				numDistinct++;
+		}
+		int numCodes = (1 << bits) - 1;
+		float[] retval;
+		int k = 0;
+		if (numDistinct <= numCodes) {
+			// use distinct weights
+			retval = new float[numDistinct + 1];
+			for (int i = 0; i < n; i++) {
+				if (i == 0 || sorted[i] != sorted[i - 1])
+					retval[k++] = (float) sorted[i];
+			}
+		} else {
+			// use means of bins
+			retval = new float[numCodes + 1];
+			for (int b = 0; b < numCodes; b++) {
+				int start = (int) ((long) b * n / numCodes);
+				int end = (int) ((long) (b + 1) * n / numCodes);
+				double sum = 0;
+				for (int i = start; i < end; i++)
+					sum += sorted[i];
+				retval[k++] = (float) (sum / (end - start));
+			}
+		}
+		// add zero and sort
+		retval[k] = 0;
+		Arrays.sort(retval);
+		return retval;
+	}
+
+	// returns the code of the nearest codebook value
+	private int encode(double w) {
+		int pos = Arrays.binarySearch(codebook, (float) w);
+		if (pos >= 0)
+			return pos;
+		int ins = -pos - 1;
+		if (ins == 0)
+			return 0;
+		if (ins == codebook.length)
+			return codebook.length - 1;
+		return (w - codebook[ins - 1] <= codebook[ins] - w) ? ins - 1 : ins;
+	}
+
+	/** Returns the weight with the given index. */
+	public double get(int index) {
+		switch (bits) {
+		case 32:
+			return floats[index];
+		case 16:
+			return codebook[shortCodes[index] & 0xffff];
+		default:
+			return codebook[byteCodes[index] & 0xff];
+		}
+	}
+
+	/** Returns the code of the weight with the given index, if 8 or 16 bits. */
+	public int getCode(int index) {
+		return (bits == 16) ? shortCodes[index] & 0xffff : byteCodes[index] & 0xff;
+	}
+
+	/** Returns the number of weights. */
+	public int size() {
+		switch (bits) {
+		case 32:
+			return floats.length;
+		case 16:
+			return shortCodes.length;
+		default:
+			return byteCodes.length;
+		}
+	}
+
+	/** Returns the number of bits per weight. */
+	public int bits() {
+		return bits;
+	}
+
+	/** Returns the codebook, or null if 32 bits. */
+	public float[] getCodebook() {
+		return codebook;
+	}
+
+	/** Returns the number of bytes taken up by the weights and codebook. */
+	public long sizeInBytes() {
+		long retval = (long) size() * bits / 8;
+		if (codebook != null)
+			retval += 4L * codebook.length;
+		return retval;
+	}
+}
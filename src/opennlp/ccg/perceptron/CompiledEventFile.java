@@ -0,0 +1,322 @@
+///////////////////////////////////////////////////////////////////////////////
+// Copyright (C) 2015 Daniel Couto-Vale (RWTH Aachen)
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+//////////////////////////////////////////////////////////////////////////////
+
+package opennlp.ccg.perceptron;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+/**
+ * A compiled, binary version of an event file, which is read through a
+ * memory mapping rather than parsed.
+ * <p>
+ * A compiled event file starts with a magic string and a version number,
+ * followed by the blocks. A block consists of the number of events, and then
+ * for each event its frequency, its number of feature-value pairs, the feature
+ * ids, a bitmap with a bit set for each value equal to one, and the other
+ * values as floats. Numbers and ids are written as variable-length integers.
+ * After the blocks come the feature names by id, the offsets of the blocks,
+ * and finally the offsets of the names and of the block offsets, and the
+ * number of blocks.
+ * <p>
+ * Since the feature names are stored in the file, the feature ids are mapped
+ * to the features of the alphabet given when reading, as with a text event
+ * file; thus a compiled event file may be read with a different alphabet
+ * than the one it was compiled with.
+ * <p>
+ * An event file instance reads compiled event files transparently. The main
+ * routine compiles a text event file.
+ *
+ * @author Daniel Couto-Vale
+ * @version
+ */
+public class CompiledEventFile {
+
+	/** The magic string at the start of a compiled event file. */
+	public static final String MAGIC = "OCCGEVTS";
+
+	/** The format version. */
+	public static final int VERSION = 1;
+
+	// the size of the trailer
+	private static final int TRAILER_SIZE = 20;
+
+	// the maximum size of a mapped window of the blocks
+	private static final long MAX_WINDOW = 1L << 30;
+
+	// the file channel
+	private final FileChannel channel;
+
+	// the features by id, or null for those not in the alphabet
+	private final Alphabet.Feature[] features;
+
+	// the block offsets
+	private final long[] offsets;
+
+	// the end of the blocks
+	private final long blocksEnd;
+
+	// the current window of the blocks, and its offset
+	private ByteBuffer window = null;
+	private long windowStart = 0;
+
+	/**
+	 * Returns whether the given file is a compiled event file, ie starts with
+	 * the magic string.
+	 */
+	public static boolean isCompiled(File file) throws IOException {
+		if (file.getName().endsWith(".gz") || file.length() < MAGIC.length())
+			return false;
+		DataInputStream in = new DataInputStream(new FileInputStream(file));
+		try {
+			byte[] magic = new byte[MAGIC.length()];
+			in.readFully(magic);
+			return MAGIC.equals(new String(magic, "US-ASCII"));
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Opens the given compiled event file, mapping its features to those of
+	 * the given alphabet.
+	 */
+	public CompiledEventFile(File file, Alphabet alphabet) throws IOException {
+		FileInputStream fis = new FileInputStream(file);
+		channel = fis.getChannel();
+		try {
+			long size = channel.size();
+			// read header
+			ByteBuffer header = ByteBuffer.allocate(MAGIC.length() + 4);
+			readFully(header, 0);
+			byte[] magic = new byte[MAGIC.length()];
+			header.get(magic);
+			if (!MAGIC.equals(new String(magic, "US-ASCII")))
+				throw new IOException("Not a compiled event file: " + file);
+			int version = header.getInt();
+			if (version != VERSION)
+				throw new IOException("Unsupported compiled event file version " + version + ": "
+						+ file);
+			// read trailer
+			ByteBuffer trailer = ByteBuffer.allocate(TRAILER_SIZE);
+			readFully(trailer, size - TRAILER_SIZE);
+			long namesOffset = trailer.getLong();
+			long offsetsOffset = trailer.getLong();
+			int numBlocks = trailer.getInt();
+			blocksEnd = namesOffset;
+			// read names, mapping them to features
+			channel.position(namesOffset);
+			DataInputStream in = new DataInputStream(new BufferedInputStream(
+					Channels.newInputStream(channel), 1 << 16));
+			int numNames = in.readInt();
+			features = new Alphabet.Feature[numNames];
+			for (int i = 0; i < numNames; i++)
+				features[i] = alphabet.index(in.readUTF());
+			// read block offsets
+			channel.position(offsetsOffset);
+			in = new DataInputStream(new BufferedInputStream(
+					Channels.newInputStream(channel), 1 << 16));
+			offsets = new long[numBlocks];
+			for (int i = 0; i < numBlocks; i++)
+				offsets[i] = in.readLong();
+		} catch (IOException exc) {
+			channel.close();
+			throw exc;
+		}
+	}
+
+	// reads the given buffer fully from the given position, and flips it
+	private void readFully(ByteBuffer buf, long pos) throws IOException {
+		while (buf.hasRemaining()) {
+			int n = channel.read(buf, pos);
+			if (n < 0)
+				throw new EOFException();
+			pos += n;
+		}
+		buf.flip();
+	}
+
+	/** Returns the number of blocks. */
+	public int numBlocks() {
+		return offsets.length;
+	}
+
+	/** Reads the block with the given number. */
+	public EventFile.Block readBlock(int blockNum) throws IOException {
+		long start = offsets[blockNum];
+		long end = (blockNum + 1 < offsets.length) ? offsets[blockNum + 1] : blocksEnd;
+		ByteBuffer buf = map(start, end);
+		int numEvents = readVarInt(buf);
+		List<EventFile.Event> events = new ArrayList<EventFile.Event>(numEvents);
+		int[] ids = new int[0];
+		for (int i = 0; i < numEvents; i++) {
+			int count = readVarInt(buf);
+			int numFeats = readVarInt(buf);
+			if (ids.length < numFeats)
+				ids = new int[numFeats];
+			for (int j = 0; j < numFeats; j++)
+				ids[j] = readVarInt(buf);
+			int bitmapStart = buf.position();
+			buf.position(bitmapStart + (numFeats + 7) / 8);
+			FeatureList fv = new FeatureList(numFeats);
+			for (int j = 0; j < numFeats; j++) {
+				boolean one = (buf.get(bitmapStart + j / 8) & (1 << (j % 8))) != 0;
+				float val = one ? 1.0f : buf.getFloat();
+				Alphabet.Feature f = features[ids[j]];
+				if (f != null)
+					fv.add(f, val);
+			}
+			events.add(new EventFile.Event(fv, count));
+		}
+		return new EventFile.Block(events);
+	}
+
+	// returns a buffer positioned at the given start, with the bytes up to the
+	// given end mapped, remapping the window if necessary
+	private ByteBuffer map(long start, long end) throws IOException {
+		if (window == null || start < windowStart || end > windowStart + window.limit()) {
+			long size = Math.max(end - start, Math.min(MAX_WINDOW, blocksEnd - start));
+			window = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+			windowStart = start;
+		}
+		window.position((int) (start - windowStart));
+		return window;
+	}
+
+	/** Closes the file. */
+	public void close() throws IOException {
+		window = null;
+		channel.close();
+	}
+
+	// reads a variable-length int
+	private static int readVarInt(ByteBuffer buf) {
+		int retval = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = buf.get();
+			retval |= (b & 0x7f) << shift;
+			shift += 7;
+		} while (b < 0);
+		return retval;
+	}
+
+	// writes a variable-length int
+	private static void writeVarInt(DataOutputStream out, int val) throws IOException {
+		while ((val & ~0x7f) != 0) {
+			out.writeByte((val & 0x7f) | 0x80);
+			val >>>= 7;
+		}
+		out.writeByte(val);
+	}
+
+	/**
+	 * Compiles the given text event file, using the given alphabet, to the
+	 * given compiled event file. Features not in the alphabet are filtered out
+	 * if it is closed, and added otherwise. Returns the number of blocks.
+	 */
+	public static int compile(String eventfile, Alphabet alphabet, String compiledfile)
+			throws IOException {
+		EventFile eventFile = new EventFile(eventfile, alphabet);
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(
+				compiledfile), 1 << 16));
+		out.write(MAGIC.getBytes("US-ASCII"));
+		out.writeInt(VERSION);
+		long pos = MAGIC.length() + 4;
+		// write blocks, noting their offsets
+		List<Long> offsets = new ArrayList<Long>();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream blockOut = new DataOutputStream(bytes);
+		EventFile.Block block;
+		while ((block = eventFile.nextBlock()) != null) {
+			offsets.add(pos);
+			bytes.reset();
+			writeVarInt(blockOut, block.events.size());
+			for (EventFile.Event event : block.events) {
+				writeVarInt(blockOut, event.count);
+				int numFeats = event.features.size();
+				writeVarInt(blockOut, numFeats);
+				float[] vals = new float[numFeats];
+				byte[] bitmap = new byte[(numFeats + 7) / 8];
+				int j = 0;
+				for (FeatureVector.Iterator it = event.features.iterator(); it.hasNext(); j++) {
+					writeVarInt(blockOut, it.nextFeature().getIndex());
+					vals[j] = it.nextValue();
+					if (vals[j] == 1.0f)
+						bitmap[j / 8] |= 1 << (j % 8);
+				}
+				blockOut.write(bitmap);
+				for (j = 0; j < numFeats; j++) {
+					if (vals[j] != 1.0f)
+						blockOut.writeFloat(vals[j]);
+				}
+			}
+			blockOut.flush();
+			bytes.writeTo(out);
+			pos += bytes.size();
+		}
+		eventFile.close();
+		// write names
+		long namesOffset = pos;
+		bytes.reset();
+		blockOut.writeInt(alphabet.size());
+		for (int i = 0; i < alphabet.size(); i++)
+			blockOut.writeUTF(alphabet.feature(i).name());
+		blockOut.flush();
+		bytes.writeTo(out);
+		pos += bytes.size();
+		// write block offsets and trailer
+		long offsetsOffset = pos;
+		for (long offset : offsets)
+			out.writeLong(offset);
+		out.writeLong(namesOffset);
+		out.writeLong(offsetsOffset);
+		out.writeInt(offsets.size());
+		out.close();
+		return offsets.size();
+	}
+
+	/**
+	 * Compiles a text event file, optionally using the features of an
+	 * alphabet file only.
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.out
+					.println("Usage: java perceptron.CompiledEventFile <eventfile> <compiledfile> (-a <alphabetfile>)");
+			System.exit(0);
+		}
+		String eventfile = args[0];
+		String compiledfile = args[1];
+		String alphabetfile = null;
+		for (int i = 2; i < args.length; i++) {
+			if (args[i].equals("-a"))
+				alphabetfile = args[++i];
+		}
+		Alphabet alphabet = (alphabetfile != null) ? new Alphabet(alphabetfile) : new Alphabet(
+				10000);
+		System.out.println("Compiling " + eventfile + " to " + compiledfile
+				+ ((alphabetfile != null) ? " using " + alphabetfile : ""));
+		int numBlocks = compile(eventfile, alphabet, compiledfile);
+		System.out.println("blocks: " + numBlocks + " features: " + alphabet.size());
+	}
+}
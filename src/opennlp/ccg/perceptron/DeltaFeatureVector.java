@@ -0,0 +1,139 @@
+///////////////////////////////////////////////////////////////////////////////
+// Copyright (C) 2015 Daniel Couto-Vale (RWTH Aachen)
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+//////////////////////////////////////////////////////////////////////////////
+
+package opennlp.ccg.perceptron;
+
+import opennlp.ccg.synsem.Symbol;
+
+/**
+ * A persistent feature vector for a sign in a derivation, which is the sum of
+ * the features introduced by the sign itself and the feature vectors of its
+ * inputs. Only the local features are stored with the vector, along with
+ * references to the vectors of the inputs, which are shared with the input
+ * signs.
+ * <p>
+ * When scored by a model, the dot product is cached with the vector, for as
+ * long as the model's weights are not changed, so that scoring a sign only
+ * takes time proportional to its local features once its inputs have been
+ * scored.
+ * <p>
+ * Iterating over the vector, or getting its size, sums up the features of
+ * the whole derivation in a feature map, in the same order as a feature map
+ * built by adding the maps of the inputs first.
+ *
+ * @author Daniel Couto-Vale
+ * @version
+ */
+public class DeltaFeatureVector implements FeatureVector {
+
+	// a cached score, for a model at a version
+	private static class CachedScore {
+		final Model model;
+		final long version;
+		final double score;
+
+		CachedScore(Model model, long version, double score) {
+			this.model = model;
+			this.version = version;
+			this.score = score;
+		}
+	}
+
+	/** The local features. */
+	public final FeatureVector localFeatures;
+
+	/** The feature vectors of the inputs. */
+	public final DeltaFeatureVector[] inputFeatures;
+
+	// the last cached score
+	private volatile CachedScore cachedScore = null;
+
+	/** Constructor with the local features and the vectors of the inputs. */
+	public DeltaFeatureVector(FeatureVector localFeatures, DeltaFeatureVector[] inputFeatures) {
+		this.localFeatures = localFeatures;
+		this.inputFeatures = inputFeatures;
+	}
+
+	/**
+	 * Returns a delta vector for the given sign with the given local
+	 * features, over the delta vectors stored with the given class under the
+	 * given alphabet (packed or not) in the sign's inputs.
+	 *
+	 * @throws IllegalStateException if an input has no such delta vector
+	 */
+	public static DeltaFeatureVector forSign(Symbol sign, FeatureVector localFeatures,
+			Class<? extends SignFeatures> featuresClass, Alphabet alphabet, boolean packed) {
+		Symbol[] inputs = (sign.isIndexed()) ? new Symbol[0] : sign.getDerivationHistory()
+				.getInputs();
+		DeltaFeatureVector[] inputFeatures = new DeltaFeatureVector[inputs.length];
+		for (int i = 0; i < inputs.length; i++) {
+			SignFeatures sf = SignFeatures.get(inputs[i], featuresClass, alphabet, packed,
+					true);
+			if (sf == null)
+				throw new IllegalStateException("No delta features stored with input: " + inputs[i]);
+			inputFeatures[i] = sf.deltaFeatures;
+		}
+		return new DeltaFeatureVector(localFeatures, inputFeatures);
+	}
+
+	/**
+	 * Returns the dot product of the given model's weights and these
+	 * features, reusing the cached scores of the inputs where possible.
+	 */
+	public double score(Model model) {
+		long version = model.getVersion();
+		CachedScore cached = cachedScore;
+		if (cached != null && cached.model == model && cached.version == version)
+			return cached.score;
+		double retval = 0.0;
+		for (DeltaFeatureVector input : inputFeatures)
+			retval += input.score(model);
+		retval = model.addScore(localFeatures, retval);
+		cachedScore = new CachedScore(model, version, retval);
+		return retval;
+	}
+
+	/** Adds the features of the whole derivation to the given feature map. */
+	public void addTo(FeatureMap featureMap) {
+		for (DeltaFeatureVector input : inputFeatures)
+			input.addTo(featureMap);
+		featureMap.add(localFeatures);
+	}
+
+	/** Returns the features of the whole derivation as a feature map. */
+	public FeatureMap toFeatureMap() {
+		FeatureMap retval = new FeatureMap();
+		addTo(retval);
+		return retval;
+	}
+
+	/** Size, ie the number of distinct features in the whole derivation. */
+	public int size() {
+		return toFeatureMap().size();
+	}
+
+	/** Iterator over the features of the whole derivation. */
+	public Iterator iterator() {
+		return toFeatureMap().iterator();
+	}
+
+	/** toString. */
+	public String toString() {
+		return "delta features: " + localFeatures + " inputs: " + inputFeatures.length;
+	}
+}
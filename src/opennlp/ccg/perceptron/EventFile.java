@@ -43,6 +43,15 @@ import opennlp.ccg.synsem.Symbol;
  * used for dispreferred analyses in ranking tasks such as parse selection or
  * realization ranking.
  * 
+ * An event file may also be restricted to a shard of its blocks, namely every
+ * Nth block starting with a given one, where the blocks in other shards are
+ * skipped without parsing their events. This allows the blocks to be split
+ * among several readers of the same file.
+ * 
+ * An event file may also be compiled to a binary format, which is read
+ * without parsing; see CompiledEventFile. Compiled event files are detected
+ * and read transparently.
+ * 
  * An example file appears below. There are two blocks, corresponding to the
  * parses of two different senses. The first block has two possible parses, the
  * first of which is correct, while the second block has three possible parses,
@@ -68,11 +77,37 @@ public class EventFile {
 		/** The list. */
 		public List<Event> events;
 
+		// whether the residual features of the events have been set
+		private volatile boolean factored = false;
+
 		/** Constructor. */
 		public Block(List<Event> events) {
 			this.events = events;
 		}
 
+		/**
+		 * Sets the residual features of the events, unless already set, using
+		 * the given alphabet. Only these features need to be scored to find
+		 * the best event, and only they differ between events when updating
+		 * a model.
+		 */
+		public void factorCommonFeatures(Alphabet alphabet) {
+			if (factored)
+				return;
+			PackedFeatureVector[] packed = new PackedFeatureVector[events.size()];
+			PackedFeatureVector common = null;
+			for (int i = 0; i < packed.length; i++) {
+				FeatureVector features = events.get(i).features;
+				packed[i] = (features instanceof PackedFeatureVector) ? (PackedFeatureVector) features
+						: new PackedFeatureVector(alphabet, features);
+				common = (i == 0) ? packed[i] : PackedFeatureVector.intersection(common, packed[i]);
+			}
+			for (int i = 0; i < packed.length; i++)
+				events.get(i).residualFeatures = (packed.length > 1) ? PackedFeatureVector
+						.difference(packed[i], common) : packed[i];
+			factored = true;
+		}
+
 		/** The event with the highest count (first tied if ties). */
 		public Event best() {
 			Event retval = null;
@@ -93,6 +128,12 @@ public class EventFile {
 		public int count;
 		/** The feature vector. */
 		public FeatureVector features;
+		/**
+		 * The residual features, ie the features less those shared with the
+		 * same value by all the events in the block, once the block's common
+		 * features have been factored out.
+		 */
+		public PackedFeatureVector residualFeatures = null;
 
 		/** Constructor. */
 		public Event(FeatureVector features, int count) {
@@ -118,6 +159,9 @@ public class EventFile {
 	// the current tokenizer
 	private StreamTokenizer tokenizer;
 
+	// the compiled event file, if the file is compiled
+	private CompiledEventFile compiled = null;
+
 	// the saved blocks, if kept in memory
 	private List<Block> blocks = null;
 
@@ -127,6 +171,13 @@ public class EventFile {
 	// whether the end-of-file has been reached
 	private boolean eofReached = false;
 
+	// the shard of blocks to read, and the number of shards
+	private int shard = 0;
+	private int numShards = 1;
+
+	// the number of the next block in the file
+	private int blockNum = 0;
+
 	/** Constructor with filename. */
 	public EventFile(String filename) throws IOException {
 		this(filename, false);
@@ -145,8 +196,10 @@ public class EventFile {
 	/** Constructor with filename, alphabet and in-memory flag. */
 	public EventFile(String filename, Alphabet alphabet, boolean inMemory) throws IOException {
 		file = new File(filename);
-		init();
 		this.alphabet = alphabet;
+		if (CompiledEventFile.isCompiled(file))
+			compiled = new CompiledEventFile(file, alphabet);
+		init();
 		if (inMemory)
 			this.blocks = new ArrayList<Block>(10000);
 	}
@@ -156,14 +209,32 @@ public class EventFile {
 		return alphabet;
 	}
 
+	/**
+	 * Restricts the blocks read to those whose number modulo the number of
+	 * shards is the given shard. Must be called before reading any blocks.
+	 * With a text event file, the blocks of the other shards still have to
+	 * be tokenized in order to be skipped, while with a compiled one, they
+	 * are skipped by their offsets.
+	 */
+	public void setShard(int shard, int numShards) {
+		if (numShards < 1 || shard < 0 || shard >= numShards)
+			throw new IllegalArgumentException("Invalid shard " + shard + " of " + numShards);
+		this.shard = shard;
+		this.numShards = numShards;
+	}
+
 	/** Closes the reader. */
 	public void close() throws IOException {
-		reader.close();
+		if (compiled != null)
+			compiled.close();
+		else if (reader != null)
+			reader.close();
 	}
 
 	/** Resets the event file for reading again. */
 	public void reset() throws IOException {
-		close();
+		if (compiled == null)
+			close();
 		init();
 	}
 
@@ -181,6 +252,9 @@ public class EventFile {
 			blocks.clear();
 		}
 		// regular init
+		blockNum = 0;
+		if (compiled != null)
+			return;
 		reader = openReader(file);
 		tokenizer = initTokenizer(reader);
 	}
@@ -196,6 +270,8 @@ public class EventFile {
 
 	/** Returns whether EOF has been reached. */
 	public boolean endOfFile() throws IOException {
+		if (compiled != null)
+			return blockNum >= compiled.numBlocks();
 		tokenizer.nextToken();
 		boolean eof = (tokenizer.ttype == StreamTokenizer.TT_EOF);
 		tokenizer.pushBack();
@@ -227,10 +303,24 @@ public class EventFile {
 		if (blockIt != null) {
 			return (blockIt.hasNext()) ? blockIt.next() : null;
 		}
-		// otherwise check for eof, noting completion for in-mem case
-		if (endOfFile()) {
-			eofReached = true;
-			return null;
+		// otherwise check for eof, noting completion for in-mem case,
+		// and skip blocks in other shards
+		while (true) {
+			if (endOfFile()) {
+				eofReached = true;
+				return null;
+			}
+			if (blockNum++ % numShards == shard)
+				break;
+			if (compiled == null)
+				skipBlock();
+		}
+		// read compiled block, if apropos
+		if (compiled != null) {
+			Block retval = compiled.readBlock(blockNum - 1);
+			if (blocks != null)
+				blocks.add(retval);
+			return retval;
 		}
 		// otherwise parse next block
 		tokenizer.nextToken();
@@ -247,6 +337,19 @@ public class EventFile {
 		return retval;
 	}
 
+	// skips the next block
+	private void skipBlock() throws IOException {
+		tokenizer.nextToken();
+		int numEvents = Integer.parseInt(tokenizer.sval);
+		for (int i = 0; i < numEvents; i++) {
+			tokenizer.nextToken(); // count
+			tokenizer.nextToken();
+			int numFeats = Integer.parseInt(tokenizer.sval);
+			for (int j = 0; j < 2 * numFeats; j++)
+				tokenizer.nextToken();
+		}
+	}
+
 	/**
 	 * Returns a reader for the given file, using gzip inflation if the file's
 	 * name ends with .gz.
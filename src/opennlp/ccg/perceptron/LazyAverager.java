@@ -0,0 +1,143 @@
+///////////////////////////////////////////////////////////////////////////////
+// Copyright (C) 2015 Daniel Couto-Vale (RWTH Aachen)
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+//////////////////////////////////////////////////////////////////////////////
+
+package opennlp.ccg.perceptron;
+
+import opennlp.ccg.perceptron.Alphabet.Feature;
+
+/**
+ * Sums the weights of a model over a number of steps, without visiting every
+ * weight at every step. Each weight is given the step at which it was last
+ * changed and its sum up to that step, and when it is changed again, its sum
+ * is first caught up with the steps for which it stayed the same. All the
+ * sums are caught up when they are retrieved.
+ * <p>
+ * The model must only be changed through the averager between calls to
+ * reset and getSums.
+ *
+ * @author Daniel Couto-Vale
+ * @version
+ */
+public class LazyAverager {
+
+	// the model
+	private final Model model;
+
+	// the weight sums, up to the last updates
+	private final double[] sums;
+
+	// the steps of the last updates
+	private final int[] lastUpdates;
+
+	// the number of steps
+	private int steps = 0;
+
+	/** Constructor with the model whose weights are to be summed. */
+	public LazyAverager(Model model) {
+		this.model = model;
+		sums = new double[model.size()];
+		lastUpdates = new int[model.size()];
+	}
+
+	/** Returns the model. */
+	public Model getModel() {
+		return model;
+	}
+
+	/** Returns the number of steps. */
+	public int getSteps() {
+		return steps;
+	}
+
+	/** Resets the sums and the number of steps to zero. */
+	public void reset() {
+		for (int i = 0; i < sums.length; i++) {
+			sums[i] = 0.0;
+			lastUpdates[i] = 0;
+		}
+		steps = 0;
+	}
+
+	/** Adds the feature vector values to the weights of the model. */
+	public void add(FeatureVector fv) {
+		catchUp(fv);
+		model.add(fv);
+	}
+
+	/** Subtracts the feature vector values from the weights of the model. */
+	public void subtract(FeatureVector fv) {
+		catchUp(fv);
+		model.subtract(fv);
+	}
+
+	/** Adds the current weights of the model to the sums. */
+	public void step() {
+		steps++;
+	}
+
+	// catches up the sums of the weights for the features in the given vector
+	private void catchUp(FeatureVector fv) {
+		if (fv instanceof PackedFeatureVector) {
+			PackedFeatureVector pfv = (PackedFeatureVector) fv;
+			for (int i = 0; i < pfv.size(); i++)
+				catchUp(pfv.getIndex(i));
+			return;
+		}
+		for (FeatureVector.Iterator it = fv.iterator(); it.hasNext();) {
+			Feature feat = it.nextFeature();
+			it.nextValue();
+			Integer index = feat.getIndex();
+			if (index == null)
+				continue;
+			catchUp(index);
+		}
+	}
+
+	// catches up the sum of the weight with the given index
+	private void catchUp(int index) {
+		int elapsed = steps - lastUpdates[index];
+		if (elapsed > 0) {
+			sums[index] += elapsed * model.getWeight(index);
+			lastUpdates[index] = steps;
+		}
+	}
+
+	/**
+	 * Sets the weights of the given model to the sums, after catching them up
+	 * with the current step. The given model is assumed to share the alphabet
+	 * of the summed one.
+	 */
+	public void getSums(Model sumModel) {
+		for (int i = 0; i < sums.length; i++) {
+			catchUp(i);
+			sumModel.setWeight(i, sums[i]);
+		}
+	}
+
+	/**
+	 * Adds the sums to the weights of the given model, after catching them up
+	 * with the current step. The given model is assumed to share the alphabet
+	 * of the summed one.
+	 */
+	public void addSums(Model sumModel) {
+		for (int i = 0; i < sums.length; i++) {
+			catchUp(i);
+			sumModel.setWeight(i, sumModel.getWeight(i) + sums[i]);
+		}
+	}
+}
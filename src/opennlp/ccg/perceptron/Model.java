@@ -21,6 +21,8 @@ package opennlp.ccg.perceptron;
 import java.util.*;
 import java.io.*;
 
+import gnu.trove.TIntArrayList;
+
 import opennlp.ccg.perceptron.Alphabet.Feature;
 import opennlp.ccg.util.Pair;
 
@@ -33,7 +35,23 @@ import opennlp.ccg.util.Pair;
  * 
  * A new model with all zero weights can also be created from an alphabet.
  * 
- * The main routine tests the model on an event file.
+ * The model file of a hashed alphabet starts with the number of hash bits
+ * prefixed by #, and then the number of features, whose names are those of
+ * their buckets.
+ * 
+ * A model can also be saved to and loaded from a compact binary file, which
+ * starts with a magic string, and then has the hash bits (zero if not
+ * hashed), the number of bits per weight, the number of features, the
+ * codebook if the weights are quantised, and then the features' names (or
+ * bucket indices if hashed) with their weights, as doubles, floats or 16 or
+ * 8-bit codes.
+ * 
+ * When loading a model, weights can be pruned by magnitude, and stored in
+ * compact form, as floats or 16 or 8-bit codes, in which case the model is
+ * read-only.
+ * 
+ * The main routine tests the model on an event file, optionally reporting
+ * the accuracy loss of a pruned and compact version of it.
  * 
  * @author Michael White
  * @version $Revision: 1.7 $, $Date: 2009/11/09 18:54:30 $
@@ -49,9 +67,30 @@ public class Model {
 	/** Flag for whether to print debugging info to System.err. */
 	public boolean debug = false;
 
-	// weight vector
+	/**
+	 * Flag for whether to find the best event in a block by scoring just the
+	 * residual features of the events, factoring out the features they all
+	 * share with the same value, which add the same amount to every score.
+	 * The residual features are kept with the block, so with blocks kept in
+	 * memory they are only computed once.
+	 */
+	public boolean factorCommonFeatures = false;
+
+	/** Magic string at the start of binary model files. */
+	public static final String MAGIC = "OCCGMODL";
+
+	/** Version of the binary model file format. */
+	public static final int VERSION = 1;
+
+	// weight vector, or null if compact
 	private double[] weights;
 
+	// compact weights, or null if not compact
+	private CompactWeights compactWeights = null;
+
+	// the version of the weights, which is incremented whenever they change
+	private volatile long version = 0;
+
 	// alphabet
 	private Alphabet alphabet;
 
@@ -72,9 +111,50 @@ public class Model {
 	 * alphabet is set to closed.
 	 */
 	public Model(String filename, FeatureFilter filter) throws IOException {
+		this(filename, filter, -1.0, 0);
+	}
+
+	/**
+	 * Constructor to load a model from a file using a feature filter, pruning
+	 * the weights whose absolute value does not exceed the pruning value
+	 * (none if negative), and storing the weights with the given number of
+	 * bits (64 for doubles, 32 for floats, 16 or 8 for codes, or 0 for as
+	 * stored in the file). The alphabet is set to closed, and the model is
+	 * read-only with fewer than 64 bits.
+	 */
+	public Model(String filename, FeatureFilter filter, double minPrune, int weightBits)
+			throws IOException {
+		File file = new File(filename);
+		if (isBinary(file)) {
+			loadBinary(file, filter, minPrune, weightBits);
+			return;
+		}
 		Reader reader = EventFile.openReader(new File(filename));
 		StreamTokenizer tokenizer = EventFile.initTokenizer(reader);
 		tokenizer.nextToken();
+		if (tokenizer.sval.startsWith(Alphabet.HASH_PREFIX)) {
+			// hashed case
+			int hashBits = Integer.parseInt(tokenizer.sval.substring(Alphabet.HASH_PREFIX.length()));
+			alphabet = new Alphabet(hashBits, true);
+			weights = new double[alphabet.size()];
+			tokenizer.nextToken();
+			int size = Integer.parseInt(tokenizer.sval);
+			for (int i = 0; i < size; i++) {
+				tokenizer.nextToken();
+				String name = tokenizer.sval;
+				tokenizer.nextToken();
+				double weight = Double.parseDouble(tokenizer.sval);
+				if (filter != null)
+					weight = filter.adjustedWeight(name, weight);
+				if (Math.abs(weight) <= minPrune)
+					continue;
+				weights[alphabet.index(name).getIndex()] = weight;
+			}
+			reader.close();
+			alphabet.setClosed(true);
+			compact(weightBits, null);
+			return;
+		}
 		int size = Integer.parseInt(tokenizer.sval);
 		alphabet = new Alphabet(size);
 		weights = new double[size];
@@ -85,16 +165,118 @@ public class Model {
 			double weight = Double.parseDouble(tokenizer.sval);
 			if (filter != null)
 				weight = filter.adjustedWeight(name, weight);
-			alphabet.add(name);
-			weights[i] = weight;
+			if (Math.abs(weight) <= minPrune)
+				continue;
+			weights[alphabet.add(name).getIndex()] = weight;
 		}
 		reader.close();
 		alphabet.setClosed(true);
+		if (alphabet.size() < size)
+			weights = Arrays.copyOf(weights, alphabet.size());
+		compact(weightBits, null);
+	}
+
+	/** Returns whether the given file is a binary model file. */
+	public static boolean isBinary(File file) throws IOException {
+		if (file.length() < MAGIC.length())
+			return false;
+		DataInputStream in = new DataInputStream(new FileInputStream(file));
+		try {
+			byte[] magic = new byte[MAGIC.length()];
+			in.readFully(magic);
+			return MAGIC.equals(new String(magic, "US-ASCII"));
+		} finally {
+			in.close();
+		}
+	}
+
+	// loads a binary model file
+	private void loadBinary(File file, FeatureFilter filter, double minPrune, int weightBits)
+			throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		in.skipBytes(MAGIC.length());
+		int version = in.readInt();
+		if (version != VERSION)
+			throw new IOException("Unsupported model file version: " + version);
+		int hashBits = in.readInt();
+		int fileBits = in.readInt();
+		int size = in.readInt();
+		float[] codebook = null;
+		if (fileBits < 32) {
+			codebook = new float[in.readInt()];
+			for (int i = 0; i < codebook.length; i++)
+				codebook[i] = in.readFloat();
+		}
+		alphabet = (hashBits > 0) ? new Alphabet(hashBits, true) : new Alphabet(size);
+		weights = new double[(hashBits > 0) ? alphabet.size() : size];
+		for (int i = 0; i < size; i++) {
+			Feature f = (hashBits > 0) ? alphabet.feature(in.readInt()) : null;
+			String name = (f != null) ? f.name() : in.readUTF();
+			double weight;
+			switch (fileBits) {
+			case 64:
+				weight = in.readDouble();
+				break;
+			case 32:
+				weight = in.readFloat();
+				break;
+			case 16:
+				weight = codebook[in.readShort() & 0xffff];
+				break;
+			default:
+				weight = codebook[in.readByte() & 0xff];
+			}
+			if (filter != null)
+				weight = filter.adjustedWeight(name, weight);
+			if (Math.abs(weight) <= minPrune)
+				continue;
+			if (f == null)
+				f = alphabet.add(name);
+			weights[f.getIndex()] = weight;
+		}
+		in.close();
+		alphabet.setClosed(true);
+		if (hashBits == 0 && alphabet.size() < size)
+			weights = Arrays.copyOf(weights, alphabet.size());
+		if (weightBits == 0)
+			weightBits = fileBits;
+		compact(weightBits, (weightBits == fileBits) ? codebook : null);
+	}
+
+	// stores the weights with the given number of bits, using the given
+	// codebook if non-null
+	private void compact(int weightBits, float[] codebook) {
+		if (weightBits == 0 || weightBits == 64)
+			return;
+		compactWeights = (codebook != null) ? new CompactWeights(weights, weightBits, codebook)
+				: new CompactWeights(weights, weightBits);
+		weights = null;
+	}
+
+	// throws an exception if the weights are compact
+	private void checkWritable() {
+		if (compactWeights != null)
+			throw new UnsupportedOperationException("Compact models are read-only");
+	}
+
+	// returns the weight with the given index
+	private double weight(int index) {
+		return (weights != null) ? weights[index] : compactWeights.get(index);
 	}
 
 	/** Returns the size of the model. */
 	public int size() {
-		return weights.length;
+		return (weights != null) ? weights.length : compactWeights.size();
+	}
+
+	/** Returns the number of bits per weight. */
+	public int weightBits() {
+		return (weights != null) ? 64 : compactWeights.bits();
+	}
+
+	/** Returns the number of bytes taken up by the weights. */
+	public long weightBytes() {
+		return (weights != null) ? 8L * weights.length : compactWeights.sizeInBytes();
 	}
 
 	/** Returns the alphabet. */
@@ -104,52 +286,110 @@ public class Model {
 
 	/** Returns the weight for the given index. */
 	public double getWeight(int index) {
-		return weights[index];
+		return weight(index);
 	}
 
 	/** Returns the weight for the given feature. */
 	public double getWeight(String feat) {
-		return weights[alphabet.index(feat).getIndex()];
+		return weight(alphabet.index(feat).getIndex());
 	}
 
 	/** Returns the weight for the given feature. */
 	public double getWeight(Alphabet.Feature f) {
-		return weights[f.getIndex()];
+		return weight(f.getIndex());
+	}
+
+	/**
+	 * Returns the version of the weights, which changes whenever they are
+	 * changed, for caching scores.
+	 */
+	public long getVersion() {
+		return version;
 	}
 
 	/** Sets the weight for the given index. */
 	public void setWeight(int index, double weight) {
+		checkWritable();
+		version++;
 		weights[index] = weight;
 	}
 
 	/** Sets the weight for the given feature. */
 	public void setWeight(String feat, double weight) {
+		checkWritable();
+		version++;
 		weights[alphabet.index(feat).getIndex()] = weight;
 	}
 
 	/** Sets the weight for the given feature. */
 	public void setWeight(Alphabet.Feature f, double weight) {
+		checkWritable();
+		version++;
 		weights[f.getIndex()] = weight;
 	}
 
-	/** Returns the dot product of the weights and features. */
+	/**
+	 * Returns the dot product of the weights and features. Packed feature
+	 * vectors, including those in composed ones, are scored without going
+	 * through the feature vector iterator, and delta feature vectors reuse
+	 * their cached scores.
+	 */
 	public double score(FeatureVector fv) {
-		double retval = 0.0;
+		double retval = addScore(fv, 0.0);
+		if (debug)
+			System.err.println("score: " + retval + " " + fv);
+		return retval;
+	}
+
+	// adds the dot product of the weights and features to the given score,
+	// feature by feature
+	double addScore(FeatureVector fv, double retval) {
+		if (fv instanceof DeltaFeatureVector)
+			return retval + ((DeltaFeatureVector) fv).score(this);
+		if (fv instanceof PackedFeatureVector) {
+			PackedFeatureVector pfv = (PackedFeatureVector) fv;
+			if (weights == null) {
+				for (int i = 0; i < pfv.size(); i++)
+					retval += compactWeights.get(pfv.getIndex(i)) * pfv.getValue(i);
+				return retval;
+			}
+			for (int i = 0; i < pfv.size(); i++)
+				retval += weights[pfv.getIndex(i)] * pfv.getValue(i);
+			return retval;
+		}
+		if (fv instanceof ComposedFeatureVector) {
+			for (FeatureVector component : ((ComposedFeatureVector) fv).featureVectors)
+				retval = addScore(component, retval);
+			return retval;
+		}
 		for (FeatureVector.Iterator it = fv.iterator(); it.hasNext();) {
 			Feature feat = it.nextFeature();
 			Float value = it.nextValue();
 			Integer index = feat.getIndex();
 			if (index == null)
 				continue;
-			retval += weights[index] * value;
+			retval += weight(index) * value;
 		}
-		if (debug)
-			System.err.println("score: " + retval + " " + fv);
 		return retval;
 	}
 
 	/** Adds the feature vector values to the weights. */
 	public void add(FeatureVector fv) {
+		checkWritable();
+		version++;
+		if (fv instanceof DeltaFeatureVector) {
+			DeltaFeatureVector dfv = (DeltaFeatureVector) fv;
+			for (DeltaFeatureVector input : dfv.inputFeatures)
+				add(input);
+			add(dfv.localFeatures);
+			return;
+		}
+		if (fv instanceof PackedFeatureVector) {
+			PackedFeatureVector pfv = (PackedFeatureVector) fv;
+			for (int i = 0; i < pfv.size(); i++)
+				weights[pfv.getIndex(i)] += pfv.getValue(i);
+			return;
+		}
 		for (FeatureVector.Iterator it = fv.iterator(); it.hasNext();) {
 			Feature feat = it.nextFeature();
 			Float value = it.nextValue();
@@ -162,6 +402,21 @@ public class Model {
 
 	/** Subtracts the feature vector values from the weights. */
 	public void subtract(FeatureVector fv) {
+		checkWritable();
+		version++;
+		if (fv instanceof DeltaFeatureVector) {
+			DeltaFeatureVector dfv = (DeltaFeatureVector) fv;
+			for (DeltaFeatureVector input : dfv.inputFeatures)
+				subtract(input);
+			subtract(dfv.localFeatures);
+			return;
+		}
+		if (fv instanceof PackedFeatureVector) {
+			PackedFeatureVector pfv = (PackedFeatureVector) fv;
+			for (int i = 0; i < pfv.size(); i++)
+				weights[pfv.getIndex(i)] -= pfv.getValue(i);
+			return;
+		}
 		for (FeatureVector.Iterator it = fv.iterator(); it.hasNext();) {
 			Feature feat = it.nextFeature();
 			Float value = it.nextValue();
@@ -177,13 +432,29 @@ public class Model {
 	 * share the same alphabet.
 	 */
 	public void add(Model model) {
+		checkWritable();
+		version++;
 		for (int i = 0; i < weights.length; i++) {
-			weights[i] += model.weights[i];
+			weights[i] += model.weight(i);
+		}
+	}
+
+	/**
+	 * Adds the given model's weights times the given number to this model. The
+	 * models are assumed to share the same alphabet.
+	 */
+	public void add(Model model, double mult) {
+		checkWritable();
+		version++;
+		for (int i = 0; i < weights.length; i++) {
+			weights[i] += model.weight(i) * mult;
 		}
 	}
 
 	/** Multiplies the weights by the given number. */
 	public void multiply(double num) {
+		checkWritable();
+		version++;
 		for (int i = 0; i < weights.length; i++) {
 			weights[i] *= num;
 		}
@@ -191,6 +462,8 @@ public class Model {
 
 	/** Resets the weights to zero. */
 	public void zero() {
+		checkWritable();
+		version++;
 		for (int i = 0; i < weights.length; i++) {
 			weights[i] = 0.0;
 		}
@@ -202,13 +475,14 @@ public class Model {
 	 */
 	public void set(Model model) {
 		zero();
-		for (int i = 0; i < model.weights.length; i++) {
+		for (int i = 0; i < model.size(); i++) {
 			Alphabet.Feature f = model.alphabet.feature(i);
 			Alphabet.Feature f0 = alphabet.index(f);
 			if (f0 == null || f0.getIndex() == null)
 				continue;
-			weights[f0.getIndex()] = model.weights[i];
+			weights[f0.getIndex()] = model.weight(i);
 		}
+		version++;
 	}
 
 	/** Returns the best event (first tied if ties). */
@@ -225,12 +499,17 @@ public class Model {
 		return retval;
 	}
 
-	/** Returns the best event (first tied if ties). */
+	/**
+	 * Returns the best event (first tied if ties), factoring out the common
+	 * features if apropos.
+	 */
 	public EventFile.Event best(EventFile.Block block) {
+		if (factorCommonFeatures)
+			block.factorCommonFeatures(alphabet);
 		EventFile.Event retval = null;
 		double max = Double.NEGATIVE_INFINITY;
 		for (EventFile.Event event : block.events) {
-			double score = score(event.features);
+			double score = score(factorCommonFeatures ? event.residualFeatures : event.features);
 			if (score > max) {
 				retval = event;
 				max = score;
@@ -279,17 +558,19 @@ public class Model {
 		int size = size();
 		int pruned = 0;
 		for (int i = 0; i < size; i++)
-			if (Math.abs(weights[i]) <= minPrune)
+			if (Math.abs(weight(i)) <= minPrune)
 				pruned++;
 		int prunedSize = size - pruned;
-		// write pruned size
+		// write pruned size, after hash bits if apropos
+		if (alphabet.hashed())
+			out.print(Alphabet.HASH_PREFIX + alphabet.hashBits() + " ");
 		out.println(Integer.toString(prunedSize));
 		// collect unpruned weights
 		List<Pair<Feature, Double>> featWeights = new ArrayList<Pair<Feature, Double>>(prunedSize);
 		for (int i = 0; i < size; i++) {
-			if (Math.abs(weights[i]) <= minPrune)
+			if (Math.abs(weight(i)) <= minPrune)
 				continue;
-			featWeights.add(new Pair<Feature, Double>(alphabet.feature(i), weights[i]));
+			featWeights.add(new Pair<Feature, Double>(alphabet.feature(i), weight(i)));
 		}
 		// sort weights by descending absolute value
 		// (further sorting alphabetically may take too long)
@@ -313,22 +594,102 @@ public class Model {
 	}
 
 	/**
-	 * Loads a model from a file and tests it on the given event file.
+	 * Saves the model to a binary file, filtering out weights whose absolute
+	 * value does not exceed the pruning value, and storing the weights with
+	 * the given number of bits (64 for doubles, 32 for floats, 16 or 8 for
+	 * codes).
+	 */
+	public void saveBinary(String filename, double minPrune, int weightBits) throws IOException {
+		if (weightBits != 64 && weightBits != 32 && weightBits != 16 && weightBits != 8)
+			throw new IllegalArgumentException("Weights must have 64, 32, 16 or 8 bits: " + weightBits);
+		// collect unpruned weights
+		int size = size();
+		TIntArrayList indices = new TIntArrayList();
+		for (int i = 0; i < size; i++) {
+			if (Math.abs(weight(i)) > minPrune)
+				indices.add(i);
+		}
+		double[] prunedWeights = new double[indices.size()];
+		for (int j = 0; j < prunedWeights.length; j++)
+			prunedWeights[j] = weight(indices.get(j));
+		// encode them
+		CompactWeights compact = (weightBits < 64) ? new CompactWeights(prunedWeights, weightBits)
+				: null;
+		// write header
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(
+				filename)));
+		out.write(MAGIC.getBytes("US-ASCII"));
+		out.writeInt(VERSION);
+		out.writeInt(alphabet.hashed() ? alphabet.hashBits() : 0);
+		out.writeInt(weightBits);
+		out.writeInt(prunedWeights.length);
+		if (weightBits < 32) {
+			float[] codebook = compact.getCodebook();
+			out.writeInt(codebook.length);
+			for (float value : codebook)
+				out.writeFloat(value);
+		}
+		// write features and weights
+		for (int j = 0; j < prunedWeights.length; j++) {
+			if (alphabet.hashed())
+				out.writeInt(indices.get(j));
+			else
+				out.writeUTF(alphabet.feature(indices.get(j)).name());
+			switch (weightBits) {
+			case 64:
+				out.writeDouble(prunedWeights[j]);
+				break;
+			case 32:
+				out.writeFloat((float) prunedWeights[j]);
+				break;
+			case 16:
+				out.writeShort(compact.getCode(j));
+				break;
+			default:
+				out.writeByte(compact.getCode(j));
+			}
+		}
+		out.close();
+	}
+
+	/**
+	 * Loads a model from a file and tests it on the given event file. With
+	 * the -prune or -bits options, a pruned and/or compact version of the
+	 * model is also loaded and tested, reporting the accuracy loss, and with
+	 * the -save option, the compact version is saved to a binary file.
 	 */
 	public static void main(String[] args) throws IOException {
 		// help
 		if (args.length < 2) {
-			System.out.println("Usage: java perceptron.Model <modelfile> <eventfile> (-debug)");
+			System.out.println("Usage: java perceptron.Model <modelfile> <eventfile> (-debug) "
+					+ "(-prune <min>) (-bits <64|32|16|8>) (-save <binarymodelfile>) (-factor)");
 			System.exit(0);
 		}
 		// args
 		String modelfile = args[0];
 		String eventfile = args[1];
-		boolean debug = Arrays.asList(args).contains("-debug");
+		boolean debug = false;
+		boolean factor = false;
+		double minPrune = -1.0;
+		int weightBits = 0;
+		String savefile = null;
+		for (int i = 2; i < args.length; i++) {
+			if (args[i].equals("-debug"))
+				debug = true;
+			else if (args[i].equals("-factor"))
+				factor = true;
+			else if (args[i].equals("-prune"))
+				minPrune = Double.parseDouble(args[++i]);
+			else if (args[i].equals("-bits"))
+				weightBits = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-save"))
+				savefile = args[++i];
+		}
 		// load model
 		System.out.println("Loading model from: " + modelfile);
 		Model model = new Model(modelfile);
 		model.debug = debug;
+		model.factorCommonFeatures = factor;
 		System.out.println("model size: " + model.size());
 		System.out.println("debug: " + debug);
 		// compute accuracy
@@ -336,5 +697,27 @@ public class Model {
 		EventFile eventFile = new EventFile(eventfile, model.alphabet);
 		double accuracy = model.accuracy(eventFile);
 		System.out.println("accuracy: " + accuracy);
+		if (minPrune < 0 && weightBits == 0 && savefile == null)
+			return;
+		// save compact model
+		if (savefile != null) {
+			int saveBits = (weightBits == 0) ? 64 : weightBits;
+			System.out.println("Saving " + saveBits + "-bit model to: " + savefile);
+			model.saveBinary(savefile, minPrune, saveBits);
+		}
+		// load and test compact model
+		System.out.println("Loading compact model with pruning value " + minPrune + " and "
+				+ ((weightBits == 0) ? "stored" : Integer.toString(weightBits)) + " bits");
+		Model compactModel = (savefile != null) ? new Model(savefile) : new Model(modelfile, null,
+				minPrune, weightBits);
+		compactModel.debug = debug;
+		compactModel.factorCommonFeatures = factor;
+		System.out.println("model size: " + compactModel.size() + " (was " + model.size() + ")");
+		System.out.println("weight bytes: " + compactModel.weightBytes() + " (was "
+				+ model.weightBytes() + ")");
+		EventFile compactEventFile = new EventFile(eventfile, compactModel.alphabet);
+		double compactAccuracy = compactModel.accuracy(compactEventFile);
+		System.out.println("accuracy: " + compactAccuracy);
+		System.out.println("accuracy loss: " + (accuracy - compactAccuracy));
 	}
 }
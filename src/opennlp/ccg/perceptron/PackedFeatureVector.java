@@ -0,0 +1,263 @@
+///////////////////////////////////////////////////////////////////////////////
+// Copyright (C) 2015 Daniel Couto-Vale (RWTH Aachen)
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+//////////////////////////////////////////////////////////////////////////////
+
+package opennlp.ccg.perceptron;
+
+import java.util.Arrays;
+
+import opennlp.ccg.synsem.Symbol;
+
+/**
+ * An immutable feature vector represented by parallel arrays of feature
+ * indices and values, sorted by index, with each index appearing once. The
+ * indices and values can be accessed as primitives by position, which avoids
+ * the boxing of the feature vector iterator; the features themselves are
+ * looked up in the alphabet only when iterating.
+ * <p>
+ * Features without an index in the alphabet are left out when packing.
+ *
+ * @author Daniel Couto-Vale
+ * @version
+ */
+public class PackedFeatureVector implements FeatureVector {
+
+	/** The empty vector. */
+	public static final PackedFeatureVector EMPTY = new PackedFeatureVector(null, new int[0],
+			new float[0], 0);
+
+	// the alphabet
+	private final Alphabet alphabet;
+
+	// the sorted indices
+	private final int[] indices;
+
+	// the values
+	private final float[] values;
+
+	// the size
+	private final int size;
+
+	// constructor with arrays, which are used as is
+	private PackedFeatureVector(Alphabet alphabet, int[] indices, float[] values, int size) {
+		this.alphabet = alphabet;
+		this.indices = indices;
+		this.values = values;
+		this.size = size;
+	}
+
+	/**
+	 * Constructor from a feature vector, whose features are assumed to belong
+	 * to the given alphabet. The values of repeated features are summed.
+	 */
+	public PackedFeatureVector(Alphabet alphabet, FeatureVector fv) {
+		this.alphabet = alphabet;
+		int n = fv.size();
+		long[] pairs = new long[n];
+		int count = 0;
+		for (Iterator it = fv.iterator(); it.hasNext();) {
+			Integer index = it.nextFeature().getIndex();
+			float value = it.nextValue();
+			if (index == null)
+				continue;
+			if (count == pairs.length)
+				pairs = Arrays.copyOf(pairs, count * 2 + 1);
+			// pack index and value bits, sortable by index
+			pairs[count++] = ((long) index << 32) | (Float.floatToRawIntBits(value) & 0xffffffffL);
+		}
+		Arrays.sort(pairs, 0, count);
+		indices = new int[count];
+		values = new float[count];
+		int k = -1;
+		for (int i = 0; i < count; i++) {
+			int index = (int) (pairs[i] >>> 32);
+			float value = Float.intBitsToFloat((int) pairs[i]);
+			if (k >= 0 && indices[k] == index)
+				values[k] += value;
+			else {
+				k++;
+				indices[k] = index;
+				values[k] = value;
+			}
+		}
+		size = k + 1;
+	}
+
+	/**
+	 * Returns the sum of the given vectors, which are assumed to share the
+	 * same alphabet.
+	 */
+	public static PackedFeatureVector merge(PackedFeatureVector fv1, PackedFeatureVector fv2) {
+		if (fv1.size == 0)
+			return fv2;
+		if (fv2.size == 0)
+			return fv1;
+		int n = fv1.size + fv2.size;
+		int[] indices = new int[n];
+		float[] values = new float[n];
+		int i = 0, j = 0, k = 0;
+		while (i < fv1.size && j < fv2.size) {
+			int index1 = fv1.indices[i];
+			int index2 = fv2.indices[j];
+			if (index1 < index2) {
+				indices[k] = index1;
+				values[k++] = fv1.values[i++];
+			} else if (index2 < index1) {
+				indices[k] = index2;
+				values[k++] = fv2.values[j++];
+			} else {
+				indices[k] = index1;
+				values[k++] = fv1.values[i++] + fv2.values[j++];
+			}
+		}
+		while (i < fv1.size) {
+			indices[k] = fv1.indices[i];
+			values[k++] = fv1.values[i++];
+		}
+		while (j < fv2.size) {
+			indices[k] = fv2.indices[j];
+			values[k++] = fv2.values[j++];
+		}
+		Alphabet alphabet = (fv1.alphabet != null) ? fv1.alphabet : fv2.alphabet;
+		return new PackedFeatureVector(alphabet, indices, values, k);
+	}
+
+	/**
+	 * Returns the features the given vectors share with the same value, which
+	 * are assumed to share the same alphabet.
+	 */
+	public static PackedFeatureVector intersection(PackedFeatureVector fv1, PackedFeatureVector fv2) {
+		int n = Math.min(fv1.size, fv2.size);
+		int[] indices = new int[n];
+		float[] values = new float[n];
+		int i = 0, j = 0, k = 0;
+		while (i < fv1.size && j < fv2.size) {
+			int index1 = fv1.indices[i];
+			int index2 = fv2.indices[j];
+			if (index1 < index2)
+				i++;
+			else if (index2 < index1)
+				j++;
+			else {
+				if (fv1.values[i] == fv2.values[j]) {
+					indices[k] = index1;
+					values[k++] = fv1.values[i];
+				}
+				i++;
+				j++;
+			}
+		}
+		return new PackedFeatureVector(fv1.alphabet, indices, values, k);
+	}
+
+	/**
+	 * Returns the features of the first vector, except for those the second
+	 * one has with the same value. The vectors are assumed to share the same
+	 * alphabet.
+	 */
+	public static PackedFeatureVector difference(PackedFeatureVector fv1, PackedFeatureVector fv2) {
+		if (fv2.size == 0)
+			return fv1;
+		int[] indices = new int[fv1.size];
+		float[] values = new float[fv1.size];
+		int i = 0, j = 0, k = 0;
+		while (i < fv1.size) {
+			int index1 = fv1.indices[i];
+			while (j < fv2.size && fv2.indices[j] < index1)
+				j++;
+			if (j < fv2.size && fv2.indices[j] == index1 && fv2.values[j] == fv1.values[i]) {
+				i++;
+				continue;
+			}
+			indices[k] = index1;
+			values[k++] = fv1.values[i++];
+		}
+		return new PackedFeatureVector(fv1.alphabet, indices, values, k);
+	}
+
+	/**
+	 * Returns the packed features of the given sign, ie its own given
+	 * features, packed, merged with the packed vectors of its inputs stored
+	 * with the given class, if any.
+	 */
+	public static PackedFeatureVector forSign(Symbol sign, Alphabet alphabet,
+			FeatureVector ownFeatures, Class<? extends SignFeatures> featuresClass) {
+		PackedFeatureVector retval = new PackedFeatureVector(alphabet, ownFeatures);
+		if (sign.isIndexed())
+			return retval;
+		for (Symbol input : sign.getDerivationHistory().getInputs())
+			retval = merge(SignFeatures.get(input, featuresClass, alphabet, true, false).packedFeatures,
+					retval);
+		return retval;
+	}
+
+	/** Returns the alphabet. */
+	public Alphabet getAlphabet() {
+		return alphabet;
+	}
+
+	/** Size. */
+	public int size() {
+		return size;
+	}
+
+	/** Returns the feature index at the given position. */
+	public int getIndex(int pos) {
+		return indices[pos];
+	}
+
+	/** Returns the value at the given position. */
+	public float getValue(int pos) {
+		return values[pos];
+	}
+
+	/** Returns the value of the feature with the given index (zero if not present). */
+	public float get(int index) {
+		int pos = Arrays.binarySearch(indices, 0, size, index);
+		return (pos >= 0) ? values[pos] : 0;
+	}
+
+	/** Iterator, looking up the features in the alphabet. */
+	public Iterator iterator() {
+		if (size == 0)
+			return EMPTY_ITERATOR;
+		return new Iterator() {
+			int pos = 0;
+
+			public boolean hasNext() {
+				return pos < size;
+			}
+
+			public Alphabet.Feature nextFeature() {
+				return alphabet.feature(indices[pos]);
+			}
+
+			public Float nextValue() {
+				return values[pos++];
+			}
+		};
+	}
+
+	/** toString. */
+	public String toString() {
+		StringBuffer sb = new StringBuffer("features: ");
+		for (int i = 0; i < size; i++)
+			sb.append('<').append(alphabet.feature(indices[i]).name()).append(',').append(values[i])
+					.append("> ");
+		return sb.toString();
+	}
+}
@@ -18,27 +18,106 @@
 
 package opennlp.ccg.perceptron;
 
+import java.util.concurrent.atomic.AtomicReference;
+
 import opennlp.ccg.synsem.*;
 
 /**
  * A sign scorer for a perceptron model.
+ * <p>
+ * The model can be replaced while the scorer is in use, eg by a retrained one
+ * in a long-running service. A new model, typically loaded in the background
+ * with loadModel, is staged with setModel, and only takes effect when
+ * swapModel is called between inputs. Each thread scores its input with the
+ * model it last switched to, so an input in progress on one thread finishes
+ * with the old model even when another thread switches to the new one. The
+ * shared feature extractor is bound to the alphabet of the model in use for
+ * each sign, with extraction synchronized on the extractor; since the
+ * extractors store the features of signs under the alphabet they were
+ * extracted with, features from the old alphabet are never scored with the
+ * new model.
  * 
  * @author Michael White
  * @version $Revision: 1.7 $, $Date: 2011/03/21 20:46:43 $
  */
-public class PerceptronScorer implements SymbolScorer {
+public class PerceptronScorer implements SwappableScorer {
 
 	/** The feature extractor. */
 	public final FeatureExtractor featureExtractor;
 
-	/** The model. */
-	public final Model model;
+	// the latest model
+	private volatile Model model;
+
+	// the model each thread is scoring its current input with
+	private final ThreadLocal<Model> threadModel = new ThreadLocal<Model>() {
+		protected Model initialValue() {
+			return model;
+		}
+	};
+
+	// the alphabet the feature extractor is set to, guarded by the extractor
+	private Alphabet extractorAlphabet;
+
+	// the staged model, if any
+	private final AtomicReference<Model> nextModel = new AtomicReference<Model>();
 
 	/** Constructor. */
 	public PerceptronScorer(FeatureExtractor featureExtractor, Model model) {
 		this.featureExtractor = featureExtractor;
 		this.model = model;
-		featureExtractor.setAlphabet(model.getAlphabet());
+		extractorAlphabet = model.getAlphabet();
+		featureExtractor.setAlphabet(extractorAlphabet);
+	}
+
+	/** Returns the model the current thread is scoring with. */
+	public Model getModel() {
+		return threadModel.get();
+	}
+
+	/**
+	 * Stages the given model, with its own alphabet, to replace the current
+	 * one at the next call to swapModel. May be called from any thread.
+	 */
+	public void setModel(Model newModel) {
+		nextModel.set(newModel);
+	}
+
+	/**
+	 * Loads the model in the given file in a new thread, staging it when
+	 * loaded, and returns the started thread. Errors, including those from a
+	 * malformed file, are reported on System.err, leaving the current model
+	 * in place.
+	 */
+	public Thread loadModel(final String filename) {
+		Thread retval = new Thread() {
+			public void run() {
+				try {
+					setModel(new Model(filename));
+				} catch (Exception exc) {
+					System.err.println("Unable to load model from " + filename + ": " + exc);
+				}
+			}
+		};
+		retval.start();
+		return retval;
+	}
+
+	/**
+	 * Switches the current thread to the latest model, making the staged
+	 * model, if any, the latest one, and returns whether the thread's model
+	 * changed. Should only be called between inputs, from the thread doing
+	 * the scoring; the parser and realizer call it before each input. Other
+	 * threads keep scoring with their models until they switch in turn.
+	 */
+	public boolean swapModel() {
+		Model newModel = nextModel.getAndSet(null);
+		if (newModel != null)
+			model = newModel;
+		Model latest = model;
+		if (threadModel.get() == latest)
+			return false;
+		threadModel.set(latest);
+		return true;
 	}
 
 	/**
@@ -48,6 +127,15 @@ public class PerceptronScorer implements SymbolScorer {
 	 * the given completeness flag.
 	 */
 	public double score(Symbol sign, boolean complete) {
-		return model.score(featureExtractor.extractFeatures(sign, complete));
+		Model currentModel = threadModel.get();
+		FeatureVector features;
+		synchronized (featureExtractor) {
+			if (extractorAlphabet != currentModel.getAlphabet()) {
+				extractorAlphabet = currentModel.getAlphabet();
+				featureExtractor.setAlphabet(extractorAlphabet);
+			}
+			features = featureExtractor.extractFeatures(sign, complete);
+		}
+		return currentModel.score(features);
 	}
 }
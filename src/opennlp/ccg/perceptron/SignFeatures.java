@@ -0,0 +1,148 @@
+///////////////////////////////////////////////////////////////////////////////
+// Copyright (C) 2015 Daniel Couto-Vale (RWTH Aachen)
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+//////////////////////////////////////////////////////////////////////////////
+
+package opennlp.ccg.perceptron;
+
+import opennlp.ccg.synsem.Symbol;
+
+/**
+ * The features stored by a feature extractor with a sign, for the sign's
+ * whole derivation. They are stored either as a feature map, which starts as
+ * a copy of the maps of the sign's inputs, as a packed vector, which merges
+ * the packed vectors of the inputs with the sign's own features, or as a
+ * delta vector, which refers to the delta vectors of the inputs. Each
+ * extractor stores its features with its own subclass, for unique retrieval
+ * from a sign's data objects; features stored in different ways, or with
+ * different alphabets, are chained together, so that a sign whose features
+ * were stored one way gets them stored anew when they are requested another
+ * way, eg after the extractor has been switched to a new model's alphabet.
+ *
+ * @author Daniel Couto-Vale
+ * @version
+ */
+public abstract class SignFeatures {
+
+	/** The feature map, unless packed. */
+	public FeatureMap featureMap;
+
+	/** The packed feature vector, if packed. */
+	public PackedFeatureVector packedFeatures;
+
+	/** The delta feature vector, if using delta features. */
+	public DeltaFeatureVector deltaFeatures;
+
+	// the alphabet of the features
+	private Alphabet alphabet = null;
+
+	// whether the features are packed and/or delta features
+	private boolean packed = false, delta = false;
+
+	// features stored in another way with the same sign
+	private volatile SignFeatures next = null;
+
+	/** Default constructor. */
+	protected SignFeatures() {
+	}
+
+	/** Constructor with the feature map. */
+	protected SignFeatures(FeatureMap featureMap) {
+		this.featureMap = featureMap;
+	}
+
+	/** Returns the stored features. */
+	public FeatureVector getFeatures() {
+		if (delta)
+			return deltaFeatures;
+		return (packed) ? packedFeatures : featureMap;
+	}
+
+	/**
+	 * Stores the given features collected for the given sign with it: as is;
+	 * when packing, as a packed vector merged with the packed vectors of its
+	 * inputs; or when using delta features, as a delta vector over the delta
+	 * vectors of its inputs, with the given features packed if apropos. In
+	 * the latter two cases, the given features are the sign's own ones. The
+	 * features are stored under the given alphabet.
+	 */
+	public void store(Symbol sign, FeatureMap features, Alphabet alphabet, boolean pack,
+			boolean delta) {
+		Class<? extends SignFeatures> featuresClass = getClass();
+		this.alphabet = alphabet;
+		packed = pack;
+		this.delta = delta;
+		if (delta) {
+			FeatureVector localFeatures = (pack) ? new PackedFeatureVector(alphabet, features)
+					: features;
+			deltaFeatures = DeltaFeatureVector.forSign(sign, localFeatures, featuresClass,
+					alphabet, pack);
+		} else if (pack)
+			packedFeatures = PackedFeatureVector.forSign(sign, alphabet, features, featuresClass);
+		else
+			featureMap = features;
+		SignFeatures first = get(sign, featuresClass);
+		if (first == null)
+			sign.addData(this);
+		else {
+			next = first.next;
+			first.next = this;
+		}
+	}
+
+	/** Stores the given features with the given sign, as is or packed. */
+	public void store(Symbol sign, FeatureMap features, Alphabet alphabet, boolean pack) {
+		store(sign, features, alphabet, pack, false);
+	}
+
+	/**
+	 * Returns the first features with the given class stored with the given
+	 * sign, or null if none.
+	 */
+	public static <T extends SignFeatures> T get(Symbol sign, Class<T> featuresClass) {
+		return featuresClass.cast(sign.getData(featuresClass));
+	}
+
+	/**
+	 * Returns the features with the given class stored with the given sign
+	 * under the given alphabet in the given way, or null if none.
+	 */
+	public static <T extends SignFeatures> T get(Symbol sign, Class<T> featuresClass,
+			Alphabet alphabet, boolean pack, boolean delta) {
+		for (SignFeatures sf = get(sign, featuresClass); sf != null; sf = sf.next) {
+			if (sf.alphabet == alphabet && sf.packed == pack && sf.delta == delta)
+				return featuresClass.cast(sf);
+		}
+		return null;
+	}
+
+	/**
+	 * Returns a new feature map for collecting the features of a sign with
+	 * the given (one or two) inputs, which starts with the sum of the feature
+	 * maps of the inputs stored with the given class under the given
+	 * alphabet, unless only the sign's own features are to be collected, in
+	 * which case it starts empty.
+	 */
+	public static FeatureMap newFeatureMap(Symbol[] inputs,
+			Class<? extends SignFeatures> featuresClass, Alphabet alphabet, boolean ownFeaturesOnly) {
+		if (ownFeaturesOnly)
+			return new FeatureMap();
+		if (inputs.length == 1)
+			return new FeatureMap(get(inputs[0], featuresClass, alphabet, false, false).featureMap);
+		return new FeatureMap(get(inputs[0], featuresClass, alphabet, false, false).featureMap,
+				get(inputs[1], featuresClass, alphabet, false, false).featureMap);
+	}
+}
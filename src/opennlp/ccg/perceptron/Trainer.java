@@ -29,6 +29,25 @@ import java.io.*;
  * There's also an option to keep the events in memory for subsequent
  * iterations.
  * 
+ * The current model is summed over each iteration lazily, so that the cost of
+ * averaging is proportional to the number of updates rather than the number
+ * of blocks times the size of the alphabet.
+ * 
+ * Training can also be spread over several threads using iterative parameter
+ * mixing (McDonald et al., 2010). The event file is split into as many shards
+ * as there are threads, by taking every Nth block, and in each iteration every
+ * thread trains its own copy of the current model on its shard. At the end of
+ * the iteration, the current model is set to the mix of these copies, either
+ * their mean or their mean weighted by their number of updates, and the
+ * averaged model is updated with the average over all the threads' models.
+ * Since the shards and the order of mixing are fixed, the results only depend
+ * on the number of threads.
+ * 
+ * With the option to factor out common features, the features shared with the
+ * same value by all the events in a block are left out when finding the best
+ * event and when updating the current model, since they add the same amount
+ * to every score and cancel out in updates.
+ * 
  * An alphabet must be supplied as input. The main routine of the Alphabet class
  * can be used to derive an alphabet from a training file.
  * 
@@ -61,9 +80,21 @@ public class Trainer {
 	/** The model for averaging over the current iteration. */
 	private Model iterationModel;
 
+	/** The averager summing the current model over the current iteration. */
+	private LazyAverager averager;
+
 	/** The number of iterations to use when saving every N iterations. */
 	private int saveEveryNth = 0;
 
+	/** The number of threads, ie shards of the training file. */
+	private int numThreads = 1;
+
+	/** Whether to weight the mix of the threads' models by their updates. */
+	private boolean mixByUpdates = false;
+
+	/** Whether to factor out the features common to the events in a block. */
+	private boolean factorCommonFeatures = false;
+
 	/** Constructor. */
 	public Trainer(String trainfile, String alphabetfile, int iterations, String modelfile,
 			boolean inMemory) throws IOException {
@@ -75,6 +106,25 @@ public class Trainer {
 		this.currentModel = new Model(alphabet);
 		this.averagedModel = new Model(alphabet);
 		this.iterationModel = new Model(alphabet);
+		this.averager = new LazyAverager(currentModel);
+	}
+
+	/**
+	 * Sets whether to factor out the features common to the events in a
+	 * block, when finding the best event and updating the current model.
+	 */
+	public void setFactorCommonFeatures(boolean factorCommonFeatures) {
+		this.factorCommonFeatures = factorCommonFeatures;
+		currentModel.factorCommonFeatures = factorCommonFeatures;
+		averagedModel.factorCommonFeatures = factorCommonFeatures;
+	}
+
+	/**
+	 * Sets the number of threads, ie shards of the training file, for
+	 * training with iterative parameter mixing if more than one.
+	 */
+	public void setNumThreads(int numThreads) {
+		this.numThreads = numThreads;
 	}
 
 	/** Initializes the model. */
@@ -89,6 +139,10 @@ public class Trainer {
 	 * iteration and the final model.
 	 */
 	public void train() throws IOException {
+		if (numThreads > 1) {
+			trainInParallel();
+			return;
+		}
 		// open training file
 		EventFile eventFile = new EventFile(trainfile, alphabet, inMemory);
 		// iterate
@@ -97,8 +151,8 @@ public class Trainer {
 			System.out.println("iteration: " + i);
 			// reset training file
 			eventFile.reset();
-			// zero iteration model
-			iterationModel.zero();
+			// reset averager
+			averager.reset();
 			// init counters
 			int updates = 0;
 			int correct = 0;
@@ -112,49 +166,23 @@ public class Trainer {
 				EventFile.Event actualBest = block.best();
 				if (modelBest != actualBest) {
 					updates++;
-					currentModel.add(actualBest.features);
-					currentModel.subtract(modelBest.features);
+					averager.add(updateFeatures(actualBest));
+					averager.subtract(updateFeatures(modelBest));
 				}
 				// see if averaged model correct
 				EventFile.Event avgModelBest = averagedModel.best(block);
 				if (avgModelBest == actualBest)
 					correct++;
 				// update iteration model
-				iterationModel.add(currentModel);
-			}
-			// divide iteration model by total to yield an average for this
-			// iteration,
-			// and divide by iteration number (+1) to yield proportion of this
-			// iteration to averaged model; combine these two steps into one
-			// call
-			double denominator = 1.0 * total * (i + 1);
-			iterationModel.multiply(1.0 / denominator);
-			// multiply averaged model by i/(i+1) for proportion of previous
-			// iterations
-			if (i > 0) {
-				double mult = 1.0 * i / (i + 1);
-				averagedModel.multiply(mult);
+				averager.step();
 			}
-			// updated averaged model
-			averagedModel.add(iterationModel);
-			// report
-			System.out.println("updates: " + updates);
-			System.out.println("avg model correct: " + correct + " total: " + total + " accuracy: "
-					+ (1.0 * correct / total));
-			System.out.println();
-			if (updates == 0) {
-				System.out.println("converged");
-				System.out.println();
+			// set iteration model to sum over this iteration
+			averager.getSums(iterationModel);
+			// update averaged model, report, check convergence
+			if (endIteration(i, updates, correct, total)) {
 				converged = true;
 				break;
 			}
-			// save every nth
-			if (saveEveryNth > 0 && i < (iterations - 1) && i % saveEveryNth == 0) {
-				String nthModelfile = nthFilename(modelfile, i);
-				System.out.println("Saving model to " + nthModelfile);
-				averagedModel.save(nthModelfile);
-				System.out.println();
-			}
 		}
 		// do one more iteration to compute accuracy if not converged
 		if (!converged) {
@@ -179,16 +207,233 @@ public class Trainer {
 					correct++;
 			}
 			// report
-			System.out.println("final model correct: " + finalCorrect + " total: " + total
-					+ " accuracy: " + (1.0 * finalCorrect / total));
-			System.out.println("avg model correct: " + correct + " total: " + total + " accuracy: "
-					+ (1.0 * correct / total));
-			System.out.println();
+			reportFinal(finalCorrect, correct, total);
 		}
 		// close training file
 		eventFile.close();
 	}
 
+	// returns the features to update the current model with for the given
+	// event, ie its residual features if factoring out common features
+	private FeatureVector updateFeatures(EventFile.Event event) {
+		return (factorCommonFeatures) ? event.residualFeatures : event.features;
+	}
+
+	/**
+	 * Updates the averaged model with the iteration model, which must hold the
+	 * sum of the current model over the given total number of blocks, reports
+	 * on the iteration and saves the averaged model if apropos. Returns true
+	 * if the model has converged.
+	 */
+	private boolean endIteration(int i, int updates, int correct, int total) throws IOException {
+		// divide iteration model by total to yield an average for this
+		// iteration,
+		// and divide by iteration number (+1) to yield proportion of this
+		// iteration to averaged model; combine these two steps into one
+		// call
+		double denominator = 1.0 * total * (i + 1);
+		iterationModel.multiply(1.0 / denominator);
+		// multiply averaged model by i/(i+1) for proportion of previous
+		// iterations
+		if (i > 0) {
+			double mult = 1.0 * i / (i + 1);
+			averagedModel.multiply(mult);
+		}
+		// updated averaged model
+		averagedModel.add(iterationModel);
+		// report
+		System.out.println("updates: " + updates);
+		System.out.println("avg model correct: " + correct + " total: " + total + " accuracy: "
+				+ (1.0 * correct / total));
+		System.out.println();
+		if (updates == 0) {
+			System.out.println("converged");
+			System.out.println();
+			return true;
+		}
+		// save every nth
+		if (saveEveryNth > 0 && i < (iterations - 1) && i % saveEveryNth == 0) {
+			String nthModelfile = nthFilename(modelfile, i);
+			System.out.println("Saving model to " + nthModelfile);
+			averagedModel.save(nthModelfile);
+			System.out.println();
+		}
+		return false;
+	}
+
+	/** Reports the accuracy of the final and averaged models. */
+	private void reportFinal(int finalCorrect, int correct, int total) {
+		System.out.println("final model correct: " + finalCorrect + " total: " + total
+				+ " accuracy: " + (1.0 * finalCorrect / total));
+		System.out.println("avg model correct: " + correct + " total: " + total + " accuracy: "
+				+ (1.0 * correct / total));
+		System.out.println();
+	}
+
+	/**
+	 * A thread training a copy of the current model on a shard of the
+	 * training file, or just counting the correct blocks in the final
+	 * iteration.
+	 */
+	private class Worker implements Runnable {
+		// the shard of the training file
+		private final EventFile eventFile;
+		// the model trained on the shard
+		private final Model model;
+		// the averager summing the model over the shard
+		private final LazyAverager averager;
+		// whether to train, rather than just count the correct blocks
+		private boolean training = true;
+		// the counters
+		private int updates, correct, finalCorrect, total;
+		// the failure, if any, including errors, so that an iteration is
+		// never mixed from a shard which was not fully trained
+		private Throwable failure;
+
+		Worker(int shard) throws IOException {
+			eventFile = new EventFile(trainfile, alphabet, inMemory);
+			eventFile.setShard(shard, numThreads);
+			model = new Model(alphabet);
+			model.factorCommonFeatures = factorCommonFeatures;
+			averager = new LazyAverager(model);
+		}
+
+		public void run() {
+			try {
+				// reset training file, counters
+				eventFile.reset();
+				averager.reset();
+				updates = correct = finalCorrect = total = 0;
+				EventFile.Block block;
+				// go through shard
+				while ((block = eventFile.nextBlock()) != null) {
+					total++;
+					EventFile.Event actualBest = block.best();
+					if (training) {
+						// update if wrong
+						EventFile.Event modelBest = model.best(block);
+						if (modelBest != actualBest) {
+							updates++;
+							averager.add(updateFeatures(actualBest));
+							averager.subtract(updateFeatures(modelBest));
+						}
+					} else if (currentModel.best(block) == actualBest)
+						finalCorrect++;
+					// see if averaged model correct
+					if (averagedModel.best(block) == actualBest)
+						correct++;
+					if (training)
+						averager.step();
+				}
+			} catch (Throwable exc) {
+				failure = exc;
+			}
+		}
+	}
+
+	/**
+	 * Runs the given workers in their own threads, waiting for them to
+	 * finish, and rethrows the first failure, if any.
+	 */
+	private void runWorkers(Worker[] workers) throws IOException {
+		Thread[] threads = new Thread[workers.length];
+		for (int k = 0; k < workers.length; k++) {
+			threads[k] = new Thread(workers[k], "Trainer-" + k);
+			threads[k].start();
+		}
+		boolean interrupted = false;
+		for (int k = 0; k < threads.length; k++) {
+			while (true) {
+				try {
+					threads[k].join();
+					break;
+				} catch (InterruptedException exc) {
+					interrupted = true;
+				}
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+		for (Worker worker : workers) {
+			if (worker.failure instanceof IOException)
+				throw (IOException) worker.failure;
+			if (worker.failure instanceof RuntimeException)
+				throw (RuntimeException) worker.failure;
+			if (worker.failure instanceof Error)
+				throw (Error) worker.failure;
+			if (worker.failure != null)
+				throw (RuntimeException) new RuntimeException().initCause(worker.failure);
+		}
+	}
+
+	/**
+	 * Trains the model with iterative parameter mixing over the shards of the
+	 * training file, one per thread, reporting accuracy as with sequential
+	 * training. With a single thread, the model is the same as with
+	 * sequential training.
+	 */
+	void trainInParallel() throws IOException {
+		// open shards of training file
+		Worker[] workers = new Worker[numThreads];
+		for (int k = 0; k < numThreads; k++)
+			workers[k] = new Worker(k);
+		// iterate
+		boolean converged = false;
+		for (int i = 0; i < iterations; i++) {
+			System.out.println("iteration: " + i);
+			// start workers from current model
+			for (Worker worker : workers) {
+				worker.model.zero();
+				worker.model.add(currentModel);
+			}
+			runWorkers(workers);
+			// sum counters
+			int updates = 0;
+			int correct = 0;
+			int total = 0;
+			for (Worker worker : workers) {
+				updates += worker.updates;
+				correct += worker.correct;
+				total += worker.total;
+			}
+			// mix workers' models into current model, in order of shards
+			currentModel.zero();
+			for (Worker worker : workers) {
+				double mult = (mixByUpdates && updates > 0) ? 1.0 * worker.updates / updates
+						: 1.0 / numThreads;
+				currentModel.add(worker.model, mult);
+			}
+			// set iteration model to sum over all shards
+			iterationModel.zero();
+			for (Worker worker : workers)
+				worker.averager.addSums(iterationModel);
+			// update averaged model, report, check convergence
+			if (endIteration(i, updates, correct, total)) {
+				converged = true;
+				break;
+			}
+		}
+		// do one more iteration to compute accuracy if not converged
+		if (!converged) {
+			System.out.println("final iteration: ");
+			for (Worker worker : workers)
+				worker.training = false;
+			runWorkers(workers);
+			int finalCorrect = 0;
+			int correct = 0;
+			int total = 0;
+			for (Worker worker : workers) {
+				finalCorrect += worker.finalCorrect;
+				correct += worker.correct;
+				total += worker.total;
+			}
+			reportFinal(finalCorrect, correct, total);
+		}
+		// close training file shards
+		for (Worker worker : workers)
+			worker.eventFile.close();
+	}
+
 	/** Returns a filename with .N added before the extension, if any. */
 	public static String nthFilename(String filename, int N) {
 		int lastdot = filename.lastIndexOf('.');
@@ -204,14 +449,18 @@ public class Trainer {
 	 * model file. The final (non-averaged) model can optionally be saved using
 	 * the -f option, and intermediate models can be saved every N iterations
 	 * using the -n option. The -in_mem option keeps the events in memory for
-	 * subsequent iterations.
+	 * subsequent iterations. The -threads option trains with iterative
+	 * parameter mixing over the given number of threads, where the -mix_updates
+	 * option weights the mix by the threads' updates. The -factor option
+	 * factors out the features common to the events in a block.
 	 */
 	public static void main(String[] args) throws IOException {
 		// help
 		if (args.length < 4) {
 			System.out
 					.println("Usage: java perceptron.Trainer <traineventfile> <alphabetfile> <iterations> <modelfile> "
-							+ "(-i <initmodelfile>) (-f <finalmodelfile>) (-n <save-every-nth>) (-in_mem)");
+							+ "(-i <initmodelfile>) (-f <finalmodelfile>) (-n <save-every-nth>) (-in_mem) "
+							+ "(-threads <numthreads>) (-mix_updates) (-factor)");
 			System.exit(0);
 		}
 		// args
@@ -223,6 +472,9 @@ public class Trainer {
 		String finalmodelfile = null;
 		int saveEveryNth = 0;
 		boolean inMemory = false;
+		int numThreads = 1;
+		boolean mixByUpdates = false;
+		boolean factorCommonFeatures = false;
 		for (int i = 4; i < args.length; i++) {
 			if (args[i].equals("-i"))
 				initmodelfile = args[++i];
@@ -232,6 +484,12 @@ public class Trainer {
 				saveEveryNth = Integer.parseInt(args[++i]);
 			if (args[i].equals("-in_mem"))
 				inMemory = true;
+			if (args[i].equals("-threads"))
+				numThreads = Integer.parseInt(args[++i]);
+			if (args[i].equals("-mix_updates"))
+				mixByUpdates = true;
+			if (args[i].equals("-factor"))
+				factorCommonFeatures = true;
 		}
 		// setup, train
 		System.out.println("Training on " + traineventfile + " using " + alphabetfile + " for "
@@ -240,11 +498,23 @@ public class Trainer {
 			System.out.println("with " + initmodelfile + " as the initial model");
 		if (inMemory)
 			System.out.println("keeping events in memory");
+		if (numThreads > 1) {
+			System.out.println("mixing parameters over " + numThreads + " threads"
+					+ (mixByUpdates ? ", weighted by updates" : ""));
+			if (!CompiledEventFile.isCompiled(new File(traineventfile)))
+				System.out.println("note: each thread tokenizes the whole text event file; "
+						+ "compile it with CompiledEventFile for a better speedup");
+		}
+		if (factorCommonFeatures)
+			System.out.println("factoring out features common to all events in a block");
 		System.out.println();
 		Trainer trainer = new Trainer(traineventfile, alphabetfile, iterations, modelfile, inMemory);
 		if (initmodelfile != null)
 			trainer.initModel(initmodelfile);
 		trainer.saveEveryNth = saveEveryNth;
+		trainer.setNumThreads(numThreads);
+		trainer.mixByUpdates = mixByUpdates;
+		trainer.setFactorCommonFeatures(factorCommonFeatures);
 		trainer.train();
 		// save model
 		System.out.println("Saving model to " + modelfile);
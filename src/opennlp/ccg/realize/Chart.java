@@ -163,6 +163,19 @@ public class Chart {
 	// the edges seen so far
 	private EdgeHash edgeHash = new EdgeHash();
 
+	// canonical ids for cats, sans LFs
+	private CategoryTable categoryTable = new CategoryTable();
+
+	// returns the canonical id for the edge's cat, sans LF, looking it up once
+	// per table
+	private int catId(Edge edge) {
+		if (edge.catTable != categoryTable) {
+			edge.catId = categoryTable.getId(edge.sign.getCategory());
+			edge.catTable = categoryTable;
+		}
+		return edge.catId;
+	}
+
 	// maps edges to representative edges, according to their
 	// coverage vectors and their cats, sans LFs
 	@SuppressWarnings("unchecked")
@@ -171,14 +184,13 @@ public class Chart {
 
 		public int computeHashCode(Object o) {
 			Edge edge = (Edge) o;
-			return edge.bitset.hashCode() + edge.sign.getCategory().hashCodeNoLF();
+			return edge.bitset.hashCode() + catId(edge);
 		}
 
 		public boolean equals(Object o1, Object o2) {
 			Edge edge1 = (Edge) o1;
 			Edge edge2 = (Edge) o2;
-			return edge1.bitset.equals(edge2.bitset)
-					&& edge1.sign.getCategory().equalsNoLF(edge2.sign.getCategory());
+			return edge1.bitset.equals(edge2.bitset) && catId(edge1) == catId(edge2);
 		}
 	});
 
@@ -80,6 +80,15 @@ public class Edge extends Tracker {
 	 */
 	protected Edge optCompletes = null;
 
+	/**
+	 * The canonical id of the sign's category sans LF in the category table
+	 * it was looked up in, or 0 if not yet looked up.
+	 */
+	protected int catId = 0;
+
+	/** The category table the category id was looked up in. */
+	protected CategoryTable catTable = null;
+
 	/** Constructor. */
 	public Edge(Symbol sign, BitSet bitset, BitSet indices, float completeness, double score,
 			List<List<Alt>> activeLfAlts, BitSet incompleteLfChunk) {
@@ -130,6 +130,9 @@ public class Realizer {
 	public Edge realize(LF lf, SymbolScorer signScorer, int timeLimitMS, boolean waitForCompleteEdge) {
 		List<SatOp> preds = HyloHelper.getInstance().flatten(lf);
 		SymbolScorer scorerToUse = (signScorer != null) ? signScorer : SymbolScorer.nullScorer;
+		// switch to staged model, if any
+		if (scorerToUse instanceof SwappableScorer)
+			((SwappableScorer) scorerToUse).swapModel();
 		PruningStrategy strategyToUse = (pruningStrategy != null) ? pruningStrategy
 				: new NBestPruningStrategy();
 		// realize iteratively with hypertagger, if present
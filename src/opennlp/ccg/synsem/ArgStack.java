@@ -27,6 +27,12 @@ import java.util.*;
 
 /**
  * A stack of arguments with their associated slashes.
+ * <p>
+ * The backing array of args is shared copy-on-write between stacks made by
+ * <code>shallowCopy</code> and full-range <code>subList</code> calls, so that
+ * such copies cost nothing until one of them replaces an arg in place. The
+ * args themselves are not shared by <code>copy</code>, since slashes and
+ * feature structures are updated destructively.
  * 
  * @author Jason Baldridge
  * @author Michael White
@@ -42,6 +48,9 @@ public class ArgStack implements Serializable {
 
 	protected boolean _hasSet = false;
 
+	/** Flag for whether the backing array may be shared with another stack. */
+	protected boolean _shared = false;
+
 	public ArgStack() {
 		_list = new Arg[0];
 	}
@@ -66,6 +75,13 @@ public class ArgStack implements Serializable {
 		checkForSet();
 	}
 
+	// constructor with known dollar and set flags
+	private ArgStack(Arg[] list, boolean hasDollar, boolean hasSet) {
+		_list = list;
+		_hasDollar = hasDollar;
+		_hasSet = hasSet;
+	}
+
 	public ArgStack(List<Element> info) {
 		List<Arg> args = new ArrayList<Arg>();
 		for (Iterator<Element> infoIt = info.iterator(); infoIt.hasNext();) {
@@ -125,6 +141,7 @@ public class ArgStack implements Serializable {
 		$list[index] = c;
 		insert(subList(index)._list, $list, index + 1);
 		_list = $list;
+		_shared = false;
 		if (c instanceof Dollar) {
 			_hasDollar = true;
 		} else if (c instanceof SetArg) {
@@ -137,6 +154,7 @@ public class ArgStack implements Serializable {
 		int last = insert(_list, $list, 0);
 		$list[last] = c;
 		_list = $list;
+		_shared = false;
 		if (c instanceof Dollar) {
 			_hasDollar = true;
 		} else if (c instanceof SetArg) {
@@ -150,6 +168,7 @@ public class ArgStack implements Serializable {
 		last = insert(cl._list, $list, last);
 		insert(subList(index)._list, $list, last);
 		_list = $list;
+		_shared = false;
 		if (cl.containsDollarArg()) {
 			_hasDollar = true;
 		} else if (cl.containsSetArg()) {
@@ -162,6 +181,7 @@ public class ArgStack implements Serializable {
 		int last = insert(_list, $list, 0);
 		insert(cl._list, $list, last);
 		_list = $list;
+		_shared = false;
 		if (cl.containsDollarArg()) {
 			_hasDollar = true;
 		} else if (cl.containsSetArg()) {
@@ -174,6 +194,7 @@ public class ArgStack implements Serializable {
 		$list[0] = c;
 		insert(_list, $list, 1);
 		_list = $list;
+		_shared = false;
 		if (c instanceof Dollar) {
 			_hasDollar = true;
 		} else if (c instanceof SetArg) {
@@ -186,6 +207,7 @@ public class ArgStack implements Serializable {
 		int last = insert(cl._list, $list, 0);
 		insert(_list, $list, last);
 		_list = $list;
+		_shared = false;
 		if (cl.containsDollarArg()) {
 			_hasDollar = true;
 		} else if (cl.containsSetArg()) {
@@ -205,6 +227,7 @@ public class ArgStack implements Serializable {
 		Arg insertInto = _list[index];
 		if (insertInto instanceof BasicArg) {
 			cl.add(insertInto);
+			unshare();
 			_list[index] = new SetArg(cl);
 			_hasSet = true;
 		} else if (insertInto instanceof SetArg) {
@@ -231,6 +254,7 @@ public class ArgStack implements Serializable {
 	}
 
 	public void set(int i, Arg c) {
+		unshare();
 		_list[i] = c;
 		if (c instanceof Dollar) {
 			_hasDollar = true;
@@ -281,6 +305,8 @@ public class ArgStack implements Serializable {
 	}
 
 	public ArgStack subList(int from, int upto) {
+		if (from == 0 && upto == _list.length)
+			return shallowCopy();
 		Arg[] $list;
 		if (upto > from) {
 			$list = new Arg[upto - from];
@@ -294,8 +320,23 @@ public class ArgStack implements Serializable {
 		return new ArgStack($list);
 	}
 
+	/**
+	 * Returns a copy of this stack which shares its backing array and args;
+	 * the array is copied by whichever stack first replaces an arg in place.
+	 */
 	public ArgStack shallowCopy() {
-		return new ArgStack(_list);
+		ArgStack retval = new ArgStack(_list, _hasDollar, _hasSet);
+		_shared = true;
+		retval._shared = true;
+		return retval;
+	}
+
+	// copies the backing array if it may be shared
+	private void unshare() {
+		if (_shared) {
+			_list = _list.clone();
+			_shared = false;
+		}
 	}
 
 	public boolean occurs(Variable v) {
@@ -307,17 +348,33 @@ public class ArgStack implements Serializable {
 		return false;
 	}
 
+	/**
+	 * Returns a new stack with the values of the args filled in from the given
+	 * substitution. Args which are returned unchanged by filling (such as
+	 * unbound dollars) are copied, so that the result never shares args with
+	 * this stack.
+	 */
 	public ArgStack fill(Substitution s) throws UnifyFailure {
-		ArgStack args = new ArgStack();
+		Object[] values = new Object[_list.length];
+		int size = 0;
 		for (int i = 0; i < _list.length; i++) {
 			Object value = _list[i].fill(s);
-			if (value instanceof ArgStack) {
-				args.add((ArgStack) value);
+			if (value == _list[i]) {
+				value = _list[i].copy();
+			}
+			values[i] = value;
+			size += (value instanceof ArgStack) ? ((ArgStack) value).size() : 1;
+		}
+		Arg[] $list = new Arg[size];
+		int pos = 0;
+		for (int i = 0; i < values.length; i++) {
+			if (values[i] instanceof ArgStack) {
+				pos = insert(((ArgStack) values[i])._list, $list, pos);
 			} else {
-				args.add((Arg) value);
+				$list[pos++] = (Arg) values[i];
 			}
 		}
-		return args;
+		return new ArgStack($list);
 	}
 
 	public void deepMap(ModFcn mf) {
@@ -380,11 +437,11 @@ public class ArgStack implements Serializable {
 
 	private ArgStack unifySimple(ArgStack as, int upto, Substitution sub) throws UnifyFailure {
 
-		ArgStack $args = new ArgStack();
+		Arg[] $list = new Arg[upto];
 		for (int i = upto - 1; i >= 0; i--) {
-			$args.addFront((Arg) _list[i].unify(as.get(i), sub));
+			$list[i] = (Arg) _list[i].unify(as.get(i), sub);
 		}
-		return $args;
+		return new ArgStack($list);
 	}
 
 	private ArgStack unifyComplex(ArgStack as, int upto, Substitution sub) throws UnifyFailure {
@@ -0,0 +1,84 @@
+///////////////////////////////////////////////////////////////////////////////
+// Copyright (C) 2015 Daniel Couto-Vale (RWTH Aachen)
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+//////////////////////////////////////////////////////////////////////////////
+
+package opennlp.ccg.synsem;
+
+import gnu.trove.*;
+
+import java.io.Serializable;
+
+/**
+ * A hash-consing table which assigns canonical ids to categories, such that
+ * two categories receive the same id iff they are equal up to variable names,
+ * ignoring their LFs. A chart can look up the id of each category once,
+ * when the category is added, and then decide equivalence of categories by
+ * comparing ids, rather than by recomputing var-map-based hash codes and
+ * recursive equality checks on every insertion and lookup.
+ * <p>
+ * The table keeps a reference to the first category seen for each id, so the
+ * categories given to it must not be changed afterwards. Ids are positive;
+ * zero may thus be used by callers to mark an id which has not been looked up
+ * yet. Since ids from different tables are unrelated, callers caching an id
+ * should also record the table it came from. Tables are not thread-safe.
+ *
+ * @author Daniel Couto-Vale
+ * @version
+ */
+public class CategoryTable implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/** Hashing strategy for categories sans LFs. */
+	private static final TObjectHashingStrategy noLFStrategy = new TObjectHashingStrategy() {
+		private static final long serialVersionUID = 1L;
+
+		public int computeHashCode(Object o) {
+			return ((Category) o).hashCodeNoLF();
+		}
+
+		public boolean equals(Object o1, Object o2) {
+			return ((Category) o1).equalsNoLF(o2);
+		}
+	};
+
+	// maps representative categories to their ids
+	private final TObjectIntHashMap ids = new TObjectIntHashMap(noLFStrategy);
+
+	/**
+	 * Returns the canonical id of the given category, assigning a new one if
+	 * no equivalent category has been seen.
+	 */
+	public int getId(Category cat) {
+		int id = ids.get(cat);
+		if (id == 0) {
+			id = ids.size() + 1;
+			ids.put(cat, id);
+		}
+		return id;
+	}
+
+	/** Returns the number of distinct ids assigned so far. */
+	public int size() {
+		return ids.size();
+	}
+
+	/** Clears the table. */
+	public void clear() {
+		ids.clear();
+	}
+}
@@ -208,8 +208,13 @@ public final class ComplexCat extends AbstractCat {
 				: (LF) _lf.copy());
 	}
 
+	/**
+	 * Returns a copy sharing the target, LF and args with this category; the
+	 * arg stack is shared copy-on-write, so that args may be replaced in the
+	 * copy without affecting this category.
+	 */
 	public Category shallowCopy() {
-		return new ComplexCat(_target, _args, _lf);
+		return new ComplexCat(_target, _args.shallowCopy(), _lf);
 	}
 
 	public void deepMap(ModFcn mf) {
@@ -0,0 +1,37 @@
+///////////////////////////////////////////////////////////////////////////////
+// Copyright (C) 2015 Daniel Couto-Vale (RWTH Aachen)
+// 
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+// 
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+// 
+// You should have received a copy of the GNU Lesser General Public
+// License along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+//////////////////////////////////////////////////////////////////////////////
+
+package opennlp.ccg.synsem;
+
+/**
+ * Interface for sign scorers whose model can be replaced while in use. A new
+ * model is staged at any time, but only takes effect when swapModel is
+ * called, which the parser and realizer do before each input, so that an
+ * input in progress is scored throughout with the same model.
+ *
+ * @author Daniel Couto-Vale
+ * @version
+ */
+public interface SwappableScorer extends SymbolScorer {
+	/**
+	 * Switches to the staged model, if any, returning whether the model
+	 * changed. Should only be called between inputs, from the thread doing
+	 * the scoring.
+	 */
+	public boolean swapModel();
+}
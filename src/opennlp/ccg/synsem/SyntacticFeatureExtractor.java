@@ -39,14 +39,29 @@ public class SyntacticFeatureExtractor implements FeatureExtractor {
 	public static final String PREFIX = "syn";
 
 	/** Feature map wrapper, for unique retrieval from a sign's data objects. */
-	public static class FeatureMapWrapper {
-		public FeatureMap featureMap;
+	public static class FeatureMapWrapper extends SignFeatures {
+		public FeatureMapWrapper() {
+		}
 
 		public FeatureMapWrapper(FeatureMap featureMap) {
-			this.featureMap = featureMap;
+			super(featureMap);
 		}
 	}
 
+	/**
+	 * Flag for whether to store the features of signs as packed vectors
+	 * rather than feature maps (defaults to false); see SignFeatures.
+	 */
+	public boolean packFeatures = false;
+
+	/**
+	 * Flag for whether to emit delta feature vectors (defaults to false). When
+	 * set, the features of each sign are stored as a delta vector, with just
+	 * its own features, packed if apropos, and the delta vectors of its
+	 * inputs, so that their cached scores can be reused.
+	 */
+	public boolean deltaFeatures = false;
+
 	/** Flag for whether to include distance features (defaults to true). */
 	public boolean includeDistFeats = true;
 
@@ -126,7 +141,8 @@ public class SyntacticFeatureExtractor implements FeatureExtractor {
 	/** Returns the features for the given sign and completeness flag. */
 	public FeatureVector extractFeatures(Symbol sign, boolean complete) {
 		addFeatures(sign, complete);
-		return getFeatureMap(sign);
+		return SignFeatures.get(sign, FeatureMapWrapper.class, alphabet, packFeatures,
+				deltaFeatures).getFeatures();
 	}
 
 	/**
@@ -135,7 +151,8 @@ public class SyntacticFeatureExtractor implements FeatureExtractor {
 	 */
 	protected void addFeatures(Symbol sign, boolean complete) {
 		// check for existing map, otherwise make one
-		if (getFeatureMap(sign) != null)
+		if (SignFeatures.get(sign, FeatureMapWrapper.class, alphabet, packFeatures,
+				deltaFeatures) != null)
 			return;
 		// lex case
 		if (sign.isIndexed()) {
@@ -153,10 +170,12 @@ public class SyntacticFeatureExtractor implements FeatureExtractor {
 			currentSign = sign;
 			currentInputs = inputs;
 			if (inputs.length == 1) {
-				currentMap = new FeatureMap(getFeatureMap(inputs[0]));
+				currentMap = SignFeatures.newFeatureMap(inputs, FeatureMapWrapper.class, alphabet,
+						packFeatures || deltaFeatures);
 				inc(unaryRuleExtractors);
 			} else if (inputs.length == 2) {
-				currentMap = new FeatureMap(getFeatureMap(inputs[0]), getFeatureMap(inputs[1]));
+				currentMap = SignFeatures.newFeatureMap(inputs, FeatureMapWrapper.class, alphabet,
+						packFeatures || deltaFeatures);
 				currentSibling = sibling(sign, inputs);
 				inc(binaryRuleExtractors);
 				// dist feats
@@ -173,9 +192,13 @@ public class SyntacticFeatureExtractor implements FeatureExtractor {
 		storeFeatureMap(sign);
 	}
 
-	/** Stores the current feature map as a data object in the given sign. */
+	/**
+	 * Stores the current feature map as a data object in the given sign,
+	 * packed if apropos, or when using delta features, a delta vector with the
+	 * current feature map and the delta vectors of its inputs.
+	 */
 	protected void storeFeatureMap(Symbol sign) {
-		sign.addData(new FeatureMapWrapper(currentMap));
+		new FeatureMapWrapper().store(sign, currentMap, alphabet, packFeatures, deltaFeatures);
 	}
 
 	/**
@@ -183,7 +206,8 @@ public class SyntacticFeatureExtractor implements FeatureExtractor {
 	 * none).
 	 */
 	protected FeatureMap getFeatureMap(Symbol sign) {
-		FeatureMapWrapper fmw = (FeatureMapWrapper) sign.getData(FeatureMapWrapper.class);
+		FeatureMapWrapper fmw = SignFeatures.get(sign, FeatureMapWrapper.class, alphabet, false,
+				false);
 		return (fmw != null) ? fmw.featureMap : null;
 	}
 
@@ -269,6 +269,9 @@ public class CrossValidateRealizer implements ScorerMaker {
 			tester.scorer = scorerMaker.loadScorer(tmpDir, i, trainFile);
 			// run test
 			tester.runTest(testFile);
+			// release n-gram model, if any
+			if (tester.scorer instanceof NgramScorer)
+				((NgramScorer) tester.scorer).release();
 		}
 
 		// show stats
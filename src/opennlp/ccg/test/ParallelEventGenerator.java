@@ -0,0 +1,281 @@
+///////////////////////////////////////////////////////////////////////////////
+// Copyright (C) 2015 Daniel Couto-Vale (RWTH Aachen)
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+//////////////////////////////////////////////////////////////////////////////
+
+package opennlp.ccg.test;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+
+import opennlp.ccg.perceptron.EventFile;
+
+/**
+ * Generates the events of a regression test with several worker processes,
+ * merging them in item order into one or more event file shards.
+ * <p>
+ * Each worker runs the regression test with the same arguments on every nth
+ * test item, with its own grammar, parser or realizer and feature extractor,
+ * writing its events to a temporary file along with the numbers of the items
+ * the blocks of events belong to. (Parsing and realization change shared
+ * grammar structures and unification counters in place, so the workers are
+ * separate processes rather than threads.) When all the workers are done,
+ * their blocks are merged in item order, and dealt out round-robin to the
+ * shards, whose names are made from the event file's name by inserting the
+ * shard number before the .gz extension, if any.
+ * <p>
+ * Only the events are merged. With more than one worker, the options for
+ * other outputs, such as stats and n-best files, are rejected, as each worker
+ * would write them to the same paths for its own items only; with a single
+ * worker, they are written as usual. The workers' console output is shown
+ * prefixed by their numbers.
+ *
+ * @author Daniel Couto-Vale
+ * @version
+ */
+public class ParallelEventGenerator {
+
+	/** Option for running a regression test as the kth of n workers. */
+	public static final String WORKER_OPTION = "-eventworker";
+
+	/**
+	 * The regression test's options for outputs other than events, which
+	 * cannot be used with more than one worker.
+	 */
+	public static final List<String> OUTPUT_OPTIONS = Collections.unmodifiableList(Arrays.asList(
+			"-s", "-2apml", "-bleu", "-nbestrealfile", "-realserdir", "-rescorefile",
+			"-nbestparsefile"));
+
+	// the regression test's arguments, without the event file and worker
+	// options
+	private final List<String> args;
+
+	// the event file
+	private final String eventfile;
+
+	// the number of workers
+	private final int numWorkers;
+
+	// the number of shards
+	private final int numShards;
+
+	/**
+	 * Constructor with the regression test's arguments, which may include
+	 * the event file and parallel event generation options, the event file,
+	 * and the numbers of workers and shards. Throws an
+	 * IllegalArgumentException if there is more than one worker and the
+	 * arguments include any of the OUTPUT_OPTIONS.
+	 */
+	public ParallelEventGenerator(String[] args, String eventfile, int numWorkers, int numShards) {
+		if (numWorkers < 1 || numShards < 1)
+			throw new IllegalArgumentException("Invalid number of workers or shards: " + numWorkers
+					+ ", " + numShards);
+		this.args = new ArrayList<String>(args.length);
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-2events") || args[i].equals("-eventworkers")
+					|| args[i].equals("-eventshards") || args[i].equals(WORKER_OPTION))
+				i++;
+			else if (numWorkers > 1 && OUTPUT_OPTIONS.contains(args[i]))
+				throw new IllegalArgumentException("Option " + args[i]
+						+ " cannot be used with more than one event worker");
+			else
+				this.args.add(args[i]);
+		}
+		this.eventfile = eventfile;
+		this.numWorkers = numWorkers;
+		this.numShards = numShards;
+	}
+
+	/** Returns the name of the given shard of the event file. */
+	public static String shardName(String eventfile, int shard, int numShards) {
+		if (numShards == 1)
+			return eventfile;
+		if (eventfile.endsWith(".gz"))
+			return eventfile.substring(0, eventfile.length() - 3) + "." + shard + ".gz";
+		return eventfile + "." + shard;
+	}
+
+	/** Returns the name of the file listing the items of a worker's blocks. */
+	public static String itemsName(String workerEventfile) {
+		return workerEventfile + ".items";
+	}
+
+	/**
+	 * Runs the workers and merges their events, throwing an IOException if
+	 * any of them fails.
+	 */
+	public void run() throws IOException {
+		File eventFile = new File(eventfile);
+		File dir = eventFile.getAbsoluteFile().getParentFile();
+		dir.mkdirs();
+		// start workers
+		File[] workerFiles = new File[numWorkers];
+		Process[] processes = new Process[numWorkers];
+		Thread[] pumps = new Thread[numWorkers];
+		try {
+			for (int k = 0; k < numWorkers; k++) {
+				workerFiles[k] = File.createTempFile(eventFile.getName() + ".worker" + k + "-",
+						"", dir);
+				List<String> command = workerCommand(workerFiles[k].getPath(), k);
+				System.out.println("Starting event worker " + k + " of " + numWorkers);
+				ProcessBuilder builder = new ProcessBuilder(command);
+				builder.redirectErrorStream(true);
+				processes[k] = builder.start();
+				pumps[k] = pump(processes[k].getInputStream(), "[" + k + "] ");
+				pumps[k].start();
+			}
+			System.out.println();
+			// wait for them
+			for (int k = 0; k < numWorkers; k++) {
+				int exitValue;
+				try {
+					exitValue = processes[k].waitFor();
+					pumps[k].join();
+				} catch (InterruptedException exc) {
+					throw (IOException) new InterruptedIOException().initCause(exc);
+				}
+				if (exitValue != 0)
+					throw new IOException("Event worker " + k + " failed with exit value "
+							+ exitValue);
+			}
+			// merge
+			int numBlocks = merge(workerFiles);
+			System.out.println();
+			System.out.println("Merged " + numBlocks + " blocks of events into " + numShards
+					+ " shard(s) of: " + eventfile);
+		} finally {
+			for (int k = 0; k < numWorkers; k++) {
+				if (processes[k] != null)
+					processes[k].destroy();
+				if (workerFiles[k] != null) {
+					workerFiles[k].delete();
+					new File(itemsName(workerFiles[k].getPath())).delete();
+				}
+			}
+		}
+	}
+
+	// returns the command for running the given worker, with the same java
+	// executable, class path and vm arguments
+	private List<String> workerCommand(String workerEventfile, int worker) {
+		List<String> retval = new ArrayList<String>();
+		retval.add(System.getProperty("java.home") + File.separator + "bin" + File.separator
+				+ "java");
+		retval.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+		retval.add("-cp");
+		retval.add(System.getProperty("java.class.path"));
+		retval.add(Regression.class.getName());
+		retval.add(WORKER_OPTION);
+		retval.add(worker + "/" + numWorkers);
+		retval.add("-2events");
+		retval.add(workerEventfile);
+		retval.addAll(args);
+		return retval;
+	}
+
+	// returns a thread copying the lines of the given stream to System.out
+	// with the given prefix
+	private static Thread pump(final InputStream in, final String prefix) {
+		return new Thread() {
+			public void run() {
+				try {
+					BufferedReader reader = new BufferedReader(new InputStreamReader(in));
+					String line;
+					while ((line = reader.readLine()) != null) {
+						synchronized (System.out) {
+							System.out.println(prefix + line);
+						}
+					}
+					reader.close();
+				} catch (IOException exc) {
+					System.err.println("Error reading event worker output: " + exc);
+				}
+			}
+		};
+	}
+
+	// the remaining blocks of a worker
+	private static class WorkerBlocks {
+		final BufferedReader events;
+		final BufferedReader items;
+		int nextItem;
+
+		WorkerBlocks(File workerFile) throws IOException {
+			events = new BufferedReader(EventFile.openReader(workerFile));
+			items = new BufferedReader(new FileReader(itemsName(workerFile.getPath())));
+			advance();
+		}
+
+		// reads the item number of the next block, or -1 if none
+		void advance() throws IOException {
+			String line = items.readLine();
+			nextItem = (line != null) ? Integer.parseInt(line.trim()) : -1;
+		}
+
+		// copies the next block to the given writer
+		void copyBlock(PrintWriter out) throws IOException {
+			String line = events.readLine();
+			if (line == null)
+				throw new IOException("Missing block of events for item " + nextItem);
+			out.println(line);
+			int numEvents = Integer.parseInt(line.trim());
+			for (int i = 0; i < numEvents; i++) {
+				line = events.readLine();
+				if (line == null)
+					throw new IOException("Truncated block of events for item " + nextItem);
+				out.println(line);
+			}
+		}
+
+		void close() throws IOException {
+			events.close();
+			items.close();
+		}
+	}
+
+	// merges the workers' blocks in item order into the shards, returning the
+	// number of blocks
+	int merge(File[] workerFiles) throws IOException {
+		WorkerBlocks[] workers = new WorkerBlocks[workerFiles.length];
+		for (int k = 0; k < workers.length; k++)
+			workers[k] = new WorkerBlocks(workerFiles[k]);
+		PrintWriter[] shards = new PrintWriter[numShards];
+		for (int s = 0; s < numShards; s++)
+			shards[s] = EventFile.openWriter(new File(shardName(eventfile, s, numShards)));
+		int numBlocks = 0;
+		while (true) {
+			// find worker with lowest next item
+			WorkerBlocks next = null;
+			for (WorkerBlocks worker : workers) {
+				if (worker.nextItem >= 0 && (next == null || worker.nextItem < next.nextItem))
+					next = worker;
+			}
+			if (next == null)
+				break;
+			next.copyBlock(shards[numBlocks % numShards]);
+			next.advance();
+			numBlocks++;
+		}
+		for (WorkerBlocks worker : workers)
+			worker.close();
+		for (PrintWriter shard : shards) {
+			shard.flush();
+			shard.close();
+		}
+		return numBlocks;
+	}
+}
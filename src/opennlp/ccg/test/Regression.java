@@ -76,6 +76,20 @@ public class Regression {
 	/** Flag for whether to include the gold sign when generating events. */
 	public boolean includeGoldInEvents = false;
 
+	/**
+	 * The number of this worker and the number of workers, for generating
+	 * events for every nth test item in a worker process (see
+	 * ParallelEventGenerator).
+	 */
+	public int workerNum = 0, numWorkers = 1;
+
+	/**
+	 * Flag for whether running as an event worker, which also writes the
+	 * numbers of the items of its blocks of events, even when it is the only
+	 * worker.
+	 */
+	public boolean eventWorker = false;
+
 	/** Directory for writing APML files (if any). */
 	public String apmldir = null;
 
@@ -232,6 +246,8 @@ public class Regression {
 	public TimingMap allMap = null;
 
 	private PrintWriter events = null;
+	private PrintWriter eventItems = null;
+	private int itemNum = 0;
 	private PrintWriter bleuGen = null;
 	private PrintWriter bleuRef = null;
 	private PrintWriter bleuSrc = null;
@@ -485,6 +501,11 @@ public class Regression {
 		// set up event file (if any)
 		if (eventfile != null)
 			events = EventFile.openWriter(new File(eventfile));
+		// and file listing the items of the blocks of events, if a worker
+		if (eventfile != null && eventWorker)
+			eventItems = new PrintWriter(new BufferedWriter(new FileWriter(ParallelEventGenerator
+					.itemsName(eventfile))));
+		itemNum = 0;
 		// set up bleu output, n-best realizations, rescoring, n-best parses (if
 		// apropos)
 		bleuSetup();
@@ -505,6 +526,10 @@ public class Regression {
 			events.flush();
 			events.close();
 		}
+		if (eventItems != null) {
+			eventItems.flush();
+			eventItems.close();
+		}
 		// show stats (if apropos)
 		if (rescorefile != null)
 			return;
@@ -528,6 +553,13 @@ public class Regression {
 		return retval;
 	}
 
+	// writes the events for the given item, listing the item if a worker
+	private void writeEvents(List<Symbol> signs, Symbol best, int item) throws IOException {
+		EventFile.writeEvents(events, signs, best, featureExtractor);
+		if (eventItems != null)
+			eventItems.println(item);
+	}
+
 	/** Runs the test on the items in the given file. */
 	private void runSingleTest(File regressionFile) throws IOException {
 
@@ -554,10 +586,14 @@ public class Regression {
 		for (int i = 0; i < numItems; i++) {
 
 			// check even/odd only
+			int item = itemNum++;
 			if (i % 2 == 1 && evenOnly)
 				continue;
 			if (i % 2 == 0 && oddOnly)
 				continue;
+			// check worker's items only
+			if (item % numWorkers != workerNum)
+				continue;
 
 			RegressionInfo.TestItem testItem = rinfo.getItem(i);
 			if (doGC)
@@ -771,7 +807,7 @@ public class Regression {
 							}
 						}
 					}
-					EventFile.writeEvents(events, bestSigns, best, featureExtractor);
+					writeEvents(bestSigns, best, item);
 				}
 			}
 
@@ -958,7 +994,7 @@ public class Regression {
 						}
 						if (!bestSigns.contains(best))
 							bestSigns.add(best);
-						EventFile.writeEvents(events, bestSigns, best, featureExtractor);
+						writeEvents(bestSigns, best, item);
 					}
 				}
 			}
@@ -1731,6 +1767,7 @@ public class Regression {
 				+ "  (-text|-textsc|-textf|-textfsc <textfile>) (-reverse) \n"
 				+ "  (-derivf <derivfactorsfile>) \n"
 				+ "  (-2events <eventfile>) (-includegoldinevents) \n"
+				+ "  (-eventworkers N) (-eventshards N) \n"
 				+ "  (-2apml <apmldir>) (-bleu <bleufileprefix>) \n"
 				+ "  (-nbestrealfile <nbestrealfile>) (-nbestnormbleu) (-realserdir <realserdir>) \n"
 				+ "  (-nbestincludelfs) \n" + "  (-rescorefile <rescorefile>) \n"
@@ -1768,6 +1805,8 @@ public class Regression {
 		String derivfactorsfile = null;
 		boolean srilm = false;
 		SRILMNgramModelType srilmModelType = SRILMNgramModelType.STANDARD;
+		int eventWorkers = 1;
+		int eventShards = 1;
 
 		for (int i = 0; i < args.length; i++) {
 			if (args[i].startsWith("-D")) {
@@ -1920,6 +1959,21 @@ public class Regression {
 				tester.includeGoldInEvents = true;
 				continue;
 			}
+			if (args[i].equals("-eventworkers")) {
+				eventWorkers = Integer.parseInt(args[++i]);
+				continue;
+			}
+			if (args[i].equals("-eventshards")) {
+				eventShards = Integer.parseInt(args[++i]);
+				continue;
+			}
+			if (args[i].equals(ParallelEventGenerator.WORKER_OPTION)) {
+				String[] worker = args[++i].split("/");
+				tester.workerNum = Integer.parseInt(worker[0]);
+				tester.numWorkers = Integer.parseInt(worker[1]);
+				tester.eventWorker = true;
+				continue;
+			}
 			if (args[i].equals("-2apml")) {
 				tester.apmldir = args[++i];
 				continue;
@@ -1978,6 +2032,13 @@ public class Regression {
 			regressionfile = args[i];
 		}
 
+		// with -eventworkers or -eventshards options, generate events with
+		// worker processes and exit
+		if (tester.eventfile != null && (eventWorkers > 1 || eventShards > 1)) {
+			new ParallelEventGenerator(args, tester.eventfile, eventWorkers, eventShards).run();
+			return;
+		}
+
 		// load grammar
 		URL grammarURL = new File(grammarfile).toURI().toURL();
 		System.out.println("Loading grammar from URL: " + grammarURL);
@@ -2010,15 +2071,24 @@ public class Regression {
 			}
 		}
 
+		// the n-gram models loaded from files, to be released after the test
+		List<NgramScorer> loadedScorers = new ArrayList<NgramScorer>();
+
 		// with -lm|-lmsc options, load n-gram model
 		if (lmfile != null) {
 			int order = (tester.ngramOrder > 0) ? tester.ngramOrder : 3;
 			String reversedStr = (reverse) ? "reversed " : "";
 			System.out.println("Loading " + reversedStr + order + "-gram model from file: "
 					+ lmfile);
-			NgramScorer lmScorer = (srilm) ? new SRILMNgramModel(order, new File(lmfile),
-					useSemClasses, srilmModelType) : new StandardNgramModel(order, lmfile,
-					useSemClasses);
+			NgramScorer lmScorer;
+			if (srilm)
+				lmScorer = new SRILMNgramModel(order, new File(lmfile), useSemClasses,
+						srilmModelType);
+			else if (BloomierNgramModel.isModel(lmfile))
+				lmScorer = new BloomierNgramModel(order, lmfile, useSemClasses);
+			else
+				lmScorer = new StandardNgramModel(order, lmfile, useSemClasses);
+			loadedScorers.add(lmScorer);
 			if (reverse)
 				lmScorer.setReverse(true);
 			if (aanfilter)
@@ -2033,6 +2103,7 @@ public class Regression {
 			System.out.println("Loading " + reversedStr
 					+ "factored n-gram model family from file: " + flmfile);
 			NgramScorer flmScorer = new FactoredNgramModelFamily(flmfile, useSemClasses);
+			loadedScorers.add(flmScorer);
 			if (reverse)
 				flmScorer.setReverse(true);
 			if (aanfilter)
@@ -2076,8 +2147,9 @@ public class Regression {
 			// set parser scorer, if any
 			if (tester.parseScorer != null)
 				tester.parser.setSymbolScorer(tester.parseScorer);
-			// also turn on parse stats if doing n-best output
-			if (tester.nbestparsefile != null)
+			// also turn on parse stats if doing n-best output or generating
+			// events, which are based on the parse scores
+			if (tester.nbestparsefile != null || tester.eventfile != null)
 				tester.showParseStats = true;
 			// instantiate supertagger, if any
 			if (supertaggerClass != null || stconfig != null) {
@@ -2268,7 +2340,9 @@ public class Regression {
 			System.out.println();
 		}
 
-		// run test
+		// run test, then release n-gram models
 		tester.runTest(new File(regressionfile));
+		for (NgramScorer loadedScorer : loadedScorers)
+			loadedScorer.release();
 	}
 }
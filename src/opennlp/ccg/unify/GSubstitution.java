@@ -35,8 +35,18 @@ public class GSubstitution extends THashMap implements Substitution {
 
 	private static final long serialVersionUID = 1L;
 
-	private TIntObjectHashMap _indexedObjects = new TIntObjectHashMap();
-	private TIntIntHashMap _newFeatStrucIndexes = new TIntIntHashMap();
+	protected TIntObjectHashMap _indexedObjects = new TIntObjectHashMap();
+	protected TIntIntHashMap _newFeatStrucIndexes = new TIntIntHashMap();
+
+	/**
+	 * Removes all substitutions, reindexings and indexed objects, keeping the
+	 * allocated tables for reuse.
+	 */
+	public void reset() {
+		clear();
+		_indexedObjects.clear();
+		_newFeatStrucIndexes.clear();
+	}
 
 	/**
 	 * Request the Substitution to identify a variable with an object.
@@ -162,17 +172,22 @@ public class GSubstitution extends THashMap implements Substitution {
 			Object obj = _indexedObjects.get(keys[i]);
 			if (obj instanceof Unifiable) {
 				Object filled = ((Unifiable) obj).fill(this);
-				_indexedObjects.put(keys[i], filled);
+				addIndexedObject(keys[i], filled);
 			}
 		}
 		// drop old indexed objects
 		for (int i = 0; i < keys.length; i++) {
 			if (_newFeatStrucIndexes.containsKey(keys[i])) {
-				_indexedObjects.remove(keys[i]);
+				removeIndexedObject(keys[i]);
 			}
 		}
 	}
 
+	/** Removes the object stored under the given index. */
+	protected void removeIndexedObject(int index) {
+		_indexedObjects.remove(index);
+	}
+
 	@SuppressWarnings("unchecked")
 	public String toString() {
 		StringBuffer sb = new StringBuffer();
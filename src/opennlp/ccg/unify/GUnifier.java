@@ -32,7 +32,25 @@ public class GUnifier {
 		return (Category) unify(c1, c2, new EmptySubstitution());
 	}
 
+	/**
+	 * Unifies the given categories with the given substitution. With a trail
+	 * substitution, the changes made to it are undone on failure.
+	 */
 	public static Category unify(Category c1, Category c2, Substitution sub) throws UnifyFailure {
+		if (!(sub instanceof TrailSubstitution))
+			return unifyCats(c1, c2, sub);
+		TrailSubstitution trailSub = (TrailSubstitution) sub;
+		int mark = trailSub.mark();
+		try {
+			return unifyCats(c1, c2, sub);
+		} catch (UnifyFailure uf) {
+			trailSub.undo(mark);
+			throw uf;
+		}
+	}
+
+	private static Category unifyCats(Category c1, Category c2, Substitution sub)
+			throws UnifyFailure {
 		if (c1 instanceof AtomCat && c2 instanceof ComplexCat) {
 			c2.unifyCheck(c1);
 			return (Category) c2.unify(c1, sub);
@@ -0,0 +1,165 @@
+///////////////////////////////////////////////////////////////////////////////
+// Copyright (C) 2015 Daniel Couto-Vale (RWTH Aachen)
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+//////////////////////////////////////////////////////////////////////////////
+
+package opennlp.ccg.unify;
+
+/**
+ * A reusable GSubstitution which records every change it makes on a trail,
+ * in the manner of the WAM, so that the changes can be rolled back to a mark
+ * when unification fails. GUnifier marks the trail before unifying
+ * categories with such a substitution and undoes it on failure, and
+ * <code>reset</code> undoes the whole trail, so that emptying the
+ * substitution for the next attempt takes time proportional to the bindings
+ * made rather than to the capacity of its tables, which are kept for reuse.
+ * Copies of categories are only made when unification succeeds and the
+ * results are filled in.
+ * <p>
+ * Unlike in the WAM, bindings are kept in the substitution's tables rather
+ * than written into the variables, since variables are immutable values
+ * shared across categories. Instances are not thread-safe.
+ *
+ * @author Daniel Couto-Vale
+ * @version
+ */
+public class TrailSubstitution extends GSubstitution {
+
+	private static final long serialVersionUID = 1L;
+
+	// kinds of trail entries
+	private static final byte VAR = 0;
+	private static final byte REINDEX = 1;
+	private static final byte INDEXED = 2;
+
+	// the trail, as parallel arrays
+	private byte[] kinds = new byte[16];
+	private Object[] keys = new Object[16];
+	private int[] intKeys = new int[16];
+	private Object[] prevVals = new Object[16];
+	private int[] prevInts = new int[16];
+	private boolean[] hadPrev = new boolean[16];
+	private int top = 0;
+
+	/** Returns a mark for the current state of the trail. */
+	public int mark() {
+		return top;
+	}
+
+	/** Undoes all changes made since the given mark. */
+	@SuppressWarnings("unchecked")
+	public void undo(int mark) {
+		while (top > mark) {
+			top--;
+			switch (kinds[top]) {
+			case VAR:
+				if (hadPrev[top])
+					super.put(keys[top], prevVals[top]);
+				else
+					super.remove(keys[top]);
+				break;
+			case REINDEX:
+				if (hadPrev[top])
+					_newFeatStrucIndexes.put(intKeys[top], prevInts[top]);
+				else
+					_newFeatStrucIndexes.remove(intKeys[top]);
+				break;
+			case INDEXED:
+				if (hadPrev[top])
+					_indexedObjects.put(intKeys[top], prevVals[top]);
+				else
+					_indexedObjects.remove(intKeys[top]);
+				break;
+			}
+			keys[top] = null;
+			prevVals[top] = null;
+		}
+	}
+
+	/** Undoes all changes, keeping the allocated tables for reuse. */
+	public void reset() {
+		undo(0);
+	}
+
+	/** Records the binding on the trail before making it. */
+	@SuppressWarnings("unchecked")
+	public Object put(Object key, Object value) {
+		boolean had = containsKey(key);
+		Object prev = super.put(key, value);
+		if (prev != value || !had)
+			push(VAR, key, 0, prev, 0, had);
+		return prev;
+	}
+
+	/** Records the reindexing on the trail before making it. */
+	public void addReindex(int oldIndex, int newIndex) {
+		if (oldIndex == newIndex)
+			return;
+		boolean had = _newFeatStrucIndexes.containsKey(oldIndex);
+		int prev = _newFeatStrucIndexes.get(oldIndex);
+		super.addReindex(oldIndex, newIndex);
+		push(REINDEX, null, oldIndex, null, prev, had);
+	}
+
+	/** Records the indexed object on the trail before adding it. */
+	public void addIndexedObject(int index, Object o) {
+		boolean had = _indexedObjects.containsKey(index);
+		Object prev = _indexedObjects.get(index);
+		super.addIndexedObject(index, o);
+		push(INDEXED, null, index, prev, 0, had);
+	}
+
+	/** Records the indexed object on the trail before removing it. */
+	protected void removeIndexedObject(int index) {
+		if (!_indexedObjects.containsKey(index))
+			return;
+		Object prev = _indexedObjects.get(index);
+		super.removeIndexedObject(index);
+		push(INDEXED, null, index, prev, 0, true);
+	}
+
+	// pushes an entry onto the trail, growing it if necessary
+	private void push(byte kind, Object key, int intKey, Object prevVal, int prevInt, boolean had) {
+		if (top == kinds.length) {
+			int len = top * 2;
+			byte[] kinds2 = new byte[len];
+			System.arraycopy(kinds, 0, kinds2, 0, top);
+			kinds = kinds2;
+			Object[] keys2 = new Object[len];
+			System.arraycopy(keys, 0, keys2, 0, top);
+			keys = keys2;
+			int[] intKeys2 = new int[len];
+			System.arraycopy(intKeys, 0, intKeys2, 0, top);
+			intKeys = intKeys2;
+			Object[] prevVals2 = new Object[len];
+			System.arraycopy(prevVals, 0, prevVals2, 0, top);
+			prevVals = prevVals2;
+			int[] prevInts2 = new int[len];
+			System.arraycopy(prevInts, 0, prevInts2, 0, top);
+			prevInts = prevInts2;
+			boolean[] hadPrev2 = new boolean[len];
+			System.arraycopy(hadPrev, 0, hadPrev2, 0, top);
+			hadPrev = hadPrev2;
+		}
+		kinds[top] = kind;
+		keys[top] = key;
+		intKeys[top] = intKey;
+		prevVals[top] = prevVal;
+		prevInts[top] = prevInt;
+		hadPrev[top] = had;
+		top++;
+	}
+}
@@ -0,0 +1,193 @@
+///////////////////////////////////////////////////////////////////////////////
+// Copyright (C) 2015 Daniel Couto-Vale (RWTH Aachen)
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+//////////////////////////////////////////////////////////////////////////////
+
+package opennlp.ccg.util;
+
+import java.lang.ref.*;
+import java.util.*;
+
+/**
+ * A thread-safe interner, which stripes its backing store over a number of
+ * WeakHashMaps, each guarded by its own lock. An object is interned in the
+ * stripe selected by its hash code, so threads interning different objects
+ * seldom contend for the same lock, and interned objects can still be
+ * garbage collected, with stale entries being expunged by the stripe that
+ * holds them. As with Interner, soft references may be used instead of weak
+ * ones.
+ *
+ * @author Daniel Couto-Vale
+ * @version
+ */
+public class ConcurrentInterner<T> {
+
+	/** The default number of stripes. */
+	public static final int DEFAULT_STRIPES = 64;
+
+	// the stripes of the backing store
+	private final Map<T, Reference<T>>[] stripes;
+
+	// the mask for selecting a stripe
+	private final int mask;
+
+	// flag for whether to use soft references
+	private final boolean softRefs;
+
+	/** Default constructor. */
+	public ConcurrentInterner() {
+		this(false);
+	}
+
+	/** Constructor with soft references flag. */
+	public ConcurrentInterner(boolean softRefs) {
+		this(softRefs, DEFAULT_STRIPES);
+	}
+
+	/**
+	 * Constructor with soft references flag and number of stripes, which is
+	 * rounded up to a power of two.
+	 */
+	@SuppressWarnings("unchecked")
+	public ConcurrentInterner(boolean softRefs, int numStripes) {
+		this.softRefs = softRefs;
+		int n = 1;
+		while (n < numStripes)
+			n <<= 1;
+		stripes = new Map[n];
+		for (int i = 0; i < n; i++)
+			stripes[i] = new WeakHashMap<T, Reference<T>>();
+		mask = n - 1;
+	}
+
+	// returns the stripe for the given object
+	private Map<T, Reference<T>> stripe(Object obj) {
+		int h = obj.hashCode();
+		h ^= (h >>> 16);
+		h ^= (h >>> 7);
+		return stripes[h & mask];
+	}
+
+	/**
+	 * Returns a canonical version of the given object. The returned object is
+	 * .equals() to the given one. If the given object is not equal to one
+	 * already seen, then the returned object will be == to the given one.
+	 */
+	public T intern(T obj) {
+		Map<T, Reference<T>> stripe = stripe(obj);
+		synchronized (stripe) {
+			// return existing canonical obj, if any
+			Reference<T> ref = stripe.get(obj);
+			if (ref != null) {
+				T canon = ref.get();
+				if (canon != null)
+					return canon;
+			}
+			// otherwise add this object, wrapped in a weak/soft reference
+			ref = (softRefs) ? new SoftReference<T>(obj) : new WeakReference<T>(obj);
+			stripe.put(obj, ref);
+			return obj;
+		}
+	}
+
+	/**
+	 * Returns the canonical version of the given object, if any, otherwise
+	 * returns null.
+	 */
+	public T getInterned(Object obj) {
+		Map<T, Reference<T>> stripe = stripe(obj);
+		synchronized (stripe) {
+			Reference<T> ref = stripe.get(obj);
+			return (ref != null) ? ref.get() : null;
+		}
+	}
+
+	/** Returns the number of interned objects. */
+	public int size() {
+		int retval = 0;
+		for (Map<T, Reference<T>> stripe : stripes) {
+			synchronized (stripe) {
+				retval += stripe.size();
+			}
+		}
+		return retval;
+	}
+
+	/**
+	 * Benchmarks interning under contention, comparing a synchronized
+	 * Interner with a ConcurrentInterner. The number of threads (default 16)
+	 * and of interning calls per thread (default 1000000) may be given as
+	 * arguments.
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		int numThreads = (args.length > 0) ? Integer.parseInt(args[0]) : 16;
+		int numCalls = (args.length > 1) ? Integer.parseInt(args[1]) : 1000000;
+		final int numKeys = 10000;
+		final String[] keys = new String[numKeys];
+		for (int i = 0; i < numKeys; i++)
+			keys[i] = Integer.toString(i);
+
+		final Interner<String> interner = new Interner<String>();
+		final ConcurrentInterner<String> concurrentInterner = new ConcurrentInterner<String>();
+		for (int i = 0; i < numKeys; i++) {
+			interner.intern(keys[i]);
+			concurrentInterner.intern(keys[i]);
+		}
+		for (int round = 0; round < 3; round++) {
+			System.out.println("Round " + (round + 1) + ", " + numThreads + " threads, " + numCalls
+					+ " calls each:");
+			long synced = bench(numThreads, numCalls, keys, new Interner<String>() {
+				public synchronized String intern(String obj) {
+					return interner.intern(obj);
+				}
+			});
+			System.out.println("  synchronized Interner: " + synced + " ms");
+			long striped = bench(numThreads, numCalls, keys, new Interner<String>() {
+				public String intern(String obj) {
+					return concurrentInterner.intern(obj);
+				}
+			});
+			System.out.println("  ConcurrentInterner:    " + striped + " ms");
+		}
+		System.out.println("concurrentInterner.size(): " + concurrentInterner.size()
+				+ " (should be " + numKeys + ")");
+	}
+
+	// runs the given number of threads interning equal copies of the
+	// (already interned) keys, returning the elapsed time in ms
+	private static long bench(int numThreads, final int numCalls, final String[] keys,
+			final Interner<String> interner) throws InterruptedException {
+		Thread[] threads = new Thread[numThreads];
+		for (int t = 0; t < numThreads; t++) {
+			final int offset = t * 7919;
+			threads[t] = new Thread() {
+				public void run() {
+					for (int i = 0; i < numCalls; i++) {
+						String key = keys[(offset + i) % keys.length];
+						if (interner.intern(new String(key)) != key)
+							throw new IllegalStateException("Interned objects not canonical: " + key);
+					}
+				}
+			};
+		}
+		long start = System.currentTimeMillis();
+		for (Thread thread : threads)
+			thread.start();
+		for (Thread thread : threads)
+			thread.join();
+		return System.currentTimeMillis() - start;
+	}
+}
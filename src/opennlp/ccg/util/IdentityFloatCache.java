@@ -0,0 +1,129 @@
+///////////////////////////////////////////////////////////////////////////////
+// Copyright (C) 2015 Daniel Couto-Vale (RWTH Aachen)
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+//////////////////////////////////////////////////////////////////////////////
+
+package opennlp.ccg.util;
+
+import java.util.concurrent.atomic.*;
+
+/**
+ * A bounded, thread-safe cache from objects, compared by identity, to
+ * primitive float values. The cache is a fixed-size table of immutable
+ * entries, where each key may only occupy one of a few slots following its
+ * hash; when these are all taken, the entry in the first one is evicted.
+ * Lookups and updates are lock-free, and the number of keys held on to is
+ * bounded by the capacity. As with any cache, a value that has been put may
+ * later be missing.
+ *
+ * @author Daniel Couto-Vale
+ * @version
+ */
+public class IdentityFloatCache {
+
+	/** The default capacity. */
+	public static final int DEFAULT_CAPACITY = 1 << 16;
+
+	// the number of slots probed per key
+	private static final int PROBES = 4;
+
+	// an immutable entry
+	private static class Entry {
+		final Object key;
+		final float value;
+
+		Entry(Object key, float value) {
+			this.key = key;
+			this.value = value;
+		}
+	}
+
+	// the table of entries
+	private final AtomicReferenceArray<Entry> table;
+
+	// the mask for selecting a slot
+	private final int mask;
+
+	/** Default constructor. */
+	public IdentityFloatCache() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/** Constructor with capacity, which is rounded up to a power of two. */
+	public IdentityFloatCache(int capacity) {
+		int n = PROBES;
+		while (n < capacity)
+			n <<= 1;
+		table = new AtomicReferenceArray<Entry>(n);
+		mask = n - 1;
+	}
+
+	// returns the first slot for the given key
+	private int slot(Object key) {
+		int h = System.identityHashCode(key);
+		h ^= (h >>> 16);
+		return h & mask;
+	}
+
+	/**
+	 * Returns the value cached for the given key, or NaN if none.
+	 */
+	public float get(Object key) {
+		int slot = slot(key);
+		for (int i = 0; i < PROBES; i++) {
+			Entry entry = table.get((slot + i) & mask);
+			if (entry == null)
+				return Float.NaN;
+			if (entry.key == key)
+				return entry.value;
+		}
+		return Float.NaN;
+	}
+
+	/**
+	 * Caches the given value for the given key, evicting another entry if
+	 * necessary.
+	 */
+	public void put(Object key, float value) {
+		int slot = slot(key);
+		Entry newEntry = new Entry(key, value);
+		for (int i = 0; i < PROBES; i++) {
+			int index = (slot + i) & mask;
+			Entry entry = table.get(index);
+			if (entry == null) {
+				if (table.compareAndSet(index, null, newEntry))
+					return;
+				entry = table.get(index);
+			}
+			if (entry != null && entry.key == key) {
+				table.set(index, newEntry);
+				return;
+			}
+		}
+		table.set(slot, newEntry);
+	}
+
+	/** Removes all entries. */
+	public void clear() {
+		for (int i = 0; i < table.length(); i++)
+			table.set(i, null);
+	}
+
+	/** Returns the capacity. */
+	public int capacity() {
+		return table.length();
+	}
+}
@@ -28,6 +28,8 @@ import java.lang.ref.*;
  * backing store) than to allocate separate interners. Individual interners can
  * be constructed to use soft references to the interned objects, so that they
  * are kept around longer than is the case with weak references (the default).
+ * Individual interners are not thread-safe, while the global backing store is
+ * a ConcurrentInterner, and may thus be used from multiple threads.
  *
  * @author Michael White
  * @version $Revision: 1.5 $, $Date: 2005/10/13 20:33:49 $
@@ -86,7 +88,7 @@ public class Interner<T> {
 	}
 
 	// the global interner
-	private static Interner<Object> globalInterner = null;
+	private static final ConcurrentInterner<Object> globalInterner = new ConcurrentInterner<Object>();
 
 	/**
 	 * Returns a canonical version of the given object using a global interner.
@@ -95,8 +97,6 @@ public class Interner<T> {
 	 * given one.
 	 */
 	public static Object globalIntern(Object obj) {
-		if (globalInterner == null)
-			globalInterner = new Interner<Object>();
 		return globalInterner.intern(obj);
 	}
 
@@ -105,15 +105,11 @@ public class Interner<T> {
 	 * interner, if any, otherwise returns null.
 	 */
 	public static Object getGlobalInterned(Object obj) {
-		if (globalInterner == null)
-			return null;
 		return globalInterner.getInterned(obj);
 	}
 
 	/** Returns the number of interned objects in the global interner. */
 	public static int globalSize() {
-		if (globalInterner == null)
-			return 0;
 		return globalInterner.size();
 	}
 
@@ -127,6 +127,19 @@ public class TrieMap<KeyType, DataType> {
 		return map.get(key);
 	}
 
+	/** Gets the keys of the children, in no particular order. */
+	@SuppressWarnings("unchecked")
+	public List<KeyType> getChildKeys() {
+		if (childMap == null)
+			return Collections.emptyList();
+		if (childMap instanceof Pair) {
+			Pair<KeyType, TrieMap<KeyType, DataType>> pair = (Pair<KeyType, TrieMap<KeyType, DataType>>) childMap;
+			return Collections.singletonList(pair.a);
+		}
+		Map<KeyType, TrieMap<KeyType, DataType>> map = (Map<KeyType, TrieMap<KeyType, DataType>>) childMap;
+		return new ArrayList<KeyType>(map.keySet());
+	}
+
 	/** Gets the child for the given list of keys, or null if none. */
 	public TrieMap<KeyType, DataType> getChildFromList(List<KeyType> keys) {
 		TrieMap<KeyType, DataType> next = this;
@@ -0,0 +1,165 @@
+package opennlp.ccg.grammar;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import opennlp.ccg.parse.ParseException;
+import opennlp.ccg.parse.Parser;
+import opennlp.ccg.synsem.Category;
+import opennlp.ccg.synsem.ComplexCat;
+import opennlp.ccg.synsem.Symbol;
+import opennlp.ccg.unify.GSubstitution;
+import opennlp.ccg.unify.GUnifier;
+import opennlp.ccg.unify.TrailSubstitution;
+import opennlp.ccg.unify.UnifyFailure;
+
+import org.jdom.input.SAXBuilder;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ReusableSubstitutionTest {
+
+	static Grammar grammar = null;
+
+	static final String[] SENTENCES = { "he announced the agreement .",
+			"the government expressed concern about the crisis .", "china and canada expressed concern ." };
+
+	@Before
+	@SuppressWarnings("deprecation")
+	public void setUp() throws Exception {
+		if (grammar == null) {
+			grammar = new Grammar(new File(new File(new File(System.getProperty("user.dir")),
+					"test"), "grammar.xml").toURL());
+		}
+	}
+
+	@After
+	public void tearDown() {
+		grammar.rules.setReuseSubstitutions(false);
+	}
+
+	// returns the category s[form=sForm]/np[form=npForm], where upper case
+	// forms are variables
+	private static Category category(String sForm, String npForm) throws Exception {
+		String xml = "<complexcat><atomcat type=\"s\"><fs>" + feat(sForm)
+				+ "</fs></atomcat><slash dir=\"/\"/><atomcat type=\"np\"><fs>" + feat(npForm)
+				+ "</fs></atomcat></complexcat>";
+		return new ComplexCat(new SAXBuilder().build(new StringReader(xml)).getRootElement());
+	}
+
+	// returns the form feature with the given value or variable
+	private static String feat(String form) {
+		if (Character.isUpperCase(form.charAt(0)))
+			return "<feat attr=\"form\"><featvar name=\"" + form + "\"/></feat>";
+		return "<feat attr=\"form\" val=\"" + form + "\"/>";
+	}
+
+	// unifies the categories with the substitution, returning whether they
+	// unified
+	private static boolean unify(Category c1, Category c2, GSubstitution sub) {
+		try {
+			GUnifier.unify(c1, c2, sub);
+			return true;
+		} catch (UnifyFailure uf) {
+			return false;
+		}
+	}
+
+	// returns the categories and LFs of the complete parses of the sentences
+	private List<String> parses() {
+		List<String> retval = new ArrayList<String>();
+		Parser parser = new Parser(grammar);
+		for (String sentence : SENTENCES) {
+			try {
+				for (Symbol sign : parser.parse(sentence).getSymbols())
+					retval.add(sign.getCategory() + " : " + sign.getCategory().getLF());
+			} catch (ParseException exc) {
+				retval.add("no parse");
+			}
+		}
+		return retval;
+	}
+
+	@Test
+	public void testReset() throws UnifyFailure {
+		GSubstitution[] subs = { new GSubstitution(), new TrailSubstitution() };
+		for (GSubstitution sub : subs) {
+			sub.addReindex(1, 2);
+			sub.addIndexedObject(2, "x");
+			assertEquals(2, sub.getUpdatedIndex(1));
+			sub.reset();
+			assertTrue(sub.isEmpty());
+			assertEquals(1, sub.getUpdatedIndex(1));
+			assertNull(sub.getIndexedObject(2));
+		}
+	}
+
+	@Test
+	public void testUndo() throws Exception {
+		// the target binds FORM before the argument fails to unify, which is
+		// only found during unification
+		Category c1 = category("FORM", "FORM");
+		Category c2 = category("FORM2", "B");
+		Category c3 = category("dcl", "b");
+		GSubstitution plain = new GSubstitution();
+		assertFalse(unify(c1, category("ng", "b"), plain));
+		assertFalse(plain.isEmpty());
+		// a trail substitution is rolled back to its state before the failed
+		// unification
+		TrailSubstitution sub = new TrailSubstitution();
+		sub.addIndexedObject(7, "x");
+		String before = sub.toString();
+		int mark = sub.mark();
+		assertFalse(unify(c1, category("ng", "b"), sub));
+		assertEquals(mark, sub.mark());
+		assertTrue(sub.isEmpty());
+		assertEquals(before, sub.toString());
+		assertEquals("x", sub.getIndexedObject(7));
+		// and keeps the bindings of a successful one
+		assertTrue(unify(c2, c3, sub));
+		assertFalse(sub.isEmpty());
+		sub.undo(mark);
+		assertTrue(sub.isEmpty());
+		assertEquals("x", sub.getIndexedObject(7));
+		sub.reset();
+		assertNull(sub.getIndexedObject(7));
+	}
+
+	@Test
+	public void testSameParses() {
+		List<String> expected = parses();
+		grammar.rules.setReuseSubstitutions(true);
+		assertEquals(expected, parses());
+	}
+
+	@Test
+	public void testOnePerThread() throws Exception {
+		final AbstractApplicationRule rule = new ForwardApplication();
+		rule.setRuleGroup(grammar.rules);
+		assertNotSame(rule.newSubstitution(), rule.newSubstitution());
+		grammar.rules.setReuseSubstitutions(true);
+		final GSubstitution sub = rule.newSubstitution();
+		assertTrue(sub instanceof TrailSubstitution);
+		sub.addIndexedObject(1, "x");
+		AbstractApplicationRule other0 = new BackwardApplication();
+		other0.setRuleGroup(grammar.rules);
+		assertSame(sub, other0.newSubstitution());
+		assertNull(sub.getIndexedObject(1));
+		final GSubstitution[] other = new GSubstitution[1];
+		Thread thread = new Thread() {
+			public void run() {
+				other[0] = rule.newSubstitution();
+			}
+		};
+		thread.start();
+		thread.join();
+		assertNotNull(other[0]);
+		assertNotSame(sub, other[0]);
+	}
+}
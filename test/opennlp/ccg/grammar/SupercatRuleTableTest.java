@@ -0,0 +1,161 @@
+package opennlp.ccg.grammar;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class SupercatRuleTableTest {
+
+	static final String[] SUPERTAGS = { "np", "n", "s\\np", "np/n", "s/s", "pp" };
+	static final String[] RULES = { ">", "<", ">B", "<B", "<Bx" };
+
+	SupercatRuleTable table;
+	OldCombos old;
+	int[] ruleIds;
+	boolean dynamic;
+
+	// the string-keyed combo sets used before the table, for reference
+	static class OldCombos {
+		Set<String> combos = new HashSet<String>();
+		Map<String, String> seen = null;
+
+		// returns the rules tried for the given supertags
+		List<String> apply(String tags, boolean dynamic) {
+			boolean update = false;
+			if (dynamic) {
+				if (!seen.containsKey(tags))
+					update = true;
+				else if (seen.get(tags) == null)
+					return new ArrayList<String>();
+			}
+			List<String> retval = new ArrayList<String>();
+			for (String r : RULES) {
+				if (!update && !combos.contains(tags + " " + r))
+					continue;
+				retval.add(r);
+				if (update && succeeds(tags, r)) {
+					combos.add(tags + " " + r);
+					if (seen.get(tags) == null)
+						seen.put(tags, r);
+				}
+			}
+			if (update && !seen.containsKey(tags))
+				seen.put(tags, null);
+			return retval;
+		}
+
+		void setDynamic(boolean dynamic) {
+			if (!dynamic)
+				seen = null;
+			else if (seen == null)
+				seen = new HashMap<String, String>();
+		}
+	}
+
+	// whether the given rule succeeds on the given supertags, arbitrarily
+	static boolean succeeds(String tags, String rule) {
+		return ((tags + rule).hashCode() & 3) == 0;
+	}
+
+	@Before
+	public void setUp() {
+		table = new SupercatRuleTable();
+		old = new OldCombos();
+		Random random = new Random(1);
+		for (int i = 0; i < 10; i++) {
+			String tag1 = SUPERTAGS[random.nextInt(SUPERTAGS.length)];
+			String tag2 = SUPERTAGS[random.nextInt(SUPERTAGS.length)];
+			String rule = RULES[random.nextInt(RULES.length)];
+			table.addLoaded(tag1, tag2, rule);
+			old.combos.add(tag1 + " " + tag2 + " " + rule);
+			table.addLoaded(tag1, rule);
+			old.combos.add(tag1 + " " + rule);
+		}
+		ruleIds = new int[RULES.length];
+		for (int i = 0; i < RULES.length; i++)
+			ruleIds[i] = table.internRule(RULES[i]);
+	}
+
+	// returns the rules tried for the given key, as in RuleGroup
+	private List<String> apply(long key, String tags) {
+		List<String> retval = new ArrayList<String>();
+		long[] mask = dynamic ? table.getSeenRules(key) : table.getRules(key);
+		if (mask != null) {
+			for (int i = 0; i < ruleIds.length; i++) {
+				if (SupercatRuleTable.contains(mask, ruleIds[i]))
+					retval.add(RULES[i]);
+			}
+			return retval;
+		}
+		long[] successes = SupercatRuleTable.NO_RULES;
+		for (int i = 0; i < ruleIds.length; i++) {
+			retval.add(RULES[i]);
+			if (succeeds(tags, RULES[i]))
+				successes = SupercatRuleTable.with(successes, ruleIds[i]);
+		}
+		table.recordSeen(key, successes);
+		return retval;
+	}
+
+	private int supertagId(String tag) {
+		return dynamic ? table.internSupertag(tag) : table.getSupertagId(tag);
+	}
+
+	private void setDynamic(boolean on) {
+		if (on && !dynamic)
+			table.clearSeen();
+		dynamic = on;
+		old.setDynamic(on);
+	}
+
+	@Test
+	public void testSameLookups() {
+		Random random = new Random(2);
+		for (int i = 0; i < 2000; i++) {
+			if (random.nextInt(100) == 0)
+				setDynamic(!dynamic);
+			String tag1 = SUPERTAGS[random.nextInt(SUPERTAGS.length)];
+			if (random.nextBoolean()) {
+				long key = SupercatRuleTable.key(supertagId(tag1));
+				assertEquals(tag1, old.apply(tag1, dynamic), apply(key, tag1));
+			} else {
+				String tag2 = SUPERTAGS[random.nextInt(SUPERTAGS.length)];
+				String tags = tag1 + " " + tag2;
+				long key = SupercatRuleTable.key(supertagId(tag1), supertagId(tag2));
+				assertEquals(tags, old.apply(tags, dynamic), apply(key, tags));
+			}
+		}
+	}
+
+	@Test
+	public void testUnseenSupertag() {
+		// a pair with an unseen supertag is not taken for the first one alone
+		table = new SupercatRuleTable();
+		table.addLoaded("np", ">");
+		int np = table.getSupertagId("np");
+		assertEquals(0, table.getSupertagId("pp"));
+		assertTrue(SupercatRuleTable.contains(table.getRules(SupercatRuleTable.key(np)),
+				table.internRule(">")));
+		assertSame(SupercatRuleTable.NO_RULES, table.getRules(SupercatRuleTable.key(np, 0)));
+		assertSame(SupercatRuleTable.NO_RULES, table.getRules(SupercatRuleTable.key(0, np)));
+	}
+
+	@Test
+	public void testMasks() {
+		long[] mask = SupercatRuleTable.with(SupercatRuleTable.NO_RULES, 3);
+		mask = SupercatRuleTable.with(mask, 70);
+		assertEquals(2, mask.length);
+		assertTrue(SupercatRuleTable.contains(mask, 3));
+		assertTrue(SupercatRuleTable.contains(mask, 70));
+		assertFalse(SupercatRuleTable.contains(mask, 6));
+		assertFalse(SupercatRuleTable.contains(mask, 200));
+		long[] other = SupercatRuleTable.with(SupercatRuleTable.NO_RULES, 6);
+		long[] union = SupercatRuleTable.or(mask, other);
+		assertTrue(SupercatRuleTable.contains(union, 6));
+		assertTrue(SupercatRuleTable.contains(union, 70));
+		assertSame(mask, SupercatRuleTable.or(mask, SupercatRuleTable.NO_RULES));
+	}
+}
@@ -0,0 +1,74 @@
+package opennlp.ccg.ngrams;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.StringReader;
+import java.util.List;
+
+import opennlp.ccg.lexicon.Association;
+import opennlp.ccg.lexicon.DefaultTokenizer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class BloomierNgramModelTest {
+
+	StandardNgramModel exact;
+	BloomierNgramModel lossy;
+	DefaultTokenizer tokenizer = new DefaultTokenizer();
+
+	@Before
+	public void setUp() throws Exception {
+		exact = new StandardNgramModel(3, new StringReader(NgramTrieTest.ARPA));
+		lossy = new BloomierNgramModel(3, new StringReader(NgramTrieTest.ARPA), 16, 8);
+	}
+
+	@Test
+	public void testLogProb() {
+		// with fewer values than codes, the scores are exact
+		for (String s : StandardNgramModelTest.SENTENCES) {
+			List<Association> words = tokenizer.tokenize(s);
+			assertEquals(s, exact.logprob(words), lossy.logprob(words), 1e-5);
+		}
+	}
+
+	@Test
+	public void testSaveAndLoad() throws Exception {
+		File file = File.createTempFile("bloomier", ".lm");
+		try {
+			lossy.save(file.getPath());
+			assertTrue(BloomierNgramModel.isModel(file.getPath()));
+			BloomierNgramModel loaded = new BloomierNgramModel(3, file.getPath());
+			assertEquals(16, loaded.getFpBits());
+			assertEquals(lossy.sizeInBytes(), loaded.sizeInBytes());
+			for (String s : StandardNgramModelTest.SENTENCES) {
+				List<Association> words = tokenizer.tokenize(s);
+				assertEquals(s, lossy.logprob(words), loaded.logprob(words), 0);
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testQuantization() throws Exception {
+		BloomierNgramModel coarse = new BloomierNgramModel(3, new StringReader(NgramTrieTest.ARPA),
+				16, 1);
+		// one code per order besides -99, ie the mean of the unigram log probs
+		List<Association> words = tokenizer.tokenize("e");
+		assertEquals(-99, coarse.logprob(words), 0);
+		words = tokenizer.tokenize("c");
+		assertEquals(-2.0, coarse.logprob(words), 1e-5);
+	}
+
+	@Test
+	public void testNotModel() throws Exception {
+		File file = File.createTempFile("bloomier", ".arpa");
+		try {
+			assertFalse(BloomierNgramModel.isModel(file.getPath()));
+		} finally {
+			file.delete();
+		}
+	}
+}
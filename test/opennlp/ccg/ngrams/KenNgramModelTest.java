@@ -0,0 +1,188 @@
+package opennlp.ccg.ngrams;
+
+import static org.junit.Assert.*;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import opennlp.ccg.lexicon.Association;
+import opennlp.ccg.lexicon.DefaultTokenizer;
+import opennlp.ccg.ngrams.kenlm.jni.KenLM;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class KenNgramModelTest {
+
+	// a stand-in for KenLM, which scores an n-gram by a function of its word
+	// ids, and notes whether a word was ever registered while scoring
+	static class StubKenLM extends KenLM {
+		List<String> registered = new ArrayList<String>();
+		volatile boolean registering = false;
+		volatile boolean overlapped = false;
+		AtomicInteger scoring = new AtomicInteger();
+
+		StubKenLM(int order) {
+			super(order);
+		}
+
+		public boolean registerWord(String word, int id) {
+			registering = true;
+			if (scoring.get() > 0)
+				overlapped = true;
+			if (id != registered.size())
+				overlapped = true;
+			registered.add(word);
+			Thread.yield();
+			registering = false;
+			return true;
+		}
+
+		public float prob(int[] words) {
+			enter();
+			try {
+				return score(words, 0, words.length);
+			} finally {
+				scoring.decrementAndGet();
+			}
+		}
+
+		public void prob(IntBuffer buffer, int numWords, int numQueries, FloatBuffer results) {
+			enter();
+			try {
+				int[] words = new int[numWords];
+				for (int i = 0; i < numWords; i++)
+					words[i] = buffer.get(i);
+				for (int q = 0; q < numQueries; q++) {
+					int start = buffer.get(numWords + 2 * q);
+					int len = buffer.get(numWords + 2 * q + 1);
+					boolean inRange = start >= 0 && len > 0 && start + len <= numWords;
+					results.put(q, inRange ? score(words, start, len) : Float.NaN);
+				}
+			} finally {
+				scoring.decrementAndGet();
+			}
+		}
+
+		private void enter() {
+			scoring.incrementAndGet();
+			if (registering)
+				overlapped = true;
+		}
+	}
+
+	// the log prob of the n-gram with the given ids
+	static float score(int[] ids, int start, int len) {
+		float retval = 0;
+		for (int k = start; k < start + len; k++)
+			retval = retval * 7 + ids[k] + 1;
+		return -retval / 1000;
+	}
+
+	StubKenLM kenlm;
+	KenNgramModel lm;
+	DefaultTokenizer tokenizer = new DefaultTokenizer();
+
+	@Before
+	public void setUp() {
+		kenlm = new StubKenLM(3);
+		lm = new KenNgramModel(3, kenlm);
+	}
+
+	// returns the expected log probs of the words to score from the given
+	// index on, given the log probs already known
+	private float[] expectedLogProbs(float[] known, int from) {
+		int size = lm.wordsToScore.size();
+		int[] ids = new int[size];
+		for (int j = 0; j < size; j++)
+			ids[j] = lm.id(lm.stringsToScore.get(j));
+		float[] retval = known.clone();
+		for (int i = from; i < size; i++) {
+			if (!Float.isNaN(retval[i]))
+				continue;
+			int orderToUse = Math.min(3, i + 1);
+			retval[i] = (i == 0) ? 0 : score(ids, i - (orderToUse - 1), orderToUse);
+		}
+		return retval;
+	}
+
+	// scores the given words in a batch, from the given index on, with the
+	// given log probs already known, and checks the results
+	private void checkBatch(String words, int from, int... known) {
+		lm.setWordsToScore(tokenizer.tokenize(words), true);
+		lm.prepareToScoreWords();
+		float[] logprobs = new float[lm.wordsToScore.size()];
+		Arrays.fill(logprobs, Float.NaN);
+		for (int i : known)
+			logprobs[i] = 1;
+		float[] expected = expectedLogProbs(logprobs, from);
+		lm.logProbsFromNgrams(logprobs, from, 3);
+		assertTrue(words, Arrays.equals(expected, logprobs));
+	}
+
+	@Test
+	public void testIds() {
+		// ids start at zero, and each word is registered once
+		assertEquals(0, lm.id("a"));
+		assertEquals(1, lm.id("b"));
+		assertEquals(0, lm.id("a"));
+		assertEquals(1, lm.id("b"));
+		assertEquals(2, lm.id("c"));
+		assertEquals(Arrays.asList("a", "b", "c"), kenlm.registered);
+	}
+
+	@Test
+	public void testBatch() {
+		// the n-grams of the sentence, with the initial start tag skipped
+		checkBatch("a b c d", 0);
+		// only unknown log probs, from the given index on, with the context
+		// of the first one packed
+		checkBatch("a b c d e f", 3, 5);
+		checkBatch("a b c d e f", 5);
+		// the buffers grow for long sentences, and are reused for short ones
+		StringBuilder sb = new StringBuilder();
+		for (int k = 0; k < 200; k++)
+			sb.append(" w").append(k % 50);
+		checkBatch(sb.toString().trim(), 0);
+		checkBatch("a b", 0);
+		checkBatch(sb.toString().trim() + sb.toString(), 0);
+		assertFalse(kenlm.overlapped);
+	}
+
+	@Test
+	public void testConcurrentRegistration() throws InterruptedException {
+		// words are registered while no other thread is scoring
+		final int numThreads = 8;
+		final boolean[] ok = new boolean[numThreads];
+		Thread[] threads = new Thread[numThreads];
+		for (int t = 0; t < numThreads; t++) {
+			final int thread = t;
+			threads[t] = new Thread() {
+				public void run() {
+					boolean same = true;
+					for (int k = 0; k < 200; k++) {
+						List<Association> words = tokenizer.tokenize("a b w" + thread + "_" + k
+								+ " c a");
+						double logprob = lm.logprob(words);
+						same &= !Double.isNaN(logprob) && logprob < 0;
+					}
+					ok[thread] = same;
+				}
+			};
+		}
+		for (Thread thread : threads)
+			thread.start();
+		for (Thread thread : threads)
+			thread.join();
+		for (int t = 0; t < numThreads; t++)
+			assertTrue(ok[t]);
+		assertFalse(kenlm.overlapped);
+		assertEquals(3 + numThreads * 200, kenlm.registered.size());
+		assertEquals(kenlm.registered.size(), new HashSet<String>(kenlm.registered).size());
+	}
+}
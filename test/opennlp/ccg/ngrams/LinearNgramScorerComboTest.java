@@ -0,0 +1,52 @@
+package opennlp.ccg.ngrams;
+
+import static org.junit.Assert.*;
+
+import java.io.StringReader;
+import java.util.List;
+
+import opennlp.ccg.lexicon.Association;
+import opennlp.ccg.lexicon.DefaultTokenizer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class LinearNgramScorerComboTest {
+
+	static final String BIGRAMS = "\\data\\\n" + "ngram 1=4\n" + "ngram 2=2\n\n" + "\\1-grams:\n"
+			+ "-1.5\ta\t-0.5\n" + "-1.5\tb\t-0.5\n" + "-1.5\tc\n" + "-1.5\td\n\n" + "\\2-grams:\n"
+			+ "-0.2\ta b\n" + "-0.4\tc a\n\n" + "\\end\\\n";
+
+	StandardNgramModel trigrams;
+	StandardNgramModel bigrams;
+	DefaultTokenizer tokenizer = new DefaultTokenizer();
+
+	@Before
+	public void setUp() throws Exception {
+		trigrams = new StandardNgramModel(3, new StringReader(NgramTrieTest.ARPA));
+		bigrams = new StandardNgramModel(2, new StringReader(BIGRAMS));
+	}
+
+	@Test
+	public void testSingleModel() {
+		LinearNgramScorerCombo combo = new LinearNgramScorerCombo(
+				new NgramScorer[] { trigrams }, new double[] { 1.0 });
+		for (String s : StandardNgramModelTest.SENTENCES) {
+			List<Association> words = tokenizer.tokenize(s);
+			assertEquals(s, trigrams.logprob(words), combo.logprob(words), 1e-4);
+		}
+	}
+
+	@Test
+	public void testInterpolation() {
+		LinearNgramScorerCombo combo = new LinearNgramScorerCombo(new NgramScorer[] { trigrams,
+				bigrams }, new double[] { 0.5, 0.5 });
+		// log p(a) + log p(b | a) + log p(c | a b), with </s> unknown to both
+		double expected = Math.log10(0.5 * Math.pow(10, -1.0) + 0.5 * Math.pow(10, -1.5))
+				+ Math.log10(0.5 * Math.pow(10, -0.3) + 0.5 * Math.pow(10, -0.2))
+				+ Math.log10(0.5 * Math.pow(10, -0.05) + 0.5 * Math.pow(10, -0.5 - 1.5))
+				+ Math.log10(0.5 * Math.pow(10, -99) + 0.5 * Math.pow(10, -99));
+		List<Association> words = tokenizer.tokenize(StandardNgramModelTest.SENTENCES[0]);
+		assertEquals(expected, combo.logprob(words), 1e-4);
+	}
+}
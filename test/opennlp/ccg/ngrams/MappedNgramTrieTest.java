@@ -0,0 +1,68 @@
+package opennlp.ccg.ngrams;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.StringReader;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MappedNgramTrieTest {
+
+	NgramTrie trie;
+	File image;
+	MappedNgramTrie mapped;
+
+	@Before
+	public void setUp() throws Exception {
+		trie = NgramTrie.readArpa(3, new StringReader(NgramTrieTest.ARPA), new int[3]);
+		image = File.createTempFile("ngrams", ".img");
+		MappedNgramTrie.write(trie, image.getPath());
+		mapped = MappedNgramTrie.open(image.getPath());
+	}
+
+	@After
+	public void tearDown() {
+		image.delete();
+	}
+
+	@Test
+	public void testIsImage() throws Exception {
+		assertTrue(MappedNgramTrie.isImage(image.getPath()));
+		File arpa = File.createTempFile("ngrams", ".arpa");
+		try {
+			assertFalse(MappedNgramTrie.isImage(arpa.getPath()));
+		} finally {
+			arpa.delete();
+		}
+	}
+
+	@Test
+	public void testVocab() {
+		assertEquals(trie.numWords(), mapped.numWords());
+		for (int id = 0; id < trie.numWords(); id++) {
+			String word = trie.getWord(id);
+			assertEquals(word, mapped.getWord(id));
+			assertEquals(id, mapped.getWordId(word));
+		}
+		assertEquals(-1, mapped.getWordId("e"));
+		assertEquals(-1, mapped.getWordId("ä"));
+		assertArrayEquals(trie.getTotals(), mapped.getTotals());
+	}
+
+	@Test
+	public void testNgrams() {
+		for (int n = 1; n <= 3; n++) {
+			assertEquals(trie.size(n), mapped.size(n));
+			for (int k = 0; k < trie.size(n); k++) {
+				assertEquals(trie.getLogProb(n, k), mapped.getLogProb(n, k), 0);
+				assertEquals(trie.getBackoffWeight(n, k), mapped.getBackoffWeight(n, k), 0);
+				assertEquals(trie.getLastWordId(n, k), mapped.getLastWordId(n, k));
+			}
+		}
+		int[] ids = { mapped.getWordId("a"), mapped.getWordId("b"), mapped.getWordId("c") };
+		assertEquals(-0.05f, mapped.getLogProb(3, mapped.find(ids, 0, 3)), 0);
+	}
+}
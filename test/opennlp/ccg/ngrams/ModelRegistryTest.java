@@ -0,0 +1,181 @@
+package opennlp.ccg.ngrams;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ModelRegistryTest {
+
+	ModelRegistry<Object> registry;
+	int numLoads;
+
+	@Before
+	public void setUp() throws Exception {
+		registry = new ModelRegistry<Object>();
+		numLoads = 0;
+	}
+
+	ModelRegistry.Loader<Object> loader(final Object model) {
+		return new ModelRegistry.Loader<Object>() {
+			public Object load() throws IOException {
+				synchronized (ModelRegistryTest.this) {
+					numLoads++;
+				}
+				return model;
+			}
+
+			public long heapBytes(Object m) {
+				return 42;
+			}
+		};
+	}
+
+	@Test
+	public void testRefCounts() throws IOException {
+		Object a = new Object();
+		assertSame(a, registry.acquire("a", loader(a)));
+		assertSame(a, registry.acquire("a", loader(new Object())));
+		assertEquals(1, numLoads);
+		assertEquals(2, registry.getRefCount("a"));
+		assertEquals(42, registry.getHeapBytes("a"));
+		assertFalse(registry.release("a"));
+		assertTrue(registry.release("a"));
+		assertFalse(registry.contains("a"));
+		assertFalse(registry.release("a"));
+		Object b = new Object();
+		assertSame(b, registry.acquire("a", loader(b)));
+		assertEquals(2, numLoads);
+	}
+
+	@Test
+	public void testCollectedWithoutRelease() throws IOException {
+		registry.acquire("a", loader(new Object()));
+		for (int i = 0; i < 100 && registry.contains("a"); i++) {
+			System.gc();
+			Thread.yield();
+		}
+		assertFalse(registry.contains("a"));
+		assertEquals(0, registry.getTotalHeapBytes());
+		Object b = new Object();
+		assertSame(b, registry.acquire("a", loader(b)));
+		assertEquals(2, numLoads);
+		assertEquals(1, registry.getRefCount("a"));
+	}
+
+	@Test
+	public void testFailure() {
+		ModelRegistry.Loader<Object> failing = new ModelRegistry.Loader<Object>() {
+			public Object load() throws IOException {
+				throw new IOException("missing");
+			}
+
+			public long heapBytes(Object m) {
+				return 0;
+			}
+		};
+		try {
+			registry.acquire("a", failing);
+			fail();
+		} catch (IOException exc) {
+			assertEquals("missing", exc.getMessage());
+		}
+		assertFalse(registry.contains("a"));
+	}
+
+	@Test
+	public void testSingleFlight() throws InterruptedException {
+		final int numThreads = 8;
+		final Object[] results = new Object[numThreads];
+		final ModelRegistry.Loader<Object> slow = new ModelRegistry.Loader<Object>() {
+			public Object load() throws IOException {
+				synchronized (ModelRegistryTest.this) {
+					numLoads++;
+				}
+				try {
+					Thread.sleep(50);
+				} catch (InterruptedException exc) {
+					throw new IOException("interrupted");
+				}
+				return new Object();
+			}
+
+			public long heapBytes(Object m) {
+				return 1;
+			}
+		};
+		Thread[] threads = new Thread[numThreads];
+		for (int t = 0; t < numThreads; t++) {
+			final int thread = t;
+			threads[t] = new Thread() {
+				public void run() {
+					try {
+						results[thread] = registry.acquire("a", slow);
+					} catch (IOException exc) {
+						results[thread] = exc;
+					}
+				}
+			};
+		}
+		for (Thread thread : threads)
+			thread.start();
+		for (Thread thread : threads)
+			thread.join();
+		assertEquals(1, numLoads);
+		for (int t = 1; t < numThreads; t++)
+			assertSame(results[0], results[t]);
+		assertEquals(numThreads, registry.getRefCount("a"));
+	}
+
+	@Test
+	public void testSharedTrie() throws IOException {
+		File file = File.createTempFile("registry", ".arpa");
+		try {
+			FileWriter out = new FileWriter(file);
+			out.write(NgramTrieTest.ARPA);
+			out.close();
+			StandardNgramModel lm1 = new StandardNgramModel(3, file.getPath());
+			StandardNgramModel lm2 = new StandardNgramModel(3, file.getPath());
+			assertSame(lm1.ngramTrie, lm2.ngramTrie);
+			String key = ModelRegistry.fileKey(file.getPath(), "order 3");
+			assertEquals(2, StandardNgramModel.registry.getRefCount(key));
+			assertTrue(StandardNgramModel.registry.getHeapBytes(key) > 0);
+			lm1.release();
+			lm1.release();
+			assertEquals(1, StandardNgramModel.registry.getRefCount(key));
+			lm2.release();
+			assertFalse(StandardNgramModel.registry.contains(key));
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testReplacedFile() throws IOException {
+		File file = File.createTempFile("registry", ".arpa");
+		try {
+			FileWriter out = new FileWriter(file);
+			out.write(NgramTrieTest.ARPA);
+			out.close();
+			StandardNgramModel lm1 = new StandardNgramModel(3, file.getPath());
+			String key1 = ModelRegistry.fileKey(file.getPath(), "order 3");
+			out = new FileWriter(file);
+			out.write(NgramTrieTest.ARPA.replace("-0.5", "-0.25"));
+			out.close();
+			String key2 = ModelRegistry.fileKey(file.getPath(), "order 3");
+			assertFalse(key1.equals(key2));
+			StandardNgramModel lm2 = new StandardNgramModel(3, file.getPath());
+			assertNotSame(lm1.ngramTrie, lm2.ngramTrie);
+			assertEquals(1, StandardNgramModel.registry.getRefCount(key1));
+			assertEquals(1, StandardNgramModel.registry.getRefCount(key2));
+			lm1.release();
+			lm2.release();
+		} finally {
+			file.delete();
+		}
+	}
+}
@@ -0,0 +1,199 @@
+package opennlp.ccg.ngrams;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.*;
+
+import opennlp.ccg.grammar.Grammar;
+import opennlp.ccg.lexicon.Association;
+import opennlp.ccg.synsem.AtomCat;
+import opennlp.ccg.synsem.Symbol;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class NgramPrecisionModelTest {
+
+	static Grammar grammar = null;
+
+	static final String[] WORDS = { "a", "b", "c", "d", "e", "z" };
+
+	static final double[] WEIGHTS = { 0.4, 0.3, 0.2, 0.1 };
+
+	Random random;
+
+	@Before
+	@SuppressWarnings("deprecation")
+	public void setUp() throws Exception {
+		if (grammar == null) {
+			grammar = new Grammar(new File(new File(new File(System.getProperty("user.dir")),
+					"test"), "grammar.xml").toURL());
+		}
+		random = new Random(11);
+	}
+
+	// returns a random string of words
+	private String randomString(int maxLen) {
+		StringBuilder sb = new StringBuilder();
+		int len = 1 + random.nextInt(maxLen);
+		for (int i = 0; i < len; i++)
+			sb.append(' ').append(WORDS[random.nextInt(WORDS.length)]);
+		return sb.toString().trim();
+	}
+
+	// returns random target strings
+	private String[] randomTargets() {
+		String[] retval = new String[3];
+		for (int i = 0; i < retval.length; i++)
+			retval[i] = randomString(8);
+		return retval;
+	}
+
+	// returns the forms of the given words
+	private static List<String> forms(List<Association> words) {
+		List<String> retval = new ArrayList<String>();
+		for (Association w : words)
+			retval.add(w.getForm());
+		return retval;
+	}
+
+	// returns the target n-grams up to the given order, as the old model
+	// stored them
+	private static Set<List<String>> targetNgrams(String[] targets, int order) {
+		Set<List<String>> retval = new HashSet<List<String>>();
+		for (String target : targets) {
+			List<String> words = new ArrayList<String>();
+			words.add("<s>");
+			words.addAll(forms(Grammar.theGrammar.lexicon.tokenizer.tokenize(target)));
+			words.add("</s>");
+			for (int k = 1; k <= order; k++) {
+				for (int i = 0; i + k <= words.size(); i++)
+					retval.add(new ArrayList<String>(words.subList(i, i + k)));
+			}
+		}
+		return retval;
+	}
+
+	// returns the score the old model gave, which counted each n-gram of each
+	// order found in the target n-grams
+	private static double oldScore(List<String> words, Set<List<String>> targetNgrams, int order,
+			boolean exactMatches) {
+		double retval = 0;
+		for (int k = 1; k <= order; k++) {
+			double precision = 0;
+			int numNgrams = words.size() - (k - 1);
+			if (numNgrams > 0) {
+				int matches = 0;
+				for (int i = 0; i < numNgrams; i++) {
+					if (targetNgrams.contains(words.subList(i, i + k)))
+						matches++;
+				}
+				if (exactMatches)
+					precision = (matches == numNgrams) ? 1.0 : 0.0;
+				else
+					precision = (matches * 1.0) / numNgrams;
+			}
+			retval += WEIGHTS[order - k] * precision;
+		}
+		if (words.size() < order) {
+			double max = 0.0;
+			for (int k = 1; k <= words.size(); k++)
+				max += WEIGHTS[order - k];
+			retval = retval / max;
+		}
+		return retval;
+	}
+
+	// returns a random binary derivation over the given words
+	private Symbol derive(List<Association> words, int from, int to, List<Symbol> signs) {
+		Symbol retval;
+		if (to - from == 1) {
+			retval = new Symbol(words.subList(from, to), new AtomCat("n"));
+		} else {
+			int split = from + 1 + random.nextInt(to - from - 1);
+			Symbol left = derive(words, from, split, signs);
+			Symbol right = derive(words, split, to, signs);
+			retval = new Symbol(new AtomCat("n"), new Symbol[] { left, right }, null, left);
+		}
+		signs.add(retval);
+		return retval;
+	}
+
+	// checks that signs scored bottom up, reusing the match lengths of their
+	// inputs, get the same scores as with the old model
+	private void assertSameScores(NgramPrecisionModel model, String[] targets, int order,
+			boolean reverse, boolean exactMatches) {
+		Set<List<String>> targetNgrams = targetNgrams(targets, order);
+		for (int n = 0; n < 30; n++) {
+			List<Association> words = Grammar.theGrammar.lexicon.tokenizer.tokenize(randomString(12));
+			List<Symbol> signs = new ArrayList<Symbol>();
+			Symbol root = derive(words, 0, words.size(), signs);
+			for (Symbol sign : signs) {
+				List<String> scored = forms(sign.getAssociations());
+				if (reverse)
+					Collections.reverse(scored);
+				assertEquals(scored.toString(), oldScore(scored, targetNgrams, order, exactMatches),
+						model.score(sign, false), 0);
+			}
+			// nb: the delimiters are added around the reversed words
+			List<String> scored = forms(root.getAssociations());
+			if (reverse)
+				Collections.reverse(scored);
+			scored.add(0, "<s>");
+			scored.add("</s>");
+			assertEquals(scored.toString(), oldScore(scored, targetNgrams, order, exactMatches),
+					model.score(root, true), 0);
+		}
+	}
+
+	@Test
+	public void testSameScores() {
+		String[] targets = randomTargets();
+		NgramPrecisionModel model = new NgramPrecisionModel(targets, 4, false, WEIGHTS);
+		assertSameScores(model, targets, 4, false, false);
+	}
+
+	@Test
+	public void testLowerOrder() {
+		String[] targets = randomTargets();
+		NgramPrecisionModel model = new NgramPrecisionModel(targets, 2, false, WEIGHTS);
+		assertSameScores(model, targets, 2, false, false);
+	}
+
+	@Test
+	public void testExactMatches() {
+		String[] targets = { "a b c d e", "z a b" };
+		NgramPrecisionModel model = new NgramPrecisionModel(targets, 4, false, WEIGHTS);
+		model.setExactMatches(true);
+		assertSameScores(model, targets, 4, false, true);
+	}
+
+	@Test
+	public void testReversed() {
+		String[] targets = randomTargets();
+		NgramPrecisionModel model = new NgramPrecisionModel(targets, 4, false, WEIGHTS);
+		model.setReverse(true);
+		assertSameScores(model, targets, 4, true, false);
+	}
+
+	@Test
+	public void testNewTargets() {
+		// match lengths stored for the old targets are not reused
+		String[] targets = randomTargets();
+		NgramPrecisionModel model = new NgramPrecisionModel(targets, 4, false, WEIGHTS);
+		List<Association> words = Grammar.theGrammar.lexicon.tokenizer.tokenize("a b c d e a b");
+		List<Symbol> signs = new ArrayList<Symbol>();
+		derive(words, 0, words.size(), signs);
+		for (Symbol sign : signs)
+			model.score(sign, false);
+		String[] newTargets = randomTargets();
+		model.setTargets(newTargets);
+		Set<List<String>> targetNgrams = targetNgrams(newTargets, 4);
+		for (Symbol sign : signs) {
+			List<String> scored = forms(sign.getAssociations());
+			assertEquals(oldScore(scored, targetNgrams, 4, false), model.score(sign, false), 0);
+		}
+		assertSameScores(model, newTargets, 4, false, false);
+	}
+}
@@ -0,0 +1,109 @@
+package opennlp.ccg.ngrams;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.*;
+
+import opennlp.ccg.lexicon.Association;
+import opennlp.ccg.lexicon.DefaultTokenizer;
+import opennlp.ccg.synsem.AtomCat;
+import opennlp.ccg.synsem.Symbol;
+
+import org.junit.Test;
+
+public class NgramStateTest {
+
+	static final String[] WORDS = { "a", "b", "c", "d", "e", "z" };
+
+	DefaultTokenizer tokenizer = new DefaultTokenizer();
+
+	// returns a random binary derivation over the given words
+	private Symbol derive(List<Association> words, int from, int to, Random random,
+			List<Symbol> signs) {
+		Symbol retval;
+		if (to - from == 1) {
+			retval = new Symbol(words.subList(from, to), new AtomCat("n"));
+		} else {
+			int split = from + 1 + random.nextInt(to - from - 1);
+			Symbol left = derive(words, from, split, random, signs);
+			Symbol right = derive(words, split, to, random, signs);
+			retval = new Symbol(new AtomCat("n"), new Symbol[] { left, right }, null, left);
+		}
+		signs.add(retval);
+		return retval;
+	}
+
+	// checks that incrementally scored signs get the same log probs as
+	// their words scored in full by another model
+	private void assertSameScores(int order, boolean reverse, long seed) throws IOException {
+		Random random = new Random(seed);
+		String arpa = TrieMapNgramModelTest.randomArpa(random, true);
+		StandardNgramModel lm = new StandardNgramModel(order, new StringReader(arpa));
+		StandardNgramModel ref = new StandardNgramModel(order, new StringReader(arpa));
+		lm.setReverse(reverse);
+		ref.setReverse(reverse);
+		int numStates = 0;
+		for (int k = 0; k < 30; k++) {
+			StringBuilder sb = new StringBuilder();
+			int len = 2 + random.nextInt(10);
+			for (int i = 0; i < len; i++)
+				sb.append(' ').append(WORDS[random.nextInt(WORDS.length)]);
+			List<Association> words = tokenizer.tokenize(sb.toString().trim());
+			List<Symbol> signs = new ArrayList<Symbol>();
+			Symbol root = derive(words, 0, words.size(), random, signs);
+			// score bottom up, as in a chart
+			for (Symbol sign : signs) {
+				double expected = ref.logprob(sign.getAssociations());
+				assertEquals(sign.getAssociations().toString(), expected, lm.logprob(sign, false), 0);
+				// nb: signs whose words were cached get no state
+				if (lm.getState(sign) != null)
+					numStates++;
+			}
+			// complete root, with delimiters added
+			if (!reverse) {
+				List<Association> delimited = tokenizer.tokenize("<s>" + sb + " </s>");
+				List<Association> expectedWords = new ArrayList<Association>();
+				expectedWords.add(delimited.get(0));
+				expectedWords.addAll(words);
+				expectedWords.add(delimited.get(delimited.size() - 1));
+				assertEquals(ref.logprob(expectedWords), lm.logprob(root, true), 0);
+			}
+		}
+		assertTrue(numStates > 30);
+	}
+
+	@Test
+	public void testTrigrams() throws IOException {
+		assertSameScores(3, false, 5);
+	}
+
+	@Test
+	public void testBigrams() throws IOException {
+		assertSameScores(2, false, 6);
+	}
+
+	@Test
+	public void testReversed() throws IOException {
+		assertSameScores(3, true, 7);
+	}
+
+	@Test
+	public void testRescoredAfterCombination() throws IOException {
+		// the same signs scored in a different derivation order still agree
+		Random random = new Random(8);
+		String arpa = TrieMapNgramModelTest.randomArpa(random, false);
+		StandardNgramModel lm = new StandardNgramModel(3, new StringReader(arpa));
+		StandardNgramModel ref = new StandardNgramModel(3, new StringReader(arpa));
+		List<Association> words = tokenizer.tokenize("a b c d e a b");
+		List<Symbol> signs = new ArrayList<Symbol>();
+		Symbol left = derive(words, 0, 4, random, signs);
+		Symbol right = derive(words, 4, 7, random, signs);
+		// score right before left, then combine
+		for (int i = signs.size() - 1; i >= 0; i--)
+			lm.logprob(signs.get(i), false);
+		Symbol root = new Symbol(new AtomCat("n"), new Symbol[] { left, right }, null, left);
+		assertEquals(ref.logprob(words), lm.logprob(root, false), 0);
+	}
+}
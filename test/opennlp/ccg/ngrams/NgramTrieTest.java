@@ -0,0 +1,72 @@
+package opennlp.ccg.ngrams;
+
+import static org.junit.Assert.*;
+
+import java.io.StringReader;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class NgramTrieTest {
+
+	static final String ARPA = "\\data\\\n" + "ngram 1=3\n" + "ngram 2=3\n" + "ngram 3=2\n\n"
+			+ "\\1-grams:\n" + "-1.0\ta\t-0.5\n" + "-2.0\tb\t-0.25\n" + "-3.0\tc\n\n"
+			+ "\\2-grams:\n" + "-0.7\tb a\t-0.1\n" + "-0.3\ta b\n" + "-0.9\tb a\t-0.2\n\n"
+			+ "\\3-grams:\n" + "-0.05\ta b c\n" + "-0.15\tc a d\n\n" + "\\end\\\n";
+
+	NgramTrie trie;
+	int[] numNgrams;
+
+	@Before
+	public void setUp() throws Exception {
+		numNgrams = new int[3];
+		trie = NgramTrie.readArpa(3, new StringReader(ARPA), numNgrams);
+	}
+
+	int[] ids(String... words) {
+		int[] retval = new int[words.length];
+		for (int i = 0; i < words.length; i++)
+			retval[i] = trie.getWordId(words[i]);
+		return retval;
+	}
+
+	@Test
+	public void testVocab() {
+		assertEquals(4, trie.numWords());
+		assertEquals(-1, trie.getWordId("e"));
+		assertEquals("b", trie.getWord(trie.getWordId("b")));
+		assertEquals(3, numNgrams[1]);
+	}
+
+	@Test
+	public void testFind() {
+		int[] ids = ids("a", "b", "c");
+		int index = trie.find(ids, 0, 3);
+		assertTrue(index >= 0);
+		assertEquals(-0.05f, trie.getLogProb(3, index), 0);
+		assertEquals(-0.3f, trie.getLogProb(2, trie.find(ids, 0, 2)), 0);
+		assertEquals(-2.0f, trie.getLogProb(1, trie.find(ids, 1, 1)), 0);
+		assertEquals(-0.25f, trie.getBackoffWeight(1, trie.find(ids, 1, 1)), 0);
+		assertEquals(-1, trie.find(ids, 1, 2));
+		assertEquals(-1, trie.find(ids("a", "e"), 0, 2));
+	}
+
+	@Test
+	public void testDuplicates() {
+		int index = trie.find(ids("b", "a"), 0, 2);
+		assertEquals(-0.9f, trie.getLogProb(2, index), 0);
+		assertEquals(-0.2f, trie.getBackoffWeight(2, index), 0);
+		assertEquals(3, trie.size(2));
+	}
+
+	@Test
+	public void testBlankContexts() {
+		int[] ids = ids("c", "a", "d");
+		assertEquals(-0.15f, trie.getLogProb(3, trie.find(ids, 0, 3)), 0);
+		int context = trie.find(ids, 0, 2);
+		assertTrue(context >= 0);
+		assertTrue(Float.isNaN(trie.getLogProb(2, context)));
+		assertEquals(0, trie.getBackoffWeight(2, context), 0);
+		assertTrue(Float.isNaN(trie.getLogProb(1, trie.find(ids, 2, 1))));
+	}
+}
@@ -0,0 +1,84 @@
+package opennlp.ccg.ngrams;
+
+import static org.junit.Assert.*;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import opennlp.ccg.lexicon.Association;
+import opennlp.ccg.lexicon.DefaultTokenizer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class StandardNgramModelTest {
+
+	static final String[] SENTENCES = { "<s> a b c </s>", "<s> c a d </s>", "<s> b a b a </s>",
+			"<s> a </s>", "<s> e b c a </s>" };
+
+	StandardNgramModel lm;
+	List<List<Association>> sentences = new ArrayList<List<Association>>();
+
+	@Before
+	public void setUp() throws Exception {
+		lm = new StandardNgramModel(3, new StringReader(NgramTrieTest.ARPA));
+		DefaultTokenizer tokenizer = new DefaultTokenizer();
+		for (String s : SENTENCES)
+			sentences.add(tokenizer.tokenize(s));
+	}
+
+	@Test
+	public void testLogProb() {
+		// log p(a) + log p(b | a) + log p(c | a b) + log p(</s>), where the
+		// initial <s> is skipped and </s> is unknown
+		double expected = -1.0 - 0.3 - 0.05 - 99;
+		assertEquals(expected, lm.logprob(sentences.get(0)), 1e-5);
+	}
+
+	@Test
+	public void testCacheGenerations() throws Exception {
+		// words used during a generation are kept when the next one starts
+		List<Association> words = new DefaultTokenizer().tokenize("a b c d e f");
+		double expected = lm.logprob(sentences.get(4));
+		lm = new StandardNgramModel(3, new StringReader(NgramTrieTest.ARPA));
+		lm.maxCachedWords = 3;
+		for (int i : new int[] { 0, 1, 2, 3, 0, 4, 5 })
+			assertEquals(words.get(i).getForm(), lm.wordKey(words.get(i)));
+		assertTrue(lm.isWordKeyCached(words.get(0)));
+		assertTrue(lm.isWordKeyCached(words.get(4)));
+		assertFalse(lm.isWordKeyCached(words.get(1)));
+		assertFalse(lm.isWordKeyCached(words.get(2)));
+		for (int k = 0; k < 3; k++)
+			assertEquals(expected, lm.logprob(sentences.get(4)), 0);
+	}
+
+	@Test
+	public void testConcurrentLogProb() throws InterruptedException {
+		final double[] expected = new double[sentences.size()];
+		for (int i = 0; i < expected.length; i++)
+			expected[i] = lm.logprob(sentences.get(i));
+		final int numThreads = 8;
+		final boolean[] ok = new boolean[numThreads];
+		Thread[] threads = new Thread[numThreads];
+		for (int t = 0; t < numThreads; t++) {
+			final int thread = t;
+			threads[t] = new Thread() {
+				public void run() {
+					boolean same = true;
+					for (int k = 0; k < 2000; k++) {
+						int i = (thread + k) % expected.length;
+						same &= lm.logprob(sentences.get(i)) == expected[i];
+					}
+					ok[thread] = same;
+				}
+			};
+		}
+		for (Thread thread : threads)
+			thread.start();
+		for (Thread thread : threads)
+			thread.join();
+		for (int t = 0; t < numThreads; t++)
+			assertTrue(ok[t]);
+	}
+}
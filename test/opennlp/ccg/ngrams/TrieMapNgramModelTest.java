@@ -0,0 +1,160 @@
+package opennlp.ccg.ngrams;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StreamTokenizer;
+import java.io.StringReader;
+import java.util.*;
+
+import opennlp.ccg.lexicon.Association;
+import opennlp.ccg.lexicon.DefaultTokenizer;
+import opennlp.ccg.util.TrieMap;
+
+import org.junit.Test;
+
+public class TrieMapNgramModelTest {
+
+	// a model stored in a trie map, read as StandardNgramModel did before
+	// the n-gram trie, for reference
+	static class TrieMapModel extends AbstractStandardNgramModel {
+		TrieMapModel(int order, Reader in) throws IOException {
+			super(order);
+			StreamTokenizer tokenizer = initTokenizer(in);
+			String[] tokens = new String[order + 2];
+			boolean foundData = false;
+			int currentOrder = 0;
+			List<Object> currentPrefix = new ArrayList<Object>();
+			List<Object> currentKeys = new ArrayList<Object>();
+			List<TrieMap<Object, NgramFloats>> currentChildren = new ArrayList<TrieMap<Object, NgramFloats>>();
+			while (tokenizer.ttype != StreamTokenizer.TT_EOF) {
+				readLine(tokenizer, tokens);
+				if (tokens[0] == null)
+					continue;
+				if (tokens[0].equals("\\data\\")) {
+					foundData = true;
+					continue;
+				}
+				if (!foundData || tokens[0].equals("ngram"))
+					continue;
+				if (tokens[0].equals("\\end\\")) {
+					addTrieMapChildren(currentPrefix, currentKeys, currentChildren);
+					break;
+				}
+				if (tokens[0].equals("\\" + (currentOrder + 1) + "-grams:")) {
+					addTrieMapChildren(currentPrefix, currentKeys, currentChildren);
+					currentOrder++;
+					continue;
+				}
+				if (currentOrder == 0)
+					continue;
+				if (currentOrder > order)
+					break;
+				float logprob = Float.parseFloat(tokens[0]);
+				float bow = 0;
+				if (currentOrder < order && tokens[currentOrder + 1] != null)
+					bow = Float.parseFloat(tokens[currentOrder + 1]);
+				for (int i = 1; i < currentOrder + 1; i++)
+					tokens[i] = tokens[i].intern();
+				boolean samePrefix = (currentPrefix.size() == currentOrder - 1);
+				for (int i = 1; samePrefix && i < currentOrder; i++) {
+					if (tokens[i] != currentPrefix.get(i - 1))
+						samePrefix = false;
+				}
+				if (!samePrefix) {
+					addTrieMapChildren(currentPrefix, currentKeys, currentChildren);
+					for (int i = 1; i < currentOrder; i++)
+						currentPrefix.add(tokens[i]);
+				}
+				currentKeys.add(tokens[currentOrder]);
+				currentChildren.add(new TrieMap<Object, NgramFloats>(new NgramFloats(logprob, bow)));
+			}
+			openVocab = (trieMapRoot.getChild("<unk>") != null);
+		}
+	}
+
+	static final String[] WORDS = { "a", "b", "c", "d", "e", "<s>", "</s>" };
+
+	// returns a random ARPA model over the words, optionally with <unk>,
+	// where the higher order n-grams are listed in random order and some
+	// have no lower order context
+	static String randomArpa(Random random, boolean unk) {
+		List<List<String>> orders = new ArrayList<List<String>>();
+		for (int n = 1; n <= 3; n++) {
+			Set<String> ngrams = new LinkedHashSet<String>();
+			int total = (n == 1) ? WORDS.length : 25;
+			for (int k = 0; ngrams.size() < total && k < 1000; k++) {
+				StringBuilder sb = new StringBuilder();
+				for (int i = 0; i < n; i++) {
+					if (i > 0)
+						sb.append(' ');
+					sb.append((n == 1) ? WORDS[ngrams.size()] : WORDS[random.nextInt(WORDS.length)]);
+				}
+				ngrams.add(sb.toString());
+			}
+			if (n == 1 && unk)
+				ngrams.add("<unk>");
+			List<String> lines = new ArrayList<String>();
+			for (String ngram : ngrams) {
+				String line = (-random.nextInt(300) / 100.0f) + "\t" + ngram;
+				if (n < 3)
+					line += "\t" + (-random.nextInt(100) / 100.0f);
+				lines.add(line);
+			}
+			if (n > 1)
+				Collections.shuffle(lines, random);
+			orders.add(lines);
+		}
+		StringBuilder sb = new StringBuilder("\\data\\\n");
+		for (int n = 1; n <= 3; n++)
+			sb.append("ngram ").append(n).append('=').append(orders.get(n - 1).size()).append('\n');
+		for (int n = 1; n <= 3; n++) {
+			sb.append("\n\\").append(n).append("-grams:\n");
+			for (String line : orders.get(n - 1))
+				sb.append(line).append('\n');
+		}
+		sb.append("\n\\end\\\n");
+		return sb.toString();
+	}
+
+	// returns random sentences, with unknown words
+	static List<List<Association>> randomSentences(Random random, int num) {
+		DefaultTokenizer tokenizer = new DefaultTokenizer();
+		List<List<Association>> retval = new ArrayList<List<Association>>();
+		for (int k = 0; k < num; k++) {
+			StringBuilder sb = new StringBuilder("<s>");
+			int len = 1 + random.nextInt(8);
+			for (int i = 0; i < len; i++)
+				sb.append(' ').append(random.nextInt(10) == 0 ? "z" : WORDS[random.nextInt(5)]);
+			sb.append(" </s>");
+			retval.add(tokenizer.tokenize(sb.toString()));
+		}
+		return retval;
+	}
+
+	// checks that both models give the same log probs
+	private void assertSameScores(String arpa, List<List<Association>> sentences)
+			throws IOException {
+		StandardNgramModel lm = new StandardNgramModel(3, new StringReader(arpa));
+		TrieMapModel ref = new TrieMapModel(3, new StringReader(arpa));
+		assertNotNull(lm.ngramTrie);
+		assertNull(ref.ngramTrie);
+		assertEquals(ref.openVocab, lm.openVocab);
+		for (List<Association> sentence : sentences)
+			assertEquals(sentence.toString(), ref.logprob(sentence), lm.logprob(sentence), 0);
+	}
+
+	@Test
+	public void testSameScores() throws IOException {
+		Random random = new Random(3);
+		assertSameScores(NgramTrieTest.ARPA, randomSentences(random, 50));
+	}
+
+	@Test
+	public void testSameScoresRandomModels() throws IOException {
+		Random random = new Random(4);
+		for (int k = 0; k < 20; k++)
+			assertSameScores(randomArpa(random, k % 2 == 0), randomSentences(random, 50));
+	}
+}
@@ -0,0 +1,81 @@
+package opennlp.ccg.parse;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.Comparator;
+
+import opennlp.ccg.grammar.Grammar;
+import opennlp.ccg.lexicon.DefaultTokenizer;
+import opennlp.ccg.synsem.AtomCat;
+import opennlp.ccg.synsem.CategoryTable;
+import opennlp.ccg.synsem.Symbol;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class FormTest {
+
+	static Grammar grammar = null;
+
+	// compares scored symbols by their scores, highest first
+	static final Comparator<ScoredSymbol> BY_SCORE = new Comparator<ScoredSymbol>() {
+		public int compare(ScoredSymbol s1, ScoredSymbol s2) {
+			return Double.compare(s2.getScore(), s1.getScore());
+		}
+	};
+
+	@Before
+	@SuppressWarnings("deprecation")
+	public void setUp() throws Exception {
+		if (grammar == null) {
+			grammar = new Grammar(new File(new File(new File(System.getProperty("user.dir")),
+					"test"), "grammar.xml").toURL());
+		}
+	}
+
+	// returns a scored symbol for a word with the given category
+	private static ScoredSymbol scoredSymbol(String word, String cat) {
+		DefaultTokenizer tokenizer = new DefaultTokenizer();
+		return new ScoredSymbol(new Symbol(tokenizer.tokenize(word), new AtomCat(cat)));
+	}
+
+	@Test
+	public void testPacking() {
+		Form form = new Form(0, BY_SCORE, new CategoryTable());
+		assertTrue(form.add(scoredSymbol("x", "n")));
+		// the same cat is packed, another one is not
+		ScoredSymbol same = scoredSymbol("x", "n");
+		assertFalse(form.add(same));
+		assertNotNull(form.get(same));
+		assertTrue(form.add(scoredSymbol("x", "np")));
+		assertEquals(2, form.size());
+	}
+
+	@Test
+	public void testOtherTables() {
+		// ids cached from one table are not compared with those of another
+		ScoredSymbol n = scoredSymbol("x", "n");
+		ScoredSymbol np = scoredSymbol("x", "np");
+		Form form1 = new Form(0, BY_SCORE);
+		Form form2 = new Form(0, BY_SCORE);
+		assertTrue(form1.add(n));
+		assertTrue(form2.add(np));
+		assertNull(form2.get(n));
+		assertTrue(form2.add(n));
+		assertEquals(2, form2.size());
+	}
+
+	@Test
+	public void testParses() throws Exception {
+		// the numbers of parses found when packing by comparing cats sans LFs
+		Parser parser = new Parser(grammar);
+		assertEquals(55, parser.parse("he announced the agreement .").getSymbols().size());
+		assertEquals(720, parser.parse("china and canada expressed concern .").getSymbols()
+				.size());
+		assertEquals(352, parser.parse("the agreement was announced by the government .")
+				.getSymbols().size());
+		assertEquals(1696, parser.parse("canada expressed concern about the agreement .")
+				.getSymbols().size());
+	}
+}
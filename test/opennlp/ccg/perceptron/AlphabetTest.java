@@ -0,0 +1,67 @@
+package opennlp.ccg.perceptron;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import opennlp.ccg.util.TrieMap;
+
+import org.junit.Test;
+
+public class AlphabetTest {
+
+	@Test
+	public void testHashed() {
+		Alphabet alphabet = new Alphabet(12, true);
+		assertTrue(alphabet.hashed());
+		assertEquals(4096, alphabet.size());
+		alphabet.setClosed(true);
+		Alphabet.Feature f = alphabet.index("syn:rule:np");
+		assertNotNull(f);
+		assertSame(f, alphabet.index("syn:rule:np"));
+		assertSame(f, alphabet.feature(f.getIndex()));
+		assertSame(f, alphabet.index(f.name()));
+		assertEquals("#" + f.getIndex(), f.name());
+		assertEquals(f.getIndex().intValue(), Alphabet.bucketIndex(Alphabet
+				.parseKeys("syn:rule:np"), 12));
+		// keys from lazy extractors hash as the parsed name does
+		List<TrieMap.KeyExtractor<String>> extractors = new ArrayList<TrieMap.KeyExtractor<String>>();
+		for (final String key : new String[] { "syn", "rule", "np" }) {
+			extractors.add(new TrieMap.KeyExtractor<String>() {
+				public String getKey() {
+					return key;
+				}
+			});
+		}
+		assertSame(f, alphabet.indexLazy(extractors));
+		// key boundaries matter
+		assertNotSame(f, alphabet.index("syn:ru:lenp"));
+	}
+
+	@Test
+	public void testHashedFiles() throws IOException {
+		File alphabetFile = File.createTempFile("alphabet", ".txt");
+		File modelFile = File.createTempFile("model", ".txt");
+		try {
+			FileWriter out = new FileWriter(alphabetFile);
+			out.write("#10\n");
+			out.close();
+			Alphabet alphabet = new Alphabet(alphabetFile.getPath());
+			assertEquals(10, alphabet.hashBits());
+			Model model = new Model(alphabet);
+			model.setWeight("a:b", 1.5);
+			model.save(modelFile.getPath());
+			Model loaded = new Model(modelFile.getPath());
+			assertTrue(loaded.getAlphabet().hashed());
+			assertEquals(1024, loaded.size());
+			assertEquals(1.5, loaded.getWeight("a:b"), 0);
+		} finally {
+			alphabetFile.delete();
+			modelFile.delete();
+		}
+	}
+}
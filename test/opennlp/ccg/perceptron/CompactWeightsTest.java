@@ -0,0 +1,81 @@
+package opennlp.ccg.perceptron;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Test;
+
+public class CompactWeightsTest {
+
+	@Test
+	public void testCodebook() {
+		double[] weights = { 0.0, 1.5, -2.0, 1.5, 0.25 };
+		CompactWeights cw = new CompactWeights(weights, 8);
+		assertEquals(4, cw.getCodebook().length);
+		for (int i = 0; i < weights.length; i++)
+			assertEquals(weights[i], cw.get(i), 0);
+		assertEquals(5 + 16, cw.sizeInBytes());
+		// too many distinct weights for the codes
+		weights = new double[1000];
+		for (int i = 0; i < weights.length; i++)
+			weights[i] = i - 500;
+		cw = new CompactWeights(weights, 8);
+		assertEquals(256, cw.getCodebook().length);
+		assertEquals(0.0, cw.get(500), 0);
+		for (int i = 0; i < weights.length; i++)
+			assertEquals(weights[i], cw.get(i), 2.0);
+		cw = new CompactWeights(weights, 32);
+		assertEquals(-500.0, cw.get(0), 0);
+		assertNull(cw.getCodebook());
+	}
+
+	@Test
+	public void testBinaryModel() throws IOException {
+		Alphabet alphabet = new Alphabet(10);
+		Alphabet.Feature a = alphabet.add("a");
+		Alphabet.Feature b = alphabet.add("b");
+		Alphabet.Feature c = alphabet.add("c");
+		Model model = new Model(alphabet);
+		model.setWeight(a, 1.25);
+		model.setWeight(b, -0.5);
+		model.setWeight(c, 0.01);
+		File file = File.createTempFile("model", ".bin");
+		try {
+			model.saveBinary(file.getPath(), 0.0, 8);
+			assertTrue(Model.isBinary(file));
+			Model loaded = new Model(file.getPath());
+			assertEquals(8, loaded.weightBits());
+			assertEquals(3, loaded.size());
+			assertEquals(1.25, loaded.getWeight("a"), 0);
+			assertEquals(-0.5, loaded.getWeight("b"), 0);
+			assertEquals(0.01, loaded.getWeight("c"), 1e-6);
+			// prune and widen when loading
+			loaded = new Model(file.getPath(), null, 0.1, 64);
+			assertEquals(64, loaded.weightBits());
+			assertEquals(2, loaded.size());
+			assertNull(loaded.getAlphabet().index("c"));
+			loaded.setWeight("a", 2.0);
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testReadOnly() throws IOException {
+		Alphabet alphabet = new Alphabet(10);
+		Alphabet.Feature a = alphabet.add("a");
+		Model model = new Model(alphabet);
+		model.setWeight(a, 1.0);
+		File file = File.createTempFile("model", ".txt");
+		try {
+			model.save(file.getPath());
+			Model loaded = new Model(file.getPath(), null, -1.0, 32);
+			assertEquals(1.0, loaded.getWeight("a"), 0);
+			loaded.setWeight("a", 2.0);
+		} finally {
+			file.delete();
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package opennlp.ccg.perceptron;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CompiledEventFileTest {
+
+	File textFile, compiledFile;
+
+	@Before
+	public void setUp() throws Exception {
+		textFile = File.createTempFile("events", ".txt");
+		compiledFile = File.createTempFile("events", ".bin");
+		FileWriter out = new FileWriter(textFile);
+		out.write("2\n");
+		out.write("1 2 feat1 1.22 feat2 1\n");
+		out.write("0 3 feat1 1.55 feat3 1 feat4 2.7\n");
+		out.write("3\n");
+		out.write("0 2 feat1 1.44 feat4 2.2\n");
+		out.write("1 1 feat1 1.33\n");
+		out.write("0 2 feat1 1.32 feat4 3.21\n");
+		out.write("1\n");
+		out.write("1 9 a 1 b 1 c 1 d 1 e 1 f 1 g 1 h 0.5 i 1\n");
+		out.close();
+	}
+
+	@After
+	public void tearDown() {
+		textFile.delete();
+		compiledFile.delete();
+	}
+
+	// returns the blocks of the given event file as strings
+	List<String> read(EventFile eventFile) throws IOException {
+		List<String> retval = new ArrayList<String>();
+		EventFile.Block block;
+		while ((block = eventFile.nextBlock()) != null)
+			retval.add(block.events.toString());
+		return retval;
+	}
+
+	@Test
+	public void testCompile() throws IOException {
+		assertFalse(CompiledEventFile.isCompiled(textFile));
+		Alphabet alphabet = new Alphabet(10);
+		assertEquals(3, CompiledEventFile.compile(textFile.getPath(), alphabet, compiledFile
+				.getPath()));
+		assertTrue(CompiledEventFile.isCompiled(compiledFile));
+		List<String> expected = read(new EventFile(textFile.getPath(), alphabet));
+		EventFile compiled = new EventFile(compiledFile.getPath(), alphabet);
+		assertEquals(expected, read(compiled));
+		compiled.reset();
+		assertEquals(expected, read(compiled));
+		compiled.close();
+	}
+
+	@Test
+	public void testOtherAlphabet() throws IOException {
+		CompiledEventFile.compile(textFile.getPath(), new Alphabet(10), compiledFile.getPath());
+		Alphabet alphabet = new Alphabet(10);
+		alphabet.add("feat4");
+		alphabet.add("h");
+		alphabet.add("feat1");
+		alphabet.setClosed(true);
+		assertEquals(read(new EventFile(textFile.getPath(), alphabet)), read(new EventFile(
+				compiledFile.getPath(), alphabet)));
+	}
+
+	@Test
+	public void testShards() throws IOException {
+		Alphabet alphabet = new Alphabet(10);
+		CompiledEventFile.compile(textFile.getPath(), alphabet, compiledFile.getPath());
+		for (int shard = 0; shard < 2; shard++) {
+			EventFile text = new EventFile(textFile.getPath(), alphabet);
+			text.setShard(shard, 2);
+			EventFile compiled = new EventFile(compiledFile.getPath(), alphabet);
+			compiled.setShard(shard, 2);
+			List<String> blocks = read(compiled);
+			assertEquals(read(text), blocks);
+			assertEquals(2 - shard, blocks.size());
+		}
+	}
+}
@@ -0,0 +1,62 @@
+package opennlp.ccg.perceptron;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class DeltaFeatureVectorTest {
+
+	Alphabet alphabet;
+	Alphabet.Feature a, b, c;
+	DeltaFeatureVector left, right, parent;
+
+	@Before
+	public void setUp() throws Exception {
+		alphabet = new Alphabet(10);
+		a = alphabet.add("a");
+		b = alphabet.add("b");
+		c = alphabet.add("c");
+		FeatureMap fm = new FeatureMap();
+		fm.inc(a);
+		left = new DeltaFeatureVector(fm, new DeltaFeatureVector[0]);
+		fm = new FeatureMap();
+		fm.inc(a);
+		fm.inc(b);
+		right = new DeltaFeatureVector(fm, new DeltaFeatureVector[0]);
+		fm = new FeatureMap();
+		fm.inc(c);
+		parent = new DeltaFeatureVector(fm, new DeltaFeatureVector[] { left, right });
+	}
+
+	@Test
+	public void testFeatures() {
+		FeatureMap fm = parent.toFeatureMap();
+		assertEquals(3, parent.size());
+		assertEquals(2.0f, fm.get(a), 0);
+		assertEquals(1.0f, fm.get(b), 0);
+		assertEquals(1.0f, fm.get(c), 0);
+		FeatureVector.Iterator it = parent.iterator();
+		assertSame(a, it.nextFeature());
+	}
+
+	@Test
+	public void testScore() {
+		Model model = new Model(alphabet);
+		model.setWeight(a, 1.0);
+		model.setWeight(b, 2.0);
+		model.setWeight(c, 4.0);
+		assertEquals(8.0, model.score(parent), 0);
+		assertEquals(3.0, model.score(right), 0);
+		// changing the weights invalidates the cached scores
+		model.add(parent);
+		assertEquals(14.0, model.score(parent), 0);
+		assertEquals(model.score(parent.toFeatureMap()), model.score(parent), 0);
+		model.subtract(right);
+		assertEquals(11.0, model.score(parent), 0);
+		// another model has its own scores
+		Model other = new Model(alphabet);
+		assertEquals(0.0, other.score(parent), 0);
+		assertEquals(11.0, model.score(parent), 0);
+	}
+}
@@ -0,0 +1,121 @@
+package opennlp.ccg.perceptron;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class LazyAveragerTest {
+
+	static final int NUM_FEATURES = 8;
+
+	Alphabet alphabet;
+	Alphabet.Feature[] features;
+	Random random;
+
+	@Before
+	public void setUp() throws Exception {
+		alphabet = new Alphabet(NUM_FEATURES);
+		features = new Alphabet.Feature[NUM_FEATURES];
+		for (int i = 0; i < NUM_FEATURES; i++)
+			features[i] = alphabet.add("f" + i);
+		random = new Random(3);
+	}
+
+	// returns a random feature vector, which may list a feature more than
+	// once, and which is sometimes packed
+	private FeatureVector randomVector() {
+		FeatureList fl = new FeatureList();
+		int len = 1 + random.nextInt(4);
+		for (int i = 0; i < len; i++)
+			fl.add(features[random.nextInt(NUM_FEATURES)], (1 + random.nextInt(4)) * 0.5f);
+		if (random.nextBoolean())
+			return new PackedFeatureVector(alphabet, fl);
+		return fl;
+	}
+
+	// checks that the weights of the given models are the same
+	private void assertSameWeights(Model expected, Model actual) {
+		for (int i = 0; i < NUM_FEATURES; i++)
+			assertEquals("f" + i, expected.getWeight(i), actual.getWeight(i), 0);
+	}
+
+	// updates the averaged model and the dense one for a block, where the
+	// same features are often updated more than once
+	private void updateBlock(LazyAverager averager, Model dense) {
+		int numUpdates = random.nextInt(3);
+		for (int u = 0; u < numUpdates; u++) {
+			FeatureVector actualBest = randomVector();
+			FeatureVector modelBest = randomVector();
+			averager.add(actualBest);
+			averager.subtract(modelBest);
+			dense.add(actualBest);
+			dense.subtract(modelBest);
+		}
+		averager.step();
+	}
+
+	@Test
+	public void testSameSums() {
+		// sums over several iterations match adding the whole current model
+		// to the iteration model after each block
+		Model current = new Model(alphabet);
+		LazyAverager averager = new LazyAverager(current);
+		Model dense = new Model(alphabet);
+		Model denseIteration = new Model(alphabet);
+		Model iteration = new Model(alphabet);
+		for (int iter = 0; iter < 3; iter++) {
+			averager.reset();
+			denseIteration.zero();
+			int numBlocks = 20 + random.nextInt(20);
+			for (int i = 0; i < numBlocks; i++) {
+				updateBlock(averager, dense);
+				denseIteration.add(dense);
+			}
+			assertEquals(numBlocks, averager.getSteps());
+			assertSameWeights(dense, current);
+			averager.getSums(iteration);
+			assertSameWeights(denseIteration, iteration);
+		}
+	}
+
+	@Test
+	public void testUnchangedAtEnd() {
+		// weights changed only early on are caught up over the later blocks
+		Model current = new Model(alphabet);
+		LazyAverager averager = new LazyAverager(current);
+		FeatureList fl = new FeatureList();
+		fl.add(features[0], 1.0f);
+		fl.add(features[0], 2.0f);
+		averager.add(fl);
+		averager.step();
+		for (int i = 0; i < 9; i++)
+			averager.step();
+		Model iteration = new Model(alphabet);
+		averager.getSums(iteration);
+		assertEquals(30.0, iteration.getWeight(0), 0);
+		assertEquals(0.0, iteration.getWeight(1), 0);
+	}
+
+	@Test
+	public void testAddSums() {
+		// the sums of several averagers, as with training threads, add up to
+		// the dense sums of their models
+		Model denseIteration = new Model(alphabet);
+		Model iteration = new Model(alphabet);
+		iteration.setWeight(0, 5.0);
+		denseIteration.setWeight(0, 5.0);
+		for (int w = 0; w < 3; w++) {
+			LazyAverager averager = new LazyAverager(new Model(alphabet));
+			Model dense = new Model(alphabet);
+			for (int i = 0; i < 15; i++) {
+				updateBlock(averager, dense);
+				denseIteration.add(dense);
+			}
+			averager.addSums(iteration);
+		}
+		assertSameWeights(denseIteration, iteration);
+	}
+}
@@ -0,0 +1,113 @@
+package opennlp.ccg.perceptron;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class PackedFeatureVectorTest {
+
+	Alphabet alphabet;
+	Alphabet.Feature a, b, c, d;
+
+	@Before
+	public void setUp() throws Exception {
+		alphabet = new Alphabet(10);
+		a = alphabet.add("a");
+		b = alphabet.add("b");
+		c = alphabet.add("c");
+		d = alphabet.add("d");
+	}
+
+	@Test
+	public void testPack() {
+		FeatureList fl = new FeatureList();
+		fl.add(c, 2.0f);
+		fl.add(a, 1.0f);
+		fl.add(c, 0.5f);
+		PackedFeatureVector fv = new PackedFeatureVector(alphabet, fl);
+		assertEquals(2, fv.size());
+		assertEquals(a.getIndex().intValue(), fv.getIndex(0));
+		assertEquals(1.0f, fv.getValue(0), 0);
+		assertEquals(c.getIndex().intValue(), fv.getIndex(1));
+		assertEquals(2.5f, fv.getValue(1), 0);
+		assertEquals(0, fv.get(b.getIndex()), 0);
+		FeatureVector.Iterator it = fv.iterator();
+		assertSame(a, it.nextFeature());
+		assertEquals(1.0f, it.nextValue(), 0);
+		assertSame(c, it.nextFeature());
+		assertEquals(2.5f, it.nextValue(), 0);
+		assertFalse(it.hasNext());
+	}
+
+	@Test
+	public void testMerge() {
+		FeatureMap fm1 = new FeatureMap();
+		fm1.inc(b);
+		fm1.inc(d);
+		FeatureMap fm2 = new FeatureMap();
+		fm2.inc(a);
+		fm2.inc(d);
+		PackedFeatureVector fv = PackedFeatureVector.merge(new PackedFeatureVector(alphabet, fm1),
+				new PackedFeatureVector(alphabet, fm2));
+		assertEquals(3, fv.size());
+		assertEquals(1.0f, fv.get(a.getIndex()), 0);
+		assertEquals(1.0f, fv.get(b.getIndex()), 0);
+		assertEquals(2.0f, fv.get(d.getIndex()), 0);
+		assertSame(fv, PackedFeatureVector.merge(PackedFeatureVector.EMPTY, fv));
+	}
+
+	@Test
+	public void testModel() {
+		Model model = new Model(alphabet);
+		FeatureMap fm = new FeatureMap();
+		fm.add(a, 2.0f);
+		fm.add(c, 3.0f);
+		PackedFeatureVector fv = new PackedFeatureVector(alphabet, fm);
+		model.add(fv);
+		assertEquals(2.0, model.getWeight(a), 0);
+		assertEquals(13.0, model.score(fv), 0);
+		assertEquals(model.score(fm), model.score(fv), 0);
+		model.subtract(fv);
+		assertEquals(0.0, model.score(new ComposedFeatureVector(fv, fm)), 0);
+	}
+
+	@Test
+	public void testCommonFeatures() {
+		FeatureMap fm1 = new FeatureMap();
+		fm1.inc(a);
+		fm1.inc(b);
+		fm1.inc(c);
+		FeatureMap fm2 = new FeatureMap();
+		fm2.inc(a);
+		fm2.add(b, 2.0f);
+		fm2.inc(d);
+		PackedFeatureVector fv1 = new PackedFeatureVector(alphabet, fm1);
+		PackedFeatureVector fv2 = new PackedFeatureVector(alphabet, fm2);
+		PackedFeatureVector common = PackedFeatureVector.intersection(fv1, fv2);
+		assertEquals(1, common.size());
+		assertEquals(1.0f, common.get(a.getIndex()), 0);
+		PackedFeatureVector residual = PackedFeatureVector.difference(fv2, common);
+		assertEquals(2, residual.size());
+		assertEquals(2.0f, residual.get(b.getIndex()), 0);
+		assertEquals(1.0f, residual.get(d.getIndex()), 0);
+		assertSame(fv1, PackedFeatureVector.difference(fv1, PackedFeatureVector.EMPTY));
+		// same best event with common features factored out
+		Model model = new Model(alphabet);
+		model.setWeight(a, 5.0);
+		model.setWeight(b, -1.0);
+		model.setWeight(c, 1.0);
+		List<EventFile.Event> events = new ArrayList<EventFile.Event>();
+		events.add(new EventFile.Event(fm1, 0));
+		events.add(new EventFile.Event(fm2, 1));
+		EventFile.Block block = new EventFile.Block(events);
+		assertSame(events.get(0), model.best(block));
+		model.factorCommonFeatures = true;
+		assertSame(events.get(0), model.best(block));
+		assertEquals(2, events.get(0).residualFeatures.size());
+		assertEquals(-2.0, model.score(events.get(1).residualFeatures), 0);
+	}
+}
@@ -0,0 +1,227 @@
+package opennlp.ccg.perceptron;
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.util.*;
+
+import opennlp.ccg.grammar.Grammar;
+import opennlp.ccg.parse.Parser;
+import opennlp.ccg.synsem.Symbol;
+import opennlp.ccg.synsem.SyntacticFeatureExtractor;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class PerceptronScorerTest {
+
+	static Grammar grammar = null;
+
+	static final String[] SENTENCES = { "he announced the agreement .",
+			"china and canada expressed concern ." };
+
+	// extracts feature "a" from the alphabet it is set to
+	static class TestExtractor implements FeatureExtractor {
+		Alphabet alphabet;
+
+		public FeatureVector extractFeatures(Symbol sign, boolean complete) {
+			FeatureMap fm = new FeatureMap();
+			fm.inc(alphabet.index("a"));
+			return fm;
+		}
+
+		public void setAlphabet(Alphabet alphabet) {
+			this.alphabet = alphabet;
+		}
+	}
+
+	TestExtractor extractor;
+	PerceptronScorer scorer;
+
+	@Before
+	@SuppressWarnings("deprecation")
+	public void setUp() throws Exception {
+		if (grammar == null) {
+			grammar = new Grammar(new File(new File(new File(System.getProperty("user.dir")),
+					"test"), "grammar.xml").toURL());
+		}
+		Alphabet alphabet = new Alphabet(10);
+		alphabet.add("a");
+		Model model = new Model(alphabet);
+		model.setWeight("a", 1.0);
+		extractor = new TestExtractor();
+		scorer = new PerceptronScorer(extractor, model);
+	}
+
+	@Test
+	public void testSwap() {
+		assertFalse(scorer.swapModel());
+		Alphabet alphabet = new Alphabet(10);
+		alphabet.add("b");
+		alphabet.add("a");
+		Model model = new Model(alphabet);
+		model.setWeight("a", 2.0);
+		scorer.setModel(model);
+		// staged model only used after swap
+		assertEquals(1.0, scorer.score(null, false), 0);
+		assertTrue(scorer.swapModel());
+		assertSame(model, scorer.getModel());
+		assertEquals(2.0, scorer.score(null, false), 0);
+		assertSame(alphabet, extractor.alphabet);
+		assertFalse(scorer.swapModel());
+	}
+
+	@Test
+	public void testLoad() throws Exception {
+		Alphabet alphabet = new Alphabet(10);
+		alphabet.add("a");
+		Model model = new Model(alphabet);
+		model.setWeight("a", 3.0);
+		File file = File.createTempFile("model", ".txt");
+		try {
+			model.save(file.getPath());
+			scorer.loadModel(file.getPath()).join();
+			assertEquals(1.0, scorer.score(null, false), 0);
+			assertTrue(scorer.swapModel());
+			assertEquals(3.0, scorer.score(null, false), 0);
+			// failed load leaves model in place
+			scorer.loadModel(file.getPath() + ".missing").join();
+			assertFalse(scorer.swapModel());
+			assertEquals(3.0, scorer.score(null, false), 0);
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testLoadMalformed() throws Exception {
+		File file = File.createTempFile("model", ".txt");
+		PrintStream err = System.err;
+		ByteArrayOutputStream errBytes = new ByteArrayOutputStream();
+		try {
+			FileWriter out = new FileWriter(file);
+			out.write("1\na x\n");
+			out.close();
+			System.setErr(new PrintStream(errBytes, true));
+			scorer.loadModel(file.getPath()).join();
+		} finally {
+			System.setErr(err);
+			file.delete();
+		}
+		// a malformed file is reported like a missing one
+		assertTrue(errBytes.toString().startsWith("Unable to load model from"));
+		assertFalse(scorer.swapModel());
+		assertEquals(1.0, scorer.score(null, false), 0);
+	}
+
+	@Test
+	public void testThreadModels() throws Exception {
+		// another thread switching to a new model leaves this thread's input
+		// with the old one until it switches in turn
+		assertFalse(scorer.swapModel());
+		Alphabet alphabet = new Alphabet(10);
+		alphabet.add("b");
+		alphabet.add("a");
+		Model model = new Model(alphabet);
+		model.setWeight("a", 2.0);
+		scorer.setModel(model);
+		final double[] otherScore = new double[1];
+		Thread other = new Thread() {
+			public void run() {
+				scorer.swapModel();
+				otherScore[0] = scorer.score(null, false);
+			}
+		};
+		other.start();
+		other.join();
+		assertEquals(2.0, otherScore[0], 0);
+		assertEquals(1.0, scorer.score(null, false), 0);
+		assertTrue(scorer.swapModel());
+		assertSame(model, scorer.getModel());
+		assertEquals(2.0, scorer.score(null, false), 0);
+	}
+
+	// adds the signs in the derivation of the given sign, inputs first
+	private static void addSigns(Symbol sign, List<Symbol> signs) {
+		if (!sign.isIndexed()) {
+			for (Symbol input : sign.getDerivationHistory().getInputs())
+				addSigns(input, signs);
+		}
+		signs.add(sign);
+	}
+
+	// returns a model with random weights over the syntactic features of the
+	// given signs, with the given number of other features first, and the
+	// scores it gives them with packed features
+	private static Model randomModel(List<Symbol> signs, int numOthers, Random random,
+			List<Double> scores) {
+		Alphabet alphabet = new Alphabet(10000);
+		for (int i = 0; i < numOthers; i++)
+			alphabet.add("other" + i);
+		SyntacticFeatureExtractor extractor = new SyntacticFeatureExtractor();
+		extractor.packFeatures = true;
+		extractor.setAlphabet(alphabet);
+		List<FeatureVector> features = new ArrayList<FeatureVector>();
+		for (Symbol sign : signs)
+			features.add(extractor.extractFeatures(sign, false));
+		Model retval = new Model(alphabet);
+		for (int i = 0; i < retval.size(); i++)
+			retval.setWeight(i, random.nextGaussian());
+		for (FeatureVector fv : features)
+			scores.add(retval.score(fv));
+		return retval;
+	}
+
+	@Test
+	public void testConcurrentSwaps() throws Exception {
+		// threads scoring the same signs while the model is swapped back and
+		// forth get the scores of the model they switched to for each input
+		List<Symbol> signs = new ArrayList<Symbol>();
+		Parser parser = new Parser(grammar);
+		for (String sentence : SENTENCES) {
+			for (Symbol parse : parser.parse(sentence).getSymbols())
+				addSigns(parse, signs);
+		}
+		Random random = new Random(13);
+		final List<Double> scores1 = new ArrayList<Double>();
+		final Model model1 = randomModel(signs, 0, random, scores1);
+		final List<Double> scores2 = new ArrayList<Double>();
+		final Model model2 = randomModel(signs, 50, random, scores2);
+		final PerceptronScorer syntacticScorer = new PerceptronScorer(
+				new SyntacticFeatureExtractor(), model1);
+		final List<Symbol> scoredSigns = signs;
+		final Throwable[] failure = new Throwable[1];
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread() {
+				public void run() {
+					try {
+						for (int n = 0; n < 50; n++) {
+							syntacticScorer.swapModel();
+							Model model = syntacticScorer.getModel();
+							List<Double> scores = (model == model1) ? scores1 : scores2;
+							for (int i = 0; i < scoredSigns.size(); i++)
+								assertEquals(scores.get(i), syntacticScorer.score(scoredSigns
+										.get(i), false), 1e-4);
+						}
+					} catch (Throwable exc) {
+						synchronized (failure) {
+							failure[0] = exc;
+						}
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (int n = 0; n < 200; n++) {
+			syntacticScorer.setModel((n % 2 == 0) ? model2 : model1);
+			Thread.sleep(1);
+		}
+		for (Thread thread : threads)
+			thread.join();
+		synchronized (failure) {
+			if (failure[0] != null)
+				throw new AssertionError(failure[0]);
+		}
+	}
+}
@@ -0,0 +1,270 @@
+package opennlp.ccg.perceptron;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.*;
+
+import opennlp.ccg.grammar.Grammar;
+import opennlp.ccg.hylo.EnglishAgreementExtractor;
+import opennlp.ccg.hylo.LexDepFeatureExtractor;
+import opennlp.ccg.lexicon.DefaultTokenizer;
+import opennlp.ccg.parse.Parser;
+import opennlp.ccg.synsem.AtomCat;
+import opennlp.ccg.synsem.Symbol;
+import opennlp.ccg.synsem.SyntacticFeatureExtractor;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class SignFeaturesTest {
+
+	static Grammar grammar = null;
+
+	static final String[] SENTENCES = { "he announced the agreement .",
+			"china and canada expressed concern ." };
+
+	static class TestFeatures extends SignFeatures {
+	}
+
+	Alphabet alphabet;
+
+	@Before
+	@SuppressWarnings("deprecation")
+	public void setUp() throws Exception {
+		if (grammar == null) {
+			grammar = new Grammar(new File(new File(new File(System.getProperty("user.dir")),
+					"test"), "grammar.xml").toURL());
+		}
+		alphabet = new Alphabet(10000);
+	}
+
+	// returns the given features by name
+	private static Map<String, Float> byName(FeatureVector fv) {
+		Map<String, Float> retval = new TreeMap<String, Float>();
+		for (FeatureVector.Iterator it = fv.iterator(); it.hasNext();) {
+			String name = it.nextFeature().name();
+			float value = it.nextValue();
+			Float prev = retval.get(name);
+			retval.put(name, (prev != null) ? prev + value : value);
+		}
+		return retval;
+	}
+
+	// adds the signs in the derivation of the given sign, inputs first
+	private static void addSigns(Symbol sign, List<Symbol> signs) {
+		if (!sign.isIndexed()) {
+			for (Symbol input : sign.getDerivationHistory().getInputs())
+				addSigns(input, signs);
+		}
+		signs.add(sign);
+	}
+
+	// returns the features extracted for every sign in the derivations of
+	// fresh parses of the sentences
+	private List<Map<String, Float>> extract(FeatureExtractor extractor) throws Exception {
+		extractor.setAlphabet(alphabet);
+		List<Map<String, Float>> retval = new ArrayList<Map<String, Float>>();
+		Parser parser = new Parser(grammar);
+		for (String sentence : SENTENCES) {
+			for (Symbol parse : parser.parse(sentence).getSymbols()) {
+				List<Symbol> signs = new ArrayList<Symbol>();
+				addSigns(parse, signs);
+				for (Symbol sign : signs)
+					retval.add(byName(extractor.extractFeatures(sign, sign == parse)));
+			}
+		}
+		return retval;
+	}
+
+	// returns the signs in the derivations of fresh parses of the sentences,
+	// with the complete ones last in each list
+	private List<List<Symbol>> parseSigns() throws Exception {
+		List<List<Symbol>> retval = new ArrayList<List<Symbol>>();
+		Parser parser = new Parser(grammar);
+		for (String sentence : SENTENCES) {
+			for (Symbol parse : parser.parse(sentence).getSymbols()) {
+				List<Symbol> signs = new ArrayList<Symbol>();
+				addSigns(parse, signs);
+				retval.add(signs);
+			}
+		}
+		return retval;
+	}
+
+	// returns the features extracted for the given signs
+	private List<FeatureVector> extract(FeatureExtractor extractor, List<List<Symbol>> parses) {
+		extractor.setAlphabet(alphabet);
+		List<FeatureVector> retval = new ArrayList<FeatureVector>();
+		for (List<Symbol> signs : parses) {
+			for (int i = 0; i < signs.size(); i++)
+				retval.add(extractor.extractFeatures(signs.get(i), i == signs.size() - 1));
+		}
+		return retval;
+	}
+
+	// checks that delta vectors extracted for the same signs as feature maps,
+	// both before and after them, packed or not, get the same scores
+	private void assertSameDeltaScores(FeatureExtractor delta, FeatureExtractor map,
+			FeatureExtractor packedDelta) throws Exception {
+		List<List<Symbol>> parses = parseSigns();
+		List<FeatureVector> deltaFeatures = extract(delta, parses);
+		List<FeatureVector> mapFeatures = extract(map, parses);
+		List<FeatureVector> packedDeltaFeatures = extract(packedDelta, parses);
+		Model model = new Model(alphabet);
+		Random random = new Random(7);
+		for (int i = 0; i < model.size(); i++)
+			model.setWeight(i, random.nextGaussian());
+		assertEquals(mapFeatures.size(), deltaFeatures.size());
+		for (int i = 0; i < mapFeatures.size(); i++) {
+			assertTrue(deltaFeatures.get(i) instanceof DeltaFeatureVector);
+			assertTrue(packedDeltaFeatures.get(i) instanceof DeltaFeatureVector);
+			double expected = model.score(mapFeatures.get(i));
+			assertEquals(expected, model.score(deltaFeatures.get(i)), 1e-4);
+			assertEquals(expected, model.score(packedDeltaFeatures.get(i)), 1e-4);
+		}
+	}
+
+	// checks that the given features are the same, up to rounding, and
+	// whether any were found
+	private static void assertSameFeatures(List<Map<String, Float>> expected,
+			List<Map<String, Float>> actual, boolean nonemptyExpected) {
+		assertEquals(expected.size(), actual.size());
+		boolean nonempty = false;
+		for (int i = 0; i < expected.size(); i++) {
+			Map<String, Float> e = expected.get(i);
+			Map<String, Float> a = actual.get(i);
+			assertEquals(e.keySet(), a.keySet());
+			for (String name : e.keySet())
+				assertEquals(name, e.get(name), a.get(name), 1e-4);
+			if (!e.isEmpty())
+				nonempty = true;
+		}
+		assertEquals(nonemptyExpected, nonempty);
+	}
+
+	@Test
+	public void testPackedSyntacticFeatures() throws Exception {
+		List<Map<String, Float>> expected = extract(new SyntacticFeatureExtractor());
+		SyntacticFeatureExtractor extractor = new SyntacticFeatureExtractor();
+		extractor.packFeatures = true;
+		assertSameFeatures(expected, extract(extractor), true);
+	}
+
+	@Test
+	public void testPackedLexDepFeatures() throws Exception {
+		List<Map<String, Float>> expected = extract(new LexDepFeatureExtractor());
+		LexDepFeatureExtractor extractor = new LexDepFeatureExtractor();
+		extractor.packFeatures = true;
+		assertSameFeatures(expected, extract(extractor), true);
+	}
+
+	@Test
+	public void testPackedAgreementFeatures() throws Exception {
+		List<Map<String, Float>> expected = extract(new EnglishAgreementExtractor());
+		EnglishAgreementExtractor extractor = new EnglishAgreementExtractor();
+		extractor.packFeatures = true;
+		// nb: the test grammar has no agreement features
+		assertSameFeatures(expected, extract(extractor), false);
+	}
+
+	@Test
+	public void testDeltaSyntacticScores() throws Exception {
+		SyntacticFeatureExtractor delta = new SyntacticFeatureExtractor();
+		delta.deltaFeatures = true;
+		SyntacticFeatureExtractor packedDelta = new SyntacticFeatureExtractor();
+		packedDelta.deltaFeatures = true;
+		packedDelta.packFeatures = true;
+		assertSameDeltaScores(delta, new SyntacticFeatureExtractor(), packedDelta);
+	}
+
+	@Test
+	public void testDeltaLexDepScores() throws Exception {
+		LexDepFeatureExtractor delta = new LexDepFeatureExtractor();
+		delta.deltaFeatures = true;
+		LexDepFeatureExtractor packedDelta = new LexDepFeatureExtractor();
+		packedDelta.deltaFeatures = true;
+		packedDelta.packFeatures = true;
+		assertSameDeltaScores(delta, new LexDepFeatureExtractor(), packedDelta);
+	}
+
+	@Test
+	public void testDeltaAgreementScores() throws Exception {
+		EnglishAgreementExtractor delta = new EnglishAgreementExtractor();
+		delta.deltaFeatures = true;
+		EnglishAgreementExtractor packedDelta = new EnglishAgreementExtractor();
+		packedDelta.deltaFeatures = true;
+		packedDelta.packFeatures = true;
+		assertSameDeltaScores(delta, new EnglishAgreementExtractor(), packedDelta);
+	}
+
+	@Test
+	public void testStore() {
+		Alphabet.Feature a = alphabet.add("a");
+		Alphabet.Feature b = alphabet.add("b");
+		DefaultTokenizer tokenizer = new DefaultTokenizer();
+		Symbol left = new Symbol(tokenizer.tokenize("x"), new AtomCat("n"));
+		Symbol right = new Symbol(tokenizer.tokenize("y"), new AtomCat("n"));
+		Symbol parent = new Symbol(new AtomCat("n"), new Symbol[] { left, right }, null, left);
+		// feature maps start with the sum of the input maps
+		FeatureMap leftMap = new FeatureMap();
+		leftMap.inc(a);
+		new TestFeatures().store(left, leftMap, alphabet, false);
+		FeatureMap rightMap = new FeatureMap();
+		rightMap.inc(a);
+		rightMap.inc(b);
+		new TestFeatures().store(right, rightMap, alphabet, false);
+		FeatureMap parentMap = SignFeatures.newFeatureMap(new Symbol[] { left, right },
+				TestFeatures.class, alphabet, false);
+		parentMap.inc(b);
+		new TestFeatures().store(parent, parentMap, alphabet, false);
+		FeatureVector mapped = SignFeatures.get(parent, TestFeatures.class).getFeatures();
+		assertSame(parentMap, mapped);
+		// packed vectors merge the own features with the inputs' vectors
+		Symbol left2 = new Symbol(tokenizer.tokenize("x"), new AtomCat("n"));
+		Symbol right2 = new Symbol(tokenizer.tokenize("y"), new AtomCat("n"));
+		Symbol parent2 = new Symbol(new AtomCat("n"), new Symbol[] { left2, right2 }, null, left2);
+		new TestFeatures().store(left2, leftMap, alphabet, true);
+		new TestFeatures().store(right2, rightMap, alphabet, true);
+		FeatureMap ownMap = SignFeatures.newFeatureMap(new Symbol[] { left2, right2 },
+				TestFeatures.class, alphabet, true);
+		assertEquals(0, ownMap.size());
+		ownMap.inc(b);
+		new TestFeatures().store(parent2, ownMap, alphabet, true);
+		FeatureVector packed = SignFeatures.get(parent2, TestFeatures.class).getFeatures();
+		assertTrue(packed instanceof PackedFeatureVector);
+		assertEquals(byName(mapped), byName(packed));
+		assertNull(SignFeatures.get(new Symbol(tokenizer.tokenize("z"), new AtomCat("n")),
+				TestFeatures.class));
+		// features stored another way with the same signs are kept apart
+		assertNull(SignFeatures.get(parent, TestFeatures.class, alphabet, false, true));
+		new TestFeatures().store(left, new FeatureMap(leftMap), alphabet, false, true);
+		new TestFeatures().store(right, new FeatureMap(rightMap), alphabet, false, true);
+		FeatureMap localMap = new FeatureMap();
+		localMap.inc(b);
+		new TestFeatures().store(parent, localMap, alphabet, false, true);
+		FeatureVector delta = SignFeatures.get(parent, TestFeatures.class, alphabet, false, true)
+				.getFeatures();
+		assertTrue(delta instanceof DeltaFeatureVector);
+		assertEquals(byName(mapped), byName(delta));
+		assertSame(parentMap, SignFeatures.get(parent, TestFeatures.class, alphabet, false,
+				false).getFeatures());
+		// as are features stored under another alphabet
+		Alphabet other = new Alphabet(10);
+		assertNull(SignFeatures.get(parent, TestFeatures.class, other, false, false));
+		FeatureMap otherMap = new FeatureMap();
+		otherMap.inc(other.add("c"));
+		new TestFeatures().store(parent, otherMap, other, false);
+		assertSame(otherMap, SignFeatures.get(parent, TestFeatures.class, other, false, false)
+				.getFeatures());
+		assertSame(parentMap, SignFeatures.get(parent, TestFeatures.class, alphabet, false,
+				false).getFeatures());
+		// delta vectors need the delta vectors of the inputs
+		try {
+			new TestFeatures().store(parent2, ownMap, alphabet, true, true);
+			fail();
+		} catch (IllegalStateException exc) {
+			// expected
+		}
+	}
+}
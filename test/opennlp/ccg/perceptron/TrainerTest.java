@@ -0,0 +1,109 @@
+package opennlp.ccg.perceptron;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TrainerTest {
+
+	static final int NUM_FEATURES = 20;
+
+	File eventFile, alphabetFile, modelFile;
+
+	@Before
+	public void setUp() throws Exception {
+		eventFile = File.createTempFile("events", ".txt");
+		alphabetFile = File.createTempFile("alphabet", ".txt");
+		modelFile = File.createTempFile("model", ".txt");
+		Random random = new Random(5);
+		FileWriter out = new FileWriter(eventFile);
+		for (int b = 0; b < 60; b++) {
+			int numEvents = 2 + random.nextInt(3);
+			int best = random.nextInt(numEvents);
+			out.write(numEvents + "\n");
+			for (int e = 0; e < numEvents; e++) {
+				int numFeats = 1 + random.nextInt(4);
+				out.write(((e == best) ? 1 : 0) + " " + numFeats);
+				for (int f = 0; f < numFeats; f++)
+					out.write(" f" + random.nextInt(NUM_FEATURES) + " " + (1 + random.nextInt(3)));
+				out.write("\n");
+			}
+		}
+		out.close();
+		out = new FileWriter(alphabetFile);
+		out.write(NUM_FEATURES + "\n");
+		for (int f = 0; f < NUM_FEATURES; f++)
+			out.write("f" + f + " 1\n");
+		out.close();
+	}
+
+	@After
+	public void tearDown() {
+		eventFile.delete();
+		alphabetFile.delete();
+		modelFile.delete();
+	}
+
+	// returns a new trainer for 4 iterations
+	private Trainer trainer(int numThreads) throws IOException {
+		Trainer retval = new Trainer(eventFile.getPath(), alphabetFile.getPath(), 4, modelFile
+				.getPath(), false);
+		retval.setNumThreads(numThreads);
+		return retval;
+	}
+
+	// checks that the weights of the given models are the same
+	private void assertSameWeights(Model expected, Model actual) {
+		assertEquals(expected.size(), actual.size());
+		boolean nonzero = false;
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals("f" + i, expected.getWeight(i), actual.getWeight(i), 0);
+			if (expected.getWeight(i) != 0)
+				nonzero = true;
+		}
+		assertTrue(nonzero);
+	}
+
+	@Test
+	public void testOneThread() throws IOException {
+		// mixing over a single shard trains the same model as sequentially
+		Trainer sequential = trainer(1);
+		sequential.train();
+		Trainer parallel = trainer(1);
+		parallel.trainInParallel();
+		assertSameWeights(sequential.currentModel, parallel.currentModel);
+		assertSameWeights(sequential.averagedModel, parallel.averagedModel);
+	}
+
+	@Test
+	public void testRepeatable() throws IOException {
+		// runs with the same number of shards train the same models
+		Trainer first = trainer(3);
+		first.train();
+		Trainer second = trainer(3);
+		second.train();
+		assertSameWeights(first.currentModel, second.currentModel);
+		assertSameWeights(first.averagedModel, second.averagedModel);
+	}
+
+	@Test
+	public void testWorkerFailure() throws IOException {
+		// a failure in a worker thread is rethrown rather than mixed in
+		FileWriter out = new FileWriter(eventFile, true);
+		out.write("1\n1 1 f0 x\n");
+		out.close();
+		try {
+			trainer(3).train();
+			fail();
+		} catch (NumberFormatException exc) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,79 @@
+package opennlp.ccg.synsem;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ArgStackTest {
+
+	BasicArg np, pp, s;
+	ArgStack stack;
+
+	@Before
+	public void setUp() throws Exception {
+		np = new BasicArg(new Slash('/'), new AtomCat("np"));
+		pp = new BasicArg(new Slash('\\'), new AtomCat("pp"));
+		s = new BasicArg(new Slash('/'), new AtomCat("s"));
+		stack = new ArgStack(new Arg[] { np, pp });
+	}
+
+	@Test
+	public void testShallowCopy() {
+		ArgStack copy = stack.shallowCopy();
+		assertSame(np, copy.get(0));
+		assertSame(pp, copy.get(1));
+		// replacing an arg in the copy leaves the original unchanged
+		copy.set(0, s);
+		assertSame(s, copy.get(0));
+		assertSame(np, stack.get(0));
+		// and vice versa
+		ArgStack copy2 = stack.shallowCopy();
+		stack.setLast(s);
+		assertSame(s, stack.get(1));
+		assertSame(pp, copy2.get(1));
+		assertSame(pp, copy.get(1));
+	}
+
+	@Test
+	public void testFullSubList() {
+		ArgStack sub = stack.subList(0);
+		assertEquals(2, sub.size());
+		sub.setLast(s);
+		assertSame(pp, stack.getLast());
+		// partial sublists never share
+		ArgStack tail = stack.subList(1, 2);
+		tail.set(0, s);
+		assertSame(pp, stack.get(1));
+	}
+
+	@Test
+	public void testInsertAt() {
+		ArgStack copy = stack.shallowCopy();
+		copy.insertAt(new ArgStack(s), 0);
+		assertTrue(copy.get(0) instanceof SetArg);
+		assertTrue(copy.containsSetArg());
+		assertSame(np, stack.get(0));
+		assertFalse(stack.containsSetArg());
+	}
+
+	@Test
+	public void testAddToCopy() {
+		ArgStack copy = stack.shallowCopy();
+		copy.add(s);
+		copy.set(0, s);
+		assertEquals(3, copy.size());
+		assertEquals(2, stack.size());
+		assertSame(np, stack.get(0));
+	}
+
+	@Test
+	public void testComplexCatShallowCopy() {
+		ComplexCat cat = new ComplexCat(new AtomCat("s"), stack.shallowCopy());
+		ComplexCat copy = (ComplexCat) cat.shallowCopy();
+		copy.setOuterArgument(s);
+		assertSame(s, copy.getOuterArg());
+		assertSame(pp, cat.getOuterArg());
+		assertSame(pp, stack.getLast());
+	}
+}
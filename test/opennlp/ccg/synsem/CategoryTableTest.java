@@ -0,0 +1,103 @@
+package opennlp.ccg.synsem;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import opennlp.ccg.grammar.Grammar;
+import opennlp.ccg.parse.Parser;
+
+import org.jdom.input.SAXBuilder;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CategoryTableTest {
+
+	static Grammar grammar = null;
+
+	static final String[] SENTENCES = { "he announced the agreement .",
+			"china and canada expressed concern ." };
+
+	@Before
+	@SuppressWarnings("deprecation")
+	public void setUp() throws Exception {
+		if (grammar == null) {
+			grammar = new Grammar(new File(new File(new File(System.getProperty("user.dir")),
+					"test"), "grammar.xml").toURL());
+		}
+	}
+
+	// returns the category s[form=sForm]/np[form=npForm], where upper case
+	// forms are variables
+	private static Category category(String sForm, String npForm) throws Exception {
+		String xml = "<complexcat><atomcat type=\"s\"><fs>" + feat(sForm)
+				+ "</fs></atomcat><slash dir=\"/\"/><atomcat type=\"np\"><fs>" + feat(npForm)
+				+ "</fs></atomcat></complexcat>";
+		return new ComplexCat(new SAXBuilder().build(new StringReader(xml)).getRootElement());
+	}
+
+	// returns the form feature with the given value or variable
+	private static String feat(String form) {
+		if (Character.isUpperCase(form.charAt(0)))
+			return "<feat attr=\"form\"><featvar name=\"" + form + "\"/></feat>";
+		return "<feat attr=\"form\" val=\"" + form + "\"/>";
+	}
+
+	// checks that the given categories get the same ids iff they are equal
+	// sans LFs
+	private static void assertSameIds(List<Category> cats) {
+		CategoryTable table = new CategoryTable();
+		int[] ids = new int[cats.size()];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = table.getId(cats.get(i));
+			assertTrue(ids[i] > 0);
+		}
+		for (int i = 0; i < ids.length; i++) {
+			for (int j = 0; j < ids.length; j++) {
+				Category a = cats.get(i);
+				Category b = cats.get(j);
+				assertEquals(a + " " + b, a.equalsNoLF(b), ids[i] == ids[j]);
+			}
+			assertEquals(ids[i], table.getId(cats.get(i)));
+		}
+	}
+
+	@Test
+	public void testRenamedVariables() throws Exception {
+		List<Category> cats = new ArrayList<Category>();
+		cats.add(category("F", "F"));
+		cats.add(category("G", "G"));
+		cats.add(category("F", "G"));
+		cats.add(category("G", "F"));
+		cats.add(category("F", "dcl"));
+		cats.add(category("G", "dcl"));
+		cats.add(category("dcl", "dcl"));
+		cats.add(category("dcl", "b"));
+		assertSameIds(cats);
+		CategoryTable table = new CategoryTable();
+		// renamed variables get the same id
+		assertEquals(table.getId(cats.get(0)), table.getId(cats.get(1)));
+		assertEquals(table.getId(cats.get(2)), table.getId(cats.get(3)));
+		assertEquals(table.getId(cats.get(4)), table.getId(cats.get(5)));
+		// distinct categories get distinct ids
+		assertFalse(table.getId(cats.get(0)) == table.getId(cats.get(2)));
+		assertFalse(table.getId(cats.get(4)) == table.getId(cats.get(6)));
+		assertFalse(table.getId(cats.get(6)) == table.getId(cats.get(7)));
+		assertEquals(5, table.size());
+	}
+
+	@Test
+	public void testParsedCategories() throws Exception {
+		// the categories of parses, which differ in their LFs
+		List<Category> cats = new ArrayList<Category>();
+		Parser parser = new Parser(grammar);
+		for (String sentence : SENTENCES) {
+			for (Symbol parse : parser.parse(sentence).getSymbols())
+				cats.add(parse.getCategory());
+		}
+		assertSameIds(cats);
+	}
+}
@@ -0,0 +1,135 @@
+package opennlp.ccg.test;
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.util.*;
+
+import opennlp.ccg.perceptron.EventFile;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ParallelEventGeneratorTest {
+
+	File dir;
+
+	@Before
+	public void setUp() throws Exception {
+		dir = File.createTempFile("events", "");
+		dir.delete();
+		dir.mkdir();
+	}
+
+	@After
+	public void tearDown() {
+		for (File f : dir.listFiles())
+			f.delete();
+		dir.delete();
+	}
+
+	// writes a worker's event file with a block of one event for each given
+	// item, with a feature naming the item, and its file of items
+	private File workerFile(String name, int... items) throws IOException {
+		File retval = new File(dir, name);
+		PrintWriter events = new PrintWriter(new FileWriter(retval));
+		PrintWriter itemsOut = new PrintWriter(new FileWriter(ParallelEventGenerator
+				.itemsName(retval.getPath())));
+		for (int item : items) {
+			events.println("1");
+			events.println("1 1 item" + item + " 1");
+			itemsOut.println(item);
+		}
+		events.close();
+		itemsOut.close();
+		return retval;
+	}
+
+	// returns the items of the blocks in the given shard
+	private List<Integer> shardItems(String eventfile, int shard, int numShards)
+			throws IOException {
+		List<Integer> retval = new ArrayList<Integer>();
+		BufferedReader in = new BufferedReader(EventFile.openReader(new File(ParallelEventGenerator
+				.shardName(eventfile, shard, numShards))));
+		String line;
+		while ((line = in.readLine()) != null) {
+			assertEquals("1", line);
+			String[] tokens = in.readLine().split(" ");
+			retval.add(Integer.parseInt(tokens[2].substring("item".length())));
+		}
+		in.close();
+		return retval;
+	}
+
+	@Test
+	public void testShardName() {
+		assertEquals("events.txt", ParallelEventGenerator.shardName("events.txt", 0, 1));
+		assertEquals("events.txt.2", ParallelEventGenerator.shardName("events.txt", 2, 4));
+		assertEquals("events.gz", ParallelEventGenerator.shardName("events.gz", 0, 1));
+		assertEquals("events.1.gz", ParallelEventGenerator.shardName("events.gz", 1, 4));
+	}
+
+	@Test
+	public void testOutputOptions() {
+		// other outputs are rejected with several workers, as they would
+		// be overwritten
+		String[] args = { "-bleu", "bleu", "-g", "grammar.xml", "testbed.xml" };
+		new ParallelEventGenerator(args, "events.txt", 1, 2);
+		for (String option : ParallelEventGenerator.OUTPUT_OPTIONS) {
+			args[0] = option;
+			try {
+				new ParallelEventGenerator(args, "events.txt", 2, 1);
+				fail(option);
+			} catch (IllegalArgumentException exc) {
+				// expected
+			}
+		}
+		args[0] = "-2events";
+		new ParallelEventGenerator(args, "events.txt", 2, 1);
+	}
+
+	@Test
+	public void testMerge() throws IOException {
+		// blocks are merged in item order and dealt out to the shards
+		String eventfile = new File(dir, "events.txt").getPath();
+		ParallelEventGenerator generator = new ParallelEventGenerator(new String[0], eventfile,
+				2, 2);
+		File[] workerFiles = { workerFile("w0", 0, 2, 4), workerFile("w1", 1, 3, 5, 6) };
+		assertEquals(7, generator.merge(workerFiles));
+		assertEquals(Arrays.asList(0, 2, 4, 6), shardItems(eventfile, 0, 2));
+		assertEquals(Arrays.asList(1, 3, 5), shardItems(eventfile, 1, 2));
+	}
+
+	@Test
+	public void testMergeOneWorker() throws IOException {
+		// a single worker's blocks are dealt out to compressed shards
+		String eventfile = new File(dir, "events.gz").getPath();
+		ParallelEventGenerator generator = new ParallelEventGenerator(new String[0], eventfile,
+				1, 3);
+		File[] workerFiles = { workerFile("w0", 0, 1, 2, 3) };
+		assertEquals(4, generator.merge(workerFiles));
+		assertEquals(Arrays.asList(0, 3), shardItems(eventfile, 0, 3));
+		assertEquals(Arrays.asList(1), shardItems(eventfile, 1, 3));
+		assertEquals(Arrays.asList(2), shardItems(eventfile, 2, 3));
+	}
+
+	@Test
+	public void testMissingBlock() throws IOException {
+		// an item without a block of events is reported
+		String eventfile = new File(dir, "events.txt").getPath();
+		ParallelEventGenerator generator = new ParallelEventGenerator(new String[0], eventfile,
+				1, 1);
+		File workerFile = workerFile("w0", 0, 1);
+		PrintWriter itemsOut = new PrintWriter(new FileWriter(ParallelEventGenerator
+				.itemsName(workerFile.getPath()), true));
+		itemsOut.println(2);
+		itemsOut.close();
+		try {
+			generator.merge(new File[] { workerFile });
+			fail();
+		} catch (IOException exc) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,75 @@
+package opennlp.ccg.util;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ConcurrentInternerTest {
+
+	ConcurrentInterner<String> interner;
+
+	@Before
+	public void setUp() throws Exception {
+		interner = new ConcurrentInterner<String>();
+	}
+
+	@Test
+	public void testIntern() {
+		String a = new String("a");
+		assertSame(a, interner.intern(a));
+		assertSame(a, interner.intern(new String("a")));
+		String b = new String("b");
+		assertSame(b, interner.intern(b));
+		assertEquals(2, interner.size());
+	}
+
+	@Test
+	public void testGetInterned() {
+		assertNull(interner.getInterned("a"));
+		String a = new String("a");
+		interner.intern(a);
+		assertSame(a, interner.getInterned(new String("a")));
+	}
+
+	@Test
+	public void testStripes() {
+		ConcurrentInterner<String> ints = new ConcurrentInterner<String>(false, 3);
+		List<String> kept = new ArrayList<String>();
+		for (int i = 0; i < 1000; i++)
+			kept.add(ints.intern(Integer.toString(i)));
+		assertEquals(1000, ints.size());
+		for (int i = 0; i < 1000; i++)
+			assertSame(kept.get(i), ints.intern(Integer.toString(i)));
+	}
+
+	@Test
+	public void testConcurrentIntern() throws InterruptedException {
+		final int numThreads = 16;
+		final int numKeys = 2000;
+		final String[][] results = new String[numThreads][numKeys];
+		final ConcurrentInterner<String> ints = new ConcurrentInterner<String>();
+		Thread[] threads = new Thread[numThreads];
+		for (int t = 0; t < numThreads; t++) {
+			final int thread = t;
+			threads[t] = new Thread() {
+				public void run() {
+					for (int i = 0; i < numKeys; i++)
+						results[thread][i] = ints.intern(Integer.toString(i));
+				}
+			};
+		}
+		for (Thread thread : threads)
+			thread.start();
+		for (Thread thread : threads)
+			thread.join();
+		for (int i = 0; i < numKeys; i++) {
+			for (int t = 1; t < numThreads; t++)
+				assertSame(results[0][i], results[t][i]);
+		}
+		assertEquals(numKeys, ints.size());
+	}
+}
@@ -0,0 +1,54 @@
+package opennlp.ccg.util;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class IdentityFloatCacheTest {
+
+	IdentityFloatCache cache;
+
+	@Before
+	public void setUp() throws Exception {
+		cache = new IdentityFloatCache(16);
+	}
+
+	@Test
+	public void testPutGet() {
+		String a = new String("a");
+		assertTrue(Float.isNaN(cache.get(a)));
+		cache.put(a, 1.5f);
+		assertEquals(1.5f, cache.get(a), 0);
+		cache.put(a, -2f);
+		assertEquals(-2f, cache.get(a), 0);
+	}
+
+	@Test
+	public void testIdentity() {
+		String a = new String("a");
+		cache.put(a, 1f);
+		assertTrue(Float.isNaN(cache.get(new String("a"))));
+	}
+
+	@Test
+	public void testBounded() {
+		Object[] keys = new Object[1000];
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = new Object();
+			cache.put(keys[i], i);
+		}
+		int found = 0;
+		for (int i = 0; i < keys.length; i++) {
+			float value = cache.get(keys[i]);
+			if (!Float.isNaN(value)) {
+				assertEquals(i, value, 0);
+				found++;
+			}
+		}
+		assertTrue(found > 0 && found <= cache.capacity());
+		assertEquals(keys.length - 1, cache.get(keys[keys.length - 1]), 0);
+		cache.clear();
+		assertTrue(Float.isNaN(cache.get(keys[keys.length - 1])));
+	}
+}